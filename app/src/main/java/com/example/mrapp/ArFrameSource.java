@@ -0,0 +1,72 @@
+package com.example.mrapp;
+
+import android.util.Log;
+
+import com.google.ar.core.Camera;
+import com.google.ar.core.Frame;
+import com.google.ar.core.HitResult;
+import com.google.ar.core.Plane;
+import com.google.ar.core.Point;
+import com.google.ar.core.Session;
+import com.google.ar.core.Trackable;
+import com.google.ar.core.TrackingState;
+import com.google.ar.core.exceptions.CameraNotAvailableException;
+
+import com.example.mrapp.core.CameraRig;
+import com.example.mrapp.core.FrameSource;
+
+/** The live ARCore session as a {@link FrameSource}; only used on the render thread. */
+final class ArFrameSource implements FrameSource {
+    private static final String TAG = "ArFrameSource";
+
+    private final Session session;
+    private Frame frame;
+    private Camera camera;
+
+    ArFrameSource(Session session) {
+        this.session = session;
+    }
+
+    /** Input comes from the UI, not the session, so {@code input} is not used. */
+    @Override
+    public boolean update(long frameTimeNanos, Input input) {
+        try {
+            frame = session.update();
+        } catch (CameraNotAvailableException e) {
+            Log.e(TAG, "Camera not available", e);
+            return false;
+        }
+        camera = frame.getCamera();
+        return true;
+    }
+
+    @Override
+    public boolean isTracking() {
+        return camera.getTrackingState() == TrackingState.TRACKING;
+    }
+
+    @Override
+    public void getViewMatrix(float[] out) {
+        camera.getViewMatrix(out, 0);
+    }
+
+    @Override
+    public void getProjectionMatrix(float[] out) {
+        camera.getProjectionMatrix(out, 0, CameraRig.NEAR, CameraRig.FAR);
+    }
+
+    /** Takes the nearest hit inside a detected plane or on a point with an estimated surface normal. */
+    @Override
+    public boolean hitTest(float x, float y, float[] pose) {
+        for (HitResult hit : frame.hitTest(x, y)) {
+            Trackable trackable = hit.getTrackable();
+            if ((trackable instanceof Plane && ((Plane) trackable).isPoseInPolygon(hit.getHitPose()))
+                    || (trackable instanceof Point
+                    && ((Point) trackable).getOrientationMode() == Point.OrientationMode.ESTIMATED_SURFACE_NORMAL)) {
+                hit.getHitPose().toMatrix(pose, 0);
+                return true;
+            }
+        }
+        return false;
+    }
+}
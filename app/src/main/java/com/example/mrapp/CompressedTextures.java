@@ -0,0 +1,113 @@
+package com.example.mrapp;
+
+import com.google.android.filament.Engine;
+import com.google.android.filament.MaterialInstance;
+import com.google.android.filament.Texture;
+import com.google.android.filament.TextureSampler;
+import com.google.android.filament.gltfio.FilamentInstance;
+
+import com.example.mrapp.core.TextureBundle;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Filament textures uploaded from a {@link TextureBundle}, bound to a model's material instances
+ * in place of the placeholders {@link TextureTranscoder} left in the glTF. Engine thread only.
+ */
+public final class CompressedTextures {
+    private static final int CLAMP_TO_EDGE = 33071;
+    private static final int MIRRORED_REPEAT = 33648;
+
+    private static final Texture.InternalFormat[] INTERNAL_FORMATS = {
+            Texture.InternalFormat.ETC2_RGB8, Texture.InternalFormat.ETC2_SRGB8,
+            Texture.InternalFormat.ETC2_EAC_RGBA8, Texture.InternalFormat.ETC2_EAC_SRGBA8,
+    };
+    private static final Texture.CompressedFormat[] COMPRESSED_FORMATS = {
+            Texture.CompressedFormat.ETC2_RGB8, Texture.CompressedFormat.ETC2_SRGB8,
+            Texture.CompressedFormat.ETC2_EAC_RGBA8, Texture.CompressedFormat.ETC2_EAC_SRGBA8,
+    };
+
+    private final Engine engine;
+    private final Texture[] textures;
+    private final List<TextureBundle.Binding> bindings;
+    private final TextureSampler[] samplers;
+    private final long byteSize;
+
+    private CompressedTextures(Engine engine, TextureBundle bundle) {
+        this.engine = engine;
+        List<TextureBundle.Image> images = bundle.getImages();
+        textures = new Texture[images.size()];
+        for (int i = 0; i < textures.length; i++) {
+            TextureBundle.Image image = images.get(i);
+            textures[i] = new Texture.Builder()
+                    .width(image.width)
+                    .height(image.height)
+                    .levels(image.getLevelCount())
+                    .sampler(Texture.Sampler.SAMPLER_2D)
+                    .format(INTERNAL_FORMATS[image.format])
+                    .build(engine);
+            for (int level = 0; level < image.getLevelCount(); level++) {
+                ByteBuffer data = image.getLevel(level);
+                textures[i].setImage(engine, level,
+                        new Texture.PixelBufferDescriptor(data, COMPRESSED_FORMATS[image.format], data.remaining()));
+            }
+        }
+        bindings = bundle.getBindings();
+        samplers = new TextureSampler[bindings.size()];
+        for (int i = 0; i < samplers.length; i++) {
+            TextureBundle.Binding binding = bindings.get(i);
+            samplers[i] = new TextureSampler(TextureSampler.MinFilter.LINEAR_MIPMAP_LINEAR, TextureSampler.MagFilter.LINEAR,
+                    wrapMode(binding.wrapS), wrapMode(binding.wrapT), TextureSampler.WrapMode.REPEAT);
+        }
+        byteSize = bundle.getDataSize();
+    }
+
+    /** True if the GPU samples every format a bundle can contain. */
+    public static boolean isSupported(Engine engine) {
+        for (Texture.InternalFormat format : INTERNAL_FORMATS) {
+            if (!Texture.isTextureFormatSupported(engine, format)) return false;
+        }
+        return true;
+    }
+
+    /** Uploads every image of {@code bundle}; the copy to the GPU finishes asynchronously. */
+    public static CompressedTextures create(Engine engine, TextureBundle bundle) {
+        return new CompressedTextures(engine, bundle);
+    }
+
+    /** Binds the textures to the material instances of {@code instance} that the bundle names. */
+    public void bind(FilamentInstance instance) {
+        for (MaterialInstance materialInstance : instance.getMaterialInstances()) {
+            int material = TextureTranscoder.materialIndex(materialInstance.getName());
+            if (material < 0) continue;
+            for (int i = 0; i < samplers.length; i++) {
+                TextureBundle.Binding binding = bindings.get(i);
+                if (binding.material == material) {
+                    materialInstance.setParameter(binding.parameter, textures[binding.image], samplers[i]);
+                }
+            }
+        }
+    }
+
+    /** GPU memory held by the textures. */
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    /** Destroys the textures; call after the asset whose materials sample them is gone. */
+    public void destroy() {
+        for (Texture texture : textures) engine.destroyTexture(texture);
+    }
+
+    private static TextureSampler.WrapMode wrapMode(int gltfWrap) {
+        switch (gltfWrap) {
+            case CLAMP_TO_EDGE:
+                return TextureSampler.WrapMode.CLAMP_TO_EDGE;
+            case MIRRORED_REPEAT:
+                return TextureSampler.WrapMode.MIRRORED_REPEAT;
+            default:
+                return TextureSampler.WrapMode.REPEAT;
+        }
+    }
+}
@@ -0,0 +1,558 @@
+package com.example.mrapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.example.mrapp.core.MeshOptimizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Rewrites a .glb for rendering speed: triangles are reordered for the vertex cache, normals,
+ * tangents and texture coordinates are quantized (KHR_mesh_quantization), and meshes large enough
+ * to matter get {@link #LOD_LEVELS} simplified index lists.
+ *
+ * <p>Each simplified level is a copy of the mesh that shares its vertex attributes and material,
+ * attached under every node that uses the mesh as a child node named {@code <node>#lod<level>}.
+ * {@link #lodLevel} recognizes those names at runtime. Unchanged buffer data is written through
+ * from the source without copying; data that no longer has a reader is dropped.
+ */
+public final class GlbOptimizer {
+    public static final int LOD_LEVELS = 3;
+    /** Fraction of the full triangle count each level aims for. */
+    private static final float[] LOD_RATIOS = {0.5f, 0.25f, 0.1f};
+    /** Meshes below this many triangles are cheap enough to draw at full detail. */
+    private static final int LOD_MIN_TRIANGLES = 2048;
+    private static final String LOD_SUFFIX = "#lod";
+
+    private static final int GLB_MAGIC = 0x46546C67; // "glTF"
+    private static final int GLB_HEADER_SIZE = 12;
+    private static final int CHUNK_JSON = 0x4E4F534A;
+    private static final int CHUNK_BIN = 0x004E4942;
+
+    private static final int MODE_TRIANGLES = 4;
+    private static final int BYTE = 5120;
+    private static final int UNSIGNED_BYTE = 5121;
+    private static final int UNSIGNED_SHORT = 5123;
+    private static final int UNSIGNED_INT = 5125;
+    private static final int FLOAT = 5126;
+    private static final int ARRAY_BUFFER = 34962;
+    private static final int ELEMENT_ARRAY_BUFFER = 34963;
+    private static final String MESH_QUANTIZATION = "KHR_mesh_quantization";
+
+    private final JSONObject gltf;
+    private final List<ByteBuffer> views = new ArrayList<>();
+    private final Set<Integer> rewrittenAccessors = new HashSet<>();
+    private int trianglesBefore;
+    /** Cache misses summed over all triangles; divided by {@link #trianglesBefore} for the ratio. */
+    private double cacheMissesBefore;
+    private double cacheMissesAfter;
+    private final int[] lodTriangles = new int[LOD_LEVELS];
+    private int quantizedAccessors;
+
+    private GlbOptimizer(JSONObject gltf, ByteBuffer bin) throws JSONException, IOException {
+        this.gltf = gltf;
+        JSONArray bufferViews = gltf.optJSONArray("bufferViews");
+        for (int i = 0; bufferViews != null && i < bufferViews.length(); i++) {
+            JSONObject view = bufferViews.getJSONObject(i);
+            int offset = view.optInt("byteOffset", 0);
+            int length = view.getInt("byteLength");
+            if (offset < 0 || length < 0 || (long) offset + length > (bin != null ? bin.limit() : 0)) {
+                throw new IOException("Buffer view " + i + " lies outside the binary chunk");
+            }
+            ByteBuffer data = bin.duplicate();
+            data.position(offset).limit(offset + length);
+            views.add(data.slice().order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    /**
+     * Parses a binary glTF. Returns null if it is not one this optimizer can rewrite: external
+     * buffers, or extensions that keep their own compressed buffer views. Chunks or buffer views
+     * that do not fit the file are an {@link IOException}.
+     */
+    public static GlbOptimizer parse(ByteBuffer source) throws IOException {
+        ByteBuffer glb = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int base = glb.position();
+        if (glb.remaining() < GLB_HEADER_SIZE + 8 || glb.getInt(base) != GLB_MAGIC || glb.getInt(base + 4) != 2) {
+            throw new IOException("Not a glTF 2.0 binary");
+        }
+        int jsonLength = glb.getInt(base + GLB_HEADER_SIZE);
+        if (glb.getInt(base + GLB_HEADER_SIZE + 4) != CHUNK_JSON) throw new IOException("Missing JSON chunk");
+        if (jsonLength < 0 || jsonLength > glb.limit() - (base + GLB_HEADER_SIZE + 8)) {
+            throw new IOException("JSON chunk overruns the file");
+        }
+        byte[] json = new byte[jsonLength];
+        glb.position(base + GLB_HEADER_SIZE + 8);
+        glb.get(json);
+        ByteBuffer bin = ByteBuffer.allocate(0);
+        int binChunk = base + GLB_HEADER_SIZE + 8 + jsonLength;
+        if (binChunk + 8 <= glb.limit() && glb.getInt(binChunk + 4) == CHUNK_BIN) {
+            int binLength = glb.getInt(binChunk);
+            if (binLength < 0 || binLength > glb.limit() - (binChunk + 8)) throw new IOException("BIN chunk overruns the file");
+            glb.limit(binChunk + 8 + binLength).position(binChunk + 8);
+            bin = glb.slice();
+        }
+        try {
+            JSONObject gltf = new JSONObject(new String(json, StandardCharsets.UTF_8));
+            JSONArray buffers = gltf.optJSONArray("buffers");
+            if (buffers != null && (buffers.length() > 1 || buffers.getJSONObject(0).has("uri"))) return null;
+            JSONArray used = gltf.optJSONArray("extensionsUsed");
+            for (int i = 0; used != null && i < used.length(); i++) {
+                String extension = used.getString(i);
+                if (extension.equals("KHR_draco_mesh_compression") || extension.equals("EXT_meshopt_compression")) return null;
+            }
+            return new GlbOptimizer(gltf, bin);
+        } catch (JSONException e) {
+            throw new IOException("Malformed glTF JSON", e);
+        }
+    }
+
+    /**
+     * Wraps glTF JSON whose buffer views all index into {@code bin}, for example one assembled by
+     * {@link GltfPacker}. Nothing is checked; callers that only want {@link #writeTo} need not
+     * {@link #optimize}.
+     */
+    static GlbOptimizer of(JSONObject gltf, ByteBuffer bin) throws IOException {
+        try {
+            return new GlbOptimizer(gltf, bin);
+        } catch (JSONException e) {
+            throw new IOException("Malformed glTF JSON", e);
+        }
+    }
+
+    /** Returns the level encoded in a node name by this optimizer, or 0 for an ordinary node. */
+    public static int lodLevel(String nodeName) {
+        if (nodeName == null) return 0;
+        int at = nodeName.lastIndexOf(LOD_SUFFIX);
+        if (at < 0 || at + LOD_SUFFIX.length() != nodeName.length() - 1) return 0;
+        int level = nodeName.charAt(nodeName.length() - 1) - '0';
+        return level >= 1 && level <= LOD_LEVELS ? level : 0;
+    }
+
+    public void optimize() throws IOException {
+        try {
+            JSONArray meshes = gltf.optJSONArray("meshes");
+            if (meshes == null) return;
+            boolean[] lodAllowed = lodAllowedMeshes(meshes.length());
+            int[] lodMeshes = new int[meshes.length() * LOD_LEVELS];
+            int originalMeshCount = meshes.length();
+            for (int m = 0; m < originalMeshCount; m++) {
+                int[] levels = optimizeMesh(meshes, m, lodAllowed[m]);
+                if (levels != null) System.arraycopy(levels, 0, lodMeshes, m * LOD_LEVELS, LOD_LEVELS);
+                else lodMeshes[m * LOD_LEVELS] = -1;
+            }
+            attachLodNodes(lodMeshes, originalMeshCount);
+            if (quantizedAccessors > 0) requireExtension(MESH_QUANTIZATION);
+        } catch (JSONException | RuntimeException e) {
+            throw new IOException("Cannot optimize model", e);
+        }
+    }
+
+    /** The glTF JSON, for passes such as {@link TextureTranscoder} that rewrite more of it. */
+    JSONObject json() {
+        return gltf;
+    }
+
+    /** The bytes of buffer view {@code index}. */
+    ByteBuffer view(int index) {
+        return views.get(index).duplicate();
+    }
+
+    public String summary() {
+        int triangles = Math.max(trianglesBefore, 1);
+        return String.format(Locale.US, "%d triangles, ACMR %.2f -> %.2f, LODs %d/%d/%d, %d accessors quantized",
+                trianglesBefore, cacheMissesBefore / triangles, cacheMissesAfter / triangles, lodTriangles[0], lodTriangles[1], lodTriangles[2],
+                quantizedAccessors);
+    }
+
+    /** Writes the optimized model as a .glb, keeping only buffer views something still reads. */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        try {
+            List<ByteBuffer> kept = compactViews();
+            long binLength = 0;
+            for (ByteBuffer view : kept) binLength = align4(binLength) + view.remaining();
+            binLength = align4(binLength);
+            if (binLength > 0) {
+                gltf.put("buffers", new JSONArray().put(new JSONObject().put("byteLength", binLength)));
+            } else {
+                gltf.remove("buffers");
+            }
+            byte[] json = gltf.toString().getBytes(StandardCharsets.UTF_8);
+            int jsonPadded = (int) align4(json.length);
+            long total = GLB_HEADER_SIZE + 8 + jsonPadded + (binLength > 0 ? 8 + binLength : 0);
+            if (total > 0xFFFFFFFFL) throw new IOException("Optimized model exceeds the 4 GB glTF limit");
+
+            ByteBuffer header = ByteBuffer.allocate(GLB_HEADER_SIZE + 8).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(GLB_MAGIC).putInt(2).putInt((int) total).putInt(jsonPadded).putInt(CHUNK_JSON).flip();
+            writeFully(channel, header);
+            ByteBuffer jsonChunk = ByteBuffer.allocate(jsonPadded);
+            jsonChunk.put(json);
+            while (jsonChunk.hasRemaining()) jsonChunk.put((byte) ' ');
+            jsonChunk.flip();
+            writeFully(channel, jsonChunk);
+            if (binLength == 0) return;
+
+            ByteBuffer chunkHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            chunkHeader.putInt((int) binLength).putInt(CHUNK_BIN).flip();
+            writeFully(channel, chunkHeader);
+            ByteBuffer padding = ByteBuffer.allocate(4);
+            long written = 0;
+            for (ByteBuffer view : kept) {
+                written = pad(channel, padding, written);
+                written += writeFully(channel, view.duplicate());
+            }
+            pad(channel, padding, written);
+        } catch (JSONException | RuntimeException e) {
+            throw new IOException("Cannot write optimized model", e);
+        }
+    }
+
+    /** Optimizes one mesh in place; returns the indices of its LOD meshes, or null if it has none. */
+    private int[] optimizeMesh(JSONArray meshes, int meshIndex, boolean lodAllowed) throws JSONException {
+        JSONObject mesh = meshes.getJSONObject(meshIndex);
+        JSONArray primitives = mesh.getJSONArray("primitives");
+        int[][][] levels = new int[primitives.length()][][];
+        int[] vertexCounts = new int[primitives.length()];
+        int meshTriangles = 0;
+        for (int p = 0; p < primitives.length(); p++) {
+            JSONObject primitive = primitives.getJSONObject(p);
+            quantizeAttributes(primitive.getJSONObject("attributes"));
+            if (primitive.optInt("mode", MODE_TRIANGLES) != MODE_TRIANGLES) continue;
+            JSONObject attributes = primitive.getJSONObject("attributes");
+            if (!attributes.has("POSITION")) continue;
+            int positionAccessor = attributes.getInt("POSITION");
+            int vertexCount = accessor(positionAccessor).getInt("count");
+            int[] indices = primitive.has("indices") ? readIndices(primitive.getInt("indices")) : sequence(vertexCount);
+            if (indices == null) continue;
+
+            int[] optimized = MeshOptimizer.optimizeVertexCache(indices, vertexCount);
+            trianglesBefore += indices.length / 3;
+            cacheMissesBefore += MeshOptimizer.averageCacheMissRatio(indices, vertexCount, 16) * indices.length / 3;
+            cacheMissesAfter += MeshOptimizer.averageCacheMissRatio(optimized, vertexCount, 16) * indices.length / 3;
+            if (primitive.has("indices")) {
+                int accessor = primitive.getInt("indices");
+                if (rewrittenAccessors.add(accessor)) writeIndices(accessor(accessor), optimized, vertexCount);
+            } else {
+                primitive.put("indices", addIndexAccessor(optimized, vertexCount));
+            }
+            meshTriangles += optimized.length / 3;
+            if (!lodAllowed || primitive.has("targets")) {
+                lodAllowed = false;
+                continue;
+            }
+            float[] positions = readFloats(positionAccessor, 3);
+            if (positions == null) {
+                lodAllowed = false;
+                continue;
+            }
+            levels[p] = new int[LOD_LEVELS][];
+            int[] previous = optimized;
+            for (int level = 0; level < LOD_LEVELS; level++) {
+                int target = Math.max(1, (int) (optimized.length / 3 * LOD_RATIOS[level]));
+                int[] simplified = MeshOptimizer.simplifyClusters(optimized, positions, vertexCount, target);
+                // Keep the coarser level only if it actually saves work; otherwise repeat the last one.
+                if (simplified.length > 0 && simplified.length < previous.length * 0.8f) {
+                    previous = MeshOptimizer.optimizeVertexCache(simplified, vertexCount);
+                }
+                levels[p][level] = previous;
+            }
+            vertexCounts[p] = vertexCount;
+        }
+        if (!lodAllowed || meshTriangles < LOD_MIN_TRIANGLES) return null;
+
+        int[] lodMeshes = new int[LOD_LEVELS];
+        for (int level = 0; level < LOD_LEVELS; level++) {
+            JSONObject lodMesh = new JSONObject(mesh.toString());
+            lodMesh.put("name", mesh.optString("name", "mesh" + meshIndex) + LOD_SUFFIX + (level + 1));
+            JSONArray lodPrimitives = lodMesh.getJSONArray("primitives");
+            int[] previousAccessor = new int[primitives.length()];
+            for (int p = 0; p < lodPrimitives.length(); p++) {
+                if (levels[p] == null) continue;
+                int[] indices = levels[p][level];
+                boolean repeated = level > 0 && indices == levels[p][level - 1];
+                int accessor = repeated ? previousAccessor[p] : addIndexAccessor(indices, vertexCounts[p]);
+                previousAccessor[p] = accessor;
+                lodPrimitives.getJSONObject(p).put("indices", accessor);
+                lodTriangles[level] += indices.length / 3;
+            }
+            meshes.put(lodMesh);
+            lodMeshes[level] = meshes.length() - 1;
+        }
+        return lodMeshes;
+    }
+
+    /**
+     * Meshes that are not skinned, since simplified copies would need the skin duplicated too. A
+     * model that already has levels from an earlier run gets no more.
+     */
+    private boolean[] lodAllowedMeshes(int meshCount) throws JSONException {
+        boolean[] allowed = new boolean[meshCount];
+        Arrays.fill(allowed, true);
+        JSONArray nodes = gltf.optJSONArray("nodes");
+        for (int i = 0; nodes != null && i < nodes.length(); i++) {
+            JSONObject node = nodes.getJSONObject(i);
+            if (lodLevel(node.optString("name", null)) > 0) {
+                Arrays.fill(allowed, false);
+                break;
+            }
+            if (node.has("mesh") && (node.has("skin") || node.has("extensions"))) allowed[node.getInt("mesh")] = false;
+        }
+        return allowed;
+    }
+
+    private void attachLodNodes(int[] lodMeshes, int meshCount) throws JSONException {
+        JSONArray nodes = gltf.optJSONArray("nodes");
+        if (nodes == null) return;
+        int nodeCount = nodes.length();
+        for (int i = 0; i < nodeCount; i++) {
+            JSONObject node = nodes.getJSONObject(i);
+            if (!node.has("mesh")) continue;
+            int mesh = node.getInt("mesh");
+            if (mesh >= meshCount || lodMeshes[mesh * LOD_LEVELS] < 0) continue;
+            JSONArray children = node.optJSONArray("children");
+            if (children == null) {
+                children = new JSONArray();
+                node.put("children", children);
+            }
+            String name = node.optString("name", "node" + i);
+            for (int level = 0; level < LOD_LEVELS; level++) {
+                JSONObject lodNode = new JSONObject();
+                lodNode.put("name", name + LOD_SUFFIX + (level + 1));
+                lodNode.put("mesh", lodMeshes[mesh * LOD_LEVELS + level]);
+                nodes.put(lodNode);
+                children.put(nodes.length() - 1);
+            }
+        }
+    }
+
+    /** Quantizes float normals, tangents and [0, 1] texture coordinates, rewriting their accessors in place. */
+    private void quantizeAttributes(JSONObject attributes) throws JSONException {
+        for (Iterator<String> names = attributes.keys(); names.hasNext(); ) {
+            String name = names.next();
+            int index = attributes.getInt(name);
+            if (rewrittenAccessors.contains(index)) continue;
+            JSONObject accessor = accessor(index);
+            if (accessor.getInt("componentType") != FLOAT || accessor.has("sparse")) continue;
+            int count = accessor.getInt("count");
+            ByteBuffer data;
+            if (name.equals("NORMAL") || name.equals("TANGENT")) {
+                int components = name.equals("NORMAL") ? 3 : 4;
+                float[] values = readFloats(index, components);
+                if (values == null) continue;
+                data = ByteBuffer.allocate(count * 4).order(ByteOrder.LITTLE_ENDIAN);
+                for (int v = 0; v < count; v++) {
+                    for (int k = 0; k < 4; k++) {
+                        float value = k < components ? values[v * components + k] : 0f;
+                        data.put((byte) Math.round(Math.max(-1f, Math.min(1f, value)) * 127f));
+                    }
+                }
+                accessor.put("componentType", BYTE);
+            } else if (name.startsWith("TEXCOORD_")) {
+                float[] values = readFloats(index, 2);
+                if (values == null || !inUnitRange(values)) continue;
+                data = ByteBuffer.allocate(count * 4).order(ByteOrder.LITTLE_ENDIAN);
+                for (float value : values) data.putShort((short) Math.round(value * 65535f));
+                accessor.put("componentType", UNSIGNED_SHORT);
+            } else {
+                continue;
+            }
+            data.flip();
+            accessor.put("bufferView", addView(data, ARRAY_BUFFER, 4));
+            accessor.remove("byteOffset");
+            accessor.remove("min");
+            accessor.remove("max");
+            accessor.put("normalized", true);
+            rewrittenAccessors.add(index);
+            quantizedAccessors++;
+        }
+    }
+
+    private static boolean inUnitRange(float[] values) {
+        for (float value : values) if (!(value >= 0f && value <= 1f)) return false;
+        return true;
+    }
+
+    private JSONObject accessor(int index) throws JSONException {
+        return gltf.getJSONArray("accessors").getJSONObject(index);
+    }
+
+    /** Reads a float accessor with {@code components} per element, or null if it is not one. */
+    private float[] readFloats(int index, int components) throws JSONException {
+        JSONObject accessor = accessor(index);
+        if (accessor.getInt("componentType") != FLOAT || accessor.has("sparse") || !accessor.has("bufferView")) return null;
+        int count = accessor.getInt("count");
+        int viewIndex = accessor.getInt("bufferView");
+        ByteBuffer view = views.get(viewIndex);
+        int stride = gltf.getJSONArray("bufferViews").getJSONObject(viewIndex).optInt("byteStride", components * 4);
+        int offset = accessor.optInt("byteOffset", 0);
+        float[] values = new float[count * components];
+        for (int v = 0; v < count; v++) {
+            for (int k = 0; k < components; k++) values[v * components + k] = view.getFloat(offset + v * stride + k * 4);
+        }
+        return values;
+    }
+
+    private int[] readIndices(int index) throws JSONException {
+        JSONObject accessor = accessor(index);
+        if (accessor.has("sparse") || !accessor.has("bufferView")) return null;
+        int count = accessor.getInt("count");
+        ByteBuffer view = views.get(accessor.getInt("bufferView"));
+        int offset = accessor.optInt("byteOffset", 0);
+        int[] indices = new int[count - count % 3];
+        switch (accessor.getInt("componentType")) {
+            case UNSIGNED_BYTE:
+                for (int i = 0; i < indices.length; i++) indices[i] = view.get(offset + i) & 0xFF;
+                break;
+            case UNSIGNED_SHORT:
+                for (int i = 0; i < indices.length; i++) indices[i] = view.getShort(offset + i * 2) & 0xFFFF;
+                break;
+            case UNSIGNED_INT:
+                for (int i = 0; i < indices.length; i++) indices[i] = view.getInt(offset + i * 4);
+                break;
+            default:
+                return null;
+        }
+        return indices;
+    }
+
+    private static int[] sequence(int count) {
+        int[] indices = new int[count - count % 3];
+        for (int i = 0; i < indices.length; i++) indices[i] = i;
+        return indices;
+    }
+
+    private void writeIndices(JSONObject accessor, int[] indices, int vertexCount) throws JSONException {
+        boolean wide = vertexCount > 0xFFFF;
+        ByteBuffer data = ByteBuffer.allocate(indices.length * (wide ? 4 : 2)).order(ByteOrder.LITTLE_ENDIAN);
+        for (int index : indices) {
+            if (wide) data.putInt(index); else data.putShort((short) index);
+        }
+        data.flip();
+        accessor.put("bufferView", addView(data, ELEMENT_ARRAY_BUFFER, 0));
+        accessor.put("componentType", wide ? UNSIGNED_INT : UNSIGNED_SHORT);
+        accessor.put("count", indices.length);
+        accessor.remove("byteOffset");
+        accessor.remove("min");
+        accessor.remove("max");
+    }
+
+    private int addIndexAccessor(int[] indices, int vertexCount) throws JSONException {
+        JSONArray accessors = gltf.getJSONArray("accessors");
+        JSONObject accessor = new JSONObject().put("type", "SCALAR");
+        writeIndices(accessor, indices, vertexCount);
+        accessors.put(accessor);
+        rewrittenAccessors.add(accessors.length() - 1);
+        return accessors.length() - 1;
+    }
+
+    /** Appends a buffer view; {@code target} and {@code stride} are left out when 0. */
+    int addView(ByteBuffer data, int target, int stride) throws JSONException {
+        JSONArray bufferViews = gltf.optJSONArray("bufferViews");
+        if (bufferViews == null) {
+            bufferViews = new JSONArray();
+            gltf.put("bufferViews", bufferViews);
+        }
+        JSONObject view = new JSONObject().put("buffer", 0).put("byteLength", data.remaining());
+        if (target > 0) view.put("target", target);
+        if (stride > 0) view.put("byteStride", stride);
+        bufferViews.put(view);
+        views.add(data);
+        return bufferViews.length() - 1;
+    }
+
+    private void requireExtension(String extension) throws JSONException {
+        for (String list : new String[] {"extensionsUsed", "extensionsRequired"}) {
+            JSONArray extensions = gltf.optJSONArray(list);
+            if (extensions == null) {
+                extensions = new JSONArray();
+                gltf.put(list, extensions);
+            }
+            boolean present = false;
+            for (int i = 0; i < extensions.length(); i++) present |= extension.equals(extensions.getString(i));
+            if (!present) extensions.put(extension);
+        }
+    }
+
+    /** Drops buffer views nothing refers to any more and lays the rest out back to back. */
+    private List<ByteBuffer> compactViews() throws JSONException {
+        JSONArray bufferViews = gltf.optJSONArray("bufferViews");
+        List<ByteBuffer> kept = new ArrayList<>();
+        if (bufferViews == null) return kept;
+        int[] remap = new int[bufferViews.length()];
+        Arrays.fill(remap, -1);
+        visitViewReferences(gltf, remap, true);
+
+        JSONArray compacted = new JSONArray();
+        long offset = 0;
+        for (int i = 0; i < remap.length; i++) {
+            if (remap[i] < 0) continue;
+            remap[i] = compacted.length();
+            JSONObject view = bufferViews.getJSONObject(i);
+            offset = align4(offset);
+            view.put("buffer", 0);
+            view.put("byteOffset", offset);
+            offset += views.get(i).remaining();
+            compacted.put(view);
+            kept.add(views.get(i));
+        }
+        visitViewReferences(gltf, remap, false);
+        gltf.put("bufferViews", compacted);
+        return kept;
+    }
+
+    /**
+     * Marks ({@code mark}) or remaps every {@code bufferView} reference below {@code node}:
+     * accessors, sparse accessors, images, and extensions such as Draco that keep their own views.
+     */
+    private static void visitViewReferences(Object node, int[] remap, boolean mark) throws JSONException {
+        if (node instanceof JSONArray) {
+            JSONArray array = (JSONArray) node;
+            for (int i = 0; i < array.length(); i++) visitViewReferences(array.get(i), remap, mark);
+        } else if (node instanceof JSONObject) {
+            JSONObject object = (JSONObject) node;
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (key.equals("bufferViews")) continue;
+                Object value = object.get(key);
+                if (key.equals("bufferView") && value instanceof Number) {
+                    int view = ((Number) value).intValue();
+                    if (mark) remap[view] = 0;
+                    else object.put(key, remap[view]);
+                } else {
+                    visitViewReferences(value, remap, mark);
+                }
+            }
+        }
+    }
+
+    private static long align4(long value) {
+        return (value + 3) & ~3L;
+    }
+
+    private static long pad(WritableByteChannel channel, ByteBuffer padding, long written) throws IOException {
+        int extra = (int) (align4(written) - written);
+        if (extra == 0) return written;
+        padding.clear().limit(extra);
+        return written + writeFully(channel, padding);
+    }
+
+    private static int writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        return length;
+    }
+}
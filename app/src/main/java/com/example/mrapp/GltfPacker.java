@@ -0,0 +1,177 @@
+package com.example.mrapp;
+
+import android.util.Base64;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns a multi-file .gltf (JSON plus sidecar .bin files and images, or data URIs) into one .glb,
+ * so an imported model is a single content-addressed file like any other and every later stage
+ * (optimizer, texture transcoder, resource loading) only deals with embedded data.
+ *
+ * <p>All buffers are concatenated into the binary chunk, buffer views are rebased onto it, and each
+ * image with a URI becomes a buffer view of its own.
+ */
+public final class GltfPacker {
+    /** Opens a file the glTF refers to by relative path, already percent-decoded. */
+    public interface Resolver {
+        ReadableByteChannel open(String path) throws IOException;
+    }
+
+    private static final String DATA_URI = "data:";
+
+    private GltfPacker() {}
+
+    /** Reads the glTF JSON from {@code gltf} and writes the packed .glb to {@code out}. */
+    public static void pack(ReadableByteChannel gltf, Resolver resolver, WritableByteChannel out) throws IOException {
+        try {
+            JSONObject json = new JSONObject(new String(readFully(gltf), StandardCharsets.UTF_8));
+            List<byte[]> imageData = new ArrayList<>();
+            List<JSONObject> packedImages = new ArrayList<>();
+            JSONArray images = json.optJSONArray("images");
+            for (int i = 0; images != null && i < images.length(); i++) {
+                JSONObject image = images.getJSONObject(i);
+                if (!image.has("uri")) continue;
+                byte[] data = load(image.getString("uri"), resolver);
+                String mimeType = mimeType(data);
+                if (mimeType == null) mimeType = image.optString("mimeType", null);
+                if (mimeType == null) throw new IOException("Unknown image type: " + image.getString("uri"));
+                image.remove("uri");
+                image.put("mimeType", mimeType);
+                imageData.add(data);
+                packedImages.add(image);
+            }
+
+            JSONArray buffers = json.optJSONArray("buffers");
+            int bufferCount = buffers != null ? buffers.length() : 0;
+            long[] bufferStart = new long[bufferCount];
+            long size = 0;
+            for (int i = 0; i < bufferCount; i++) {
+                size = align(size, 8);
+                bufferStart[i] = size;
+                size += buffers.getJSONObject(i).getLong("byteLength");
+            }
+            for (byte[] data : imageData) size = align(size, 4) + data.length;
+            if (size > Integer.MAX_VALUE) throw new IOException("Model too large to pack");
+
+            ByteBuffer bin = ByteBuffer.allocateDirect((int) size);
+            for (int i = 0; i < bufferCount; i++) {
+                JSONObject buffer = buffers.getJSONObject(i);
+                if (!buffer.has("uri")) throw new IOException("Buffer " + i + " has no URI");
+                bin.limit((int) (bufferStart[i] + buffer.getLong("byteLength"))).position((int) bufferStart[i]);
+                String uri = buffer.getString("uri");
+                if (uri.startsWith(DATA_URI)) {
+                    byte[] data = decodeDataUri(uri);
+                    if (data.length < bin.remaining()) throw new IOException("Buffer " + i + " is truncated");
+                    bin.put(data, 0, bin.remaining());
+                } else {
+                    try (ReadableByteChannel in = resolver.open(decodePath(uri))) {
+                        while (bin.hasRemaining()) {
+                            if (in.read(bin) < 0) throw new IOException("Buffer " + i + " is truncated: " + uri);
+                        }
+                    }
+                }
+            }
+            bin.limit(bin.capacity());
+
+            JSONArray bufferViews = json.optJSONArray("bufferViews");
+            if (bufferViews == null) {
+                bufferViews = new JSONArray();
+                json.put("bufferViews", bufferViews);
+            }
+            for (int i = 0; i < bufferViews.length(); i++) {
+                JSONObject view = bufferViews.getJSONObject(i);
+                view.put("byteOffset", bufferStart[view.getInt("buffer")] + view.optLong("byteOffset", 0));
+                view.put("buffer", 0);
+            }
+            long offset = bufferCount > 0 ? bufferStart[bufferCount - 1] + buffers.getJSONObject(bufferCount - 1).getLong("byteLength") : 0;
+            for (int i = 0; i < imageData.size(); i++) {
+                byte[] data = imageData.get(i);
+                offset = align(offset, 4);
+                bin.position((int) offset);
+                bin.put(data);
+                bufferViews.put(new JSONObject().put("buffer", 0).put("byteOffset", offset).put("byteLength", data.length));
+                packedImages.get(i).put("bufferView", bufferViews.length() - 1);
+                offset += data.length;
+            }
+            bin.clear();
+            json.put("buffers", new JSONArray().put(new JSONObject().put("byteLength", size)));
+            GlbOptimizer.of(json, bin).writeTo(out);
+        } catch (JSONException e) {
+            throw new IOException("Malformed glTF JSON", e);
+        }
+    }
+
+    private static byte[] load(String uri, Resolver resolver) throws IOException {
+        if (uri.startsWith(DATA_URI)) return decodeDataUri(uri);
+        try (ReadableByteChannel in = resolver.open(decodePath(uri))) {
+            return readFully(in);
+        }
+    }
+
+    private static byte[] decodeDataUri(String uri) throws IOException {
+        int comma = uri.indexOf(',');
+        if (comma < 0 || !uri.substring(0, comma).endsWith(";base64")) throw new IOException("Unsupported data URI");
+        try {
+            return Base64.decode(uri.substring(comma + 1), Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed data URI", e);
+        }
+    }
+
+    /** Percent-decodes a relative URI as UTF-8; unlike form decoding, '+' stays a plus. */
+    static String decodePath(String uri) {
+        if (uri.indexOf('%') < 0) return uri;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(uri.length());
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c == '%' && i + 2 < uri.length()
+                    && Character.digit(uri.charAt(i + 1), 16) >= 0 && Character.digit(uri.charAt(i + 2), 16) >= 0) {
+                bytes.write(Character.digit(uri.charAt(i + 1), 16) * 16 + Character.digit(uri.charAt(i + 2), 16));
+                i += 2;
+            } else {
+                byte[] encoded = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Identifies an image by its signature, or returns null. */
+    private static String mimeType(byte[] data) {
+        if (data.length >= 8 && (data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') return "image/png";
+        if (data.length >= 3 && (data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xD8 && (data[2] & 0xFF) == 0xFF) return "image/jpeg";
+        if (data.length >= 12 && data[1] == 'K' && data[2] == 'T' && data[3] == 'X' && data[5] == '2' && data[6] == '0') return "image/ktx2";
+        if (data.length >= 12 && data[0] == 'R' && data[1] == 'I' && data[2] == 'F' && data[3] == 'F'
+                && data[8] == 'W' && data[9] == 'E' && data[10] == 'B' && data[11] == 'P') {
+            return "image/webp";
+        }
+        return null;
+    }
+
+    private static byte[] readFully(ReadableByteChannel in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+        while (in.read(chunk) >= 0) {
+            chunk.flip();
+            out.write(chunk.array(), 0, chunk.limit());
+            chunk.clear();
+        }
+        return out.toByteArray();
+    }
+
+    private static long align(long value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.mrapp;
+
+import com.google.android.filament.Box;
+import com.google.android.filament.Engine;
+import com.google.android.filament.TransformManager;
+import com.google.android.filament.gltfio.AssetLoader;
+import com.google.android.filament.gltfio.FilamentAsset;
+import com.google.android.filament.gltfio.FilamentInstance;
+import com.google.android.filament.gltfio.ResourceLoader;
+import java.nio.Buffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All instances of one instanced glTF asset. gltfio can only destroy an asset together with every
+ * instance of it, so instances taken out of the scene come back here for reuse instead of leaking,
+ * and a few spares are grown ahead of demand so a placement rarely builds an entity hierarchy on
+ * the spot. Engine thread only.
+ */
+public final class InstancePool {
+    private final AssetLoader loader;
+    private final FilamentAsset asset;
+    private final ArrayDeque<FilamentInstance> free = new ArrayDeque<>();
+    private final List<FilamentInstance> instances = new ArrayList<>();
+    private final float[] bounds = new float[6];
+    private final Map<FilamentInstance, int[][]> lodEntities = new IdentityHashMap<>();
+    private final long loadStartNanos = System.nanoTime();
+    private CompressedTextures textures;
+    /** Non-null while textures are still decoding. */
+    private ResourceLoader resourceLoader;
+
+    private InstancePool(AssetLoader loader, ResourceLoader resourceLoader, FilamentAsset asset, FilamentInstance[] instances) {
+        this.loader = loader;
+        this.resourceLoader = resourceLoader;
+        this.asset = asset;
+        Box box = asset.getBoundingBox();
+        float[] center = box.getCenter();
+        float[] halfExtent = box.getHalfExtent();
+        for (int i = 0; i < 3; i++) {
+            bounds[i] = center[i] - halfExtent[i];
+            bounds[3 + i] = center[i] + halfExtent[i];
+        }
+        for (FilamentInstance instance : instances) {
+            free.add(instance);
+            this.instances.add(instance);
+        }
+    }
+
+    /**
+     * Parses {@code buffer} as an instanced asset with {@code initialInstances} instances, all free.
+     * Returns null if gltfio cannot parse it. Vertex and index buffers are uploaded before this
+     * returns, so instances can be shown straight away; textures decode on Filament's job system
+     * and appear as {@link #updateLoad} picks them up. The asset keeps its source data, which gltfio
+     * needs to create further instances.
+     */
+    public static InstancePool create(Engine engine, AssetLoader loader, Buffer buffer, int initialInstances) {
+        FilamentInstance[] instances = new FilamentInstance[Math.max(1, initialInstances)];
+        FilamentAsset asset = loader.createInstancedAsset(buffer, instances);
+        if (asset == null) return null;
+        // One loader per asset: gltfio tracks a single asynchronous load per ResourceLoader.
+        ResourceLoader resourceLoader = new ResourceLoader(engine);
+        if (!resourceLoader.asyncBeginLoad(asset)) {
+            resourceLoader.destroy();
+            loader.destroyAsset(asset);
+            return null;
+        }
+        return new InstancePool(loader, resourceLoader, asset, instances);
+    }
+
+    public boolean isLoading() {
+        return resourceLoader != null;
+    }
+
+    /** Fraction of textures decoded so far, 1 once loading is done. */
+    public float getLoadProgress() {
+        return resourceLoader != null ? resourceLoader.asyncGetLoadProgress() : 1f;
+    }
+
+    /**
+     * Uploads and binds the textures decoded since the last call. Call once per frame while
+     * {@link #isLoading}; returns the total load time in nanoseconds on the call that finishes
+     * loading, else 0.
+     */
+    public long updateLoad() {
+        if (resourceLoader == null) return 0;
+        // Sampled first: a texture that finishes after the update would otherwise be missed.
+        boolean decoded = resourceLoader.asyncGetLoadProgress() >= 1f;
+        resourceLoader.asyncUpdateLoad();
+        if (!decoded) return 0;
+        resourceLoader.destroy();
+        resourceLoader = null;
+        if (textures != null) for (FilamentInstance instance : instances) textures.bind(instance);
+        return Math.max(1, System.nanoTime() - loadStartNanos);
+    }
+
+    public FilamentAsset getAsset() {
+        return asset;
+    }
+
+    /** Bounding box of one instance relative to its root: min xyz, max xyz. */
+    public float[] getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Binds transcoded textures to every instance, present and future, replacing the placeholders
+     * the asset loaded with; while loading, binding waits until gltfio has bound its own textures.
+     * The pool destroys them with the asset.
+     */
+    public void setTextures(CompressedTextures textures) {
+        this.textures = textures;
+        if (resourceLoader != null) return;
+        for (FilamentInstance instance : instances) textures.bind(instance);
+    }
+
+    public long getTextureBytes() {
+        return textures != null ? textures.getByteSize() : 0;
+    }
+
+    /** Takes a free instance, creating one if none is left; null if gltfio refuses to create one. */
+    public FilamentInstance acquire() {
+        FilamentInstance instance = free.poll();
+        return instance != null ? instance : createInstance();
+    }
+
+    /**
+     * Renderable entities of {@code instance} per level of detail, level 0 first, or null if the
+     * model has no levels. Levels come from {@link GlbOptimizer}'s {@code #lod<n>} child nodes; their
+     * parents form level 0.
+     */
+    public int[][] getLodEntities(FilamentInstance instance, TransformManager transformManager) {
+        if (lodEntities.containsKey(instance)) return lodEntities.get(instance);
+        List<List<Integer>> levels = new ArrayList<>();
+        for (int entity : instance.getEntities()) {
+            int level = GlbOptimizer.lodLevel(asset.getName(entity));
+            if (level == 0) continue;
+            while (levels.size() <= level) levels.add(new ArrayList<Integer>());
+            levels.get(level).add(entity);
+            if (level == 1) levels.get(0).add(transformManager.getParent(transformManager.getInstance(entity)));
+        }
+        int[][] result = null;
+        if (!levels.isEmpty()) {
+            result = new int[levels.size()][];
+            for (int level = 0; level < result.length; level++) {
+                List<Integer> entities = levels.get(level);
+                result[level] = new int[entities.size()];
+                for (int i = 0; i < result[level].length; i++) result[level][i] = entities.get(i);
+            }
+        }
+        lodEntities.put(instance, result);
+        return result;
+    }
+
+    /** Returns an instance whose entities the caller has already removed from the scene. */
+    public void release(FilamentInstance instance) {
+        free.push(instance);
+    }
+
+    /** Creates one instance if fewer than {@code spares} are free. Returns whether it did. */
+    public boolean topUp(int spares) {
+        if (free.size() >= spares) return false;
+        FilamentInstance instance = createInstance();
+        if (instance == null) return false;
+        free.add(instance);
+        return true;
+    }
+
+    private FilamentInstance createInstance() {
+        FilamentInstance instance = loader.createInstance(asset);
+        if (instance == null) return null;
+        instances.add(instance);
+        if (textures != null && resourceLoader == null) textures.bind(instance);
+        return instance;
+    }
+
+    public int getFreeCount() {
+        return free.size();
+    }
+
+    public int getInstanceCount() {
+        return instances.size();
+    }
+
+    /** Destroys the asset and every instance, free or not. */
+    public void destroy() {
+        free.clear();
+        if (resourceLoader != null) {
+            resourceLoader.asyncCancelLoad();
+            resourceLoader.destroy();
+            resourceLoader = null;
+        }
+        instances.clear();
+        loader.destroyAsset(asset);
+        if (textures != null) textures.destroy();
+    }
+}
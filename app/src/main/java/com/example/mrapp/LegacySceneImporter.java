@@ -0,0 +1,46 @@
+package com.example.mrapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.example.mrapp.core.SceneData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/** One-way import of the old pretty-printed {@code scene.json} into a {@link SceneData}. */
+public final class LegacySceneImporter {
+    private LegacySceneImporter() {}
+
+    public static SceneData importJson(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[16 * 1024];
+        int n;
+        while ((n = in.read(chunk)) != -1) bytes.write(chunk, 0, n);
+
+        try {
+            JSONObject sceneJson = new JSONObject(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+            JSONArray modelsArray = sceneJson.getJSONArray("models");
+            JSONArray objectsArray = sceneJson.getJSONArray("placedObjects");
+
+            SceneData scene = new SceneData(objectsArray.length());
+            for (int i = 0; i < modelsArray.length(); i++) scene.addModel(modelsArray.getString(i));
+
+            float[] transform = new float[SceneData.TRANSFORM_SIZE];
+            for (int i = 0; i < objectsArray.length(); i++) {
+                JSONObject objectJson = objectsArray.getJSONObject(i);
+                JSONArray transformArray = objectJson.getJSONArray("transform");
+                for (int j = 0; j < transform.length; j++) {
+                    transform[j] = (float) transformArray.getDouble(j);
+                }
+                scene.addObject(i, objectJson.getInt("modelIndex"), transform, 0);
+            }
+            return scene;
+        } catch (JSONException e) {
+            throw new IOException("Malformed legacy scene", e);
+        }
+    }
+}
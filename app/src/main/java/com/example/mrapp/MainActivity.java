@@ -1,78 +1,161 @@
 package com.example.mrapp;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 
 import android.app.Activity;
+import android.app.ActivityManager;
+import android.content.ClipData;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.hardware.display.DisplayManager;
 import android.net.Uri;
-import android.opengl.Matrix;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
 import android.provider.OpenableColumns;
 import android.util.Log;
 import android.view.Choreographer;
+import android.view.Display;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.widget.Button;
+import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.android.filament.Camera;
 import com.google.android.filament.Engine;
 import com.google.android.filament.EntityManager;
+import com.google.android.filament.Material;
+import com.google.android.filament.RenderableManager;
 import com.google.android.filament.Renderer;
 import com.google.android.filament.Scene;
 import com.google.android.filament.SwapChain;
+import com.google.android.filament.Texture;
 import com.google.android.filament.TransformManager;
 import com.google.android.filament.View;
 import com.google.android.filament.gltfio.AssetLoader;
 import com.google.android.filament.gltfio.FilamentAsset;
+import com.google.android.filament.gltfio.FilamentInstance;
 import com.google.android.filament.gltfio.MaterialProvider;
 import com.google.android.filament.utils.Utils;
 import com.google.ar.core.ArCoreApk;
 import com.google.ar.core.Config;
-import com.google.ar.core.Frame;
-import com.google.ar.core.HitResult;
-import com.google.ar.core.Plane;
-import com.google.ar.core.Point;
 import com.google.ar.core.Session;
-import com.google.ar.core.Trackable;
-import com.google.ar.core.TrackingState;
 import com.google.ar.core.exceptions.CameraNotAvailableException;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.example.mrapp.core.AssetCache;
+import com.example.mrapp.core.BoxGlb;
+import com.example.mrapp.core.CameraRig;
+import com.example.mrapp.core.CellStreamer;
+import com.example.mrapp.core.CommandQueue;
+import com.example.mrapp.core.FrameGovernor;
+import com.example.mrapp.core.FrameSource;
+import com.example.mrapp.core.FrameStats;
+import com.example.mrapp.core.Mat4;
+import com.example.mrapp.core.ModelBuffers;
+import com.example.mrapp.core.ModelLoadScheduler;
+import com.example.mrapp.core.ModelStore;
+import com.example.mrapp.core.SceneData;
+import com.example.mrapp.core.SceneStore;
+import com.example.mrapp.core.SessionRecorder;
+import com.example.mrapp.core.SessionTrace;
+import com.example.mrapp.core.SpatialIndex;
+import com.example.mrapp.core.TextureBundle;
+import com.example.mrapp.core.TiledSceneStore;
+import com.example.mrapp.core.TraceFrameSource;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.WritableByteChannel;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity implements SurfaceHolder.Callback, Choreographer.FrameCallback {
 
     private static final String TAG = "MainActivity";
-    private static final String SCENE_FILE_NAME = "scene.json";
+    private static final String LEGACY_SCENE_FILE_NAME = "scene.json";
+    /** Directory of the {@link TiledSceneStore} under the app's files. */
+    private static final String TILES_DIRECTORY_NAME = "tiles";
+    /** Interval between background journal syncs and compaction checks; 0 disables autosave. */
+    private static final long AUTOSAVE_INTERVAL_MS = 30_000;
+    /** Share of the app's heap class that resident model assets may use, as 1/n. */
+    private static final int ASSET_BUDGET_DIVISOR = 2;
+    /** Free instances kept ready for the selected model, grown by at most one per frame. */
+    private static final int SPARE_INSTANCES = 4;
+    /** Frame time given to restoring a saved scene, so a large scene streams in without a freeze. */
+    private static final long RESTORE_BUDGET_NANOS = 4_000_000L;
+    private static final int CULL_INTERVAL_FRAMES = 10;
+    /** Translucent placeholder for a restored object whose model is still loading. */
+    private static final float[] PROXY_COLOR = {0.8f, 0.8f, 0.85f, 0.35f};
+    /** Frame time given to showing placeholders, ahead of the restore that replaces them. */
+    private static final long PROXY_BUDGET_NANOS = 2_000_000L;
+    /** Placeholders are at least this thick, so flat models still get a visible box. */
+    private static final float MIN_PROXY_EXTENT = 0.01f;
+    /** Last rendered view of the scene, shown on the next launch until the first frame. */
+    private static final String THUMBNAIL_FILE_NAME = "thumbnail.jpg";
+    private static final int THUMBNAIL_WIDTH = 360;
+    private static final int THUMBNAIL_QUALITY = 80;
+    /**
+     * Projected radius, as a fraction of half the view height, below which each coarser level of
+     * detail is used.
+     */
+    private static final float[] LOD_SCREEN_SIZES = {0.5f, 0.2f, 0.08f};
+    private static final long STATS_OVERLAY_INTERVAL_MS = 500;
+    /** UI commands run per frame at most; the rest wait for the next frame. */
+    private static final int MAX_COMMANDS_PER_FRAME = 32;
+    /** Model reads parsed into assets per frame at most; one parse can take several milliseconds. */
+    private static final int MAX_MODEL_PARSES_PER_FRAME = 1;
+    /** Intent extra: record each foreground session to a trace in {@code files/traces}. */
+    static final String EXTRA_RECORD = "record";
+    /** Intent extra: path of a trace to replay instead of running the camera. */
+    static final String EXTRA_REPLAY = "replay";
 
     static { Utils.init(); }
 
+    /**
+     * Threading: the Filament engine, the ARCore frame loop and all scene state below belong to
+     * {@link #renderThread}. Other threads reach it through {@link #commands} and get results back
+     * with {@code runOnUiThread}; scene edits go to {@link #executor} for journaling, in order.
+     */
+    private HandlerThread renderThread;
+    private Handler renderHandler;
+    private final CommandQueue commands = new CommandQueue();
     private SurfaceView surfaceView;
     private Choreographer choreographer;
     private SwapChain swapChain;
@@ -81,241 +164,1300 @@ public class MainActivity extends AppCompatActivity implements SurfaceHolder.Cal
     private Scene scene;
     private View view;
     private Camera camera;
+    // Stereo: one instanced view when the engine supports it, otherwise a view and camera per eye.
+    private boolean instancedStereo;
+    private View stereoView;
+    private Camera stereoCamera;
+    private final View[] eyeViews = new View[2];
+    private final Camera[] eyeCameras = new Camera[2];
+    private int viewportWidth;
+    private int viewportHeight;
     private TextView currentModelTextView;
 
     private GestureDetector gestureDetector;
-    private final ArrayDeque<MotionEvent> queuedSingleTaps = new ArrayDeque<>();
+    /** View coordinates of taps not yet handled, oldest first. */
+    private final ArrayDeque<float[]> queuedTaps = new ArrayDeque<>();
+    /** Queues input for the frame loop; fed by gestures when live and by the trace in a replay. */
+    private final FrameSource.Input frameInput = new FrameSource.Input() {
+        @Override public void tap(float x, float y) {
+            queuedTaps.add(new float[] {x, y});
+        }
+        @Override public void pick(float x, float y) {
+            pickX = x;
+            pickY = y;
+            pickPending = true;
+        }
+    };
 
     private AssetLoader assetLoader;
-    private final List<FilamentAsset> loadedAssets = new ArrayList<>();
-    private final List<String> loadedAssetNames = new ArrayList<>();
+    private final List<String> modelNames = new ArrayList<>();
+    private final Map<String, Integer> modelIndexByName = new HashMap<>();
+    private AssetCache<String, InstancePool> assetCache;
     private int currentAssetIndex = -1;
 
+    /** A cell of {@link #sceneStore} paged in by {@link #cellStreamer}, with its objects as they are restored. */
+    private static class ResidentCell {
+        final long key;
+        final List<PlacedObject> objects = new ArrayList<>();
+        /** Set when paged out; restores still queued for the cell are then dropped. */
+        boolean unloaded;
+        ResidentCell(long key) {
+            this.key = key;
+        }
+    }
+    private final Map<Long, ResidentCell> residentCells = new HashMap<>();
+    private CellStreamer cellStreamer;
+
     private static class PlacedObject {
-        final FilamentAsset.Instance instance;
+        final FilamentInstance instance;
         final int modelIndex;
-        PlacedObject(FilamentAsset.Instance instance, int modelIndex) {
+        final int id;
+        final ResidentCell cell;
+        int proxy = SpatialIndex.NONE;
+        /** Entities per level of detail, or null if the model has none; see {@link InstancePool#getLodEntities}. */
+        int[][] lods;
+        int lodLevel = -1;
+        /** Whether the entities are in the Scene; culled objects stay placed and indexed. */
+        boolean inScene = true;
+        int visibleStamp;
+        PlacedObject(FilamentInstance instance, int modelIndex, int id, ResidentCell cell) {
             this.instance = instance;
             this.modelIndex = modelIndex;
+            this.id = id;
+            this.cell = cell;
         }
     }
     private final List<PlacedObject> placedObjects = new ArrayList<>();
+    private final SpatialIndex<PlacedObject> spatialIndex = new SpatialIndex<>();
+    private final float[] worldBounds = new float[6];
+    private int cullStamp;
+    /** Starts one short of the interval, so the first tracked frame pages in the saved scene. */
+    private int framesSinceCull = CULL_INTERVAL_FRAMES - 1;
+    private boolean pickPending;
+    private float pickX;
+    private float pickY;
+    /** Adds culled objects that came back into view; the rest of the pass removes stale ones. */
+    private final SpatialIndex.Visitor<PlacedObject> cullVisitor = (proxy, placedObject) -> {
+        placedObject.visibleStamp = cullStamp;
+        if (!placedObject.inScene) {
+            scene.addEntities(placedObject.instance.getEntities());
+            placedObject.inScene = true;
+        }
+        if (placedObject.lods != null) setLod(placedObject, lodFor(proxy, placedObject.lods.length));
+    };
+    private final float[] lodBounds = new float[6];
 
-    private Session arSession;
+    /** Created on the main thread in onResume, then only used on the render thread. */
+    private volatile Session arSession;
+    /** The session, or the trace being replayed; null once a replay has ended. */
+    private volatile FrameSource frameSource;
+    private boolean replaying;
+    private boolean recordingRequested;
+    /** Writes this foreground session's trace when launched with {@link #EXTRA_RECORD}. */
+    private SessionRecorder recorder;
     private boolean isVrModeEnabled = false;
-    private final float ipd = 0.064f;
+
+    // Frame-loop state, preallocated so steady-state frames do not allocate.
+    private final CameraRig cameraRig = new CameraRig();
+    private final Runnable loadModelFirstToast = () -> Toast.makeText(this, "Load a model first", Toast.LENGTH_SHORT).show();
+    private final Runnable modelLoadingToast = () -> Toast.makeText(this, "Model is still loading", Toast.LENGTH_SHORT).show();
+
+    private final FrameStats frameStats = new FrameStats();
+    private TextView statsTextView;
+    private final Runnable statsOverlayRunnable = new Runnable() {
+        @Override public void run() {
+            statsTextView.setText(frameStats.summary() + qualitySummary);
+            autosaveHandler.postDelayed(this, STATS_OVERLAY_INTERVAL_MS);
+        }
+    };
+
+    private FrameGovernor frameGovernor;
+    /** Vsync time of the last rendered frame, or 0 after a gap such as lost tracking. */
+    private long lastRenderedFrameNanos;
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+    /** Published by the render thread for the stats overlay. */
+    private volatile String qualitySummary = "";
 
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    /** Runs {@link #optimizeModel}, which can take seconds per model, so {@link #executor} never waits on it. */
+    private final ExecutorService optimizer = Executors.newSingleThreadExecutor(task -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        task.run();
+    }, "optimizer"));
+    private final ModelBuffers modelBuffers = new ModelBuffers();
+    private ModelLoadScheduler modelLoader;
+    /** A saved object waiting for its model before it can be restored into its cell. */
+    private static class PendingObject {
+        final ResidentCell cell;
+        final String model;
+        final SceneData data;
+        final int object;
+        /** Placeholder box shown meanwhile, or null. */
+        FilamentInstance proxy;
+        /** Set once restored or dropped; it may still be in {@link #proxyQueue}. */
+        boolean done;
+        PendingObject(ResidentCell cell, String model, SceneData data, int object) {
+            this.cell = cell;
+            this.model = model;
+            this.data = data;
+            this.object = object;
+        }
+    }
+    private final Map<String, List<PendingObject>> pendingObjectsByModel = new HashMap<>();
+
+    /** The bytes of a model file, delivered by the loader and not yet parsed. */
+    private static final class ReadModel {
+        final String name;
+        final ByteBuffer buffer;
+        final long estimatedBytes;
+        final long readNanos;
+        ReadModel(String name, ByteBuffer buffer, long estimatedBytes, long readNanos) {
+            this.name = name;
+            this.buffer = buffer;
+            this.estimatedBytes = estimatedBytes;
+            this.readNanos = readNanos;
+        }
+    }
+
+    /** Set while a saved scene with objects is loading, for the "Scene loaded" toast. */
+    private boolean restoringScene;
+
+    private MaterialProvider materialProvider;
+    /** Native handles of the provider's materials whose shaders were handed to the driver to compile. */
+    private final Set<Long> compiledMaterials = new HashSet<>();
+    /** Placeholder boxes; see {@link BoxGlb}. */
+    private InstancePool proxyPool;
+    /** Bounds of one instance per model key, from the scene store and from loaded models, to size placeholders. */
+    private final Map<String, float[]> modelBounds = new HashMap<>();
+    /** Pending objects waiting for a placeholder, shown a time-boxed batch per frame. */
+    private final ArrayDeque<PendingObject> proxyQueue = new ArrayDeque<>();
+    private final float[] proxyTransform = new float[16];
+    private final float[] boxTransform = new float[16];
+    private final List<int[]> proxyEntities = new ArrayList<>();
+
+    // Startup metrics, from SystemClock.elapsedRealtimeNanos in onCreate.
+    private long createdNanos;
+    private boolean firstFrameShown;
+    private boolean fullyLoaded;
+    private boolean streamingStarted;
+    /** Set once the streamer has chosen the cells around the camera after the scene was opened. */
+    private boolean cellsChosen;
+    /** Cells being read from the store; see {@link #requestCell}. */
+    private int cellLoadsInFlight;
+    private ImageView thumbnailView;
+    /** Main thread only. */
+    private boolean thumbnailDismissed;
+    private boolean thumbnailRequested;
+    /** Render thread: set by every journaled edit, so the autosave only captures a changed scene. */
+    private boolean thumbnailStale;
+    /** Render thread: reused by every capture while the viewport keeps its size. */
+    private ByteBuffer thumbnailPixels;
+    /** Set while {@link #thumbnailPixels} is being written out; a capture waits for it. */
+    private volatile boolean thumbnailWriting;
+    /** Model files read by {@link #modelLoader}, waiting to be parsed; see {@link #MAX_MODEL_PARSES_PER_FRAME}. */
+    private final ArrayDeque<ReadModel> readModels = new ArrayDeque<>();
+    /** Loaded models whose pending objects are being restored, a time-boxed batch per frame. */
+    private final ArrayDeque<String> restoreQueue = new ArrayDeque<>();
+    private final float[] restoreTransform = new float[16];
+    /** Models whose textures are still decoding; see {@link InstancePool#updateLoad}. */
+    private final Map<String, InstancePool> loadingPools = new LinkedHashMap<>();
+    private int shownLoadPercent = -1;
+    private final List<int[]> restoreEntities = new ArrayList<>();
+    private TiledSceneStore sceneStore;
+    private ModelStore modelStore;
+    private OptimizedModelCache optimizedModels;
+    private final Handler autosaveHandler = new Handler(Looper.getMainLooper());
+    private final Runnable autosaveRunnable = new Runnable() {
+        @Override public void run() {
+            executor.execute(() -> autosave());
+            if (!replaying) commands.execute(() -> thumbnailRequested |= thumbnailStale);
+            autosaveHandler.postDelayed(this, AUTOSAVE_INTERVAL_MS);
+        }
+    };
 
     private final ActivityResultLauncher<Intent> filePickerLauncher = registerForActivityResult(
             new ActivityResultContracts.StartActivityForResult(),
             result -> {
                 if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null) {
-                    Uri uri = result.getData().getData();
-                    copyModelToInternalStorage(uri);
+                    List<Uri> uris = new ArrayList<>();
+                    ClipData clipData = result.getData().getClipData();
+                    if (clipData != null) {
+                        for (int i = 0; i < clipData.getItemCount(); i++) uris.add(clipData.getItemAt(i).getUri());
+                    } else if (result.getData().getData() != null) {
+                        uris.add(result.getData().getData());
+                    }
+                    importModels(uris);
                 }
             });
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        createdNanos = SystemClock.elapsedRealtimeNanos();
         setContentView(R.layout.activity_main);
 
         surfaceView = findViewById(R.id.surface_view);
         surfaceView.getHolder().addCallback(this);
         currentModelTextView = findViewById(R.id.current_model_text);
+        statsTextView = findViewById(R.id.stats_text);
+        thumbnailView = findViewById(R.id.thumbnail_view);
+        currentModelTextView.setOnLongClickListener(v -> {
+            toggleStatsOverlay();
+            return true;
+        });
 
         gestureDetector = new GestureDetector(this, new GestureDetector.SimpleOnGestureListener() {
-            @Override public boolean onSingleTapUp(MotionEvent e) { queuedSingleTaps.add(e); return true; }
+            @Override public boolean onSingleTapUp(MotionEvent e) {
+                float x = e.getX();
+                float y = e.getY();
+                commands.execute(() -> frameInput.tap(x, y));
+                return true;
+            }
+            @Override public void onLongPress(MotionEvent e) {
+                float x = e.getX();
+                float y = e.getY();
+                commands.execute(() -> frameInput.pick(x, y));
+            }
+        });
+
+        String replayPath = getIntent().getStringExtra(EXTRA_REPLAY);
+        recordingRequested = getIntent().getBooleanExtra(EXTRA_RECORD, false);
+        if (replayPath != null) frameSource = openReplay(replayPath);
+        replaying = frameSource != null;
+        if (replaying) {
+            // A replay gets an empty scene of its own, so it neither sees nor overwrites the user's.
+            File replayDir = new File(getFilesDir(), "replay");
+            deleteChildren(replayDir);
+            sceneStore = new TiledSceneStore(replayDir);
+        } else {
+            surfaceView.setOnTouchListener((v, event) -> gestureDetector.onTouchEvent(event));
+            sceneStore = new TiledSceneStore(new File(getFilesDir(), TILES_DIRECTORY_NAME));
+        }
+        cellStreamer = new CellStreamer(sceneStore.getCellSize(), CellStreamer.DEFAULT_RADIUS, CellStreamer.DEFAULT_BUDGET,
+                CellStreamer.DEFAULT_LOOK_AHEAD_SECONDS, new CellStreamer.Listener() {
+            @Override public void loadCell(long cell) {
+                ResidentCell resident = new ResidentCell(cell);
+                residentCells.put(cell, resident);
+                requestCell(resident);
+            }
+            @Override public void unloadCell(long cell) {
+                MainActivity.this.unloadCell(cell);
+            }
+        });
+        modelStore = new ModelStore(new File(getFilesDir(), "models"));
+        optimizedModels = new OptimizedModelCache(new File(getFilesDir(), "model-cache"));
+        Display display = ((DisplayManager) getSystemService(Context.DISPLAY_SERVICE)).getDisplay(Display.DEFAULT_DISPLAY);
+        float refreshRate = display != null && display.getRefreshRate() > 0 ? display.getRefreshRate() : 60f;
+        ActivityManager activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        long assetBudget = activityManager.getMemoryClass() * 1024L * 1024L / ASSET_BUDGET_DIVISOR;
+        renderThread = new HandlerThread("render", Process.THREAD_PRIORITY_DISPLAY);
+        renderThread.start();
+        renderHandler = new Handler(renderThread.getLooper());
+        renderHandler.post(() -> createRenderer(refreshRate, assetBudget));
+
+        int loaderThreads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        modelLoader = new ModelLoadScheduler(modelBuffers, loaderThreads, commands, ModelFootprint::estimate,
+                new ModelLoadScheduler.Callback() {
+            @Override public void onModelRead(String name, ByteBuffer buffer, long estimatedBytes, long readNanos) {
+                readModels.add(new ReadModel(name, buffer, estimatedBytes, readNanos));
+            }
+            @Override public void onModelFailed(String name, IOException error) {
+                Log.e(TAG, "Failed to load model from file", error);
+                dropPending(name);
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Failed to load model: " + modelStore.displayName(name),
+                        Toast.LENGTH_SHORT).show());
+            }
         });
-        surfaceView.setOnTouchListener((v, event) -> gestureDetector.onTouchEvent(event));
 
+        findViewById(R.id.load_model_button).setOnClickListener(v -> openFilePicker());
+        findViewById(R.id.next_model_button).setOnClickListener(v -> commands.execute(this::cycleNextModel));
+        findViewById(R.id.vr_mode_button).setOnClickListener(v -> commands.execute(() -> {
+            isVrModeEnabled = !isVrModeEnabled;
+            frameGovernor.reset();
+        }));
+        findViewById(R.id.save_scene_button).setOnClickListener(v -> commands.execute(this::saveScene));
+        findViewById(R.id.clear_scene_button).setOnClickListener(v -> commands.execute(this::clearScene));
+
+        if (!replaying) showThumbnail();
+        loadScene();
+    }
+
+    /** Runs first on the render thread: creates the engine and everything that uses it. */
+    private void createRenderer(float refreshRate, long assetBudget) {
         choreographer = Choreographer.getInstance();
-        engine = Engine.create();
+        Engine.Config engineConfig = new Engine.Config();
+        engineConfig.stereoscopicType = Engine.StereoscopicType.INSTANCED;
+        engineConfig.stereoscopicEyeCount = 2;
+        engine = new Engine.Builder().config(engineConfig).build();
         renderer = engine.createRenderer();
         scene = engine.createScene();
         view = engine.createView();
         camera = engine.createCamera(engine.getEntityManager().create());
         view.setScene(scene);
         view.setCamera(camera);
-        assetLoader = new AssetLoader(engine, MaterialProvider.createDefault(engine), EntityManager.get());
+        createStereoViews();
+        Renderer.DisplayInfo displayInfo = new Renderer.DisplayInfo();
+        displayInfo.refreshRate = refreshRate;
+        renderer.setDisplayInfo(displayInfo);
+        frameGovernor = new FrameGovernor((long) (1e9 / refreshRate), FrameGovernor.DEFAULT_LEVELS, 0);
+        applyQualityLevel();
+        materialProvider = MaterialProvider.createDefault(engine);
+        assetLoader = new AssetLoader(engine, materialProvider, EntityManager.get());
+        prepareMaterials();
+        optimizedModels.setTranscodeTextures(CompressedTextures.isSupported(engine));
+        assetCache = new AssetCache<>(assetBudget, (name, pool) -> {
+            loadingPools.remove(name);
+            pool.destroy();
+            Log.i(TAG, String.format(Locale.US, "Evicted %s; cache %d/%d KB, hits %d, misses %d, evictions %d",
+                    name, assetCache.getSizeBytes() / 1024, assetCache.getBudgetBytes() / 1024,
+                    assetCache.getHits(), assetCache.getMisses(), assetCache.getEvictions()));
+        });
+        updateUi();
+    }
 
-        findViewById(R.id.load_model_button).setOnClickListener(v -> openFilePicker());
-        findViewById(R.id.next_model_button).setOnClickListener(v -> cycleNextModel());
-        findViewById(R.id.vr_mode_button).setOnClickListener(v -> isVrModeEnabled = !isVrModeEnabled);
-        findViewById(R.id.save_scene_button).setOnClickListener(v -> saveScene());
-        findViewById(R.id.clear_scene_button).setOnClickListener(v -> clearScene());
+    /**
+     * Creates the placeholder box, and parses a lit box that is dropped again, so the material
+     * provider creates the unlit material of the placeholders and the lit one nearly every glTF
+     * model uses. Their shaders then compile on the driver's thread while the camera starts,
+     * instead of stalling the first frame that draws them.
+     */
+    private void prepareMaterials() {
+        proxyPool = InstancePool.create(engine, assetLoader, BoxGlb.build(PROXY_COLOR, true), SPARE_INSTANCES);
+        if (proxyPool == null) Log.e(TAG, "Failed to create placeholder box");
+        FilamentAsset lit = assetLoader.createAsset(BoxGlb.build(new float[] {1f, 1f, 1f, 1f}, false));
+        if (lit != null) assetLoader.destroyAsset(lit);
+        compileNewMaterials(Material.CompilerPriorityQueue.HIGH);
+    }
 
-        loadScene();
-        updateUi();
+    /** Asks the driver to compile the shaders of materials the provider created since the last call. */
+    private void compileNewMaterials(Material.CompilerPriorityQueue priority) {
+        for (Material material : materialProvider.getMaterials()) {
+            if (!compiledMaterials.add(material.getNativeObject())) continue;
+            long start = SystemClock.elapsedRealtimeNanos();
+            String name = material.getName();
+            material.compile(priority, Material.UserVariantFilterBit.ALL, renderHandler, () ->
+                    Log.i(TAG, String.format(Locale.US, "Compiled material %s in %.1f ms", name,
+                            (SystemClock.elapsedRealtimeNanos() - start) / 1e6)));
+        }
     }
 
+    /**
+     * Runs on the render thread. The snapshot is taken on {@link #executor} after the journal
+     * edits queued before it, so it holds exactly the scene as it was at this frame.
+     */
     private void saveScene() {
+        if (!replaying) thumbnailRequested = true;
         executor.execute(() -> {
             try {
-                JSONObject sceneJson = new JSONObject();
-                sceneJson.put("models", new JSONArray(loadedAssetNames));
-
-                JSONArray objectsArray = new JSONArray();
-                TransformManager tm = engine.getTransformManager();
-                for (PlacedObject placedObject : placedObjects) {
-                    JSONObject objectJson = new JSONObject();
-                    objectJson.put("modelIndex", placedObject.modelIndex);
-                    float[] transform = new float[16];
-                    tm.getTransform(tm.getInstance(placedObject.instance.getRoot()), transform);
-                    objectJson.put("transform", new JSONArray(transform));
-                    objectsArray.put(objectJson);
-                }
-                sceneJson.put("placedObjects", objectsArray);
-
-                try (FileOutputStream fos = openFileOutput(SCENE_FILE_NAME, Context.MODE_PRIVATE)) {
-                    fos.write(sceneJson.toString(4).getBytes());
-                    runOnUiThread(() -> Toast.makeText(this, "Scene saved", Toast.LENGTH_SHORT).show());
-                }
-
-            } catch (JSONException | IOException e) {
+                sceneStore.compact();
+                runOnUiThread(() -> Toast.makeText(this, "Scene saved", Toast.LENGTH_SHORT).show());
+            } catch (IOException e) {
                 Log.e(TAG, "Failed to save scene", e);
                 runOnUiThread(() -> Toast.makeText(this, "Failed to save scene", Toast.LENGTH_SHORT).show());
             }
         });
     }
 
-    private void loadScene() {
+    /**
+     * Shows the frame captured when the scene was last saved until the first frame is rendered,
+     * so a cold start opens on the scene rather than on a blank screen.
+     */
+    private void showThumbnail() {
+        File file = new File(getFilesDir(), THUMBNAIL_FILE_NAME);
         executor.execute(() -> {
-            File file = new File(getFilesDir(), SCENE_FILE_NAME);
             if (!file.exists()) return;
+            Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+            if (bitmap == null) return;
+            runOnUiThread(() -> {
+                if (thumbnailDismissed) return;
+                thumbnailView.setImageBitmap(bitmap);
+                thumbnailView.setVisibility(android.view.View.VISIBLE);
+            });
+        });
+    }
 
-            try (FileInputStream fis = openFileInput(SCENE_FILE_NAME)) {
-                String jsonString = new String(fis.readAllBytes());
-                JSONObject sceneJson = new JSONObject(jsonString);
+    /**
+     * Runs on the render thread after the view was rendered; the pixels are read back asynchronously.
+     * While the previous capture is still being written the request stays pending for a later frame.
+     */
+    private void captureThumbnail() {
+        if (thumbnailWriting) return;
+        thumbnailRequested = false;
+        thumbnailStale = false;
+        int width = viewportWidth;
+        int height = viewportHeight;
+        if (width == 0 || height == 0) return;
+        if (thumbnailPixels == null || thumbnailPixels.capacity() != width * height * 4) {
+            thumbnailPixels = ByteBuffer.allocateDirect(width * height * 4);
+        }
+        ByteBuffer pixels = thumbnailPixels;
+        pixels.clear();
+        thumbnailWriting = true;
+        renderer.readPixels(0, 0, width, height, new Texture.PixelBufferDescriptor(pixels,
+                Texture.Format.RGBA, Texture.Type.UBYTE, 1, 0, 0, width, renderHandler, () -> {
+                    if (executor.isShutdown()) return;
+                    executor.execute(() -> {
+                        try {
+                            writeThumbnail(pixels, width, height);
+                        } finally {
+                            thumbnailWriting = false;
+                        }
+                    });
+                }));
+    }
 
-                JSONArray modelsArray = sceneJson.getJSONArray("models");
-                for (int i = 0; i < modelsArray.length(); i++) {
-                    String modelName = modelsArray.getString(i);
-                    File modelFile = new File(new File(getFilesDir(), "models"), modelName);
-                    if (modelFile.exists()) {
-                        loadModelFromFile(modelFile, false);
-                    }
-                }
+    /** Scales the bottom-up RGBA pixels down to {@link #THUMBNAIL_WIDTH} and replaces the thumbnail file. */
+    private void writeThumbnail(ByteBuffer pixels, int width, int height) {
+        Bitmap frame = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        frame.copyPixelsFromBuffer(pixels);
+        float scale = Math.min(1f, (float) THUMBNAIL_WIDTH / width);
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, -scale);
+        Bitmap thumbnail = Bitmap.createBitmap(frame, 0, 0, width, height, matrix, true);
+        File tempFile = new File(getFilesDir(), THUMBNAIL_FILE_NAME + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            thumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write thumbnail", e);
+            return;
+        } finally {
+            frame.recycle();
+            if (thumbnail != frame) thumbnail.recycle();
+        }
+        if (!tempFile.renameTo(new File(getFilesDir(), THUMBNAIL_FILE_NAME))) {
+            Log.e(TAG, "Failed to replace thumbnail");
+        }
+    }
 
-                JSONArray objectsArray = sceneJson.getJSONArray("placedObjects");
-                TransformManager tm = engine.getTransformManager();
-                runOnUiThread(() -> {
+    private void autosave() {
+        try {
+            sceneStore.sync();
+            if (sceneStore.needsCompaction()) sceneStore.compact();
+        } catch (IOException e) {
+            Log.e(TAG, "Autosave failed", e);
+        }
+    }
+
+    private void loadScene() {
+        executor.execute(() -> {
+            try {
+                modelStore.open();
+                optimizedModels.open();
+                if (!sceneStore.hasData() && !replaying) {
                     try {
-                        for (int i = 0; i < objectsArray.length(); i++) {
-                            JSONObject objectJson = objectsArray.getJSONObject(i);
-                            int modelIndex = objectJson.getInt("modelIndex");
-                            if (modelIndex >= 0 && modelIndex < loadedAssets.size()) {
-                                FilamentAsset asset = loadedAssets.get(modelIndex);
-                                FilamentAsset.Instance instance = asset.createInstance();
-                                JSONArray transformArray = objectJson.getJSONArray("transform");
-                                float[] transform = new float[16];
-                                for (int j = 0; j < transformArray.length(); j++) {
-                                    transform[j] = (float) transformArray.getDouble(j);
-                                }
-                                placedObjects.add(new PlacedObject(instance, modelIndex));
-                                scene.addEntities(instance.getEntities());
-                                tm.setTransform(tm.getInstance(instance.getRoot()), transform);
-                            }
-                        }
-                        Toast.makeText(this, "Scene loaded", Toast.LENGTH_SHORT).show();
-                    } catch (JSONException e) {
-                        Log.e(TAG, "Failed to parse placed objects", e);
+                        migrateScene();
+                    } catch (IOException e) {
+                        // The old files stay where they are; this start goes on with an empty scene.
+                        Log.e(TAG, "Failed to migrate saved scene", e);
                     }
-                });
-            } catch (IOException | JSONException e) {
+                }
+                sceneStore.open();
+                long[] cells = sceneStore.getCells();
+                List<String> models = sceneStore.getModels();
+                List<float[]> bounds = new ArrayList<>(models.size());
+                for (String model : models) bounds.add(sceneStore.getModelBounds(model));
+                commands.execute(() -> startStreaming(cells, models, bounds));
+                // Models imported before optimization existed load as imported this time.
+                for (String model : models) {
+                    String key = modelStore.resolve(model);
+                    if (key != null) optimizeModel(key, null);
+                }
+            } catch (IOException e) {
                 Log.e(TAG, "Failed to load scene", e);
                 runOnUiThread(() -> Toast.makeText(this, "Failed to load scene", Toast.LENGTH_SHORT).show());
             }
         });
     }
 
+    /**
+     * Registers the saved scene's models so they can be selected, and hands its cells to
+     * {@link #cellStreamer}, which pages in the ones around the camera from the next frame on.
+     * Saved model bounds let their objects show as placeholders before the models load.
+     */
+    private void startStreaming(long[] cells, List<String> models, List<float[]> bounds) {
+        if (isDestroyed()) return;
+        // Older scenes refer to models by display name; newer ones by content key.
+        for (int i = 0; i < models.size(); i++) {
+            String key = modelStore.resolve(models.get(i));
+            if (key == null) continue;
+            registerModel(key);
+            if (bounds.get(i) != null && !modelBounds.containsKey(key)) modelBounds.put(key, bounds.get(i));
+        }
+        cellStreamer.setCells(cells);
+        // Cells that got objects while the store was opening still need what was saved in them.
+        for (ResidentCell resident : residentCells.values()) {
+            cellStreamer.addCell(resident.key);
+            if (Arrays.binarySearch(cells, resident.key) >= 0) requestCell(resident);
+        }
+        restoringScene = cells.length > 0;
+        streamingStarted = true;
+        updateUi();
+    }
+
+    /** Reads a paged-in cell on {@link #executor}, after the edits queued before it, then schedules its restore. */
+    private void requestCell(ResidentCell cell) {
+        cellLoadsInFlight++;
+        executor.execute(() -> {
+            try {
+                SceneData data = sceneStore.loadCell(cell.key);
+                commands.execute(() -> scheduleCellRestore(cell, data));
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to load cell " + cell.key, e);
+                commands.execute(() -> cellLoadsInFlight--);
+            }
+        });
+    }
+
+    /**
+     * Queues loads for the models a paged-in cell's objects use. Each object appears as soon as
+     * its own model is ready, as a placeholder box until then if the model's bounds are known;
+     * ones already placed in the cell this session are skipped.
+     */
+    private void scheduleCellRestore(ResidentCell cell, SceneData data) {
+        cellLoadsInFlight--;
+        if (isDestroyed() || cell.unloaded) return;
+        List<String> models = data.getModels();
+        String[] keys = new String[models.size()];
+        for (int i = 0; i < keys.length; i++) keys[i] = modelStore.resolve(models.get(i));
+        Set<Integer> placedIds = new HashSet<>();
+        for (PlacedObject placedObject : cell.objects) placedIds.add(placedObject.id);
+
+        for (int i = 0; i < data.getObjectCount(); i++) {
+            int modelIndex = data.getModelIndex(i);
+            if (modelIndex < 0 || modelIndex >= keys.length || keys[modelIndex] == null) continue;
+            if (placedIds.contains(data.getObjectId(i))) continue;
+            String name = keys[modelIndex];
+            List<PendingObject> pending = pendingObjectsByModel.get(name);
+            if (pending == null) {
+                pending = new ArrayList<>();
+                pendingObjectsByModel.put(name, pending);
+                registerModel(name);
+                if (assetCache.contains(name)) {
+                    queueRestore(name);
+                } else {
+                    requestModel(name, ModelLoadScheduler.Priority.REFERENCED);
+                }
+            }
+            PendingObject object = new PendingObject(cell, name, data, i);
+            pending.add(object);
+            if (!assetCache.contains(name) && modelBounds.containsKey(name)) proxyQueue.add(object);
+        }
+    }
+
+    /**
+     * Shows placeholder boxes for queued pending objects until {@code budgetNanos} runs out, each
+     * its model's bounds under the object's transform; {@link #restoreQueuedObjects} swaps in the
+     * real model. Placeholders are not culled: they only last while their models load.
+     */
+    private void showQueuedProxies(long budgetNanos) {
+        if (proxyQueue.isEmpty() || proxyPool == null) return;
+        long start = System.nanoTime();
+        TransformManager tm = engine.getTransformManager();
+        proxyEntities.clear();
+        int entityCount = 0;
+        tm.openLocalTransformTransaction();
+        try {
+            while (!proxyQueue.isEmpty() && System.nanoTime() - start < budgetNanos) {
+                PendingObject object = proxyQueue.poll();
+                if (object.done) continue;
+                FilamentInstance proxy = proxyPool.acquire();
+                if (proxy == null) {
+                    proxyQueue.clear();
+                    break;
+                }
+                object.proxy = proxy;
+                float[] bounds = modelBounds.get(object.model);
+                Mat4.setIdentity(boxTransform);
+                for (int axis = 0; axis < 3; axis++) {
+                    boxTransform[axis * 5] = Math.max(bounds[3 + axis] - bounds[axis], MIN_PROXY_EXTENT);
+                    boxTransform[12 + axis] = bounds[axis];
+                }
+                object.data.getTransform(object.object, proxyTransform, 0);
+                Mat4.multiply(restoreTransform, proxyTransform, boxTransform);
+                tm.setTransform(tm.getInstance(proxy.getRoot()), restoreTransform);
+                int[] entities = proxy.getEntities();
+                proxyEntities.add(entities);
+                entityCount += entities.length;
+            }
+        } finally {
+            tm.commitLocalTransformTransaction();
+        }
+        scene.addEntities(concat(proxyEntities, entityCount));
+        proxyEntities.clear();
+        frameStats.record(FrameStats.PROXIES, System.nanoTime() - start);
+    }
+
+    /** Marks a pending object restored or dropped, taking its placeholder out of the scene. */
+    private void finishPending(PendingObject object) {
+        object.done = true;
+        if (object.proxy == null) return;
+        scene.removeEntities(object.proxy.getEntities());
+        proxyPool.release(object.proxy);
+        object.proxy = null;
+    }
+
+    /** Gives up on the objects waiting for a model that failed to load. */
+    private void dropPending(String name) {
+        List<PendingObject> pending = pendingObjectsByModel.remove(name);
+        if (pending == null) return;
+        for (PendingObject object : pending) finishPending(object);
+    }
+
+    /** Queues the objects waiting on {@code name} for {@link #restoreQueuedObjects}, pinning the model meanwhile. */
+    private void queueRestore(String name) {
+        if (!pendingObjectsByModel.containsKey(name) || restoreQueue.contains(name)) return;
+        assetCache.pin(name);
+        restoreQueue.add(name);
+    }
+
+    /**
+     * Restores queued objects until {@code budgetNanos} runs out, creating their instances as it
+     * goes. Local transforms are set inside a transaction, so world transforms are propagated once
+     * per batch rather than once per object, and the batch enters the scene, and its placeholders
+     * leave it, with one call each.
+     */
+    private void restoreQueuedObjects(long budgetNanos) {
+        if (restoreQueue.isEmpty()) return;
+        long start = System.nanoTime();
+        TransformManager tm = engine.getTransformManager();
+        restoreEntities.clear();
+        proxyEntities.clear();
+        int entityCount = 0;
+        int proxyEntityCount = 0;
+        tm.openLocalTransformTransaction();
+        try {
+            while (!restoreQueue.isEmpty() && System.nanoTime() - start < budgetNanos) {
+                String name = restoreQueue.peek();
+                List<PendingObject> pending = pendingObjectsByModel.get(name);
+                InstancePool pool = assetCache.peek(name);
+                int modelIndex = modelIndexByName.get(name);
+                while (!pending.isEmpty() && System.nanoTime() - start < budgetNanos) {
+                    FilamentInstance instance = pool.acquire();
+                    if (instance == null) {
+                        Log.e(TAG, "Could not instance " + modelStore.displayName(name));
+                        for (PendingObject object : pending) finishPending(object);
+                        pending.clear();
+                        break;
+                    }
+                    PendingObject object = pending.remove(pending.size() - 1);
+                    object.done = true;
+                    if (object.proxy != null) {
+                        int[] entities = object.proxy.getEntities();
+                        proxyEntities.add(entities);
+                        proxyEntityCount += entities.length;
+                        proxyPool.release(object.proxy);
+                        object.proxy = null;
+                    }
+                    assetCache.pin(name);
+                    object.data.getTransform(object.object, restoreTransform, 0);
+                    PlacedObject placedObject = new PlacedObject(instance, modelIndex,
+                            object.data.getObjectId(object.object), object.cell);
+                    addPlacedObject(placedObject, pool, restoreTransform);
+                    tm.setTransform(tm.getInstance(instance.getRoot()), restoreTransform);
+                    int[] entities = instance.getEntities();
+                    restoreEntities.add(entities);
+                    entityCount += entities.length;
+                }
+                if (pending.isEmpty()) {
+                    pendingObjectsByModel.remove(name);
+                    restoreQueue.poll();
+                    assetCache.unpin(name);
+                }
+            }
+        } finally {
+            tm.commitLocalTransformTransaction();
+        }
+        scene.addEntities(concat(restoreEntities, entityCount));
+        if (proxyEntityCount > 0) scene.removeEntities(concat(proxyEntities, proxyEntityCount));
+        restoreEntities.clear();
+        proxyEntities.clear();
+        frameStats.record(FrameStats.RESTORE, System.nanoTime() - start);
+    }
+
+    /**
+     * Pages a cell out: its objects leave the Scene and the spatial index without being journaled,
+     * and their models are unpinned, so the asset cache may evict the ones no longer used. Objects
+     * still waiting for a model are dropped with their placeholders, and so is the load of a model
+     * nothing waits on then.
+     */
+    private void unloadCell(long key) {
+        ResidentCell cell = residentCells.remove(key);
+        if (cell == null) return;
+        cell.unloaded = true;
+        if (!cell.objects.isEmpty()) {
+            List<int[]> entityBatches = new ArrayList<>(cell.objects.size());
+            int entityCount = 0;
+            for (PlacedObject placedObject : cell.objects) {
+                if (placedObject.inScene) {
+                    int[] entities = placedObject.instance.getEntities();
+                    entityBatches.add(entities);
+                    entityCount += entities.length;
+                }
+                String modelName = modelNames.get(placedObject.modelIndex);
+                assetCache.peek(modelName).release(placedObject.instance);
+                assetCache.unpin(modelName);
+                spatialIndex.remove(placedObject.proxy);
+            }
+            scene.removeEntities(concat(entityBatches, entityCount));
+            int kept = 0;
+            for (int i = 0, n = placedObjects.size(); i < n; i++) {
+                PlacedObject placedObject = placedObjects.get(i);
+                if (placedObject.cell != cell) placedObjects.set(kept++, placedObject);
+            }
+            placedObjects.subList(kept, placedObjects.size()).clear();
+        }
+        for (Iterator<Map.Entry<String, List<PendingObject>>> it = pendingObjectsByModel.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, List<PendingObject>> entry = it.next();
+            List<PendingObject> pending = entry.getValue();
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                if (pending.get(i).cell != cell) continue;
+                finishPending(pending.get(i));
+                pending.remove(i);
+            }
+            if (!pending.isEmpty()) continue;
+            it.remove();
+            String name = entry.getKey();
+            if (restoreQueue.remove(name)) {
+                assetCache.unpin(name);
+            } else if (currentAssetIndex == -1 || !name.equals(modelNames.get(currentAssetIndex))) {
+                modelLoader.cancel(name);
+            }
+        }
+    }
+
+    /**
+     * Moves a scene saved before tiling into the new store: the single-file store's snapshot and
+     * journal, or a legacy JSON scene. The tiles are written and compacted in a staging directory
+     * that is renamed into place, so a crash part way leaves the old files as the only scene and
+     * the migration runs again. The old files are retired once the tiles are in place.
+     */
+    private void migrateScene() throws IOException {
+        SceneStore oldStore = new SceneStore(getFilesDir());
+        File legacyFile = new File(getFilesDir(), LEGACY_SCENE_FILE_NAME);
+        SceneData sceneData;
+        if (oldStore.hasData()) {
+            sceneData = oldStore.open();
+        } else if (legacyFile.exists()) {
+            try (InputStream in = new FileInputStream(legacyFile)) {
+                sceneData = LegacySceneImporter.importJson(in);
+            }
+        } else {
+            return;
+        }
+        // Model bounds are recorded under content keys, which older scenes did not use yet.
+        List<String> models = sceneData.getModels();
+        for (int i = 0; i < models.size(); i++) {
+            String key = modelStore.resolve(models.get(i));
+            if (key != null) models.set(i, key);
+        }
+        File tiles = new File(getFilesDir(), TILES_DIRECTORY_NAME);
+        File staging = new File(getFilesDir(), TILES_DIRECTORY_NAME + ".tmp");
+        deleteChildren(staging);
+        try (TiledSceneStore staged = new TiledSceneStore(staging)) {
+            staged.open();
+            staged.importScene(sceneData);
+            staged.compact();
+        }
+        // Holds no manifest or journal yet, at most directories an earlier open created.
+        deleteChildren(tiles);
+        tiles.delete();
+        if (!staging.renameTo(tiles)) throw new IOException("Failed to move migrated scene into " + tiles);
+        oldStore.delete();
+        if (legacyFile.exists() && !legacyFile.renameTo(new File(getFilesDir(), LEGACY_SCENE_FILE_NAME + ".imported"))) {
+            Log.w(TAG, "Could not retire legacy scene file");
+        }
+        Log.i(TAG, "Migrated " + sceneData.getObjectCount() + " objects");
+    }
+
     private void clearScene() {
+        List<int[]> entityBatches = new ArrayList<>(placedObjects.size());
+        int entityCount = 0;
         for (PlacedObject placedObject : placedObjects) {
-            scene.removeEntities(placedObject.instance.getEntities());
+            if (!placedObject.inScene) continue;
+            int[] entities = placedObject.instance.getEntities();
+            entityBatches.add(entities);
+            entityCount += entities.length;
+        }
+        scene.removeEntities(concat(entityBatches, entityCount));
+        for (PlacedObject placedObject : placedObjects) {
+            String modelName = modelNames.get(placedObject.modelIndex);
+            assetCache.peek(modelName).release(placedObject.instance);
+            assetCache.unpin(modelName);
         }
         placedObjects.clear();
-        Toast.makeText(this, "Scene cleared", Toast.LENGTH_SHORT).show();
+        spatialIndex.clear();
+        for (ResidentCell cell : residentCells.values()) cell.unloaded = true;
+        residentCells.clear();
+        cellStreamer.reset();
+        for (String name : restoreQueue) assetCache.unpin(name);
+        restoreQueue.clear();
+        for (List<PendingObject> pending : pendingObjectsByModel.values()) {
+            for (PendingObject object : pending) finishPending(object);
+        }
+        pendingObjectsByModel.clear();
+        proxyQueue.clear();
+        restoringScene = false;
+        journal("clear", () -> sceneStore.clear());
+        runOnUiThread(() -> Toast.makeText(this, "Scene cleared", Toast.LENGTH_SHORT).show());
+    }
+
+    private void addPlacedObject(PlacedObject placedObject, InstancePool pool, float[] transform) {
+        Mat4.transformBounds(worldBounds, 0, transform, pool.getBounds());
+        placedObject.proxy = spatialIndex.add(placedObject, worldBounds, 0);
+        placedObject.lods = pool.getLodEntities(placedObject.instance, engine.getTransformManager());
+        if (placedObject.lods != null) setLod(placedObject, 0);
+        placedObjects.add(placedObject);
+        placedObject.cell.objects.add(placedObject);
+    }
+
+    /** Picks a level of detail from the object's projected size on screen. */
+    private int lodFor(int proxy, int levels) {
+        spatialIndex.getBounds(proxy, lodBounds, 0);
+        float[] eye = cameraRig.headModel;
+        float dx = (lodBounds[0] + lodBounds[3]) / 2 - eye[12];
+        float dy = (lodBounds[1] + lodBounds[4]) / 2 - eye[13];
+        float dz = (lodBounds[2] + lodBounds[5]) / 2 - eye[14];
+        float ex = lodBounds[3] - lodBounds[0];
+        float ey = lodBounds[4] - lodBounds[1];
+        float ez = lodBounds[5] - lodBounds[2];
+        float radius = (float) Math.sqrt(ex * ex + ey * ey + ez * ez) / 2;
+        float distance = Math.max((float) Math.sqrt(dx * dx + dy * dy + dz * dz), CameraRig.NEAR);
+        float screenSize = radius * cameraRig.projection[5] / distance;
+        int level = 0;
+        while (level < LOD_SCREEN_SIZES.length && screenSize < LOD_SCREEN_SIZES[level]) level++;
+        return Math.min(level, levels - 1);
+    }
+
+    /** Shows one level of detail by giving the others an empty layer mask. */
+    private void setLod(PlacedObject placedObject, int level) {
+        if (placedObject.lodLevel == level) return;
+        RenderableManager rm = engine.getRenderableManager();
+        for (int l = 0; l < placedObject.lods.length; l++) {
+            int mask = l == level ? 0xFF : 0;
+            for (int entity : placedObject.lods[l]) {
+                int renderable = rm.getInstance(entity);
+                if (renderable != 0) rm.setLayerMask(renderable, 0xFF, mask);
+            }
+        }
+        placedObject.lodLevel = level;
+    }
+
+    private void removePlacedObject(PlacedObject placedObject) {
+        if (placedObject.inScene) scene.removeEntities(placedObject.instance.getEntities());
+        String modelName = modelNames.get(placedObject.modelIndex);
+        assetCache.peek(modelName).release(placedObject.instance);
+        assetCache.unpin(modelName);
+        spatialIndex.remove(placedObject.proxy);
+        placedObjects.remove(placedObject);
+        placedObject.cell.objects.remove(placedObject);
+        if (placedObject.id < 0) return;
+        journal("removal", () -> sceneStore.remove(placedObject.id, placedObject.cell.key));
+    }
+
+    /** A scene edit for {@link #journal}. */
+    private interface JournalEdit {
+        void apply() throws IOException;
+    }
+
+    /**
+     * Appends an edit to the scene journal on {@link #executor}, keeping file I/O off the render thread.
+     * An edit the store rejects is logged like a failed write rather than left to kill the executor.
+     */
+    private void journal(String what, JournalEdit edit) {
+        thumbnailStale = true;
+        executor.execute(() -> {
+            try {
+                edit.apply();
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Failed to journal " + what, e);
+            }
+        });
+    }
+
+    /** Removes the object under the last long-press, if any. */
+    private void handlePick() {
+        pickPending = false;
+        if (recorder != null) recorder.pick(pickX, pickY);
+        cameraRig.screenRay(pickX, pickY, viewportWidth, viewportHeight);
+        float[] o = cameraRig.rayOrigin;
+        float[] d = cameraRig.rayDirection;
+        int proxy = spatialIndex.raycast(o[0], o[1], o[2], d[0], d[1], d[2], CameraRig.PICK_DISTANCE);
+        if (proxy == SpatialIndex.NONE) return;
+        PlacedObject placedObject = spatialIndex.get(proxy);
+        removePlacedObject(placedObject);
+        String removed = modelStore.displayName(modelNames.get(placedObject.modelIndex));
+        runOnUiThread(() -> Toast.makeText(this, "Removed " + removed, Toast.LENGTH_SHORT).show());
+    }
+
+    /**
+     * Pages cells of the saved scene in and out around the camera, then keeps only objects near
+     * and in front of the camera in the Scene, so Filament does not walk thousands of far-away
+     * renderables every frame. Runs every few frames.
+     */
+    private void updateSceneMembership(long frameTimeNanos) {
+        if (++framesSinceCull < CULL_INTERVAL_FRAMES) return;
+        framesSinceCull = 0;
+        long streamStart = System.nanoTime();
+        float[] head = cameraRig.headModel;
+        cellStreamer.update(head[12], head[14], frameTimeNanos);
+        if (streamingStarted) cellsChosen = true;
+        frameStats.record(FrameStats.STREAM, System.nanoTime() - streamStart);
+        long start = System.nanoTime();
+        cameraRig.updateCullPlanes(CameraRig.CULL_DISTANCE, CameraRig.CULL_MARGIN);
+        cullStamp++;
+        spatialIndex.queryFrustum(cameraRig.cullPlanes, cullVisitor);
+        for (int i = 0, n = placedObjects.size(); i < n; i++) {
+            PlacedObject placedObject = placedObjects.get(i);
+            if (placedObject.inScene && placedObject.visibleStamp != cullStamp) {
+                scene.removeEntities(placedObject.instance.getEntities());
+                placedObject.inScene = false;
+            }
+        }
+        frameStats.record(FrameStats.CULL, System.nanoTime() - start);
+    }
+
+    private static int[] concat(List<int[]> arrays, int totalLength) {
+        int[] result = new int[totalLength];
+        int offset = 0;
+        for (int[] array : arrays) {
+            System.arraycopy(array, 0, result, offset, array.length);
+            offset += array.length;
+        }
+        return result;
+    }
+
+    private void toggleStatsOverlay() {
+        if (statsTextView.getVisibility() == android.view.View.VISIBLE) {
+            statsTextView.setVisibility(android.view.View.GONE);
+            autosaveHandler.removeCallbacks(statsOverlayRunnable);
+        } else {
+            statsTextView.setVisibility(android.view.View.VISIBLE);
+            statsOverlayRunnable.run();
+        }
+    }
+
+    /** Dumps and resets the frame statistics so each foreground session gets its own file. */
+    private void exportFrameStats() {
+        if (frameStats.getFrames() == 0) return;
+        File dir = getExternalFilesDir("stats");
+        if (dir == null) dir = new File(getFilesDir(), "stats");
+        if (!dir.exists() && !dir.mkdirs()) return;
+        File file = new File(dir, "frame-stats-" + System.currentTimeMillis() + ".bin");
+        String deviceTag = Build.MANUFACTURER + " " + Build.MODEL + " API " + Build.VERSION.SDK_INT;
+        try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+            frameStats.writeTo(channel, deviceTag, System.currentTimeMillis());
+            Log.i(TAG, "Frame stats written to " + file + "\n" + frameStats.summary());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to export frame stats", e);
+        }
+        frameStats.reset();
+    }
+
+    /** Starts writing this foreground session to a new trace; see {@link SessionRecorder}. */
+    private void startRecording() {
+        File dir = getExternalFilesDir("traces");
+        if (dir == null) dir = new File(getFilesDir(), "traces");
+        if (!dir.exists() && !dir.mkdirs()) return;
+        File file = new File(dir, "session-" + System.currentTimeMillis() + ".trace");
+        try {
+            recorder = new SessionRecorder(new FileOutputStream(file).getChannel());
+            Log.i(TAG, "Recording session to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start recording", e);
+        }
+    }
+
+    private void recordFrame() {
+        try {
+            recorder.endFrame();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to record frame; recording stopped", e);
+            stopRecording();
+        }
+    }
+
+    private void stopRecording() {
+        if (recorder == null) return;
+        try {
+            recorder.close();
+            Log.i(TAG, String.format(Locale.US, "Recorded %d frames, %d KiB",
+                    recorder.getFrameCount(), recorder.getSize() / 1024));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to finish recording", e);
+        }
+        recorder = null;
+    }
+
+    /** Returns a source replaying the trace at {@code path}, or null to run live. */
+    private FrameSource openReplay(String path) {
+        try {
+            return new TraceFrameSource(new SessionTrace(new FileInputStream(path).getChannel()));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open session trace " + path, e);
+            Toast.makeText(this, "Cannot replay " + path, Toast.LENGTH_LONG).show();
+            return null;
+        }
+    }
+
+    /** Stops the frame loop at the end of a replay and exports its frame statistics. */
+    private void finishReplay(TraceFrameSource replay) {
+        frameSource = null;
+        long frames = replay.getTrace().getFrameCount();
+        closeReplay(replay);
+        exportFrameStats();
+        runOnUiThread(() -> Toast.makeText(this, "Replayed " + frames + " frames", Toast.LENGTH_LONG).show());
+    }
+
+    private void closeReplay(TraceFrameSource replay) {
+        try {
+            replay.getTrace().close();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close session trace", e);
+        }
+    }
+
+    private static void deleteChildren(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            deleteChildren(file);
+            file.delete();
+        }
     }
 
     private void cycleNextModel() {
-        if (!loadedAssets.isEmpty()) {
-            currentAssetIndex = (currentAssetIndex + 1) % loadedAssets.size();
-            updateUi();
+        if (!modelNames.isEmpty()) {
+            selectModel((currentAssetIndex + 1) % modelNames.size());
         }
     }
 
+    /** Makes {@code modelIndex} the model placed on tap, keeping it resident and loading it if evicted. */
+    private void selectModel(int modelIndex) {
+        if (currentAssetIndex != -1) assetCache.unpin(modelNames.get(currentAssetIndex));
+        currentAssetIndex = modelIndex;
+        String name = modelNames.get(modelIndex);
+        assetCache.pin(name);
+        if (!assetCache.contains(name)) requestModel(name, ModelLoadScheduler.Priority.SELECTED);
+        updateUi();
+    }
+
+    /** Asks the loader for a model that is not resident, unless its bytes already wait to be parsed. */
+    private void requestModel(String name, ModelLoadScheduler.Priority priority) {
+        for (ReadModel read : readModels) if (read.name.equals(name)) return;
+        modelLoader.request(name, modelFile(name), priority);
+    }
+
+    private int registerModel(String name) {
+        Integer index = modelIndexByName.get(name);
+        if (index != null) return index;
+        modelNames.add(name);
+        modelIndexByName.put(name, modelNames.size() - 1);
+        return modelNames.size() - 1;
+    }
+
+    /** Runs on the render thread, which owns the state shown; the text is set on the main thread. */
     private void updateUi() {
+        String text;
         if (currentAssetIndex != -1) {
-            currentModelTextView.setText("Current Model: " + loadedAssetNames.get(currentAssetIndex));
+            String key = modelNames.get(currentAssetIndex);
+            String state = "";
+            InstancePool loading = loadingPools.get(key);
+            if (loading != null) {
+                state = String.format(Locale.US, " (textures %d%%)", (int) (loading.getLoadProgress() * 100));
+            } else if (!assetCache.contains(key)) {
+                state = " (loading)";
+            }
+            text = "Current Model: " + modelStore.displayName(key) + state;
         } else {
-            currentModelTextView.setText("No model loaded");
+            text = "No model loaded";
         }
+        runOnUiThread(() -> currentModelTextView.setText(text));
     }
 
     private void openFilePicker() {
         Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
         intent.addCategory(Intent.CATEGORY_OPENABLE);
         intent.setType("*/*");
-        String[] mimeTypes = {"model/gltf-binary", "model/gltf+json"};
+        // A .gltf comes with sidecar buffers and images, picked together with it.
+        String[] mimeTypes = {"model/gltf-binary", "model/gltf+json", "application/octet-stream", "image/*"};
         intent.putExtra(Intent.EXTRA_MIME_TYPES, mimeTypes);
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
         filePickerLauncher.launch(intent);
     }
 
-    private void copyModelToInternalStorage(Uri uri) {
+    /** Imports every .glb and .gltf among {@code uris}; the other files are sidecars of the .gltf files. */
+    private void importModels(List<Uri> uris) {
         executor.execute(() -> {
-            String fileName = getFileName(uri);
-            File modelsDir = new File(getFilesDir(), "models");
-            if (!modelsDir.exists()) modelsDir.mkdirs();
-            File destinationFile = new File(modelsDir, fileName);
-
-            try (InputStream in = getContentResolver().openInputStream(uri);
-                 OutputStream out = new FileOutputStream(destinationFile)) {
-                final ReadableByteChannel inputChannel = Channels.newChannel(in);
-                final WritableByteChannel outputChannel = Channels.newChannel(out);
-                final ByteBuffer buffer = ByteBuffer.allocateDirect(16 * 1024);
-                while (inputChannel.read(buffer) != -1) {
-                    buffer.flip();
-                    outputChannel.write(buffer);
-                    buffer.compact();
+            Map<String, Uri> filesByName = new HashMap<>();
+            for (Uri uri : uris) filesByName.put(getFileName(uri), uri);
+            boolean found = false;
+            for (Map.Entry<String, Uri> file : filesByName.entrySet()) {
+                String lowerName = file.getKey().toLowerCase(Locale.US);
+                if (lowerName.endsWith(".glb")) {
+                    importModel(file.getKey(), file.getValue(), null);
+                    found = true;
+                } else if (lowerName.endsWith(".gltf")) {
+                    importModel(file.getKey(), file.getValue(), filesByName);
+                    found = true;
                 }
-                buffer.flip();
-                while (buffer.hasRemaining()) outputChannel.write(buffer);
-                loadModelFromFile(destinationFile, true);
-            } catch (IOException e) {
-                Log.e(TAG, "Failed to copy model", e);
-                runOnUiThread(() -> Toast.makeText(this, "Failed to copy model", Toast.LENGTH_SHORT).show());
+            }
+            if (!found) {
+                runOnUiThread(() -> Toast.makeText(this, "Select a .glb or .gltf file", Toast.LENGTH_SHORT).show());
             }
         });
     }
 
-    private void loadModelFromFile(File modelFile, boolean isNew) {
-        String assetName = modelFile.getName();
-        if (!isNew && loadedAssetNames.contains(assetName)) return;
+    /**
+     * Runs on {@link #executor}. A .gltf is first packed with the files it references, looked up
+     * by name in {@code sidecars}, into a single .glb.
+     */
+    private void importModel(String fileName, Uri uri, Map<String, Uri> sidecars) {
+        File packed = null;
+        try {
+            ModelStore.ImportResult result;
+            if (sidecars != null) {
+                packed = new File(getCacheDir(), System.nanoTime() + ".glb");
+                try (ReadableByteChannel gltf = openChannel(uri);
+                     FileChannel out = new FileOutputStream(packed).getChannel()) {
+                    GltfPacker.pack(gltf, path -> {
+                        Uri sidecar = sidecars.get(path.substring(path.lastIndexOf('/') + 1));
+                        if (sidecar == null) throw new FileNotFoundException(path + " (select it together with " + fileName + ")");
+                        return openChannel(sidecar);
+                    }, out);
+                }
+                File glb = packed;
+                String glbName = fileName.substring(0, fileName.length() - ".gltf".length()) + ".glb";
+                result = modelStore.importModel(() -> new FileInputStream(glb).getChannel(), glbName, glb.length());
+            } else {
+                result = modelStore.importModel(() -> openChannel(uri), fileName, getFileSize(uri));
+            }
+            // Selected once optimized, so its first load already uses the optimized copy.
+            optimizeModel(result.key, () -> selectModel(registerModel(result.key)));
+            if (result.duplicate) {
+                runOnUiThread(() -> Toast.makeText(this, "Already imported as " + result.displayName, Toast.LENGTH_SHORT).show());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to import " + fileName, e);
+            runOnUiThread(() -> Toast.makeText(this, "Failed to import " + fileName + ": " + e.getMessage(), Toast.LENGTH_LONG).show());
+        } finally {
+            if (packed != null) packed.delete();
+        }
+    }
+
+    private ReadableByteChannel openChannel(Uri uri) throws IOException {
+        InputStream in = getContentResolver().openInputStream(uri);
+        if (in == null) throw new FileNotFoundException(uri.toString());
+        return Channels.newChannel(in);
+    }
 
-        try (InputStream inputStream = new FileInputStream(modelFile)) {
-            byte[] buffer = inputStream.readAllBytes();
-            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
-            FilamentAsset asset = assetLoader.createAsset(byteBuffer);
-            asset.releaseSourceData();
+    /** Parses up to {@link #MAX_MODEL_PARSES_PER_FRAME} of the model files read since the last frame. */
+    private void parseReadModels() {
+        for (int i = 0; i < MAX_MODEL_PARSES_PER_FRAME && !readModels.isEmpty(); i++) {
+            ReadModel read = readModels.poll();
+            onModelRead(read.name, read.buffer, read.estimatedBytes, read.readNanos);
+        }
+    }
 
-            if (!loadedAssetNames.contains(assetName)) {
-                loadedAssets.add(asset);
-                loadedAssetNames.add(assetName);
+    /** Runs on the render thread once a worker has read {@code name}; creates the asset if needed. */
+    private void onModelRead(String name, ByteBuffer buffer, long estimatedBytes, long readNanos) {
+        try {
+            if (isDestroyed()) return;
+            // Hold a pin across insertion so a tight budget cannot evict the asset before it is used.
+            assetCache.pin(name);
+            if (!assetCache.contains(name)) {
+                long startNanos = System.nanoTime();
+                Runtime runtime = Runtime.getRuntime();
+                long javaHeapBefore = runtime.totalMemory() - runtime.freeMemory();
+                long nativeHeapBefore = Debug.getNativeHeapAllocatedSize();
+
+                // One instance up front: the objects waiting on this model get theirs within the
+                // restore budget, and the selected model's spares grow one per frame.
+                InstancePool pool = InstancePool.create(engine, assetLoader, buffer, 1);
+                if (pool == null) {
+                    Log.e(TAG, "Failed to parse model " + name);
+                    dropPending(name);
+                    runOnUiThread(() -> Toast.makeText(this, "Failed to load model: " + modelStore.displayName(name),
+                            Toast.LENGTH_SHORT).show());
+                    assetCache.unpin(name);
+                    return;
+                }
+                attachTextures(name, pool);
+                if (pool.isLoading()) loadingPools.put(name, pool);
+                compileNewMaterials(Material.CompilerPriorityQueue.LOW);
+                float[] bounds = pool.getBounds();
+                if (!Arrays.equals(modelBounds.get(name), bounds)) {
+                    float[] copy = bounds.clone();
+                    modelBounds.put(name, copy);
+                    journal("model bounds", () -> sceneStore.setModelBounds(name, copy));
+                }
+                frameStats.record(FrameStats.ASSET_READ, readNanos);
+                frameStats.record(FrameStats.ASSET_PARSE, System.nanoTime() - startNanos);
+
+                Log.i(TAG, String.format(Locale.US, "Loaded %s (%d KB, ~%d KB resident, %d KB compressed textures): read %.1f ms, parse %.1f ms, java heap %+d KB, native heap %+d KB",
+                        name, buffer.capacity() / 1024, estimatedBytes / 1024, pool.getTextureBytes() / 1024,
+                        readNanos / 1e6, (System.nanoTime() - startNanos) / 1e6,
+                        (runtime.totalMemory() - runtime.freeMemory() - javaHeapBefore) / 1024,
+                        (Debug.getNativeHeapAllocatedSize() - nativeHeapBefore) / 1024));
+
+                assetCache.put(name, pool, estimatedBytes + pool.getTextureBytes());
             }
-            if (isNew) {
-                currentAssetIndex = loadedAssets.size() - 1;
-                runOnUiThread(() -> {
-                    updateUi();
-                    Toast.makeText(this, "Loaded: " + assetName, Toast.LENGTH_SHORT).show();
-                });
+            int modelIndex = registerModel(name);
+            queueRestore(name);
+            assetCache.unpin(name);
+            if (modelIndex == currentAssetIndex) {
+                updateUi();
+                runOnUiThread(() -> Toast.makeText(this, "Loaded: " + modelStore.displayName(name), Toast.LENGTH_SHORT).show());
             }
+        } finally {
+            modelBuffers.release(buffer);
+        }
+    }
+
+    /**
+     * Binds the model's transcoded textures if it has any. A bundle that cannot be read is dropped
+     * along with its model, so the model is optimized again on the next start.
+     */
+    private void attachTextures(String key, InstancePool pool) {
+        File file = optimizedModels.getTextures(key);
+        if (file == null) return;
+        try {
+            pool.setTextures(CompressedTextures.create(engine, TextureBundle.read(file)));
         } catch (IOException e) {
-            Log.e(TAG, "Failed to load model from file", e);
-            runOnUiThread(() -> Toast.makeText(this, "Failed to load model: " + assetName, Toast.LENGTH_SHORT).show());
+            Log.e(TAG, "Failed to load textures of " + modelStore.displayName(key), e);
+            optimizedModels.invalidate(key);
         }
     }
 
+    /** The optimized copy of a model if there is one, else the model as imported. */
+    private File modelFile(String key) {
+        File optimized = optimizedModels.get(key);
+        return optimized != null ? optimized : modelStore.file(key);
+    }
+
+    /**
+     * Optimizes a model on {@link #optimizer}, then runs {@code done}, if given, on the render
+     * thread. A failure leaves the model as imported. The work is handed over from the render
+     * thread, whose first task, {@link #createRenderer}, decides whether textures are transcoded.
+     */
+    private void optimizeModel(String key, Runnable done) {
+        renderHandler.post(() -> {
+            if (optimizer.isShutdown()) return;
+            optimizer.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    String summary = optimizedModels.optimize(key, modelStore.file(key));
+                    if (summary != null) {
+                        Log.i(TAG, String.format(Locale.US, "Optimized %s in %.0f ms: %s",
+                                modelStore.displayName(key), (System.nanoTime() - start) / 1e6, summary));
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to optimize " + modelStore.displayName(key), e);
+                }
+                if (done != null) commands.execute(done);
+            });
+        });
+    }
+
     private String getFileName(Uri uri) {
         String result = null;
         if (uri.getScheme().equals("content")) {
@@ -334,10 +1476,22 @@ public class MainActivity extends AppCompatActivity implements SurfaceHolder.Cal
         return result;
     }
 
+    private long getFileSize(Uri uri) {
+        if (uri.getScheme().equals("content")) {
+            try (Cursor cursor = getContentResolver().query(uri, null, null, null, null)) {
+                if (cursor != null && cursor.moveToFirst()) {
+                    int index = cursor.getColumnIndex(OpenableColumns.SIZE);
+                    if (index != -1 && !cursor.isNull(index)) return cursor.getLong(index);
+                }
+            }
+        }
+        return -1;
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
-        if (arSession == null) {
+        if (!replaying && arSession == null) {
             try {
                 if (!CameraPermissionHelper.hasCameraPermission(this)) {
                     CameraPermissionHelper.requestCameraPermission(this);
@@ -347,133 +1501,431 @@ public class MainActivity extends AppCompatActivity implements SurfaceHolder.Cal
                 Config config = new Config(arSession);
                 config.setPlaneFindingMode(Config.PlaneFindingMode.HORIZONTAL);
                 arSession.configure(config);
+                frameSource = new ArFrameSource(arSession);
             } catch (Exception e) {
                 Log.e(TAG, "ARCore session creation failed", e);
                 finish();
                 return;
             }
         }
-        try {
-            arSession.resume();
-        } catch (CameraNotAvailableException e) {
-            Log.e(TAG, "Camera not available on resume", e);
-        }
-        choreographer.postFrameCallback(this);
+        renderHandler.post(this::resumeRendering);
+        if (AUTOSAVE_INTERVAL_MS > 0) autosaveHandler.postDelayed(autosaveRunnable, AUTOSAVE_INTERVAL_MS);
+        if (statsTextView.getVisibility() == android.view.View.VISIBLE) statsOverlayRunnable.run();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        if (arSession != null) arSession.pause();
-        choreographer.removeFrameCallback(this);
+        // Wait, so the camera is released and no frame is in flight when the activity is paused.
+        runOnRenderThreadAndWait(this::pauseRendering);
+        autosaveHandler.removeCallbacks(autosaveRunnable);
+        autosaveHandler.removeCallbacks(statsOverlayRunnable);
+        executor.execute(() -> autosave());
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        executor.execute(() -> {
+            try {
+                sceneStore.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to close scene store", e);
+            }
+        });
         executor.shutdown();
+        optimizer.shutdown();
+        modelLoader.shutdown();
+        renderHandler.post(this::destroyRenderer);
+        renderThread.quitSafely();
+    }
+
+    private void resumeRendering() {
+        if (arSession != null) {
+            try {
+                arSession.resume();
+            } catch (CameraNotAvailableException e) {
+                Log.e(TAG, "Camera not available on resume", e);
+            }
+        }
+        if (recordingRequested) startRecording();
+        choreographer.postFrameCallback(this);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) addThermalListener();
+    }
+
+    private void pauseRendering() {
+        if (arSession != null) arSession.pause();
+        choreographer.removeFrameCallback(this);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) removeThermalListener();
+        lastRenderedFrameNanos = 0;
+        stopRecording();
+        exportFrameStats();
+    }
+
+    private void destroyRenderer() {
+        choreographer.removeFrameCallback(this);
         if (arSession != null) { arSession.close(); arSession = null; }
-        for (FilamentAsset asset : loadedAssets) assetLoader.destroyAsset(asset);
+        if (frameSource instanceof TraceFrameSource) closeReplay((TraceFrameSource) frameSource);
+        frameSource = null;
+        for (ReadModel read : readModels) modelBuffers.release(read.buffer);
+        readModels.clear();
+        assetCache.clear();
+        if (proxyPool != null) proxyPool.destroy();
         if (assetLoader != null) assetLoader.destroy();
-        choreographer.removeFrameCallback(this);
+        if (materialProvider != null) {
+            materialProvider.destroyMaterials();
+            materialProvider.destroy();
+        }
         engine.destroy();
     }
 
+    /** Runs {@code task} on the render thread and blocks until it is done. */
+    private void runOnRenderThreadAndWait(Runnable task) {
+        CountDownLatch done = new CountDownLatch(1);
+        renderHandler.post(() -> {
+            try {
+                task.run();
+            } finally {
+                done.countDown();
+            }
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Override
     public void surfaceCreated(SurfaceHolder holder) {
-        if (swapChain == null) swapChain = engine.createSwapChain(holder.getSurface());
+        renderHandler.post(() -> {
+            if (swapChain == null) swapChain = engine.createSwapChain(holder.getSurface());
+        });
     }
 
     @Override
     public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
-        if (arSession != null) arSession.setDisplayGeometry(holder.getSurfaceFrame().width(), holder.getSurfaceFrame().height());
+        renderHandler.post(() -> {
+            if (arSession != null) arSession.setDisplayGeometry(width, height);
+            viewportWidth = width;
+            viewportHeight = height;
+            view.setViewport(0, 0, width, height);
+            if (instancedStereo) {
+                // Instanced stereo splits the viewport between the eyes itself.
+                stereoView.setViewport(0, 0, width, height);
+            } else {
+                eyeViews[CameraRig.LEFT].setViewport(0, 0, width / 2, height);
+                eyeViews[CameraRig.RIGHT].setViewport(width / 2, 0, width - width / 2, height);
+            }
+        });
     }
 
     @Override
     public void surfaceDestroyed(SurfaceHolder holder) {
-        engine.destroySwapChain(swapChain);
-        swapChain = null;
+        // The surface goes away when this returns, so the swap chain has to be gone by then.
+        runOnRenderThreadAndWait(() -> {
+            if (swapChain != null) engine.destroySwapChain(swapChain);
+            swapChain = null;
+        });
     }
 
     @Override
     public void doFrame(long frameTimeNanos) {
         choreographer.postFrameCallback(this);
-        if (arSession == null) return;
         try {
-            Frame frame = arSession.update();
-            com.google.ar.core.Camera arCamera = frame.getCamera();
-            if (arCamera.getTrackingState() == TrackingState.TRACKING) {
-                handleTap(frame, arCamera);
-                if (renderer.beginFrame(swapChain, frameTimeNanos)) {
-                    if (isVrModeEnabled) renderStereo(arCamera); else renderMonocular(arCamera);
+            commands.drain(MAX_COMMANDS_PER_FRAME);
+            parseReadModels();
+        } catch (Throwable t) {
+            Log.e(TAG, "Exception in render command", t);
+        }
+        FrameSource source = frameSource;
+        if (source == null || swapChain == null) return;
+        long frameStart = System.nanoTime();
+        try {
+            if (!source.update(frameTimeNanos, frameInput)) {
+                if (source instanceof TraceFrameSource) finishReplay((TraceFrameSource) source);
+                return;
+            }
+            frameStats.frameStarted();
+            frameStats.record(FrameStats.AR_UPDATE, System.nanoTime() - frameStart);
+            if (!loadingPools.isEmpty()) updateResourceLoads();
+            showQueuedProxies(PROXY_BUDGET_NANOS);
+            restoreQueuedObjects(RESTORE_BUDGET_NANOS);
+            source.getProjectionMatrix(cameraRig.projection);
+            source.getViewMatrix(cameraRig.view);
+            boolean tracking = source.isTracking();
+            if (recorder != null) recorder.beginFrame(frameTimeNanos, tracking, cameraRig.view, cameraRig.projection);
+            if (tracking) {
+                if (isVrModeEnabled) {
+                    cameraRig.updateStereo(viewportHeight == 0 ? 1f : viewportWidth / 2f / viewportHeight);
+                } else {
+                    cameraRig.update();
+                }
+                if (pickPending) handlePick();
+                if (!queuedTaps.isEmpty()) {
+                    long tapStart = System.nanoTime();
+                    handleTap(source);
+                    frameStats.record(FrameStats.TAP, System.nanoTime() - tapStart);
+                }
+                long beginStart = System.nanoTime();
+                boolean began = renderer.beginFrame(swapChain, frameTimeNanos);
+                frameStats.record(FrameStats.BEGIN_FRAME, System.nanoTime() - beginStart);
+                if (began) {
+                    if (isVrModeEnabled) renderStereo(); else renderMonocular();
+                    long endStart = System.nanoTime();
                     renderer.endFrame();
+                    frameStats.record(FrameStats.END_FRAME, System.nanoTime() - endStart);
+                    updateSceneMembership(frameTimeNanos);
+                    topUpInstancePool();
+                    governFrame(frameTimeNanos);
+                    if (!firstFrameShown) onFirstFrame();
+                    if (!fullyLoaded) checkFullyLoaded();
+                } else {
+                    frameStats.frameSkipped();
                 }
+            } else {
+                frameStats.trackingLost();
+                lastRenderedFrameNanos = 0;
             }
+            if (recorder != null) recordFrame();
         } catch (Throwable t) {
             Log.e(TAG, "Exception on doFrame", t);
         }
+        frameStats.record(FrameStats.FRAME, System.nanoTime() - frameStart);
     }
 
-    private void renderMonocular(com.google.ar.core.Camera arCamera) {
-        view.setViewport(0, 0, surfaceView.getWidth(), surfaceView.getHeight());
-        float[] projMatrix = new float[16];
-        arCamera.getProjectionMatrix(projMatrix, 0, 0.1f, 100.0f);
-        float[] viewMatrix = new float[16];
-        arCamera.getViewMatrix(viewMatrix, 0);
-        camera.setCustomProjection(projMatrix, 0.1, 100.0);
-        camera.setModelMatrix(viewMatrix);
-        renderer.render(view);
+    /**
+     * Feeds the vsync interval since the last rendered frame to the governor, so a frame Filament
+     * skipped or the display missed counts against the level that caused it.
+     */
+    private void governFrame(long frameTimeNanos) {
+        long interval = lastRenderedFrameNanos != 0 ? frameTimeNanos - lastRenderedFrameNanos : 0;
+        lastRenderedFrameNanos = frameTimeNanos;
+        if (interval > 0 && frameGovernor.onFrame(interval)) {
+            applyQualityLevel();
+            Log.i(TAG, "Quality level " + frameGovernor.getLevelIndex());
+        }
     }
 
-    private void renderStereo(com.google.ar.core.Camera arCamera) {
-        float[] projMatrix = new float[16];
-        arCamera.getProjectionMatrix(projMatrix, 0, 0.1f, 100.0f);
-        float[] viewMatrix = new float[16];
-        arCamera.getViewMatrix(viewMatrix, 0);
+    /** Records the time from {@code onCreate} to the first rendered frame and hides the thumbnail. */
+    private void onFirstFrame() {
+        firstFrameShown = true;
+        long nanos = SystemClock.elapsedRealtimeNanos() - createdNanos;
+        frameStats.record(FrameStats.FIRST_FRAME, nanos);
+        Log.i(TAG, String.format(Locale.US, "First frame after %.1f ms", nanos / 1e6));
+        runOnUiThread(() -> {
+            thumbnailDismissed = true;
+            thumbnailView.setVisibility(android.view.View.GONE);
+            thumbnailView.setImageDrawable(null);
+        });
+    }
 
-        float[] leftEyeViewMatrix = new float[16];
-        Matrix.setIdentityM(leftEyeViewMatrix, 0);
-        Matrix.translateM(leftEyeViewMatrix, 0, -ipd / 2.0f, 0.0f, 0.0f);
-        Matrix.multiplyMM(leftEyeViewMatrix, 0, viewMatrix, 0, leftEyeViewMatrix, 0);
-        view.setViewport(0, 0, surfaceView.getWidth() / 2, surfaceView.getHeight());
-        camera.setCustomProjection(projMatrix, 0.1, 100.0);
-        camera.setModelMatrix(leftEyeViewMatrix);
-        renderer.render(view);
+    /**
+     * Records the time from {@code onCreate} until every object in the cells first chosen around
+     * the camera is restored: no cell is still being read and no object waits for its model.
+     */
+    private void checkFullyLoaded() {
+        if (!cellsChosen || cellLoadsInFlight > 0 || !pendingObjectsByModel.isEmpty()) return;
+        fullyLoaded = true;
+        long nanos = SystemClock.elapsedRealtimeNanos() - createdNanos;
+        frameStats.record(FrameStats.FULLY_LOADED, nanos);
+        Log.i(TAG, String.format(Locale.US, "Fully loaded after %.1f ms", nanos / 1e6));
+        if (restoringScene) {
+            runOnUiThread(() -> Toast.makeText(this, "Scene loaded", Toast.LENGTH_SHORT).show());
+        }
+        restoringScene = false;
+    }
 
-        float[] rightEyeViewMatrix = new float[16];
-        Matrix.setIdentityM(rightEyeViewMatrix, 0);
-        Matrix.translateM(rightEyeViewMatrix, 0, ipd / 2.0f, 0.0f, 0.0f);
-        Matrix.multiplyMM(rightEyeViewMatrix, 0, viewMatrix, 0, rightEyeViewMatrix, 0);
-        view.setViewport(surfaceView.getWidth() / 2, 0, surfaceView.getWidth() / 2, surfaceView.getHeight());
-        camera.setCustomProjection(projMatrix, 0.1, 100.0);
-        camera.setModelMatrix(rightEyeViewMatrix);
-        renderer.render(view);
+    /** Applies the governor's level to every view; Filament scales resolution within its bounds. */
+    private void applyQualityLevel() {
+        FrameGovernor.Level level = frameGovernor.getLevel();
+        qualitySummary = String.format(Locale.US, "\nquality %d/%d, %d changes, upgrade after %d windows",
+                frameGovernor.getLevelIndex(), frameGovernor.getLevelCount() - 1, frameGovernor.getChanges(),
+                frameGovernor.getUpgradeWindows());
+        View.DynamicResolutionOptions dynamicResolution = new View.DynamicResolutionOptions();
+        dynamicResolution.enabled = level.minScale < 1f;
+        dynamicResolution.minScale = level.minScale;
+        dynamicResolution.maxScale = level.maxScale;
+        View.MultiSampleAntiAliasingOptions msaa = new View.MultiSampleAntiAliasingOptions();
+        msaa.enabled = level.msaaSamples > 1;
+        msaa.sampleCount = Math.max(1, level.msaaSamples);
+        for (View v : new View[] {view, stereoView, eyeViews[CameraRig.LEFT], eyeViews[CameraRig.RIGHT]}) {
+            if (v == null) continue;
+            v.setDynamicResolutionOptions(dynamicResolution);
+            v.setMultiSampleAntiAliasingOptions(msaa);
+            // FXAA only stands in for MSAA; dithering is the other per-pixel pass worth dropping.
+            v.setAntiAliasing(level.fullPostProcessing && !msaa.enabled ? View.AntiAliasing.FXAA : View.AntiAliasing.NONE);
+            v.setDithering(level.fullPostProcessing ? View.Dithering.TEMPORAL : View.Dithering.NONE);
+            v.setShadowingEnabled(level.shadows);
+        }
     }
 
-    private void handleTap(Frame frame, com.google.ar.core.Camera camera) {
-        MotionEvent tap = queuedSingleTaps.poll();
-        if (tap != null && camera.getTrackingState() == TrackingState.TRACKING) {
-            if (currentAssetIndex == -1) {
-                runOnUiThread(() -> Toast.makeText(this, "Load a model first", Toast.LENGTH_SHORT).show());
-                return;
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private void addThermalListener() {
+        if (thermalListener == null) {
+            thermalListener = status -> {
+                if (frameGovernor.setThermalFloor(thermalFloor(status))) applyQualityLevel();
+                Log.i(TAG, "Thermal status " + status + "; quality level " + frameGovernor.getLevelIndex());
+            };
+        }
+        // Called back through the command queue, right away with the current status.
+        ((PowerManager) getSystemService(Context.POWER_SERVICE)).addThermalStatusListener(commands, thermalListener);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private void removeThermalListener() {
+        if (thermalListener != null) {
+            ((PowerManager) getSystemService(Context.POWER_SERVICE)).removeThermalStatusListener(thermalListener);
+        }
+    }
+
+    /** The best quality level allowed at a thermal status. */
+    private int thermalFloor(int status) {
+        int lowest = frameGovernor.getLevelCount() - 1;
+        switch (status) {
+            case PowerManager.THERMAL_STATUS_NONE:
+            case PowerManager.THERMAL_STATUS_LIGHT:
+                return 0;
+            case PowerManager.THERMAL_STATUS_MODERATE:
+                return Math.min(2, lowest);
+            case PowerManager.THERMAL_STATUS_SEVERE:
+                return Math.min(3, lowest);
+            default:
+                return lowest;
+        }
+    }
+
+    private void createStereoViews() {
+        instancedStereo = engine.isStereoSupported();
+        if (instancedStereo) {
+            stereoView = engine.createView();
+            stereoCamera = engine.createCamera(engine.getEntityManager().create());
+            stereoView.setScene(scene);
+            stereoView.setCamera(stereoCamera);
+            View.StereoscopicOptions options = new View.StereoscopicOptions();
+            options.enabled = true;
+            stereoView.setStereoscopicOptions(options);
+        } else {
+            for (int eye = CameraRig.LEFT; eye <= CameraRig.RIGHT; eye++) {
+                eyeViews[eye] = engine.createView();
+                eyeCameras[eye] = engine.createCamera(engine.getEntityManager().create());
+                eyeViews[eye].setScene(scene);
+                eyeViews[eye].setCamera(eyeCameras[eye]);
             }
-            for (HitResult hit : frame.hitTest(tap)) {
-                Trackable trackable = hit.getTrackable();
-                if ((trackable instanceof Plane && ((Plane) trackable).isPoseInPolygon(hit.getHitPose()))
-                        || (trackable instanceof Point
-                        && ((Point) trackable).getOrientationMode() == Point.OrientationMode.ESTIMATED_SURFACE_NORMAL)) {
-                    FilamentAsset assetToPlace = loadedAssets.get(currentAssetIndex);
-                    FilamentAsset.Instance instance = assetToPlace.createInstance();
-                    placedObjects.add(new PlacedObject(instance, currentAssetIndex));
-                    scene.addEntities(instance.getEntities());
-                    float[] modelMatrix = new float[16];
-                    hit.getHitPose().toMatrix(modelMatrix, 0);
-                    int rootTransform = engine.getTransformManager().getInstance(instance.getRoot());
-                    engine.getTransformManager().setTransform(rootTransform, modelMatrix);
-                    break;
-                }
+        }
+        Log.i(TAG, instancedStereo ? "Using instanced stereo" : "Instanced stereo unsupported; rendering one view per eye");
+    }
+
+    private void renderMonocular() {
+        camera.setCustomProjection(cameraRig.projection, CameraRig.NEAR, CameraRig.FAR);
+        camera.setModelMatrix(cameraRig.headModel);
+        long renderStart = System.nanoTime();
+        renderer.render(view);
+        frameStats.record(FrameStats.RENDER_MONO, System.nanoTime() - renderStart);
+        if (thumbnailRequested) captureThumbnail();
+    }
+
+    private void renderStereo() {
+        if (instancedStereo) {
+            stereoCamera.setModelMatrix(cameraRig.headModel);
+            stereoCamera.setEyeModelMatrix(CameraRig.LEFT, cameraRig.eyeOffset[CameraRig.LEFT]);
+            stereoCamera.setEyeModelMatrix(CameraRig.RIGHT, cameraRig.eyeOffset[CameraRig.RIGHT]);
+            stereoCamera.setCustomEyeProjection(cameraRig.eyeProjection, 2, cameraRig.cullingProjection,
+                    CameraRig.NEAR, CameraRig.FAR);
+            long renderStart = System.nanoTime();
+            renderer.render(stereoView);
+            frameStats.record(FrameStats.RENDER_STEREO, System.nanoTime() - renderStart);
+            return;
+        }
+
+        long renderStart = System.nanoTime();
+        for (int eye = CameraRig.LEFT; eye <= CameraRig.RIGHT; eye++) {
+            eyeCameras[eye].setCustomProjection(cameraRig.eyeProjection[eye], CameraRig.NEAR, CameraRig.FAR);
+            eyeCameras[eye].setModelMatrix(cameraRig.eyeModel[eye]);
+            renderer.render(eyeViews[eye]);
+            long renderEnd = System.nanoTime();
+            frameStats.record(eye == CameraRig.LEFT ? FrameStats.RENDER_LEFT : FrameStats.RENDER_RIGHT, renderEnd - renderStart);
+            renderStart = renderEnd;
+        }
+    }
+
+    /**
+     * Binds the textures decoded since the last frame, so models fill in as they finish, and keeps
+     * the selected model's progress on screen current.
+     */
+    private void updateResourceLoads() {
+        for (Iterator<Map.Entry<String, InstancePool>> it = loadingPools.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, InstancePool> entry = it.next();
+            long loadNanos = entry.getValue().updateLoad();
+            if (loadNanos > 0) {
+                it.remove();
+                frameStats.record(FrameStats.ASSET_RESOURCES, loadNanos);
+                Log.i(TAG, String.format(Locale.US, "Loaded resources of %s in %.1f ms",
+                        modelStore.displayName(entry.getKey()), loadNanos / 1e6));
             }
         }
+        InstancePool current = currentAssetIndex != -1 ? loadingPools.get(modelNames.get(currentAssetIndex)) : null;
+        int percent = current != null ? (int) (current.getLoadProgress() * 100) : 100;
+        if (percent != shownLoadPercent) {
+            shownLoadPercent = percent;
+            updateUi();
+        }
+    }
+
+    /** Grows the selected model's spare instances after the frame has been submitted. */
+    private void topUpInstancePool() {
+        if (currentAssetIndex == -1) return;
+        InstancePool pool = assetCache.peek(modelNames.get(currentAssetIndex));
+        if (pool != null) pool.topUp(SPARE_INSTANCES);
+    }
+
+    /** Places the selected model where the oldest queued tap hits a surface, recording the result. */
+    private void handleTap(FrameSource source) {
+        float[] tap = queuedTaps.poll();
+        if (currentAssetIndex == -1) {
+            if (recorder != null) recorder.tap(tap[0], tap[1], null);
+            runOnUiThread(loadModelFirstToast);
+            return;
+        }
+        float[] modelMatrix = cameraRig.placement;
+        boolean hit = source.hitTest(tap[0], tap[1], modelMatrix);
+        if (recorder != null) recorder.tap(tap[0], tap[1], hit ? modelMatrix : null);
+        if (hit) placeAt(modelMatrix);
+    }
+
+    private void placeAt(float[] modelMatrix) {
+        String modelName = modelNames.get(currentAssetIndex);
+        InstancePool pool = assetCache.get(modelName);
+        if (pool == null) {
+            runOnUiThread(modelLoadingToast);
+            return;
+        }
+        FilamentInstance instance = pool.acquire();
+        if (instance == null) {
+            Log.e(TAG, "Could not instance " + modelName);
+            return;
+        }
+        assetCache.pin(modelName);
+        scene.addEntities(instance.getEntities());
+        int rootTransform = engine.getTransformManager().getInstance(instance.getRoot());
+        engine.getTransformManager().setTransform(rootTransform, modelMatrix);
+        long key = sceneStore.cellOf(modelMatrix, 0);
+        // Pages the cell in first if it was out, so its saved objects are read before this one is journaled.
+        cellStreamer.addCell(key);
+        ResidentCell cell = residentCells.get(key);
+        if (cell == null) {
+            cell = new ResidentCell(key);
+            residentCells.put(key, cell);
+        }
+        int id = sceneStore.newObjectId();
+        float[] transform = modelMatrix.clone();
+        float[] bounds = pool.getBounds().clone();
+        journal("placement", () -> {
+            sceneStore.place(id, modelName, transform, 0);
+            // Only now is the model known to the store if this is its first object.
+            sceneStore.setModelBounds(modelName, bounds);
+        });
+        addPlacedObject(new PlacedObject(instance, currentAssetIndex, id, cell), pool, modelMatrix);
     }
 
     @Override
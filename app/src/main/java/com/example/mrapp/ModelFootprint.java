@@ -0,0 +1,79 @@
+package com.example.mrapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Estimates how much memory a .glb occupies once loaded: its buffer bytes plus every embedded
+ * image decoded to RGBA8 with a full mip chain. Image sizes come from the PNG/JPEG headers, so
+ * nothing is decoded.
+ */
+public final class ModelFootprint {
+    private static final int GLB_HEADER_SIZE = 12;
+    private static final int CHUNK_JSON = 0x4E4F534A;
+    private static final int CHUNK_BIN = 0x004E4942;
+
+    private ModelFootprint() {}
+
+    public static long estimate(ByteBuffer source) {
+        ByteBuffer glb = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        long bytes = glb.remaining();
+        try {
+            int base = glb.position();
+            int jsonLength = glb.getInt(base + GLB_HEADER_SIZE);
+            if (glb.getInt(base + GLB_HEADER_SIZE + 4) != CHUNK_JSON) return bytes;
+            byte[] json = new byte[jsonLength];
+            glb.position(base + GLB_HEADER_SIZE + 8);
+            glb.get(json);
+            int binChunk = base + GLB_HEADER_SIZE + 8 + jsonLength;
+            int binStart = binChunk + 8;
+            if (binStart > glb.limit() || glb.getInt(binChunk + 4) != CHUNK_BIN) return bytes;
+
+            JSONObject gltf = new JSONObject(new String(json, StandardCharsets.UTF_8));
+            JSONArray images = gltf.optJSONArray("images");
+            JSONArray views = gltf.optJSONArray("bufferViews");
+            if (images == null || views == null) return bytes;
+            for (int i = 0; i < images.length(); i++) {
+                JSONObject image = images.getJSONObject(i);
+                if (!image.has("bufferView")) continue;
+                JSONObject view = views.getJSONObject(image.getInt("bufferView"));
+                int offset = binStart + view.optInt("byteOffset", 0);
+                int length = view.getInt("byteLength");
+                long texels = texelCount(glb, offset, length);
+                bytes += texels * 4 * 4 / 3;
+            }
+        } catch (JSONException | RuntimeException e) {
+            // Unreadable layout: fall back to the file size alone.
+        }
+        return bytes;
+    }
+
+    /** Width times height from a PNG or baseline/progressive JPEG header, or 0 if unknown. */
+    static long texelCount(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer image = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (length >= 24 && image.getInt(offset) == 0x89504E47) {
+            return (long) image.getInt(offset + 16) * image.getInt(offset + 20);
+        }
+        if (length >= 4 && (image.getShort(offset) & 0xFFFF) == 0xFFD8) {
+            int p = offset + 2;
+            int end = offset + length;
+            while (p + 9 < end) {
+                if ((image.get(p) & 0xFF) != 0xFF) return 0;
+                int marker = image.get(p + 1) & 0xFF;
+                int segmentLength = image.getShort(p + 2) & 0xFFFF;
+                if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                    int height = image.getShort(p + 5) & 0xFFFF;
+                    int width = image.getShort(p + 7) & 0xFFFF;
+                    return (long) width * height;
+                }
+                p += 2 + segmentLength;
+            }
+        }
+        return 0;
+    }
+}
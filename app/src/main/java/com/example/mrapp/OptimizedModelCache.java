@@ -0,0 +1,146 @@
+package com.example.mrapp;
+
+import com.example.mrapp.core.TextureBundle;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Optimized copies of stored models, produced by {@link GlbOptimizer} and keyed by the source's
+ * content key, so a model is optimized once per optimizer version. Models the optimizer cannot
+ * rewrite leave an empty marker file so they are not retried on every start. With texture
+ * transcoding on, a model's textures move into a {@link TextureBundle} stored beside it.
+ */
+public final class OptimizedModelCache {
+    /**
+     * Bump when the output of {@link GlbOptimizer} or {@link TextureTranscoder} changes; older
+     * entries are deleted on open.
+     */
+    private static final String VERSION_SUFFIX = ".opt2";
+    private static final String OPTIMIZED_EXTENSION = VERSION_SUFFIX + ".glb";
+    private static final String TEXTURES_EXTENSION = VERSION_SUFFIX + ".tex";
+    private static final String SKIPPED_EXTENSION = VERSION_SUFFIX + ".skip";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    /** Null until {@link #setTranscodeTextures} is called. */
+    private volatile Boolean transcodeTextures;
+
+    public OptimizedModelCache(File directory) {
+        this.directory = directory;
+    }
+
+    /** Creates the directory and deletes entries from interrupted runs or older optimizer versions. */
+    public void open() throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) throw new IOException("Cannot create " + directory);
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(OPTIMIZED_EXTENSION) && !name.endsWith(TEXTURES_EXTENSION)
+                    && !name.endsWith(SKIPPED_EXTENSION)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Only for models optimized from now on; set it once the GPU's formats are known. Until then
+     * {@link #optimize} leaves models alone, so none is stored without the bundle it should have.
+     */
+    public void setTranscodeTextures(boolean transcodeTextures) {
+        this.transcodeTextures = transcodeTextures;
+    }
+
+    /** The optimized file for {@code key}, or null if there is none (yet). */
+    public File get(String key) {
+        File file = new File(directory, baseName(key) + OPTIMIZED_EXTENSION);
+        return file.exists() ? file : null;
+    }
+
+    /** The texture bundle that goes with {@link #get}'s model, or null if its textures were kept. */
+    public File getTextures(String key) {
+        File file = new File(directory, baseName(key) + TEXTURES_EXTENSION);
+        return file.exists() ? file : null;
+    }
+
+    /** Drops the optimized copy of {@code key}, for example after it failed to load. */
+    public void invalidate(String key) {
+        String base = baseName(key);
+        new File(directory, base + OPTIMIZED_EXTENSION).delete();
+        new File(directory, base + TEXTURES_EXTENSION).delete();
+    }
+
+    public boolean isDone(String key) {
+        return get(key) != null || new File(directory, baseName(key) + SKIPPED_EXTENSION).exists();
+    }
+
+    /**
+     * Optimizes {@code source} into the cache unless already done. The texture bundle is stored
+     * before the model, so a model with a bundle never appears without it. Returns a one-line summary, or
+     * null if the model is not one the optimizer can rewrite or texture support is not known yet. A model the optimizer fails on is
+     * marked as skipped before the error is rethrown.
+     */
+    public String optimize(String key, File source) throws IOException {
+        Boolean transcodeTextures = this.transcodeTextures;
+        if (transcodeTextures == null || isDone(key)) return null;
+        String base = baseName(key);
+        File tempFile = new File(directory, base + TEMP_SUFFIX);
+        File texturesTempFile = new File(directory, base + TEXTURES_EXTENSION + TEMP_SUFFIX);
+        try (FileChannel in = new FileInputStream(source).getChannel()) {
+            GlbOptimizer optimizer = null;
+            if (key.endsWith(".glb")) {
+                MappedByteBuffer glb = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+                optimizer = GlbOptimizer.parse(glb);
+            }
+            if (optimizer == null) {
+                markSkipped(base);
+                return null;
+            }
+            optimizer.optimize();
+            String summary = optimizer.summary();
+            if (transcodeTextures) {
+                TextureTranscoder transcoder = new TextureTranscoder();
+                TextureBundle textures = transcoder.transcode(optimizer);
+                if (textures != null) {
+                    try (FileChannel out = new FileOutputStream(texturesTempFile).getChannel()) {
+                        textures.writeTo(out);
+                        out.force(false);
+                    }
+                    if (!texturesTempFile.renameTo(new File(directory, base + TEXTURES_EXTENSION))) {
+                        throw new IOException("Cannot store textures of " + key);
+                    }
+                    summary += "; " + transcoder.summary();
+                }
+            }
+            try (FileChannel out = new FileOutputStream(tempFile).getChannel()) {
+                optimizer.writeTo(out);
+                out.force(false);
+            }
+            if (!tempFile.renameTo(new File(directory, base + OPTIMIZED_EXTENSION))) {
+                throw new IOException("Cannot store optimized " + key);
+            }
+            return summary;
+        } catch (IOException e) {
+            tempFile.delete();
+            texturesTempFile.delete();
+            new File(directory, base + TEXTURES_EXTENSION).delete();
+            markSkipped(base);
+            throw e;
+        }
+    }
+
+    private void markSkipped(String base) throws IOException {
+        File marker = new File(directory, base + SKIPPED_EXTENSION);
+        if (!marker.exists() && !marker.createNewFile()) throw new IOException("Cannot write " + marker);
+    }
+
+    private static String baseName(String key) {
+        int dot = key.indexOf('.');
+        return dot < 0 ? key : key.substring(0, dot);
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.mrapp;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.example.mrapp.core.EtcCompressor;
+import com.example.mrapp.core.TextureBundle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Import pass that moves a model's PNG and JPEG textures into a {@link TextureBundle} of
+ * mipmapped ETC2 textures, so loading skips image decoding and the GPU holds 0.5 or 1 byte per
+ * texel instead of 4.
+ *
+ * <p>The glTF keeps its textures, but their images become a shared 1x1 placeholder: gltfio still
+ * builds materials that sample each map, and {@link CompressedTextures} swaps the real texture in
+ * after loading. Transcoded materials get a {@code #mat<index>} name suffix so their material
+ * instances can be matched back to the bundle's bindings. Only images read exclusively through the
+ * five core material slots are transcoded; anything used by an extension is left alone.
+ */
+public final class TextureTranscoder {
+    private static final String MATERIAL_SUFFIX = "#mat";
+    private static final int REPEAT = 10497;
+
+    private static final int USAGE_NONE = 0;
+    private static final int USAGE_LINEAR = 1;
+    private static final int USAGE_SRGB = 2;
+    private static final int USAGE_NORMAL = 3;
+    private static final int USAGE_EXCLUDED = -1;
+
+    /** Core material slots: path in the material and the gltfio sampler parameter; usage below. */
+    private static final String[][] SLOTS = {
+            {"pbrMetallicRoughness/baseColorTexture", "baseColorMap"},
+            {"pbrMetallicRoughness/metallicRoughnessTexture", "metallicRoughnessMap"},
+            {"normalTexture", "normalMap"},
+            {"occlusionTexture", "occlusionMap"},
+            {"emissiveTexture", "emissiveMap"},
+    };
+    private static final int[] SLOT_USAGE = {USAGE_SRGB, USAGE_LINEAR, USAGE_NORMAL, USAGE_LINEAR, USAGE_SRGB};
+
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double c = i / 255.0;
+            SRGB_TO_LINEAR[i] = (float) (c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4));
+        }
+    }
+
+    private final EtcCompressor compressor = new EtcCompressor();
+    private int transcodedImages;
+    private long sourceBytes;
+    private long uncompressedBytes;
+    private long compressedBytes;
+
+    /** Returns the glTF material index in a name written by this pass, or -1. */
+    public static int materialIndex(String name) {
+        if (name == null) return -1;
+        int at = name.lastIndexOf(MATERIAL_SUFFIX);
+        if (at < 0) return -1;
+        try {
+            return Integer.parseInt(name.substring(at + MATERIAL_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Transcodes the eligible images of {@code model} and rewrites the model to use placeholders
+     * for them. Returns null, leaving the model untouched, if no image is eligible.
+     */
+    public TextureBundle transcode(GlbOptimizer model) throws IOException {
+        try {
+            JSONObject gltf = model.json();
+            JSONArray materials = gltf.optJSONArray("materials");
+            JSONArray textures = gltf.optJSONArray("textures");
+            JSONArray images = gltf.optJSONArray("images");
+            if (materials == null || textures == null || images == null) return null;
+
+            int[] usage = new int[images.length()];
+            for (int t = 0; t < textures.length(); t++) {
+                JSONObject texture = textures.getJSONObject(t);
+                // KHR_texture_basisu, EXT_texture_webp and friends pick their own source.
+                if (texture.has("extensions") && texture.has("source")) usage[texture.getInt("source")] = USAGE_EXCLUDED;
+            }
+            List<int[]> slotUses = new ArrayList<>(); // {material, slot, texture}
+            for (int m = 0; m < materials.length(); m++) {
+                JSONObject material = materials.getJSONObject(m);
+                JSONObject extensions = material.optJSONObject("extensions");
+                boolean specularGlossiness = extensions != null && extensions.has("KHR_materials_pbrSpecularGlossiness");
+                List<String[]> found = new ArrayList<>();
+                collectTextureInfos(material, "", found);
+                for (String[] info : found) {
+                    JSONObject texture = textures.getJSONObject(Integer.parseInt(info[1]));
+                    if (!texture.has("source")) continue;
+                    int image = texture.getInt("source");
+                    int slot = specularGlossiness ? -1 : slotIndex(info[0]);
+                    int slotUsage = slot < 0 ? USAGE_EXCLUDED : SLOT_USAGE[slot];
+                    if (usage[image] == USAGE_NONE) usage[image] = slotUsage;
+                    else if (usage[image] != slotUsage) usage[image] = USAGE_EXCLUDED;
+                    if (slot >= 0) slotUses.add(new int[] {m, slot, Integer.parseInt(info[1])});
+                }
+            }
+
+            TextureBundle bundle = new TextureBundle();
+            int[] bundleImage = new int[images.length()];
+            Arrays.fill(bundleImage, -1);
+            int placeholderView = -1;
+            for (int i = 0; i < images.length(); i++) {
+                if (usage[i] <= USAGE_NONE) continue;
+                JSONObject image = images.getJSONObject(i);
+                if (!image.has("bufferView")) continue;
+                TextureBundle.Image compressed = compress(model.view(image.getInt("bufferView")), usage[i]);
+                if (compressed == null) continue;
+                bundleImage[i] = bundle.addImage(compressed);
+                if (placeholderView < 0) placeholderView = model.addView(ByteBuffer.wrap(placeholderPng()), 0, 0);
+                image.put("bufferView", placeholderView);
+                image.put("mimeType", "image/png");
+            }
+            if (bundle.getImages().isEmpty()) return null;
+
+            JSONArray samplers = gltf.optJSONArray("samplers");
+            boolean[] renamed = new boolean[materials.length()];
+            for (int[] use : slotUses) {
+                JSONObject texture = textures.getJSONObject(use[2]);
+                int image = bundleImage[texture.getInt("source")];
+                if (image < 0) continue;
+                int wrapS = REPEAT, wrapT = REPEAT;
+                if (samplers != null && texture.has("sampler")) {
+                    JSONObject sampler = samplers.getJSONObject(texture.getInt("sampler"));
+                    wrapS = sampler.optInt("wrapS", REPEAT);
+                    wrapT = sampler.optInt("wrapT", REPEAT);
+                }
+                bundle.addBinding(new TextureBundle.Binding(use[0], SLOTS[use[1]][1], image, wrapS, wrapT));
+                if (!renamed[use[0]]) {
+                    JSONObject material = materials.getJSONObject(use[0]);
+                    material.put("name", material.optString("name", "") + MATERIAL_SUFFIX + use[0]);
+                    renamed[use[0]] = true;
+                }
+            }
+            compressedBytes += bundle.getDataSize();
+            return bundle;
+        } catch (JSONException | RuntimeException e) {
+            throw new IOException("Cannot transcode textures", e);
+        }
+    }
+
+    public String summary() {
+        return String.format(Locale.US, "%d textures transcoded, %d KB encoded, GPU %d KB -> %d KB",
+                transcodedImages, sourceBytes / 1024, uncompressedBytes / 1024, compressedBytes / 1024);
+    }
+
+    /** Collects {path, texture index} for every textureInfo in {@code object}, extensions included. */
+    private static void collectTextureInfos(JSONObject object, String path, List<String[]> out) throws JSONException {
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            JSONObject child = object.optJSONObject(key);
+            if (child == null) continue;
+            String childPath = path.isEmpty() ? key : path + "/" + key;
+            if (key.endsWith("Texture") && child.has("index")) {
+                out.add(new String[] {childPath, String.valueOf(child.getInt("index"))});
+            } else {
+                collectTextureInfos(child, childPath, out);
+            }
+        }
+    }
+
+    private static int slotIndex(String path) {
+        for (int i = 0; i < SLOTS.length; i++) if (SLOTS[i][0].equals(path)) return i;
+        return -1;
+    }
+
+    /** Decodes an encoded image and compresses its full mip chain; null if it cannot be decoded. */
+    private TextureBundle.Image compress(ByteBuffer encoded, int usage) {
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inPremultiplied = false;
+        options.inScaled = false;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (bitmap == null) return null;
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        bitmap.recycle();
+
+        boolean withAlpha = usage == USAGE_SRGB && EtcCompressor.hasAlpha(pixels, pixels.length);
+        int format = usage == USAGE_SRGB
+                ? (withAlpha ? TextureBundle.FORMAT_SRGBA8 : TextureBundle.FORMAT_SRGB8)
+                : TextureBundle.FORMAT_RGB8;
+        List<ByteBuffer> levels = new ArrayList<>();
+        int w = width, h = height;
+        while (true) {
+            byte[] blocks = new byte[EtcCompressor.compressedSize(w, h, withAlpha)];
+            compressor.compress(pixels, w, h, withAlpha, blocks);
+            levels.add(ByteBuffer.wrap(blocks));
+            uncompressedBytes += 4L * w * h;
+            if (w == 1 && h == 1) break;
+            pixels = downsample(pixels, w, h, usage);
+            w = Math.max(1, w / 2);
+            h = Math.max(1, h / 2);
+        }
+        transcodedImages++;
+        sourceBytes += bytes.length;
+        return new TextureBundle.Image(format, width, height, levels.toArray(new ByteBuffer[0]));
+    }
+
+    /**
+     * Box-filters to the next mip level. Colour textures are averaged in linear light and normal
+     * maps are renormalized; alpha and everything else is averaged as stored.
+     */
+    private static int[] downsample(int[] src, int width, int height, int usage) {
+        int w = Math.max(1, width / 2);
+        int h = Math.max(1, height / 2);
+        int[] dst = new int[w * h];
+        float[] sum = new float[4];
+        for (int y = 0; y < h; y++) {
+            int y0 = Math.min(2 * y, height - 1) * width;
+            int y1 = Math.min(2 * y + 1, height - 1) * width;
+            for (int x = 0; x < w; x++) {
+                int x0 = Math.min(2 * x, width - 1);
+                int x1 = Math.min(2 * x + 1, width - 1);
+                Arrays.fill(sum, 0f);
+                accumulate(src[y0 + x0], usage, sum);
+                accumulate(src[y0 + x1], usage, sum);
+                accumulate(src[y1 + x0], usage, sum);
+                accumulate(src[y1 + x1], usage, sum);
+                dst[y * w + x] = resolve(sum, usage);
+            }
+        }
+        return dst;
+    }
+
+    private static void accumulate(int pixel, int usage, float[] sum) {
+        sum[3] += pixel >>> 24;
+        for (int c = 0; c < 3; c++) {
+            int value = (pixel >> (16 - 8 * c)) & 0xFF;
+            switch (usage) {
+                case USAGE_SRGB:
+                    sum[c] += SRGB_TO_LINEAR[value];
+                    break;
+                case USAGE_NORMAL:
+                    sum[c] += value / 127.5f - 1f;
+                    break;
+                default:
+                    sum[c] += value;
+                    break;
+            }
+        }
+    }
+
+    private static int resolve(float[] sum, int usage) {
+        int[] rgb = new int[3];
+        if (usage == USAGE_NORMAL) {
+            float length = (float) Math.sqrt(sum[0] * sum[0] + sum[1] * sum[1] + sum[2] * sum[2]);
+            for (int c = 0; c < 3; c++) {
+                float n = length > 0f ? sum[c] / length : (c == 2 ? 1f : 0f);
+                rgb[c] = Math.round((n + 1f) * 127.5f);
+            }
+        } else {
+            for (int c = 0; c < 3; c++) {
+                float value = sum[c] / 4f;
+                if (usage == USAGE_SRGB) {
+                    value = (float) (value <= 0.0031308 ? value * 12.92 : 1.055 * Math.pow(value, 1 / 2.4) - 0.055) * 255f;
+                }
+                rgb[c] = Math.round(value);
+            }
+        }
+        int alpha = Math.round(sum[3] / 4f);
+        return (clamp(alpha) << 24) | (clamp(rgb[0]) << 16) | (clamp(rgb[1]) << 8) | clamp(rgb[2]);
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+    /** White 1x1 PNG shared by every transcoded image. */
+    private static byte[] placeholderPng() {
+        Bitmap bitmap = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.WHITE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+}
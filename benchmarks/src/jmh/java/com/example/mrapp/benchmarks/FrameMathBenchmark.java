@@ -0,0 +1,85 @@
+package com.example.mrapp.benchmarks;
+
+import com.example.mrapp.core.CameraRig;
+import com.example.mrapp.core.Mat4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** The camera math the render thread does every frame, step by step and as a whole. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameMathBenchmark {
+    private static final float EYE_ASPECT = 0.5f * 2340 / 1080;
+
+    private final float[] bounds = {-0.3f, 0f, -0.3f, 0.3f, 1.2f, 0.3f};
+    private final float[] model = new float[16];
+    private final float[] worldBounds = new float[6];
+    private CameraRig rig;
+    private float headX;
+
+    @Setup
+    public void setUp() {
+        rig = Scenes.camera();
+        Scenes.pose(new Random(42), model);
+    }
+
+    /** Moves the head a little so no step can be hoisted out of the loop. */
+    private void moveHead() {
+        headX = headX > 1f ? -1f : headX + 1e-3f;
+        rig.view[12] = headX;
+    }
+
+    @Benchmark
+    public float mono() {
+        moveHead();
+        rig.update();
+        return rig.headModel[12];
+    }
+
+    @Benchmark
+    public double stereo() {
+        moveHead();
+        rig.updateStereo(EYE_ASPECT);
+        return rig.eyeProjection[CameraRig.RIGHT][8];
+    }
+
+    @Benchmark
+    public float cullPlanes() {
+        moveHead();
+        rig.updateCullPlanes(30f, 0.5f);
+        return rig.cullPlanes[3];
+    }
+
+    @Benchmark
+    public float screenRay() {
+        moveHead();
+        rig.screenRay(540f, 1170f, 1080, 2340);
+        return rig.rayDirection[0];
+    }
+
+    @Benchmark
+    public float transformBounds() {
+        model[12] += 1e-3f;
+        Mat4.transformBounds(worldBounds, 0, model, bounds);
+        return worldBounds[0];
+    }
+
+    /** One stereo frame: eye matrices plus culling planes. */
+    @Benchmark
+    public float stereoFrame() {
+        moveHead();
+        rig.updateStereo(EYE_ASPECT);
+        rig.updateCullPlanes(30f, 0.5f);
+        return rig.cullPlanes[3];
+    }
+}
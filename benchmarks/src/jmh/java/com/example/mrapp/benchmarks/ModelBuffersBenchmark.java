@@ -0,0 +1,84 @@
+package com.example.mrapp.benchmarks;
+
+import com.example.mrapp.core.ModelBuffers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting a model file's bytes to the loader: {@link ModelBuffers#open}, against reading the whole
+ * file into a heap array as the app did before. Both read every byte, as the glTF parser does.
+ * Run with {@code -prof gc} to compare the Java heap each allocates per load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ModelBuffersBenchmark {
+    @Param({"4", "32"})
+    public int megabytes;
+
+    private final ModelBuffers buffers = new ModelBuffers();
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("model", ".glb");
+        byte[] chunk = new byte[1 << 20];
+        Random random = new Random(42);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < megabytes; i++) {
+                random.nextBytes(chunk);
+                out.write(chunk);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public long mapped() throws IOException {
+        ByteBuffer buffer = buffers.open(file);
+        long sum = sum(buffer);
+        buffers.release(buffer);
+        return sum;
+    }
+
+    /** The old path: {@code InputStream.readAllBytes}, which grows its array as it reads, then wrap. */
+    @Benchmark
+    public long heapArray() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(chunk)) != -1) bytes.write(chunk, 0, n);
+        }
+        return sum(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    private static long sum(ByteBuffer buffer) {
+        long sum = 0;
+        while (buffer.remaining() >= 8) sum += buffer.getLong();
+        return sum;
+    }
+}
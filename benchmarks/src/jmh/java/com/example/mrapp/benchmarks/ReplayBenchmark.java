@@ -0,0 +1,123 @@
+package com.example.mrapp.benchmarks;
+
+import com.example.mrapp.core.CameraRig;
+import com.example.mrapp.core.FrameStats;
+import com.example.mrapp.core.HeadlessReplay;
+import com.example.mrapp.core.Mat4;
+import com.example.mrapp.core.SessionRecorder;
+import com.example.mrapp.core.SessionTrace;
+import com.example.mrapp.core.TiledSceneStore;
+import com.example.mrapp.core.TraceFrameSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a whole session trace through {@link HeadlessReplay} into an empty {@link TiledSceneStore}.
+ * Pass {@code -p trace=<file>} to replay a trace recorded on a device (launch the app with the
+ * {@code record} extra and pull it from {@code files/traces}); by default a synthetic one-minute
+ * session is generated. Run with {@code -prof gc} to see allocations per replay.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReplayBenchmark {
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 2340;
+    private static final int SYNTHETIC_FRAMES = 3600;
+
+    @Param({""})
+    public String trace;
+
+    @Param({"false", "true"})
+    public boolean stereo;
+
+    private byte[] traceBytes;
+    private File directory;
+    private TiledSceneStore store;
+
+    @Setup(Level.Trial)
+    public void loadTrace() throws IOException {
+        traceBytes = trace.isEmpty() ? syntheticTrace(SYNTHETIC_FRAMES, 42) : Files.readAllBytes(new File(trace).toPath());
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("replay").toFile();
+        store = new TiledSceneStore(directory);
+        store.open();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        store.close();
+        deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public FrameStats replay() throws IOException {
+        try (SessionTrace session = new SessionTrace(Channels.newChannel(new ByteArrayInputStream(traceBytes)))) {
+            HeadlessReplay replay = new HeadlessReplay(store, HeadlessReplay.DEFAULT_MODEL_BOUNDS);
+            return replay.run(new TraceFrameSource(session), VIEW_WIDTH, VIEW_HEIGHT, stereo);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) for (File child : children) deleteRecursively(child);
+        file.delete();
+    }
+
+    /**
+     * A session of a user turning slowly on the spot at 60 Hz, placing an object every half second
+     * within a few meters, removing one every five seconds, and losing tracking for a second.
+     */
+    static byte[] syntheticTrace(int frames, long seed) throws IOException {
+        Random random = new Random(seed);
+        CameraRig rig = Scenes.camera();
+        float[] pose = new float[16];
+        float[] view = new float[16];
+        float[] hit = new float[16];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SessionRecorder recorder = new SessionRecorder(Channels.newChannel(bytes))) {
+            for (int frame = 0; frame < frames; frame++) {
+                double yaw = frame * 0.002;
+                Mat4.setIdentity(pose);
+                pose[0] = (float) Math.cos(yaw);
+                pose[2] = (float) -Math.sin(yaw);
+                pose[8] = (float) Math.sin(yaw);
+                pose[10] = (float) Math.cos(yaw);
+                pose[13] = 1.5f;
+                Mat4.invertRigid(view, pose);
+                boolean tracking = frame < 1000 || frame >= 1060;
+                recorder.beginFrame(frame * 16_666_667L, tracking, view, rig.projection);
+                if (tracking && frame % 30 == 0) {
+                    Scenes.pose(random, hit);
+                    hit[12] *= 0.1f;
+                    hit[14] *= 0.1f;
+                    recorder.tap(random.nextFloat() * VIEW_WIDTH, random.nextFloat() * VIEW_HEIGHT, hit);
+                }
+                if (tracking && frame % 300 == 299) recorder.pick(VIEW_WIDTH / 2f, VIEW_HEIGHT / 2f);
+                recorder.endFrame();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
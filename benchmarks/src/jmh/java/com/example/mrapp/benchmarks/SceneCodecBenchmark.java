@@ -0,0 +1,51 @@
+package com.example.mrapp.benchmarks;
+
+import com.example.mrapp.core.SceneCodec;
+import com.example.mrapp.core.SceneData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+/** Snapshot save and load through {@link SceneCodec}, in memory so the codec is all that is measured. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SceneCodecBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int objects;
+
+    private SceneData scene;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        scene = Scenes.random(objects, 42);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SceneCodec.write(scene, Channels.newChannel(out));
+        encoded = out.toByteArray();
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length);
+        SceneCodec.write(scene, Channels.newChannel(out));
+        return out.size();
+    }
+
+    @Benchmark
+    public SceneData read() throws IOException {
+        return SceneCodec.read(Channels.newChannel(new ByteArrayInputStream(encoded)));
+    }
+}
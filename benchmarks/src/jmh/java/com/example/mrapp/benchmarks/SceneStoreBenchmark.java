@@ -0,0 +1,75 @@
+package com.example.mrapp.benchmarks;
+
+import com.example.mrapp.core.SceneData;
+import com.example.mrapp.core.SceneStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journal appends and compaction through {@link SceneStore} on the local file system; each
+ * iteration starts from an empty store in a fresh temp directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SceneStoreBenchmark {
+    private static final int COMPACTED_OBJECTS = 10000;
+
+    private final Random random = new Random(42);
+    private final float[] transform = new float[SceneData.TRANSFORM_SIZE];
+    private File directory;
+    private SceneStore store;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("scene-store").toFile();
+        store = new SceneStore(directory);
+        store.open();
+        for (int i = 0; i < COMPACTED_OBJECTS; i++) {
+            Scenes.pose(random, transform);
+            store.place(store.newObjectId(), "model.glb", transform, 0);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        store.close();
+        deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public int place() throws IOException {
+        Scenes.pose(random, transform);
+        int id = store.newObjectId();
+        store.place(id, "model.glb", transform, 0);
+        return id;
+    }
+
+    /** Snapshot of at least {@link #COMPACTED_OBJECTS} objects, including the fsync. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void compact() throws IOException {
+        store.compact();
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) for (File child : children) deleteRecursively(child);
+        file.delete();
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.mrapp.benchmarks;
+
+import com.example.mrapp.core.CameraRig;
+import com.example.mrapp.core.Mat4;
+import com.example.mrapp.core.SceneData;
+
+import java.util.Random;
+
+/** Deterministic synthetic scenes and cameras shared by the benchmarks. */
+final class Scenes {
+    /** Side of the square floor area objects are scattered over, in meters. */
+    static final float EXTENT = 100f;
+
+    private Scenes() {}
+
+    /** A scene of {@code objects} placements spread over four models. */
+    static SceneData random(int objects, long seed) {
+        Random random = new Random(seed);
+        SceneData scene = new SceneData(objects);
+        for (int i = 0; i < 4; i++) scene.addModel("model-" + i + ".glb");
+        float[] transform = new float[SceneData.TRANSFORM_SIZE];
+        for (int id = 0; id < objects; id++) {
+            pose(random, transform);
+            scene.addObject(id, random.nextInt(4), transform, 0);
+        }
+        return scene;
+    }
+
+    /** A pose on the floor with a random yaw, as tap-to-place produces. */
+    static void pose(Random random, float[] m) {
+        double yaw = random.nextDouble() * 2 * Math.PI;
+        float c = (float) Math.cos(yaw);
+        float s = (float) Math.sin(yaw);
+        Mat4.setIdentity(m);
+        m[0] = c;
+        m[2] = -s;
+        m[8] = s;
+        m[10] = c;
+        m[12] = (random.nextFloat() - 0.5f) * EXTENT;
+        m[13] = random.nextFloat() * 0.05f;
+        m[14] = (random.nextFloat() - 0.5f) * EXTENT;
+    }
+
+    /** A phone-like camera 1.5 m above the middle of the floor, looking along -z. */
+    static CameraRig camera() {
+        CameraRig rig = new CameraRig();
+        double[] projection = new double[16];
+        double near = CameraRig.NEAR;
+        Mat4.setFrustum(projection, -0.45 * near, 0.45 * near, -0.8 * near, 0.8 * near, near, CameraRig.FAR);
+        for (int i = 0; i < 16; i++) rig.projection[i] = (float) projection[i];
+        Mat4.setTranslation(rig.view, 0f, -1.5f, 0f);
+        rig.update();
+        return rig;
+    }
+}
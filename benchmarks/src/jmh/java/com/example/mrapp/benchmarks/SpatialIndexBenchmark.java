@@ -0,0 +1,98 @@
+package com.example.mrapp.benchmarks;
+
+import com.example.mrapp.core.CameraRig;
+import com.example.mrapp.core.Mat4;
+import com.example.mrapp.core.SceneData;
+import com.example.mrapp.core.SpatialIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Picking, culling and moving objects in {@link SpatialIndex}, with objects spread over a 100 m floor. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpatialIndexBenchmark {
+    private static final float[] MODEL_BOUNDS = {-0.3f, 0f, -0.3f, 0.3f, 1.2f, 0.3f};
+    private static final int QUERY_POINTS = 1024;
+
+    @Param({"1000", "10000", "100000"})
+    public int objects;
+
+    private final SpatialIndex<Object> index = new SpatialIndex<>();
+    private final float[] transform = new float[SceneData.TRANSFORM_SIZE];
+    private final float[] box = new float[6];
+    private final int[] nearest = new int[8];
+    private final float[] queryPoints = new float[QUERY_POINTS * 3];
+    private final Random random = new Random(42);
+    private int[] proxies;
+    private CameraRig rig;
+    private int visited;
+    private final SpatialIndex.Visitor<Object> visitor = (proxy, item) -> visited++;
+    private int next;
+    private int moved;
+
+    @Setup
+    public void setUp() {
+        proxies = new int[objects];
+        for (int i = 0; i < objects; i++) {
+            Scenes.pose(random, transform);
+            Mat4.transformBounds(box, 0, transform, MODEL_BOUNDS);
+            proxies[i] = index.add(i, box, 0);
+        }
+        for (int i = 0; i < queryPoints.length; i += 3) {
+            queryPoints[i] = (random.nextFloat() - 0.5f) * Scenes.EXTENT;
+            queryPoints[i + 1] = 0.5f;
+            queryPoints[i + 2] = (random.nextFloat() - 0.5f) * Scenes.EXTENT;
+        }
+        rig = Scenes.camera();
+        rig.updateCullPlanes(30f, 0.5f);
+    }
+
+    private int nextPoint() {
+        next = (next + 1) & (QUERY_POINTS - 1);
+        return next * 3;
+    }
+
+    @Benchmark
+    public int queryFrustum() {
+        visited = 0;
+        index.queryFrustum(rig.cullPlanes, visitor);
+        return visited;
+    }
+
+    /** A pick ray from eye height down through a random floor point. */
+    @Benchmark
+    public int raycast() {
+        int p = nextPoint();
+        return index.raycast(queryPoints[p], 1.5f, queryPoints[p + 2], 0.3f, -1f, 0.2f, 50f);
+    }
+
+    @Benchmark
+    public int nearest() {
+        int p = nextPoint();
+        return index.nearest(queryPoints[p], queryPoints[p + 1], queryPoints[p + 2], nearest.length, nearest);
+    }
+
+    /** Moves objects in turn to a random spot, so each leaves its enlarged box and is re-inserted. */
+    @Benchmark
+    public int move() {
+        int p = nextPoint();
+        int proxy = proxies[moved++ % proxies.length];
+        for (int i = 0; i < 3; i++) {
+            box[i] = queryPoints[p + i] + MODEL_BOUNDS[i];
+            box[3 + i] = queryPoints[p + i] + MODEL_BOUNDS[3 + i];
+        }
+        index.update(proxy, box, 0);
+        return proxy;
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.mrapp.benchmarks;
+
+import com.example.mrapp.core.EtcCompressor;
+import com.example.mrapp.core.TextureBundle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Getting one base colour texture ready for upload: decoding the PNG or JPEG embedded in the
+ * model to RGBA8, as every load did before, against mapping the ETC2 levels the import wrote.
+ * ImageIO stands in for BitmapFactory. {@link #encodeAtImport} is the one-off cost at import.
+ * Run with {@code -prof gc} to compare the Java heap each allocates per load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TextureLoadBenchmark {
+    @Param({"1024", "2048"})
+    public int size;
+
+    private final EtcCompressor compressor = new EtcCompressor();
+    private int[] pixels;
+    private byte[] png;
+    private byte[] jpeg;
+    private byte[] blocks;
+    private File bundle;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        pixels = photoLike(size, 42);
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, size, size, pixels, 0, size);
+        png = encode(image, "png");
+        jpeg = encode(image, "jpg");
+        blocks = new byte[EtcCompressor.compressedSize(size, size, false)];
+
+        TextureBundle textures = new TextureBundle();
+        List<ByteBuffer> levels = new ArrayList<>();
+        int[] level = pixels;
+        for (int s = size; s >= 1; s /= 2) {
+            byte[] compressed = new byte[EtcCompressor.compressedSize(s, s, false)];
+            compressor.compress(level, s, s, false, compressed);
+            levels.add(ByteBuffer.wrap(compressed));
+            if (s > 1) level = halve(level, s);
+        }
+        textures.addImage(new TextureBundle.Image(TextureBundle.FORMAT_SRGB8, size, size,
+                levels.toArray(new ByteBuffer[0])));
+        textures.addBinding(new TextureBundle.Binding(0, "baseColorMap", 0, 10497, 10497));
+        bundle = File.createTempFile("model", ".opt2.tex");
+        try (FileOutputStream out = new FileOutputStream(bundle)) {
+            textures.writeTo(out.getChannel());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bundle.delete();
+    }
+
+    /** The old path: decode, then copy out the RGBA8 texels that would be uploaded. */
+    @Benchmark
+    public long decodePng() throws IOException {
+        return decode(png);
+    }
+
+    @Benchmark
+    public long decodeJpeg() throws IOException {
+        return decode(jpeg);
+    }
+
+    /** The new path: map the bundle and read every level, mips included, as the upload does. */
+    @Benchmark
+    public long mapBundle() throws IOException {
+        long sum = 0;
+        for (TextureBundle.Image image : TextureBundle.read(bundle).getImages()) {
+            for (int l = 0; l < image.getLevelCount(); l++) {
+                ByteBuffer level = image.getLevel(l);
+                while (level.remaining() >= 8) sum += level.getLong();
+            }
+        }
+        return sum;
+    }
+
+    /** Top level only; the whole chain costs about a third more. */
+    @Benchmark
+    public byte[] encodeAtImport() {
+        compressor.compress(pixels, size, size, false, blocks);
+        return blocks;
+    }
+
+    private long decode(byte[] encoded) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(encoded));
+        int[] texels = image.getRGB(0, 0, size, size, null, 0, size);
+        return texels[texels.length - 1];
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    /** Smooth gradients under a little grain, so PNG and JPEG compress about as well as on a photo. */
+    private static int[] photoLike(int size, long seed) {
+        Random random = new Random(seed);
+        int[] argb = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                double u = (double) x / size;
+                double v = (double) y / size;
+                int r = channel(128 + 100 * Math.sin(6 * u + 2 * v), random);
+                int g = channel(128 + 90 * Math.cos(4 * v - 3 * u), random);
+                int b = channel(128 + 80 * Math.sin(9 * u * v), random);
+                argb[y * size + x] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+        return argb;
+    }
+
+    private static int channel(double value, Random random) {
+        return Math.max(0, Math.min(255, (int) (value + random.nextGaussian() * 4)));
+    }
+
+    /** Box-filters a square ARGB image to half its size. */
+    private static int[] halve(int[] argb, int size) {
+        int half = size / 2;
+        int[] out = new int[half * half];
+        for (int y = 0; y < half; y++) {
+            for (int x = 0; x < half; x++) {
+                int i = 2 * y * size + 2 * x;
+                int p = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int sum = (argb[i] >>> shift & 0xFF) + (argb[i + 1] >>> shift & 0xFF)
+                            + (argb[i + size] >>> shift & 0xFF) + (argb[i + size + 1] >>> shift & 0xFF);
+                    p |= (sum + 2) / 4 << shift;
+                }
+                out[y * half + x] = p;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.mrapp.benchmarks;
+
+import com.example.mrapp.core.CellStreamer;
+import com.example.mrapp.core.SceneData;
+import com.example.mrapp.core.TiledSceneStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a large {@link TiledSceneStore}, reading single cells, and walking across it with a
+ * {@link CellStreamer} that reads every cell it pages in, as the app does on its persistence thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TiledSceneStoreBenchmark {
+    /** Walking speed and streamer update rate of the walk, as the app's culling interval gives. */
+    private static final float WALK_SPEED = 1.5f;
+    private static final int UPDATES_PER_SECOND = 6;
+
+    @Param({"10000", "100000"})
+    public int objects;
+
+    private final Random random = new Random(42);
+    private File directory;
+    private TiledSceneStore store;
+    private long[] cells;
+    private long objectsRead;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("tiled-store").toFile();
+        TiledSceneStore writer = new TiledSceneStore(directory);
+        writer.open();
+        writer.importScene(Scenes.random(objects, 42));
+        writer.compact();
+        writer.close();
+        store = new TiledSceneStore(directory);
+        store.open();
+        cells = store.getCells();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        deleteRecursively(directory);
+    }
+
+    /** Reads only the manifest, however many objects there are. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long[] open() throws IOException {
+        TiledSceneStore opened = new TiledSceneStore(directory);
+        opened.open();
+        opened.close();
+        return opened.getCells();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public SceneData loadCell() throws IOException {
+        return store.loadCell(cells[random.nextInt(cells.length)]);
+    }
+
+    /** Walks along the floor from edge to edge; returns the objects paged in. */
+    @Benchmark
+    public long walk() {
+        objectsRead = 0;
+        CellStreamer streamer = new CellStreamer(store.getCellSize(), CellStreamer.DEFAULT_RADIUS,
+                CellStreamer.DEFAULT_BUDGET, CellStreamer.DEFAULT_LOOK_AHEAD_SECONDS, new CellStreamer.Listener() {
+            @Override public void loadCell(long cell) {
+                try {
+                    objectsRead += store.loadCell(cell).getObjectCount();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override public void unloadCell(long cell) {}
+        });
+        streamer.setCells(cells);
+        long intervalNanos = 1_000_000_000L / UPDATES_PER_SECOND;
+        float step = WALK_SPEED / UPDATES_PER_SECOND;
+        int updates = (int) (Scenes.EXTENT / step);
+        for (int i = 0; i <= updates; i++) streamer.update(-Scenes.EXTENT / 2 + i * step, 0f, i * intervalNanos);
+        return objectsRead;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) for (File child : children) deleteRecursively(child);
+        file.delete();
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.mrapp.core;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Byte-budgeted LRU cache. Entries carry an estimated size and a pin count; pinned entries (for
+ * example assets with live instances in the scene) are never evicted, so the cache may sit above
+ * budget until they are unpinned. Not thread-safe: use it from the thread that owns the values.
+ */
+public final class AssetCache<K, V> {
+    public interface EvictionListener<K, V> {
+        void onEvicted(K key, V value);
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long bytes;
+        int pins;
+
+        Entry(V value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<K, Integer> pendingPins = new HashMap<>();
+    private final EvictionListener<K, V> listener;
+    private long budgetBytes;
+    private long sizeBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public AssetCache(long budgetBytes, EvictionListener<K, V> listener) {
+        this.budgetBytes = budgetBytes;
+        this.listener = listener;
+    }
+
+    /** Returns the cached value and marks it most recently used, or null on a miss. */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /** Lookup that neither counts towards the statistics nor changes recency. */
+    public boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    /** Like {@link #get} but does not count towards the hit and miss statistics. */
+    public V peek(K key) {
+        Entry<V> entry = entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /** Inserts a value, then evicts least recently used unpinned entries until within budget. */
+    public void put(K key, V value, long bytes) {
+        Entry<V> entry = new Entry<>(value, bytes);
+        Integer pins = pendingPins.remove(key);
+        if (pins != null) entry.pins = pins;
+        Entry<V> previous = entries.put(key, entry);
+        if (previous != null) {
+            sizeBytes -= previous.bytes;
+            entry.pins += previous.pins;
+            if (previous.value != value) listener.onEvicted(key, previous.value);
+        }
+        sizeBytes += bytes;
+        trim();
+    }
+
+    /**
+     * Protects {@code key} from eviction. Pins taken before the value is cached are kept and
+     * applied when it arrives.
+     */
+    public void pin(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            entry.pins++;
+        } else {
+            Integer pins = pendingPins.get(key);
+            pendingPins.put(key, pins == null ? 1 : pins + 1);
+        }
+    }
+
+    public void unpin(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            if (entry.pins > 0 && --entry.pins == 0) trim();
+            return;
+        }
+        Integer pins = pendingPins.get(key);
+        if (pins == null) return;
+        if (pins <= 1) pendingPins.remove(key); else pendingPins.put(key, pins - 1);
+    }
+
+    public void setBudget(long bytes) {
+        budgetBytes = bytes;
+        trim();
+    }
+
+    /** Drops every entry, pinned or not, notifying the listener. */
+    public void clear() {
+        List<Map.Entry<K, Entry<V>>> all = new ArrayList<>(entries.entrySet());
+        entries.clear();
+        pendingPins.clear();
+        sizeBytes = 0;
+        for (Map.Entry<K, Entry<V>> e : all) listener.onEvicted(e.getKey(), e.getValue().value);
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    private void trim() {
+        if (sizeBytes <= budgetBytes) return;
+        List<Map.Entry<K, V>> evicted = new ArrayList<>();
+        Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+        while (sizeBytes > budgetBytes && it.hasNext()) {
+            Map.Entry<K, Entry<V>> e = it.next();
+            Entry<V> entry = e.getValue();
+            if (entry.pins > 0) continue;
+            it.remove();
+            sizeBytes -= entry.bytes;
+            evictions++;
+            evicted.add(new AbstractMap.SimpleEntry<>(e.getKey(), entry.value));
+        }
+        for (Map.Entry<K, V> e : evicted) listener.onEvicted(e.getKey(), e.getValue());
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.mrapp.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/** Buffered little-endian reader on top of a channel, the counterpart of {@link BinaryWriter}. */
+public final class BinaryReader {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final CRC32 crc = new CRC32();
+    private long bytesConsumed;
+    private int crcMark;
+    private boolean endOfStream;
+
+    public BinaryReader(ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public BinaryReader(ReadableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+    }
+
+    public int readByte() throws IOException {
+        require(1);
+        return buffer.get() & 0xFF;
+    }
+
+    public int readShort() throws IOException {
+        require(2);
+        return buffer.getShort() & 0xFFFF;
+    }
+
+    public int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    public long readLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    public float readFloat() throws IOException {
+        require(4);
+        return buffer.getFloat();
+    }
+
+    public int readVarInt() throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public long readVarLong() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("Malformed varlong");
+    }
+
+    public long readSignedVarLong() throws IOException {
+        long raw = readVarLong();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    public String readString() throws IOException {
+        int length = readVarInt();
+        if (length < 0) throw new IOException("Negative string length");
+        byte[] bytes = new byte[length];
+        readBytes(bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public void readBytes(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            require(1);
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /** CRC32 of everything consumed so far. */
+    public int crc() {
+        updateCrc();
+        return (int) crc.getValue();
+    }
+
+    public void resetCrc() {
+        updateCrc();
+        crc.reset();
+    }
+
+    public long position() {
+        return bytesConsumed + buffer.position();
+    }
+
+    /** Bytes left to read if the channel knows its size, as a file does; -1 otherwise. */
+    public long remaining() throws IOException {
+        if (!(channel instanceof SeekableByteChannel)) return -1;
+        SeekableByteChannel seekable = (SeekableByteChannel) channel;
+        return buffer.remaining() + Math.max(0, seekable.size() - seekable.position());
+    }
+
+    /** True once the underlying channel is exhausted and every buffered byte has been consumed. */
+    public boolean isAtEnd() throws IOException {
+        if (buffer.hasRemaining()) return false;
+        fill();
+        return !buffer.hasRemaining();
+    }
+
+    private void updateCrc() {
+        int end = buffer.position();
+        if (end > crcMark) {
+            crc.update(buffer.array(), buffer.arrayOffset() + crcMark, end - crcMark);
+            crcMark = end;
+        }
+    }
+
+    private void require(int bytes) throws IOException {
+        while (buffer.remaining() < bytes) {
+            if (!fill()) throw new EOFException();
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (endOfStream) return false;
+        updateCrc();
+        bytesConsumed += buffer.position();
+        buffer.compact();
+        crcMark = 0;
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0);
+        buffer.flip();
+        if (read < 0) {
+            endOfStream = true;
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.mrapp.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * A unit cube from (0, 0, 0) to (1, 1, 1) as a self-contained binary glTF, built in memory so the
+ * app needs no asset file for it. Scaled to an object's bounds it stands in for a model that is not
+ * loaded yet. The cube has no normals; it is meant for an unlit material.
+ */
+public final class BoxGlb {
+    private static final int GLB_MAGIC = 0x46546C67; // "glTF"
+    private static final int CHUNK_JSON = 0x4E4F534A;
+    private static final int CHUNK_BIN = 0x004E4942;
+    private static final float[] POSITIONS = {
+            0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0,
+            0, 0, 1, 1, 0, 1, 1, 1, 1, 0, 1, 1,
+    };
+    /** Counter-clockwise seen from outside. */
+    private static final short[] INDICES = {
+            0, 3, 2, 0, 2, 1, // -z
+            4, 5, 6, 4, 6, 7, // +z
+            0, 4, 7, 0, 7, 3, // -x
+            1, 2, 6, 1, 6, 5, // +x
+            0, 1, 5, 0, 5, 4, // -y
+            3, 7, 6, 3, 6, 2, // +y
+    };
+
+    private BoxGlb() {}
+
+    /**
+     * Builds the cube with one material of color {@code rgba}, blended if its alpha is below one,
+     * unlit if asked. Returns a direct buffer, as Filament needs.
+     */
+    public static ByteBuffer build(float[] rgba, boolean unlit) {
+        int positionBytes = POSITIONS.length * 4;
+        int indexBytes = INDICES.length * 2;
+        int binLength = align4(positionBytes + indexBytes);
+        String json = String.format(Locale.US, "{\"asset\":{\"version\":\"2.0\"},%s"
+                        + "\"scene\":0,\"scenes\":[{\"nodes\":[0]}],\"nodes\":[{\"mesh\":0}],"
+                        + "\"meshes\":[{\"primitives\":[{\"attributes\":{\"POSITION\":0},\"indices\":1,\"material\":0}]}],"
+                        + "\"materials\":[{\"pbrMetallicRoughness\":{\"baseColorFactor\":[%f,%f,%f,%f],"
+                        + "\"metallicFactor\":0,\"roughnessFactor\":1},\"alphaMode\":\"%s\"%s}],"
+                        + "\"buffers\":[{\"byteLength\":%d}],"
+                        + "\"bufferViews\":[{\"buffer\":0,\"byteOffset\":0,\"byteLength\":%d,\"target\":34962},"
+                        + "{\"buffer\":0,\"byteOffset\":%d,\"byteLength\":%d,\"target\":34963}],"
+                        + "\"accessors\":[{\"bufferView\":0,\"componentType\":5126,\"count\":%d,\"type\":\"VEC3\","
+                        + "\"min\":[0,0,0],\"max\":[1,1,1]},"
+                        + "{\"bufferView\":1,\"componentType\":5123,\"count\":%d,\"type\":\"SCALAR\"}]}",
+                unlit ? "\"extensionsUsed\":[\"KHR_materials_unlit\"]," : "",
+                rgba[0], rgba[1], rgba[2], rgba[3], rgba[3] < 1f ? "BLEND" : "OPAQUE",
+                unlit ? ",\"extensions\":{\"KHR_materials_unlit\":{}}" : "",
+                binLength, positionBytes, positionBytes, indexBytes, POSITIONS.length / 3, INDICES.length);
+        byte[] jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+        int jsonLength = align4(jsonBytes.length);
+
+        ByteBuffer glb = ByteBuffer.allocateDirect(12 + 8 + jsonLength + 8 + binLength).order(ByteOrder.LITTLE_ENDIAN);
+        glb.putInt(GLB_MAGIC).putInt(2).putInt(glb.capacity());
+        glb.putInt(jsonLength).putInt(CHUNK_JSON).put(jsonBytes);
+        while (glb.position() % 4 != 0) glb.put((byte) ' ');
+        glb.putInt(binLength).putInt(CHUNK_BIN);
+        for (float value : POSITIONS) glb.putFloat(value);
+        for (short index : INDICES) glb.putShort(index);
+        while (glb.position() < glb.capacity()) glb.put((byte) 0);
+        glb.flip();
+        return glb;
+    }
+
+    private static int align4(int value) {
+        return (value + 3) & ~3;
+    }
+}
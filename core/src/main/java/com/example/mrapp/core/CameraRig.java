@@ -0,0 +1,156 @@
+package com.example.mrapp.core;
+
+/**
+ * Per-frame camera state with all matrix scratch space preallocated, so the frame loop can fill
+ * the projection and view from ARCore and derive per-eye cameras without allocating.
+ *
+ * <p>Stereo follows the parallel-axis, off-axis model: both eyes look straight ahead from
+ * {@code +/-ipd/2} and their frusta are sheared towards a shared screen plane at
+ * {@link #getScreenDistance()}, so objects at that distance have zero parallax. The vertical field
+ * of view is ARCore's; the horizontal extent follows the aspect ratio of one eye's viewport.
+ */
+public final class CameraRig {
+    public static final float NEAR = 0.1f;
+    public static final float FAR = 100.0f;
+    public static final int LEFT = 0;
+    public static final int RIGHT = 1;
+    /** Objects further than this, or outside the view frustum, are taken out of the Scene. */
+    public static final float CULL_DISTANCE = 30f;
+    /** Slack around the frustum so objects are back in the Scene before they reach the screen edge. */
+    public static final float CULL_MARGIN = 0.5f;
+    public static final float PICK_DISTANCE = 50f;
+
+    /** Filled by the caller from {@link FrameSource#getProjectionMatrix}. */
+    public final float[] projection = new float[16];
+    /** Filled by the caller from {@link FrameSource#getViewMatrix}. */
+    public final float[] view = new float[16];
+    /** Camera-to-world transform of the device, from {@link #update()}. */
+    public final float[] headModel = new float[16];
+    /** Camera-to-world transforms of each eye, from {@link #updateStereo(float)}. */
+    public final float[][] eyeModel = {new float[16], new float[16]};
+    /** Eye-to-head transforms, as Filament's {@code Camera.setEyeModelMatrix} expects. */
+    public final double[][] eyeOffset = {new double[16], new double[16]};
+    /** Off-axis projection of each eye. */
+    public final double[][] eyeProjection = {new double[16], new double[16]};
+    /** Head-space projection that contains both eye frusta, for culling. */
+    public final double[] cullingProjection = new double[16];
+    /** Scratch for the model matrix of a tap placement. */
+    public final float[] placement = new float[16];
+    /** Six (a, b, c, d) world-space planes, inside where non-negative, from {@link #updateCullPlanes}. */
+    public final float[] cullPlanes = new float[24];
+    /** World-space ray origin and direction from {@link #screenRay}. */
+    public final float[] rayOrigin = new float[3];
+    public final float[] rayDirection = new float[3];
+
+    private final float[] eyeTranslation = new float[16];
+    private final float[] viewProjection = new float[16];
+    private float ipd = 0.064f;
+    private float screenDistance = 1.5f;
+
+    public float getIpd() {
+        return ipd;
+    }
+
+    public void setIpd(float ipd) {
+        this.ipd = ipd;
+    }
+
+    /** Distance in meters of the zero-parallax plane. */
+    public float getScreenDistance() {
+        return screenDistance;
+    }
+
+    public void setScreenDistance(float screenDistance) {
+        this.screenDistance = screenDistance;
+    }
+
+    /** Derives {@link #headModel} from {@link #view}. */
+    public void update() {
+        Mat4.invertRigid(headModel, view);
+    }
+
+    /**
+     * Derives the per-eye models and projections from {@link #view} and {@link #projection}.
+     * {@code eyeAspect} is the width over height of one eye's viewport.
+     */
+    public void updateStereo(float eyeAspect) {
+        update();
+        double near = NEAR;
+        double far = FAR;
+        // Recover the mono frustum's extents on the near plane.
+        double bottom = near * (projection[9] - 1) / projection[5];
+        double top = near * (projection[9] + 1) / projection[5];
+        double centerX = near * projection[8] / projection[0];
+        double halfWidth = (top - bottom) / 2 * eyeAspect;
+        double shift = ipd / 2 * near / screenDistance;
+
+        for (int eye = LEFT; eye <= RIGHT; eye++) {
+            float side = eye == LEFT ? -1f : 1f;
+            Mat4.setTranslation(eyeTranslation, side * ipd / 2, 0f, 0f);
+            Mat4.multiply(eyeModel[eye], headModel, eyeTranslation);
+            double[] offset = eyeOffset[eye];
+            for (int i = 0; i < 16; i++) offset[i] = eyeTranslation[i];
+            // An eye left of center sees the screen plane's center to its right, and vice versa.
+            double center = centerX - side * shift;
+            Mat4.setFrustum(eyeProjection[eye], center - halfWidth, center + halfWidth, bottom, top, near, far);
+        }
+        // Widening by ipd/2 on the near plane moves the apex back to the head, which keeps the
+        // culling frustum conservative at every depth beyond it.
+        double reach = halfWidth + shift + ipd / 2;
+        Mat4.setFrustum(cullingProjection, centerX - reach, centerX + reach, bottom, top, near, far);
+    }
+
+    /**
+     * Fills {@link #cullPlanes} from the mono frustum, pushed out by {@code margin} meters, with the
+     * far plane replaced by one {@code maxDistance} meters in front of the camera. Uses the
+     * matrices from the last {@link #update()} or {@link #updateStereo(float)}.
+     */
+    public void updateCullPlanes(float maxDistance, float margin) {
+        Mat4.multiply(viewProjection, projection, view);
+        float[] m = viewProjection;
+        float[] p = cullPlanes;
+        // Gribb-Hartmann: each plane is the fourth row of the clip matrix plus or minus another row.
+        // Left, right, bottom, top, near.
+        for (int i = 0; i < 5; i++) {
+            int row = i / 2;
+            float sign = i % 2 == 0 ? 1f : -1f;
+            float a = m[3] + sign * m[row];
+            float b = m[7] + sign * m[4 + row];
+            float c = m[11] + sign * m[8 + row];
+            float d = m[15] + sign * m[12 + row];
+            float length = (float) Math.sqrt(a * a + b * b + c * c);
+            p[i * 4] = a / length;
+            p[i * 4 + 1] = b / length;
+            p[i * 4 + 2] = c / length;
+            p[i * 4 + 3] = d / length + margin;
+        }
+        // The camera looks down its -Z axis; keep points within maxDistance along it.
+        float fx = -headModel[8];
+        float fy = -headModel[9];
+        float fz = -headModel[10];
+        p[20] = -fx;
+        p[21] = -fy;
+        p[22] = -fz;
+        p[23] = fx * headModel[12] + fy * headModel[13] + fz * headModel[14] + maxDistance + margin;
+    }
+
+    /**
+     * Sets {@link #rayOrigin} and {@link #rayDirection} (not normalized) to the world-space ray
+     * through pixel ({@code x}, {@code y}) of a {@code width} by {@code height} view rendered with
+     * the mono projection.
+     */
+    public void screenRay(float x, float y, int width, int height) {
+        float ndcX = 2f * x / width - 1f;
+        float ndcY = 1f - 2f * y / height;
+        float vx = (ndcX + projection[8]) / projection[0];
+        float vy = (ndcY + projection[9]) / projection[5];
+        float vz = -1f;
+        float[] m = headModel;
+        rayDirection[0] = m[0] * vx + m[4] * vy + m[8] * vz;
+        rayDirection[1] = m[1] * vx + m[5] * vy + m[9] * vz;
+        rayDirection[2] = m[2] * vx + m[6] * vy + m[10] * vz;
+        rayOrigin[0] = m[12];
+        rayOrigin[1] = m[13];
+        rayOrigin[2] = m[14];
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.mrapp.core;
+
+import java.util.Arrays;
+
+/**
+ * Decides which cells of a {@link TiledSceneStore} are resident: those within {@link #getRadius}
+ * of the camera or of where the camera will be in {@code lookAheadSeconds} at its recent floor
+ * velocity, nearest first, up to a budget. Cells ahead of the camera are thus paged in before it
+ * gets there, and cells out of range or beyond the budget are paged out.
+ *
+ * <p>The choice is only made again when the camera or its look-ahead point moves to another cell,
+ * or the set of cells changes, so steady frames cost a few multiplications. Pure logic with no
+ * Android or Filament dependencies; the {@link Listener} does the paging. Not thread-safe.
+ */
+public final class CellStreamer {
+    public interface Listener {
+        /** Pages a cell in; it counts as resident from this call on. */
+        void loadCell(long cell);
+
+        void unloadCell(long cell);
+    }
+
+    /** Everything culling could show is in range; see {@link CameraRig#CULL_DISTANCE}. */
+    public static final float DEFAULT_RADIUS = CameraRig.CULL_DISTANCE;
+    /** Enough {@link TiledSceneStore#DEFAULT_CELL_SIZE} cells to cover the radius with some look-ahead. */
+    public static final int DEFAULT_BUDGET = 64;
+    public static final float DEFAULT_LOOK_AHEAD_SECONDS = 2f;
+    /** Faster floor motion is taken for a tracking jump and not extrapolated. */
+    private static final float MAX_SPEED = 4f;
+    /** Weight of the newest sample in the smoothed velocity. */
+    private static final float VELOCITY_SMOOTHING = 0.2f;
+    /** Samples further apart than this restart the velocity estimate. */
+    private static final long MAX_SAMPLE_GAP_NANOS = 500_000_000L;
+
+    private final float cellSize;
+    private final float radius;
+    private final int budget;
+    private final float lookAheadSeconds;
+    private final Listener listener;
+    /** Cells that have objects, sorted. */
+    private long[] cells = new long[0];
+    private long[] resident = new long[16];
+    private int residentCount;
+    private final long[] chosen;
+    private final float[] chosenScores;
+    private boolean changed = true;
+    private long lastCell;
+    private long lastAheadCell;
+    private boolean hasSample;
+    private float lastX;
+    private float lastZ;
+    private long lastTimeNanos;
+    private float velocityX;
+    private float velocityZ;
+    private long loads;
+    private long unloads;
+
+    public CellStreamer(float cellSize, float radius, int budget, float lookAheadSeconds, Listener listener) {
+        this.cellSize = cellSize;
+        this.radius = radius;
+        this.budget = budget;
+        this.lookAheadSeconds = lookAheadSeconds;
+        this.listener = listener;
+        this.chosen = new long[budget];
+        this.chosenScores = new float[budget];
+    }
+
+    /** Replaces the cells that have objects, as listed by {@link TiledSceneStore#getCells}. */
+    public void setCells(long[] cells) {
+        this.cells = cells.clone();
+        Arrays.sort(this.cells);
+        changed = true;
+    }
+
+    /**
+     * Makes {@code cell} resident before an object is placed in it. A cell new to the streamer has
+     * nothing to load; a known one that is not resident is loaded first. It is paged out like any
+     * other once the camera leaves.
+     */
+    public void addCell(long cell) {
+        int index = Arrays.binarySearch(cells, cell);
+        if (index < 0) {
+            index = -index - 1;
+            long[] grown = new long[cells.length + 1];
+            System.arraycopy(cells, 0, grown, 0, index);
+            grown[index] = cell;
+            System.arraycopy(cells, index, grown, index + 1, cells.length - index);
+            cells = grown;
+            changed = true;
+            if (!isResident(cell)) addResident(cell);
+        } else if (!isResident(cell)) {
+            addResident(cell);
+            loads++;
+            listener.loadCell(cell);
+        }
+    }
+
+    /** Forgets every cell without calling the listener, after the scene was cleared. */
+    public void reset() {
+        cells = new long[0];
+        residentCount = 0;
+        hasSample = false;
+        changed = true;
+    }
+
+    public boolean isResident(long cell) {
+        for (int i = 0; i < residentCount; i++) if (resident[i] == cell) return true;
+        return false;
+    }
+
+    public int getResidentCount() {
+        return residentCount;
+    }
+
+    public int getCellCount() {
+        return cells.length;
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+
+    public long getLoads() {
+        return loads;
+    }
+
+    public long getUnloads() {
+        return unloads;
+    }
+
+    /** Feeds the camera's floor position at {@code timeNanos}, paging cells in and out as needed. */
+    public void update(float x, float z, long timeNanos) {
+        if (hasSample && timeNanos > lastTimeNanos && timeNanos - lastTimeNanos < MAX_SAMPLE_GAP_NANOS) {
+            float dt = (timeNanos - lastTimeNanos) / 1e9f;
+            float vx = (x - lastX) / dt;
+            float vz = (z - lastZ) / dt;
+            if (vx * vx + vz * vz <= MAX_SPEED * MAX_SPEED) {
+                velocityX += (vx - velocityX) * VELOCITY_SMOOTHING;
+                velocityZ += (vz - velocityZ) * VELOCITY_SMOOTHING;
+            }
+        } else {
+            velocityX = 0f;
+            velocityZ = 0f;
+        }
+        hasSample = true;
+        lastX = x;
+        lastZ = z;
+        lastTimeNanos = timeNanos;
+
+        float aheadX = x + velocityX * lookAheadSeconds;
+        float aheadZ = z + velocityZ * lookAheadSeconds;
+        long cell = TiledSceneStore.cellKey((int) Math.floor(x / cellSize), (int) Math.floor(z / cellSize));
+        long aheadCell = TiledSceneStore.cellKey((int) Math.floor(aheadX / cellSize), (int) Math.floor(aheadZ / cellSize));
+        if (!changed && cell == lastCell && aheadCell == lastAheadCell) return;
+        changed = false;
+        lastCell = cell;
+        lastAheadCell = aheadCell;
+        choose(x, z, aheadX, aheadZ);
+    }
+
+    /** Keeps the best-scoring cells in range resident, up to the budget, paging in nearest first. */
+    private void choose(float x, float z, float aheadX, float aheadZ) {
+        int count = 0;
+        float radiusSquared = radius * radius;
+        for (long cell : cells) {
+            float cx = (TiledSceneStore.cellX(cell) + 0.5f) * cellSize;
+            float cz = (TiledSceneStore.cellZ(cell) + 0.5f) * cellSize;
+            float near = distanceSquared(cx, cz, x, z, cellSize / 2);
+            float ahead = distanceSquared(cx, cz, aheadX, aheadZ, cellSize / 2);
+            if (near > radiusSquared && ahead > radiusSquared) continue;
+            // A cell the camera is heading for ranks just behind an equally near one around it.
+            float score = Math.min((float) Math.sqrt(near), (float) Math.sqrt(ahead) + cellSize / 2);
+            if (count == budget && score >= chosenScores[count - 1]) continue;
+            int i = count < budget ? count++ : count - 1;
+            while (i > 0 && chosenScores[i - 1] > score) {
+                chosen[i] = chosen[i - 1];
+                chosenScores[i] = chosenScores[i - 1];
+                i--;
+            }
+            chosen[i] = cell;
+            chosenScores[i] = score;
+        }
+        for (int i = residentCount - 1; i >= 0; i--) {
+            long cell = resident[i];
+            if (indexOf(chosen, count, cell) != -1) continue;
+            resident[i] = resident[--residentCount];
+            unloads++;
+            listener.unloadCell(cell);
+        }
+        for (int i = 0; i < count; i++) {
+            if (isResident(chosen[i])) continue;
+            addResident(chosen[i]);
+            loads++;
+            listener.loadCell(chosen[i]);
+        }
+    }
+
+    private void addResident(long cell) {
+        if (residentCount == resident.length) resident = Arrays.copyOf(resident, residentCount * 2);
+        resident[residentCount++] = cell;
+    }
+
+    private static int indexOf(long[] values, int count, long value) {
+        for (int i = 0; i < count; i++) if (values[i] == value) return i;
+        return -1;
+    }
+
+    /** Squared distance from ({@code x}, {@code z}) to the square of half-side {@code half} around the center. */
+    private static float distanceSquared(float centerX, float centerZ, float x, float z, float half) {
+        float dx = Math.max(0f, Math.abs(x - centerX) - half);
+        float dz = Math.max(0f, Math.abs(z - centerZ) - half);
+        return dx * dx + dz * dz;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.mrapp.core;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free multi-producer, single-consumer queue of commands for the render thread. Any thread
+ * may {@link #execute} a command; the render thread runs everything queued so far with
+ * {@link #drain} at the top of each frame, so a producer never waits on a frame and the frame never
+ * waits on a producer's lock.
+ *
+ * <p>A linked list in the style of Vyukov's intrusive MPSC queue: producers swap themselves in as
+ * the head with one atomic exchange and then link the previous head to their node; the consumer
+ * walks from its private tail. A producer preempted between the two steps briefly hides the nodes
+ * behind it, which the consumer treats as empty and picks up on the next drain.
+ */
+public final class CommandQueue implements Executor {
+    private static final class Node {
+        Runnable command;
+        volatile Node next;
+
+        Node(Runnable command) {
+            this.command = command;
+        }
+    }
+
+    private final AtomicReference<Node> head;
+    /** Consumer only: the last node run, whose successor is next. */
+    private Node tail;
+
+    public CommandQueue() {
+        tail = new Node(null);
+        head = new AtomicReference<>(tail);
+    }
+
+    /** Queues {@code command}; safe from any thread. */
+    @Override
+    public void execute(Runnable command) {
+        Node node = new Node(command);
+        Node previous = head.getAndSet(node);
+        previous.next = node;
+    }
+
+    /** True if no command is visible to the consumer. Consumer thread only. */
+    public boolean isEmpty() {
+        return tail.next == null;
+    }
+
+    /**
+     * Runs the queued commands in order, at most {@code limit} of them so a burst cannot take a
+     * whole frame, and returns how many ran. Consumer thread only. A command that throws is
+     * dropped and the exception propagates after the queue has moved past it.
+     */
+    public int drain(int limit) {
+        int count = 0;
+        Node next;
+        while (count < limit && (next = tail.next) != null) {
+            tail = next;
+            Runnable command = next.command;
+            // The node stays on as the sentinel; its command should not stay reachable with it.
+            next.command = null;
+            count++;
+            command.run();
+        }
+        return count;
+    }
+}
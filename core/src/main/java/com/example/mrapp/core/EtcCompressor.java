@@ -0,0 +1,251 @@
+package com.example.mrapp.core;
+
+/**
+ * Block compression to the formats every OpenGL ES 3.0 / Vulkan Android GPU samples natively:
+ * ETC2 RGB8 (8 bytes per 4x4 block) and ETC2 RGBA8 with an EAC alpha block (16 bytes).
+ *
+ * <p>Colour blocks use the ETC1-compatible individual and differential modes only, which ETC2
+ * decoders read unchanged. Each block tries both sub-block orientations and both modes with every
+ * modifier table and keeps the smallest squared error; base colours are the sub-block averages.
+ * That is a quick encoder rather than an exhaustive one, fine for textures compressed once at
+ * import. Pixels are ARGB ints as returned by {@code Bitmap.getPixels}, not premultiplied.
+ */
+public final class EtcCompressor {
+    public static final int BLOCK_BYTES_RGB = 8;
+    public static final int BLOCK_BYTES_RGBA = 16;
+
+    private static final int[][] COLOR_MODIFIERS = {
+            {2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183},
+    };
+    private static final int[][] ALPHA_MODIFIERS = {
+            {-3, -6, -9, -15, 2, 5, 8, 14}, {-3, -7, -10, -13, 2, 6, 9, 12},
+            {-2, -5, -8, -13, 1, 4, 7, 12}, {-2, -4, -6, -13, 1, 3, 5, 12},
+            {-3, -6, -8, -12, 2, 5, 7, 11}, {-3, -7, -9, -11, 2, 6, 8, 10},
+            {-4, -7, -8, -11, 3, 6, 7, 10}, {-3, -5, -8, -11, 2, 4, 7, 10},
+            {-2, -6, -8, -10, 1, 5, 7, 9}, {-2, -5, -8, -10, 1, 4, 7, 9},
+            {-2, -4, -8, -10, 1, 3, 7, 9}, {-2, -5, -7, -10, 1, 4, 6, 9},
+            {-3, -4, -7, -10, 2, 3, 6, 9}, {-1, -2, -3, -10, 0, 1, 2, 9},
+            {-4, -6, -8, -9, 3, 5, 7, 8}, {-3, -5, -7, -9, 2, 4, 6, 8},
+    };
+    /** Row of {@link #ALPHA_MODIFIERS} that contains a zero, for blocks of constant alpha. */
+    private static final int ALPHA_TABLE_WITH_ZERO = 13;
+
+    /** Per-block scratch; one encoder per thread. */
+    private final int[] red = new int[16];
+    private final int[] green = new int[16];
+    private final int[] blue = new int[16];
+    private final int[] alpha = new int[16];
+    private final int[] subBlock = new int[8];
+    private final int[] selectors = new int[16];
+    private final int[] bestSelectors = new int[16];
+    private final int[] candidateSelectors = new int[8];
+    private final int[] tableSelectors = new int[8];
+
+    public static int compressedSize(int width, int height, boolean withAlpha) {
+        return ((width + 3) / 4) * ((height + 3) / 4) * (withAlpha ? BLOCK_BYTES_RGBA : BLOCK_BYTES_RGB);
+    }
+
+    /** True if any pixel is not fully opaque. */
+    public static boolean hasAlpha(int[] argb, int count) {
+        for (int i = 0; i < count; i++) if ((argb[i] >>> 24) != 0xFF) return true;
+        return false;
+    }
+
+    /**
+     * Compresses a {@code width} x {@code height} image into {@code out}, which must hold
+     * {@link #compressedSize} bytes. Blocks are stored row by row; edge blocks repeat the last
+     * row and column.
+     */
+    public void compress(int[] argb, int width, int height, boolean withAlpha, byte[] out) {
+        int offset = 0;
+        for (int by = 0; by < height; by += 4) {
+            for (int bx = 0; bx < width; bx += 4) {
+                loadBlock(argb, width, height, bx, by);
+                if (withAlpha) {
+                    putLong(out, offset, encodeAlpha());
+                    offset += 8;
+                }
+                putLong(out, offset, encodeColor());
+                offset += 8;
+            }
+        }
+    }
+
+    private void loadBlock(int[] argb, int width, int height, int bx, int by) {
+        for (int x = 0; x < 4; x++) {
+            int px = Math.min(bx + x, width - 1);
+            for (int y = 0; y < 4; y++) {
+                int pixel = argb[Math.min(by + y, height - 1) * width + px];
+                // ETC numbers pixels column by column.
+                int i = x * 4 + y;
+                alpha[i] = pixel >>> 24;
+                red[i] = (pixel >> 16) & 0xFF;
+                green[i] = (pixel >> 8) & 0xFF;
+                blue[i] = pixel & 0xFF;
+            }
+        }
+    }
+
+    private long encodeColor() {
+        long best = 0;
+        long bestError = Long.MAX_VALUE;
+        for (int flip = 0; flip < 2; flip++) {
+            for (int differential = 0; differential < 2; differential++) {
+                long[] candidate = encodeColor(flip, differential == 1);
+                if (candidate[1] < bestError) {
+                    bestError = candidate[1];
+                    best = candidate[0];
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Returns {block, error}. */
+    private long[] encodeColor(int flip, boolean differential) {
+        int[][] base = new int[2][3];
+        for (int s = 0; s < 2; s++) {
+            int n = subBlockPixels(flip, s);
+            int r = 0, g = 0, b = 0;
+            for (int k = 0; k < n; k++) {
+                r += red[subBlock[k]];
+                g += green[subBlock[k]];
+                b += blue[subBlock[k]];
+            }
+            int max = differential ? 31 : 15;
+            base[s][0] = clamp(Math.round(r * max / (255f * n)), 0, max);
+            base[s][1] = clamp(Math.round(g * max / (255f * n)), 0, max);
+            base[s][2] = clamp(Math.round(b * max / (255f * n)), 0, max);
+        }
+        if (differential) {
+            for (int c = 0; c < 3; c++) {
+                int delta = clamp(base[1][c] - base[0][c], Math.max(-4, -base[0][c]), Math.min(3, 31 - base[0][c]));
+                base[1][c] = base[0][c] + delta;
+            }
+        }
+        long error = 0;
+        int[] tables = new int[2];
+        for (int s = 0; s < 2; s++) {
+            int n = subBlockPixels(flip, s);
+            int r = expand(base[s][0], differential);
+            int g = expand(base[s][1], differential);
+            int b = expand(base[s][2], differential);
+            long subBlockError = Long.MAX_VALUE;
+            for (int t = 0; t < COLOR_MODIFIERS.length; t++) {
+                long tableError = 0;
+                for (int k = 0; k < n && tableError < subBlockError; k++) {
+                    int p = subBlock[k];
+                    int bestPixelError = Integer.MAX_VALUE;
+                    for (int m = 0; m < 4; m++) {
+                        int modifier = (m & 1) == 0 ? COLOR_MODIFIERS[t][0] : COLOR_MODIFIERS[t][1];
+                        if (m >= 2) modifier = -modifier;
+                        int dr = clamp(r + modifier, 0, 255) - red[p];
+                        int dg = clamp(g + modifier, 0, 255) - green[p];
+                        int db = clamp(b + modifier, 0, 255) - blue[p];
+                        int pixelError = dr * dr + dg * dg + db * db;
+                        if (pixelError < bestPixelError) {
+                            bestPixelError = pixelError;
+                            tableSelectors[k] = m;
+                        }
+                    }
+                    tableError += bestPixelError;
+                }
+                if (tableError < subBlockError) {
+                    subBlockError = tableError;
+                    tables[s] = t;
+                    System.arraycopy(tableSelectors, 0, candidateSelectors, 0, n);
+                }
+            }
+            for (int k = 0; k < n; k++) selectors[subBlock[k]] = candidateSelectors[k];
+            error += subBlockError;
+        }
+
+        long high;
+        if (differential) {
+            high = ((long) base[0][0] << 27) | ((long) ((base[1][0] - base[0][0]) & 7) << 24)
+                    | ((long) base[0][1] << 19) | ((long) ((base[1][1] - base[0][1]) & 7) << 16)
+                    | ((long) base[0][2] << 11) | ((long) ((base[1][2] - base[0][2]) & 7) << 8)
+                    | 2;
+        } else {
+            high = ((long) base[0][0] << 28) | ((long) base[1][0] << 24)
+                    | ((long) base[0][1] << 20) | ((long) base[1][1] << 16)
+                    | ((long) base[0][2] << 12) | ((long) base[1][2] << 8);
+        }
+        high |= ((long) tables[0] << 5) | ((long) tables[1] << 2) | flip;
+        long low = 0;
+        for (int i = 0; i < 16; i++) {
+            low |= (long) (selectors[i] >> 1) << (16 + i);
+            low |= (long) (selectors[i] & 1) << i;
+        }
+        return new long[] {(high << 32) | low, error};
+    }
+
+    /** Fills {@link #subBlock} with the pixel numbers of sub-block {@code s}; returns 8. */
+    private int subBlockPixels(int flip, int s) {
+        int k = 0;
+        for (int x = 0; x < 4; x++) {
+            for (int y = 0; y < 4; y++) {
+                int half = flip == 0 ? x / 2 : y / 2;
+                if (half == s) subBlock[k++] = x * 4 + y;
+            }
+        }
+        return k;
+    }
+
+    private long encodeAlpha() {
+        int min = 255, max = 0;
+        for (int value : alpha) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        if (min == max) {
+            long block = ((long) min << 56) | (1L << 52) | ((long) ALPHA_TABLE_WITH_ZERO << 48);
+            for (int i = 0; i < 16; i++) block |= 4L << (45 - 3 * i);
+            return block;
+        }
+        long bestBlock = 0;
+        long bestError = Long.MAX_VALUE;
+        for (int t = 0; t < ALPHA_MODIFIERS.length && bestError > 0; t++) {
+            int[] modifiers = ALPHA_MODIFIERS[t];
+            int span = modifiers[7] - modifiers[3];
+            int center = (modifiers[7] + modifiers[3]) / 2;
+            int multiplier = Math.round((max - min) / (float) span);
+            for (int mul = Math.max(1, multiplier - 1); mul <= Math.min(15, multiplier + 1); mul++) {
+                int base = Math.round((min + max) / 2f) - center * mul;
+                for (int b = Math.max(0, base - 1); b <= Math.min(255, base + 1); b++) {
+                    long error = 0;
+                    for (int i = 0; i < 16 && error < bestError; i++) {
+                        int bestPixelError = Integer.MAX_VALUE;
+                        for (int m = 0; m < 8; m++) {
+                            int d = clamp(b + modifiers[m] * mul, 0, 255) - alpha[i];
+                            if (d * d < bestPixelError) {
+                                bestPixelError = d * d;
+                                selectors[i] = m;
+                            }
+                        }
+                        error += bestPixelError;
+                    }
+                    if (error < bestError) {
+                        bestError = error;
+                        bestBlock = ((long) b << 56) | ((long) mul << 52) | ((long) t << 48);
+                        System.arraycopy(selectors, 0, bestSelectors, 0, 16);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < 16; i++) bestBlock |= (long) bestSelectors[i] << (45 - 3 * i);
+        return bestBlock;
+    }
+
+    private static int expand(int value, boolean fiveBits) {
+        return fiveBits ? (value << 3) | (value >> 2) : (value << 4) | value;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : value > max ? max : value;
+    }
+
+    private static void putLong(byte[] out, int offset, long value) {
+        for (int i = 0; i < 8; i++) out[offset + i] = (byte) (value >>> (56 - 8 * i));
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.mrapp.core;
+
+/**
+ * Picks a rendering quality level that holds a target frame time. Level 0 is the best quality;
+ * higher levels are cheaper. Each {@link Level} bounds the resolution scale that Filament's own
+ * dynamic resolution controller may pick within and says which costly features stay on, so the
+ * governor only makes coarse, infrequent changes and Filament does the fine-grained scaling.
+ *
+ * <p>Frames are judged in windows of {@link #WINDOW_FRAMES}. A window with more than
+ * {@link #SLOW_FRACTION} of its frames over budget counts as overloaded, one with no slow frames
+ * and a mean comfortably under budget as having headroom. {@link #DEGRADE_WINDOWS} overloaded
+ * windows in a row step down a level at once. Stepping up needs a longer run of headroom, and a
+ * step up that is undone within {@link #PROBATION_WINDOWS} doubles that run so the governor does
+ * not oscillate between two levels; a step up that holds halves it again. A thermal floor keeps
+ * the level at or below a given quality regardless of frame times.
+ *
+ * <p>Pure logic with no Android or Filament dependencies; the caller applies {@link #getLevel}.
+ */
+public final class FrameGovernor {
+    public static final class Level {
+        public final float minScale;
+        public final float maxScale;
+        /** MSAA sample count; 1 disables it. */
+        public final int msaaSamples;
+        /** FXAA and dithering; without them post-processing is reduced to tone mapping. */
+        public final boolean fullPostProcessing;
+        public final boolean shadows;
+
+        public Level(float minScale, float maxScale, int msaaSamples, boolean fullPostProcessing, boolean shadows) {
+            this.minScale = minScale;
+            this.maxScale = maxScale;
+            this.msaaSamples = msaaSamples;
+            this.fullPostProcessing = fullPostProcessing;
+            this.shadows = shadows;
+        }
+    }
+
+    /** Best first. Features go in order of cost per pixel: MSAA, then post-processing, then shadows. */
+    public static final Level[] DEFAULT_LEVELS = {
+            new Level(1.0f, 1.0f, 4, true, true),
+            new Level(0.8f, 1.0f, 4, true, true),
+            new Level(0.7f, 1.0f, 1, true, true),
+            new Level(0.6f, 0.9f, 1, false, true),
+            new Level(0.5f, 0.75f, 1, false, false),
+    };
+
+    public static final int WINDOW_FRAMES = 30;
+    public static final float SLOW_FRACTION = 0.1f;
+    /** A frame is slow above this multiple of the target. */
+    private static final float SLOW_FACTOR = 1.2f;
+    /** A window has headroom if its mean is under this multiple of the target. */
+    private static final float HEADROOM_FACTOR = 1.05f;
+    /** Longer frames are pauses, not load, and are ignored. */
+    private static final int DISCONTINUITY_FACTOR = 8;
+    public static final int DEGRADE_WINDOWS = 2;
+    public static final int MIN_UPGRADE_WINDOWS = 4;
+    public static final int MAX_UPGRADE_WINDOWS = 64;
+    public static final int PROBATION_WINDOWS = 4;
+
+    private final Level[] levels;
+    private long targetFrameNanos;
+    private int level;
+    private int thermalFloor;
+
+    private int windowFrames;
+    private int windowSlowFrames;
+    private long windowTotalNanos;
+    private int overloadedWindows;
+    private int headroomWindows;
+    private int upgradeWindows = MIN_UPGRADE_WINDOWS;
+    /** Windows since the last step up, or -1 once it has passed probation. */
+    private int windowsSinceUpgrade = -1;
+    private int changes;
+
+    public FrameGovernor(long targetFrameNanos, Level[] levels, int initialLevel) {
+        if (levels.length == 0) throw new IllegalArgumentException("No levels");
+        this.levels = levels;
+        this.targetFrameNanos = targetFrameNanos;
+        this.level = Math.max(0, Math.min(levels.length - 1, initialLevel));
+    }
+
+    public long getTargetFrameNanos() {
+        return targetFrameNanos;
+    }
+
+    /** For a new display refresh rate; the current window starts over. */
+    public void setTargetFrameNanos(long targetFrameNanos) {
+        this.targetFrameNanos = targetFrameNanos;
+        reset();
+    }
+
+    public int getLevelIndex() {
+        return level;
+    }
+
+    public Level getLevel() {
+        return levels[level];
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public int getUpgradeWindows() {
+        return upgradeWindows;
+    }
+
+    /** Level changes so far, for diagnostics. */
+    public int getChanges() {
+        return changes;
+    }
+
+    /**
+     * Keeps the level at {@code floor} or cheaper, for example while the device is hot. Returns
+     * true if that changed the level.
+     */
+    public boolean setThermalFloor(int floor) {
+        thermalFloor = Math.max(0, Math.min(levels.length - 1, floor));
+        if (level >= thermalFloor) return false;
+        setLevel(thermalFloor);
+        windowsSinceUpgrade = -1;
+        return true;
+    }
+
+    /**
+     * Forgets the frames of the current window, for example after a change in workload such as
+     * entering stereo mode, so they are not held against the next level.
+     */
+    public void reset() {
+        windowFrames = 0;
+        windowSlowFrames = 0;
+        windowTotalNanos = 0;
+        overloadedWindows = 0;
+        headroomWindows = 0;
+    }
+
+    /** Records one frame; returns true if the level changed and needs applying. */
+    public boolean onFrame(long frameNanos) {
+        if (frameNanos <= 0 || frameNanos > DISCONTINUITY_FACTOR * targetFrameNanos) return false;
+        windowFrames++;
+        windowTotalNanos += frameNanos;
+        if (frameNanos > SLOW_FACTOR * targetFrameNanos) windowSlowFrames++;
+        if (windowFrames < WINDOW_FRAMES) return false;
+
+        boolean overloaded = windowSlowFrames > SLOW_FRACTION * windowFrames;
+        boolean headroom = windowSlowFrames == 0 && windowTotalNanos < HEADROOM_FACTOR * targetFrameNanos * windowFrames;
+        windowFrames = 0;
+        windowSlowFrames = 0;
+        windowTotalNanos = 0;
+        overloadedWindows = overloaded ? overloadedWindows + 1 : 0;
+        headroomWindows = headroom ? headroomWindows + 1 : 0;
+        if (windowsSinceUpgrade >= 0 && ++windowsSinceUpgrade > PROBATION_WINDOWS) {
+            windowsSinceUpgrade = -1;
+            upgradeWindows = Math.max(MIN_UPGRADE_WINDOWS, upgradeWindows / 2);
+        }
+
+        if (overloadedWindows >= DEGRADE_WINDOWS && level < levels.length - 1) {
+            if (windowsSinceUpgrade >= 0) {
+                upgradeWindows = Math.min(MAX_UPGRADE_WINDOWS, upgradeWindows * 2);
+                windowsSinceUpgrade = -1;
+            }
+            setLevel(level + 1);
+            return true;
+        }
+        if (headroomWindows >= upgradeWindows && level > thermalFloor) {
+            setLevel(level - 1);
+            windowsSinceUpgrade = 0;
+            return true;
+        }
+        return false;
+    }
+
+    private void setLevel(int newLevel) {
+        level = newLevel;
+        overloadedWindows = 0;
+        headroomWindows = 0;
+        changes++;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.mrapp.core;
+
+import java.io.IOException;
+
+/**
+ * Where a frame's camera and hit tests come from: the live ARCore session, or a trace written by
+ * {@link SessionRecorder} and played back by {@link TraceFrameSource}. The frame loop only talks
+ * to this interface, so a replay drives the same placement, persistence and render-setup code as a
+ * live session.
+ */
+public interface FrameSource {
+    /** Receives input recorded with a frame; live sources get input from the UI instead. */
+    interface Input {
+        void tap(float x, float y);
+
+        void pick(float x, float y);
+    }
+
+    /**
+     * Moves to the frame displayed at {@code frameTimeNanos} and hands any input recorded with it
+     * to {@code input}. Returns false if there is no frame: the camera is unavailable or the trace
+     * has ended.
+     */
+    boolean update(long frameTimeNanos, Input input) throws IOException;
+
+    boolean isTracking();
+
+    /** World-to-camera matrix of the current frame, column-major. */
+    void getViewMatrix(float[] out);
+
+    /** Projection of the current frame for {@link CameraRig#NEAR} and {@link CameraRig#FAR}. */
+    void getProjectionMatrix(float[] out);
+
+    /**
+     * Hit-tests the view pixel ({@code x}, {@code y}) against detected surfaces. On a hit, writes
+     * the placement pose to {@code pose} and returns true.
+     */
+    boolean hitTest(float x, float y, float[] pose);
+}
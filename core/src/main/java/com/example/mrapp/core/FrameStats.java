@@ -0,0 +1,150 @@
+package com.example.mrapp.core;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Frame-loop instrumentation: one {@link LatencyHistogram} per phase plus frame counters. Phases
+ * are plain int indices so recording from the frame loop allocates nothing.
+ */
+public final class FrameStats {
+    public static final int FRAME = 0;
+    public static final int AR_UPDATE = 1;
+    public static final int TAP = 2;
+    public static final int BEGIN_FRAME = 3;
+    public static final int RENDER_MONO = 4;
+    public static final int RENDER_LEFT = 5;
+    public static final int RENDER_RIGHT = 6;
+    public static final int END_FRAME = 7;
+    public static final int ASSET_READ = 8;
+    public static final int ASSET_PARSE = 9;
+    /** Both eyes in one instanced pass. */
+    public static final int RENDER_STEREO = 10;
+    /** Time-boxed restore of a saved scene. */
+    public static final int RESTORE = 11;
+    /** Spatial-index pass that adds and removes entities from the Scene. */
+    public static final int CULL = 12;
+    /** From asset creation until every texture is decoded and bound. */
+    public static final int ASSET_RESOURCES = 13;
+    /** Choosing the resident scene cells and paging cells out; see {@link CellStreamer}. */
+    public static final int STREAM = 14;
+    /** From activity creation to the first rendered frame; recorded once per launch. */
+    public static final int FIRST_FRAME = 15;
+    /**
+     * From activity creation until the objects around the camera at startup show their real
+     * models rather than placeholders; recorded once per launch.
+     */
+    public static final int FULLY_LOADED = 16;
+    /** Time-boxed pass that shows placeholder boxes for objects still waiting for their model. */
+    public static final int PROXIES = 17;
+
+    private static final String[] PHASE_NAMES = {
+            "frame", "ar_update", "tap", "begin_frame", "render_mono",
+            "render_left", "render_right", "end_frame", "asset_read", "asset_parse",
+            "render_stereo", "restore", "cull", "asset_resources", "stream",
+            "first_frame", "fully_loaded", "proxies",
+    };
+    private static final int DUMP_MAGIC = 0x5354464D; // "MFTS"
+    private static final int DUMP_VERSION = 1;
+
+    private final LatencyHistogram[] phases = new LatencyHistogram[PHASE_NAMES.length];
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong skippedFrames = new AtomicLong();
+    private final AtomicLong trackingLostFrames = new AtomicLong();
+
+    public FrameStats() {
+        for (int i = 0; i < phases.length; i++) phases[i] = new LatencyHistogram(PHASE_NAMES[i]);
+    }
+
+    public void record(int phase, long nanos) {
+        phases[phase].record(nanos);
+    }
+
+    public LatencyHistogram get(int phase) {
+        return phases[phase];
+    }
+
+    public void frameStarted() {
+        frames.incrementAndGet();
+    }
+
+    /** {@code Renderer.beginFrame} declined the frame. */
+    public void frameSkipped() {
+        skippedFrames.incrementAndGet();
+    }
+
+    public void trackingLost() {
+        trackingLostFrames.incrementAndGet();
+    }
+
+    public long getFrames() {
+        return frames.get();
+    }
+
+    public long getSkippedFrames() {
+        return skippedFrames.get();
+    }
+
+    public long getTrackingLostFrames() {
+        return trackingLostFrames.get();
+    }
+
+    public void reset() {
+        for (LatencyHistogram phase : phases) phase.reset();
+        frames.set(0);
+        skippedFrames.set(0);
+        trackingLostFrames.set(0);
+    }
+
+    /** Human-readable p50/p99/max per non-empty phase, for the on-screen overlay. */
+    public String summary() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.US, "frames %d  skipped %d  lost %d",
+                frames.get(), skippedFrames.get(), trackingLostFrames.get()));
+        for (LatencyHistogram phase : phases) {
+            if (phase.getCount() == 0) continue;
+            out.append(String.format(Locale.US, "\n%-12s %6.2f %6.2f %6.2f ms  n=%d", phase.getName(),
+                    phase.getPercentileNanos(50) / 1e6, phase.getPercentileNanos(99) / 1e6,
+                    phase.getMaxNanos() / 1e6, phase.getCount()));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes a compact binary dump: header, {@code deviceTag}, counters, then for each phase its
+     * name, count, total, max and the non-empty buckets as (index delta, count) varints.
+     */
+    public void writeTo(WritableByteChannel channel, String deviceTag, long wallClockMillis) throws IOException {
+        BinaryWriter out = new BinaryWriter(channel, 4096);
+        out.writeInt(DUMP_MAGIC);
+        out.writeShort(DUMP_VERSION);
+        out.writeShort(LatencyHistogram.SUB_BUCKETS);
+        out.writeLong(wallClockMillis);
+        out.writeString(deviceTag);
+        out.writeVarLong(frames.get());
+        out.writeVarLong(skippedFrames.get());
+        out.writeVarLong(trackingLostFrames.get());
+        out.writeVarInt(phases.length);
+        for (LatencyHistogram phase : phases) {
+            out.writeString(phase.getName());
+            out.writeVarLong(phase.getCount());
+            out.writeVarLong(phase.getTotalNanos());
+            out.writeVarLong(phase.getMaxNanos());
+            int nonEmpty = 0;
+            for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) if (phase.getBucketCount(i) > 0) nonEmpty++;
+            out.writeVarInt(nonEmpty);
+            int previous = 0;
+            for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+                long count = phase.getBucketCount(i);
+                if (count == 0) continue;
+                out.writeVarInt(i - previous);
+                out.writeVarLong(count);
+                previous = i;
+            }
+        }
+        out.writeInt(out.crc());
+        out.flush();
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.mrapp.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a {@link FrameSource} through the engine-independent half of the app's frame loop: camera
+ * and stereo setup, tap-to-place into a {@link SpatialIndex}, long-press removal, periodic frustum
+ * culling, journaling every edit to a {@link TiledSceneStore}, and paging its cells in and out with
+ * a {@link CellStreamer}. Needs no camera, GPU or Android, so a
+ * trace recorded on a phone can be replayed on a build machine to catch frame-time and allocation
+ * regressions in this code. Every placement uses one model with fixed bounds, since no models are
+ * loaded.
+ */
+public final class HeadlessReplay {
+    /** Bounds of the stand-in model: a 0.6 m wide, 1.2 m tall box standing on the hit point. */
+    public static final float[] DEFAULT_MODEL_BOUNDS = {-0.3f, 0f, -0.3f, 0.3f, 1.2f, 0.3f};
+    /** As in the app, culling runs every few frames. */
+    private static final int CULL_INTERVAL_FRAMES = 10;
+    private static final long FRAME_INTERVAL_NANOS = 16_666_667L;
+    private static final String MODEL_NAME = "replay.glb";
+
+    /** An object placed or paged in. */
+    private static final class Placed {
+        final int id;
+        final long cell;
+        int proxy;
+
+        Placed(int id, long cell) {
+            this.id = id;
+            this.cell = cell;
+        }
+    }
+
+    private final TiledSceneStore store;
+    private final float[] modelBounds;
+    private final CameraRig rig = new CameraRig();
+    private final SpatialIndex<Placed> index = new SpatialIndex<>();
+    private final Map<Long, List<Placed>> objectsByCell = new HashMap<>();
+    private final CellStreamer streamer;
+    private long[] cellsToLoad = new long[16];
+    private int cellsToLoadCount;
+    private int nextId;
+    private final FrameStats stats = new FrameStats();
+    private final float[] pose = new float[16];
+    private final float[] cellPose = new float[16];
+    private final float[] box = new float[6];
+    private float[] taps = new float[8];
+    private int tapCount;
+    private boolean pickPending;
+    private float pickX;
+    private float pickY;
+    private int visible;
+    private final SpatialIndex.Visitor<Placed> cullVisitor = (proxy, placed) -> visible++;
+    private final FrameSource.Input input = new FrameSource.Input() {
+        @Override public void tap(float x, float y) {
+            if (tapCount * 2 == taps.length) taps = Arrays.copyOf(taps, taps.length * 2);
+            taps[tapCount * 2] = x;
+            taps[tapCount * 2 + 1] = y;
+            tapCount++;
+        }
+
+        @Override public void pick(float x, float y) {
+            pickX = x;
+            pickY = y;
+            pickPending = true;
+        }
+    };
+
+    /** {@code store} must be open; it may be null to leave persistence and streaming out. */
+    public HeadlessReplay(TiledSceneStore store, float[] modelBounds) {
+        this.store = store;
+        this.modelBounds = modelBounds;
+        if (store == null) {
+            streamer = null;
+            return;
+        }
+        streamer = new CellStreamer(store.getCellSize(), CellStreamer.DEFAULT_RADIUS, CellStreamer.DEFAULT_BUDGET,
+                CellStreamer.DEFAULT_LOOK_AHEAD_SECONDS, new CellStreamer.Listener() {
+            @Override public void loadCell(long cell) {
+                if (cellsToLoadCount == cellsToLoad.length) cellsToLoad = Arrays.copyOf(cellsToLoad, cellsToLoadCount * 2);
+                cellsToLoad[cellsToLoadCount++] = cell;
+            }
+
+            @Override public void unloadCell(long cell) {
+                List<Placed> objects = objectsByCell.remove(cell);
+                if (objects != null) for (Placed placed : objects) index.remove(placed.proxy);
+            }
+        });
+        streamer.setCells(store.getCells());
+    }
+
+    /**
+     * Plays every frame of {@code source} on a {@code width} by {@code height} view, rendering in
+     * stereo if asked, and returns the per-phase timings. Tap and pick use the app's phases; the
+     * source's update counts as {@link FrameStats#AR_UPDATE}.
+     */
+    public FrameStats run(FrameSource source, int width, int height, boolean stereo) throws IOException {
+        long frameTimeNanos = 0;
+        int framesSinceCull = 0;
+        while (true) {
+            long frameStart = System.nanoTime();
+            if (!source.update(frameTimeNanos, input)) break;
+            frameTimeNanos += FRAME_INTERVAL_NANOS;
+            stats.frameStarted();
+            stats.record(FrameStats.AR_UPDATE, System.nanoTime() - frameStart);
+            source.getProjectionMatrix(rig.projection);
+            source.getViewMatrix(rig.view);
+            if (source.isTracking()) {
+                if (stereo) rig.updateStereo(width / 2f / height); else rig.update();
+                if (pickPending) pick(width, height);
+                if (tapCount > 0) {
+                    long tapStart = System.nanoTime();
+                    for (int i = 0; i < tapCount; i++) place(source, taps[i * 2], taps[i * 2 + 1]);
+                    tapCount = 0;
+                    stats.record(FrameStats.TAP, System.nanoTime() - tapStart);
+                }
+                if (++framesSinceCull >= CULL_INTERVAL_FRAMES) {
+                    framesSinceCull = 0;
+                    if (streamer != null) stream(frameTimeNanos);
+                    long cullStart = System.nanoTime();
+                    rig.updateCullPlanes(CameraRig.CULL_DISTANCE, CameraRig.CULL_MARGIN);
+                    visible = 0;
+                    index.queryFrustum(rig.cullPlanes, cullVisitor);
+                    stats.record(FrameStats.CULL, System.nanoTime() - cullStart);
+                }
+            } else {
+                stats.trackingLost();
+            }
+            stats.record(FrameStats.FRAME, System.nanoTime() - frameStart);
+        }
+        return stats;
+    }
+
+    /** Objects placed or paged in, and not removed or paged out. */
+    public int getObjectCount() {
+        return index.size();
+    }
+
+    public CellStreamer getStreamer() {
+        return streamer;
+    }
+
+    /** Objects in the view at the last cull. */
+    public int getVisibleCount() {
+        return visible;
+    }
+
+    private void place(FrameSource source, float x, float y) throws IOException {
+        if (!source.hitTest(x, y, pose)) return;
+        if (store == null) {
+            add(new Placed(nextId++, 0), pose);
+            return;
+        }
+        long cell = store.cellOf(pose, 0);
+        // A cell paged back in for the placement is read before the placement lands in it.
+        streamer.addCell(cell);
+        loadQueuedCells();
+        Placed placed = new Placed(store.newObjectId(), cell);
+        add(placed, pose);
+        store.place(placed.id, MODEL_NAME, pose, 0);
+    }
+
+    private void add(Placed placed, float[] transform) {
+        Mat4.transformBounds(box, 0, transform, modelBounds);
+        placed.proxy = index.add(placed, box, 0);
+        List<Placed> objects = objectsByCell.get(placed.cell);
+        if (objects == null) {
+            objects = new ArrayList<>();
+            objectsByCell.put(placed.cell, objects);
+        }
+        objects.add(placed);
+    }
+
+    /** Pages cells in and out around the camera; cells are read at once, where the app reads them in the background. */
+    private void stream(long frameTimeNanos) throws IOException {
+        long start = System.nanoTime();
+        float[] head = rig.headModel;
+        streamer.update(head[12], head[14], frameTimeNanos);
+        loadQueuedCells();
+        stats.record(FrameStats.STREAM, System.nanoTime() - start);
+    }
+
+    private void loadQueuedCells() throws IOException {
+        for (int i = 0; i < cellsToLoadCount; i++) {
+            SceneData cell = store.loadCell(cellsToLoad[i]);
+            for (int o = 0; o < cell.getObjectCount(); o++) {
+                cell.getTransform(o, cellPose, 0);
+                add(new Placed(cell.getObjectId(o), cellsToLoad[i]), cellPose);
+            }
+        }
+        cellsToLoadCount = 0;
+    }
+
+    private void pick(int width, int height) throws IOException {
+        pickPending = false;
+        rig.screenRay(pickX, pickY, width, height);
+        float[] o = rig.rayOrigin;
+        float[] d = rig.rayDirection;
+        int proxy = index.raycast(o[0], o[1], o[2], d[0], d[1], d[2], CameraRig.PICK_DISTANCE);
+        if (proxy == SpatialIndex.NONE) return;
+        Placed placed = index.get(proxy);
+        index.remove(proxy);
+        List<Placed> objects = objectsByCell.get(placed.cell);
+        if (objects != null) objects.remove(placed);
+        if (store != null) store.remove(placed.id, placed.cell);
+    }
+}
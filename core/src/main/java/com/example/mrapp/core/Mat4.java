@@ -0,0 +1,86 @@
+package com.example.mrapp.core;
+
+/** Allocation-free helpers for column-major 4x4 float matrices, as used by ARCore and Filament. */
+public final class Mat4 {
+    private Mat4() {}
+
+    public static void setIdentity(float[] m) {
+        for (int i = 0; i < 16; i++) m[i] = (i % 5 == 0) ? 1f : 0f;
+    }
+
+    public static void setTranslation(float[] m, float x, float y, float z) {
+        setIdentity(m);
+        m[12] = x;
+        m[13] = y;
+        m[14] = z;
+    }
+
+    /** {@code out = a * b}. {@code out} must not alias {@code a} or {@code b}. */
+    public static void multiply(float[] out, float[] a, float[] b) {
+        for (int col = 0; col < 4; col++) {
+            int c = col * 4;
+            float b0 = b[c];
+            float b1 = b[c + 1];
+            float b2 = b[c + 2];
+            float b3 = b[c + 3];
+            out[c] = a[0] * b0 + a[4] * b1 + a[8] * b2 + a[12] * b3;
+            out[c + 1] = a[1] * b0 + a[5] * b1 + a[9] * b2 + a[13] * b3;
+            out[c + 2] = a[2] * b0 + a[6] * b1 + a[10] * b2 + a[14] * b3;
+            out[c + 3] = a[3] * b0 + a[7] * b1 + a[11] * b2 + a[15] * b3;
+        }
+    }
+
+    /**
+     * {@code out = inverse(m)} for a rigid transform (rotation plus translation), such as an ARCore
+     * view matrix. {@code out} must not alias {@code m}.
+     */
+    public static void invertRigid(float[] out, float[] m) {
+        out[0] = m[0];
+        out[1] = m[4];
+        out[2] = m[8];
+        out[3] = 0f;
+        out[4] = m[1];
+        out[5] = m[5];
+        out[6] = m[9];
+        out[7] = 0f;
+        out[8] = m[2];
+        out[9] = m[6];
+        out[10] = m[10];
+        out[11] = 0f;
+        out[12] = -(m[0] * m[12] + m[1] * m[13] + m[2] * m[14]);
+        out[13] = -(m[4] * m[12] + m[5] * m[13] + m[6] * m[14]);
+        out[14] = -(m[8] * m[12] + m[9] * m[13] + m[10] * m[14]);
+        out[15] = 1f;
+    }
+
+    /** Fills {@code m} with an OpenGL-style perspective frustum given its extents on the near plane. */
+    public static void setFrustum(double[] m, double left, double right, double bottom, double top, double near, double far) {
+        for (int i = 0; i < 16; i++) m[i] = 0;
+        m[0] = 2 * near / (right - left);
+        m[5] = 2 * near / (top - bottom);
+        m[8] = (right + left) / (right - left);
+        m[9] = (top + bottom) / (top - bottom);
+        m[10] = -(far + near) / (far - near);
+        m[11] = -1;
+        m[14] = -2 * far * near / (far - near);
+    }
+
+    /**
+     * Writes to {@code out[outOff..outOff+6)} the world-space bounding box (min xyz, max xyz) of the
+     * box {@code bounds[0..6)} transformed by the affine matrix {@code m}.
+     */
+    public static void transformBounds(float[] out, int outOff, float[] m, float[] bounds) {
+        for (int row = 0; row < 3; row++) {
+            float min = m[12 + row];
+            float max = min;
+            for (int col = 0; col < 3; col++) {
+                float a = m[col * 4 + row] * bounds[col];
+                float b = m[col * 4 + row] * bounds[3 + col];
+                min += Math.min(a, b);
+                max += Math.max(a, b);
+            }
+            out[outOff + row] = min;
+            out[outOff + 3 + row] = max;
+        }
+    }
+}
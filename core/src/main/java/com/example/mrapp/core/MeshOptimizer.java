@@ -0,0 +1,324 @@
+package com.example.mrapp.core;
+
+import java.util.Arrays;
+
+/**
+ * Triangle-list algorithms for the import-time model optimizer: post-transform vertex cache
+ * reordering (Forsyth's linear-speed algorithm) and simplification by vertex clustering. Both
+ * keep the vertex buffer as is and only produce new index lists, so every level of detail can
+ * share one set of vertex attributes.
+ */
+public final class MeshOptimizer {
+    private static final int CACHE_SIZE = 32;
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+    private static final int MAX_VALENCE_SCORED = 64;
+
+    private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+    private static final float[] VALENCE_SCORES = new float[MAX_VALENCE_SCORED];
+
+    static {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (i < 3) {
+                CACHE_SCORES[i] = LAST_TRIANGLE_SCORE;
+            } else {
+                float scaled = 1f - (float) (i - 3) / (CACHE_SIZE - 3);
+                CACHE_SCORES[i] = (float) Math.pow(scaled, CACHE_DECAY_POWER);
+            }
+        }
+        for (int i = 1; i < MAX_VALENCE_SCORED; i++) {
+            VALENCE_SCORES[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+        }
+    }
+
+    private MeshOptimizer() {}
+
+    /**
+     * Reorders triangles so consecutive ones share recently used vertices, which cuts vertex shader
+     * invocations on GPUs with a post-transform cache. Winding is preserved.
+     */
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+        int triangleCount = indices.length / 3;
+        if (triangleCount == 0) return indices.clone();
+
+        // Per-vertex lists of the triangles still to be emitted.
+        int[] valence = new int[vertexCount];
+        for (int index : indices) valence[index]++;
+        int[] adjacencyOffset = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) adjacencyOffset[v + 1] = adjacencyOffset[v] + valence[v];
+        int[] adjacency = new int[indices.length];
+        int[] fill = Arrays.copyOf(adjacencyOffset, vertexCount);
+        for (int i = 0; i < indices.length; i++) adjacency[fill[indices[i]]++] = i / 3;
+        int[] remaining = valence; // counts down as triangles are emitted
+
+        float[] vertexScore = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++) vertexScore[v] = score(-1, remaining[v]);
+        float[] triangleScore = new float[triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            triangleScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]] + vertexScore[indices[t * 3 + 2]];
+        }
+        boolean[] emitted = new boolean[triangleCount];
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] nextCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+
+        int[] output = new int[indices.length];
+        int best = 0;
+        for (int t = 1; t < triangleCount; t++) if (triangleScore[t] > triangleScore[best]) best = t;
+        int scan = 0;
+        for (int written = 0; written < triangleCount; written++) {
+            if (best < 0) {
+                // Nothing in the cache touches a pending triangle; take the next pending one in order.
+                while (emitted[scan]) scan++;
+                best = scan;
+            }
+            int t = best;
+            emitted[t] = true;
+            int a = indices[t * 3];
+            int b = indices[t * 3 + 1];
+            int c = indices[t * 3 + 2];
+            output[written * 3] = a;
+            output[written * 3 + 1] = b;
+            output[written * 3 + 2] = c;
+
+            // Drop the triangle from its vertices' pending lists.
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t * 3 + k];
+                int start = adjacencyOffset[v];
+                int end = start + remaining[v];
+                for (int i = start; i < end; i++) {
+                    if (adjacency[i] == t) {
+                        adjacency[i] = adjacency[end - 1];
+                        break;
+                    }
+                }
+                remaining[v]--;
+            }
+
+            // The triangle's vertices move to the front of the LRU cache.
+            int nextCount = 0;
+            nextCache[nextCount++] = a;
+            nextCache[nextCount++] = b;
+            nextCache[nextCount++] = c;
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if (v != a && v != b && v != c) nextCache[nextCount++] = v;
+            }
+            int[] swap = cache;
+            cache = nextCache;
+            nextCache = swap;
+            cacheCount = nextCount;
+
+            // Rescore everything in the cache; entries past CACHE_SIZE fall out.
+            best = -1;
+            float bestScore = -1f;
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                int position = i < CACHE_SIZE ? i : -1;
+                float newScore = score(position, remaining[v]);
+                float delta = newScore - vertexScore[v];
+                vertexScore[v] = newScore;
+                int start = adjacencyOffset[v];
+                int end = start + remaining[v];
+                for (int j = start; j < end; j++) {
+                    int other = adjacency[j];
+                    triangleScore[other] += delta;
+                    if (triangleScore[other] > bestScore) {
+                        bestScore = triangleScore[other];
+                        best = other;
+                    }
+                }
+            }
+            if (cacheCount > CACHE_SIZE) cacheCount = CACHE_SIZE;
+        }
+        return output;
+    }
+
+    private static float score(int cachePosition, int remainingValence) {
+        if (remainingValence == 0) return -1f;
+        float score = cachePosition < 0 ? 0f : CACHE_SCORES[cachePosition];
+        return score + VALENCE_SCORES[Math.min(remainingValence, MAX_VALENCE_SCORED - 1)];
+    }
+
+    /** Average vertex shader invocations per triangle through a FIFO cache of {@code cacheSize}; lower is better. */
+    public static float averageCacheMissRatio(int[] indices, int vertexCount, int cacheSize) {
+        if (indices.length == 0) return 0f;
+        int[] insertedAt = new int[vertexCount];
+        Arrays.fill(insertedAt, -cacheSize - 1);
+        int clock = 0;
+        int misses = 0;
+        for (int index : indices) {
+            if (clock - insertedAt[index] > cacheSize) {
+                insertedAt[index] = clock++;
+                misses++;
+            }
+        }
+        return (float) misses / (indices.length / 3);
+    }
+
+    /**
+     * Simplifies by snapping vertices to a grid and keeping one existing vertex per occupied cell,
+     * aiming for about {@code targetTriangles}. Triangles that collapse or duplicate another are
+     * dropped. {@code positions} holds xyz per vertex.
+     */
+    public static int[] simplifyClusters(int[] indices, float[] positions, int vertexCount, int targetTriangles) {
+        float[] bounds = bounds(positions, vertexCount);
+        float extent = Math.max(bounds[3] - bounds[0], Math.max(bounds[4] - bounds[1], bounds[5] - bounds[2]));
+        if (extent <= 0f) return indices.clone();
+
+        // Triangle count grows roughly with the square of the grid resolution; search on that.
+        int low = 1;
+        int high = 1024;
+        int[] best = null;
+        for (int iteration = 0; iteration < 10 && low <= high; iteration++) {
+            int resolution = (low + high) >>> 1;
+            int[] result = cluster(indices, positions, vertexCount, bounds, extent / resolution);
+            int triangles = result.length / 3;
+            if (best == null || Math.abs(triangles - targetTriangles) < Math.abs(best.length / 3 - targetTriangles)) best = result;
+            if (triangles > targetTriangles) {
+                high = resolution - 1;
+            } else {
+                low = resolution + 1;
+            }
+        }
+        return best;
+    }
+
+    private static int[] cluster(int[] indices, float[] positions, int vertexCount, float[] bounds, float cellSize) {
+        float inverse = 1f / cellSize;
+        LongIntMap cells = new LongIntMap(Math.min(vertexCount, 1 << 20));
+        int[] cellOfVertex = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            long x = (long) ((positions[v * 3] - bounds[0]) * inverse);
+            long y = (long) ((positions[v * 3 + 1] - bounds[1]) * inverse);
+            long z = (long) ((positions[v * 3 + 2] - bounds[2]) * inverse);
+            int cell = cells.size();
+            int existing = cells.putIfAbsent((x << 42) | (y << 21) | z, cell);
+            cellOfVertex[v] = existing != LongIntMap.ABSENT ? existing : cell;
+        }
+        int cellCount = cells.size();
+
+        // Each cell is represented by its existing vertex closest to the cell's centroid.
+        double[] centroid = new double[cellCount * 3];
+        int[] members = new int[cellCount];
+        for (int v = 0; v < vertexCount; v++) {
+            int cell = cellOfVertex[v];
+            centroid[cell * 3] += positions[v * 3];
+            centroid[cell * 3 + 1] += positions[v * 3 + 1];
+            centroid[cell * 3 + 2] += positions[v * 3 + 2];
+            members[cell]++;
+        }
+        int[] representative = new int[cellCount];
+        double[] bestDistance = new double[cellCount];
+        Arrays.fill(representative, -1);
+        for (int v = 0; v < vertexCount; v++) {
+            int cell = cellOfVertex[v];
+            double dx = positions[v * 3] - centroid[cell * 3] / members[cell];
+            double dy = positions[v * 3 + 1] - centroid[cell * 3 + 1] / members[cell];
+            double dz = positions[v * 3 + 2] - centroid[cell * 3 + 2] / members[cell];
+            double distance = dx * dx + dy * dy + dz * dz;
+            if (representative[cell] < 0 || distance < bestDistance[cell]) {
+                representative[cell] = v;
+                bestDistance[cell] = distance;
+            }
+        }
+
+        int[] output = new int[indices.length];
+        int count = 0;
+        LongIntMap seen = vertexCount < (1 << 21) ? new LongIntMap(indices.length / 3) : null;
+        for (int i = 0; i + 2 < indices.length; i += 3) {
+            int a = representative[cellOfVertex[indices[i]]];
+            int b = representative[cellOfVertex[indices[i + 1]]];
+            int c = representative[cellOfVertex[indices[i + 2]]];
+            if (a == b || b == c || a == c) continue;
+            if (seen != null) {
+                // Rotate the smallest index first so the key ignores rotation but keeps winding.
+                long key = a < b && a < c ? triangleKey(a, b, c) : b < c ? triangleKey(b, c, a) : triangleKey(c, a, b);
+                if (seen.putIfAbsent(key, 0) != LongIntMap.ABSENT) continue;
+            }
+            output[count++] = a;
+            output[count++] = b;
+            output[count++] = c;
+        }
+        return Arrays.copyOf(output, count);
+    }
+
+    private static long triangleKey(int a, int b, int c) {
+        return ((long) a << 42) | ((long) b << 21) | c;
+    }
+
+    /** Min xyz then max xyz of the first {@code vertexCount} positions. */
+    static float[] bounds(float[] positions, int vertexCount) {
+        float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int v = 0; v < vertexCount; v++) {
+            for (int k = 0; k < 3; k++) {
+                float p = positions[v * 3 + k];
+                if (p < bounds[k]) bounds[k] = p;
+                if (p > bounds[3 + k]) bounds[3 + k] = p;
+            }
+        }
+        return bounds;
+    }
+
+    /** Open-addressing long to int map; avoids boxing millions of cell keys. */
+    private static final class LongIntMap {
+        /** Returned by {@link #putIfAbsent} when the key was not present. */
+        static final int ABSENT = -1;
+
+        private long[] keys;
+        private int[] values;
+        private boolean[] used;
+        private int size;
+
+        LongIntMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+            keys = new long[capacity];
+            values = new int[capacity];
+            used = new boolean[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        /** Returns the value already stored for {@code key}, or stores {@code value} and returns {@link #ABSENT}. */
+        int putIfAbsent(long key, int value) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (used[slot]) {
+                if (keys[slot] == key) return values[slot];
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            keys[slot] = key;
+            values[slot] = value;
+            if (++size * 2 > keys.length) rehash();
+            return ABSENT;
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (!oldUsed[i]) continue;
+                int slot = hash(oldKeys[i]) & mask;
+                while (used[slot]) slot = (slot + 1) & mask;
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static int hash(long key) {
+            key *= 0x9E3779B97F4A7C15L;
+            return (int) (key ^ (key >>> 32));
+        }
+    }
+}
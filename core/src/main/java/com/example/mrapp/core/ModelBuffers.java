@@ -0,0 +1,84 @@
+package com.example.mrapp.core;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Opens model files as direct buffers so their bytes never land on the Java heap.
+ *
+ * <p>Files are memory-mapped read-only. If mapping fails, the file is read into a direct buffer
+ * borrowed from a small size-bucketed pool; callers hand it back with {@link #release} once the
+ * loader no longer needs the source bytes.
+ */
+public final class ModelBuffers {
+    private static final int MAX_POOLED_PER_BUCKET = 2;
+    private static final int MIN_BUCKET_SHIFT = 16;
+
+    private final ArrayDeque<ByteBuffer>[] pool;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ModelBuffers() {
+        pool = new ArrayDeque[32];
+        for (int i = 0; i < pool.length; i++) pool[i] = new ArrayDeque<>();
+    }
+
+    /** Returns a read-only buffer over the whole file, positioned at 0. */
+    public ByteBuffer open(File file) throws IOException {
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Model too large: " + file);
+            try {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IOException e) {
+                return readPooled(channel, (int) size);
+            }
+        }
+    }
+
+    /** Returns a buffer obtained from {@link #open} to the pool. Mapped buffers are left to the GC. */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer instanceof MappedByteBuffer) return;
+        ArrayDeque<ByteBuffer> bucket = pool[bucket(buffer.capacity())];
+        synchronized (bucket) {
+            if (bucket.size() < MAX_POOLED_PER_BUCKET) bucket.push(buffer);
+        }
+    }
+
+    private ByteBuffer readPooled(FileChannel channel, int size) throws IOException {
+        ByteBuffer buffer = acquire(size);
+        buffer.limit(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                release(buffer);
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private ByteBuffer acquire(int size) {
+        int index = bucket(size);
+        ArrayDeque<ByteBuffer> bucket = pool[index];
+        synchronized (bucket) {
+            ByteBuffer pooled = bucket.poll();
+            if (pooled != null) {
+                pooled.clear();
+                return pooled;
+            }
+        }
+        long capacity = 1L << (index + MIN_BUCKET_SHIFT);
+        return ByteBuffer.allocateDirect((int) Math.min(capacity, Integer.MAX_VALUE));
+    }
+
+    private static int bucket(int size) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(0, shift - MIN_BUCKET_SHIFT);
+    }
+}
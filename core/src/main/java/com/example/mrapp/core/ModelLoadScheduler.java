@@ -0,0 +1,149 @@
+package com.example.mrapp.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads model files on a small bounded pool, most-needed first, and delivers the bytes to the
+ * thread that owns the Filament engine. Parsing into a {@code FilamentAsset} has to happen on that
+ * thread, so workers do the I/O: they map the file, fault its pages in and validate the header.
+ */
+public final class ModelLoadScheduler {
+    /** Load order; lower ordinals run first. */
+    public enum Priority { SELECTED, REFERENCED, UNREFERENCED }
+
+    /** Runs on the worker after a read; returns the estimated resident size of the model. */
+    public interface Inspector {
+        long estimateBytes(ByteBuffer buffer);
+    }
+
+    public interface Callback {
+        /** Called on the delivery executor. The receiver must {@link ModelBuffers#release} the buffer. */
+        void onModelRead(String name, ByteBuffer buffer, long estimatedBytes, long readNanos);
+
+        void onModelFailed(String name, IOException error);
+    }
+
+    private static final int GLB_MAGIC = 0x46546C67; // "glTF"
+
+    private final ModelBuffers buffers;
+    private final Executor delivery;
+    private final Inspector inspector;
+    private final Callback callback;
+    private final ThreadPoolExecutor pool;
+    private final AtomicLong order = new AtomicLong();
+    private final Map<String, Task> tasks = new HashMap<>();
+
+    public ModelLoadScheduler(ModelBuffers buffers, int threads, Executor delivery, Inspector inspector, Callback callback) {
+        this.buffers = buffers;
+        this.delivery = delivery;
+        this.inspector = inspector;
+        this.callback = callback;
+        this.pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>());
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues {@code file} for loading. A repeated request for a model that has not started yet is
+     * promoted if the new priority is more urgent; otherwise it is ignored.
+     */
+    public synchronized void request(String name, File file, Priority priority) {
+        Task existing = tasks.get(name);
+        if (existing != null && (existing.started || existing.priority.compareTo(priority) <= 0)) return;
+        Task task = new Task(name, file, priority, order.getAndIncrement());
+        tasks.put(name, task);
+        pool.execute(task);
+    }
+
+    /** Drops a request that has not started yet, for a model nothing waits on any more. */
+    public synchronized void cancel(String name) {
+        Task task = tasks.get(name);
+        if (task != null && !task.started) tasks.remove(name);
+    }
+
+    public synchronized boolean isPending(String name) {
+        return tasks.containsKey(name);
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private synchronized boolean claim(Task task) {
+        if (tasks.get(task.name) != task) return false; // superseded by a more urgent request
+        task.started = true;
+        return true;
+    }
+
+    private synchronized void finish(Task task) {
+        if (tasks.get(task.name) == task) tasks.remove(task.name);
+    }
+
+    private ByteBuffer read(File file) throws IOException {
+        ByteBuffer buffer = buffers.open(file);
+        try {
+            if (buffer instanceof MappedByteBuffer) ((MappedByteBuffer) buffer).load();
+            if (file.getName().endsWith(".glb")) {
+                if (buffer.remaining() < 12
+                        || buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(0) != GLB_MAGIC) {
+                    throw new IOException("Not a binary glTF file: " + file.getName());
+                }
+            }
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            buffers.release(buffer);
+            throw e;
+        }
+    }
+
+    private final class Task implements Runnable, Comparable<Task> {
+        final String name;
+        final File file;
+        final Priority priority;
+        final long sequence;
+        boolean started;
+
+        Task(String name, File file, Priority priority, long sequence) {
+            this.name = name;
+            this.file = file;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            if (!claim(this)) return;
+            long startNanos = System.nanoTime();
+            try {
+                ByteBuffer buffer = read(file);
+                long estimatedBytes = inspector.estimateBytes(buffer);
+                long readNanos = System.nanoTime() - startNanos;
+                delivery.execute(() -> {
+                    finish(this);
+                    callback.onModelRead(name, buffer, estimatedBytes, readNanos);
+                });
+            } catch (IOException e) {
+                delivery.execute(() -> {
+                    finish(this);
+                    callback.onModelFailed(name, e);
+                });
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
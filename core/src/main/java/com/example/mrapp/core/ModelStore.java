@@ -0,0 +1,244 @@
+package com.example.mrapp.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Content-addressed model files. Each model is stored once as {@code <sha256>.<ext>}; a small index
+ * maps the display names it was imported under to that key, so identical imports share one file
+ * (and one loaded asset) and different files with the same display name no longer overwrite each
+ * other.
+ */
+public final class ModelStore {
+    /** Something that can be read, possibly twice. */
+    public interface Source {
+        ReadableByteChannel open() throws IOException;
+    }
+
+    public static final class ImportResult {
+        public final String key;
+        public final String displayName;
+        /** True if the content was already stored; nothing was written. */
+        public final boolean duplicate;
+
+        ImportResult(String key, String displayName, boolean duplicate) {
+            this.key = key;
+            this.displayName = displayName;
+            this.duplicate = duplicate;
+        }
+    }
+
+    private static final String INDEX_FILE_NAME = "index";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int INDEX_MAGIC = 0x58444E4D; // "MNDX"
+    private static final int INDEX_VERSION = 1;
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+    private final File directory;
+    private final Map<String, String> keyByName = new LinkedHashMap<>();
+    private final Map<String, String> nameByKey = new HashMap<>();
+    private final Set<Long> storedSizes = new HashSet<>();
+
+    public ModelStore(File directory) {
+        this.directory = directory;
+    }
+
+    /** Loads the index and moves any files from the old name-addressed layout into the store. */
+    public synchronized void open() throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) throw new IOException("Cannot create " + directory);
+        keyByName.clear();
+        nameByKey.clear();
+        storedSizes.clear();
+        readIndex();
+
+        boolean migrated = false;
+        File[] files = directory.listFiles();
+        if (files == null) files = new File[0];
+        for (File file : files) {
+            String name = file.getName();
+            if (!file.isFile() || name.equals(INDEX_FILE_NAME)) continue;
+            if (name.endsWith(TEMP_SUFFIX)) {
+                file.delete(); // left over from an interrupted import
+                continue;
+            }
+            if (isKey(name)) {
+                storedSizes.add(file.length());
+                continue;
+            }
+            String key;
+            try (FileChannel in = new FileInputStream(file).getChannel()) {
+                key = keyFor(name, digest(in, null));
+            }
+            File target = file(key);
+            if (target.exists()) {
+                file.delete();
+            } else if (!file.renameTo(target)) {
+                throw new IOException("Cannot move " + file + " into the model store");
+            }
+            storedSizes.add(target.length());
+            addName(name, key);
+            migrated = true;
+        }
+        if (migrated) writeIndex();
+    }
+
+    /**
+     * Streams {@code source} into the store while hashing it. When a stored model has the same size
+     * as {@code sizeHint}, the source is hashed first without writing, so re-importing identical
+     * content writes nothing.
+     */
+    public synchronized ImportResult importModel(Source source, String displayName, long sizeHint) throws IOException {
+        if (sizeHint >= 0 && storedSizes.contains(sizeHint)) {
+            String key;
+            try (ReadableByteChannel in = source.open()) {
+                key = keyFor(displayName, digest(in, null));
+            }
+            if (file(key).exists()) return register(displayName, key, true);
+        }
+
+        File tempFile = new File(directory, System.nanoTime() + TEMP_SUFFIX);
+        String key;
+        try (ReadableByteChannel in = source.open();
+             FileChannel out = new FileOutputStream(tempFile).getChannel()) {
+            key = keyFor(displayName, digest(in, out));
+            out.force(false);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        File target = file(key);
+        boolean duplicate = target.exists();
+        if (duplicate) {
+            tempFile.delete();
+        } else if (!tempFile.renameTo(target)) {
+            tempFile.delete();
+            throw new IOException("Cannot store " + displayName);
+        }
+        storedSizes.add(target.length());
+        return register(displayName, key, duplicate);
+    }
+
+    /** Maps a key or a display name to a stored key, or null if unknown. */
+    public synchronized String resolve(String nameOrKey) {
+        if (isKey(nameOrKey)) return file(nameOrKey).exists() ? nameOrKey : null;
+        return keyByName.get(nameOrKey);
+    }
+
+    public synchronized String displayName(String key) {
+        String name = nameByKey.get(key);
+        return name != null ? name : key;
+    }
+
+    public File file(String key) {
+        return new File(directory, key);
+    }
+
+    private ImportResult register(String displayName, String key, boolean duplicate) throws IOException {
+        String existingName = nameByKey.get(key);
+        if (existingName != null) return new ImportResult(key, existingName, duplicate);
+        String name = displayName;
+        for (int n = 2; keyByName.containsKey(name); n++) name = numbered(displayName, n);
+        addName(name, key);
+        writeIndex();
+        return new ImportResult(key, name, duplicate);
+    }
+
+    private void addName(String name, String key) {
+        keyByName.put(name, key);
+        if (!nameByKey.containsKey(key)) nameByKey.put(key, name);
+    }
+
+    /** Copies {@code in} to {@code out} (if non-null) through a 16 KB direct buffer, returning its SHA-256. */
+    private static byte[] digest(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+        while (true) {
+            buffer.clear();
+            if (in.read(buffer) < 0) break;
+            buffer.flip();
+            digest.update(buffer);
+            if (out != null) {
+                buffer.rewind();
+                while (buffer.hasRemaining()) out.write(buffer);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static String keyFor(String displayName, byte[] hash) {
+        StringBuilder key = new StringBuilder(hash.length * 2 + 5);
+        for (byte b : hash) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        boolean gltf = displayName.toLowerCase(Locale.US).endsWith(".gltf");
+        return key.append(gltf ? ".gltf" : ".glb").toString();
+    }
+
+    private static boolean isKey(String name) {
+        int dot = name.indexOf('.');
+        if (dot != 64) return false;
+        for (int i = 0; i < dot; i++) {
+            char c = name.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+        }
+        return true;
+    }
+
+    private static String numbered(String displayName, int n) {
+        int dot = displayName.lastIndexOf('.');
+        if (dot < 0) return displayName + " (" + n + ")";
+        return displayName.substring(0, dot) + " (" + n + ")" + displayName.substring(dot);
+    }
+
+    private void readIndex() throws IOException {
+        File indexFile = new File(directory, INDEX_FILE_NAME);
+        if (!indexFile.exists()) return;
+        try (FileChannel channel = new FileInputStream(indexFile).getChannel()) {
+            BinaryReader in = new BinaryReader(channel);
+            if (in.readInt() != INDEX_MAGIC || in.readShort() != INDEX_VERSION) throw new IOException("Bad model index");
+            int count = in.readVarInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readString();
+                String key = in.readString();
+                if (file(key).exists()) addName(name, key);
+            }
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        File indexFile = new File(directory, INDEX_FILE_NAME);
+        File tempFile = new File(directory, INDEX_FILE_NAME + TEMP_SUFFIX);
+        try (FileChannel channel = new FileOutputStream(tempFile).getChannel()) {
+            BinaryWriter out = new BinaryWriter(channel, 4096);
+            out.writeInt(INDEX_MAGIC);
+            out.writeShort(INDEX_VERSION);
+            out.writeVarInt(keyByName.size());
+            for (Map.Entry<String, String> entry : keyByName.entrySet()) {
+                out.writeString(entry.getKey());
+                out.writeString(entry.getValue());
+            }
+            out.flush();
+            channel.force(false);
+        }
+        if (!tempFile.renameTo(indexFile)) throw new IOException("Failed to replace " + indexFile);
+    }
+}
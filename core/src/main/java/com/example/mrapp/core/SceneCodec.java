@@ -0,0 +1,149 @@
+package com.example.mrapp.core;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned binary scene format.
+ *
+ * <p>Layout: magic, version, flags, translation step, journal sequence, model name table, then one
+ * record per object (id delta, model index, transform).
+ * Affine transforms store their 3x3 basis as float bits XOR'd with the previous object's basis
+ * (objects placed on the same plane usually share it, so most of those collapse to one byte) and
+ * their translation quantized to {@code translationStep} metres, delta-encoded as zigzag varints.
+ * Non-affine transforms fall back to 16 raw floats. A CRC32 of the whole payload closes the file.
+ * Version 1 files (no ids, no sequence) are still readable; their objects get ids 0..n-1.
+ * Malformed input of any kind is reported as an {@link IOException}.
+ */
+public final class SceneCodec {
+    public static final int MAGIC = 0x4353524D; // "MRSC"
+    public static final int VERSION = 2;
+    private static final int VERSION_1 = 1;
+    public static final float DEFAULT_TRANSLATION_STEP = 1e-4f;
+
+    private static final int FLAG_AFFINE = 1;
+    private static final int[] BASIS = {0, 1, 2, 4, 5, 6, 8, 9, 10};
+    private static final int[] TRANSLATION = {12, 13, 14};
+    /** Smallest encoding of an object: one-byte id delta, model index and flags, twelve one-byte varints. */
+    private static final int MIN_OBJECT_BYTES = 15;
+    /** Tables are preallocated no further than this when the input's length is unknown. */
+    private static final int MAX_PREALLOCATED = 4096;
+
+    private SceneCodec() {}
+
+    public static void write(SceneData scene, WritableByteChannel channel) throws IOException {
+        write(scene, channel, DEFAULT_TRANSLATION_STEP);
+    }
+
+    public static void write(SceneData scene, WritableByteChannel channel, float translationStep) throws IOException {
+        BinaryWriter out = new BinaryWriter(channel);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeFloat(translationStep);
+        out.writeLong(scene.getSequence());
+
+        out.writeVarInt(scene.getModels().size());
+        for (String model : scene.getModels()) out.writeString(model);
+
+        int count = scene.getObjectCount();
+        out.writeVarInt(count);
+        float[] m = new float[SceneData.TRANSFORM_SIZE];
+        int[] previousBasis = new int[BASIS.length];
+        long[] previousTranslation = new long[TRANSLATION.length];
+        double inverseStep = 1.0 / translationStep;
+        int previousId = -1;
+        for (int i = 0; i < count; i++) {
+            scene.getTransform(i, m, 0);
+            int id = scene.getObjectId(i);
+            out.writeSignedVarLong((long) id - previousId);
+            previousId = id;
+            out.writeVarInt(scene.getModelIndex(i));
+            if (isAffine(m)) {
+                out.writeByte(FLAG_AFFINE);
+                for (int k = 0; k < BASIS.length; k++) {
+                    int bits = Float.floatToIntBits(m[BASIS[k]]);
+                    out.writeVarInt(bits ^ previousBasis[k]);
+                    previousBasis[k] = bits;
+                }
+                for (int k = 0; k < TRANSLATION.length; k++) {
+                    long q = Math.round(m[TRANSLATION[k]] * inverseStep);
+                    out.writeSignedVarLong(q - previousTranslation[k]);
+                    previousTranslation[k] = q;
+                }
+            } else {
+                out.writeByte(0);
+                for (float value : m) out.writeFloat(value);
+            }
+        }
+        out.writeInt(out.crc());
+        out.flush();
+    }
+
+    public static SceneData read(ReadableByteChannel channel) throws IOException {
+        BinaryReader in = new BinaryReader(channel);
+        if (in.readInt() != MAGIC) throw new IOException("Not a scene file");
+        int version = in.readShort();
+        if (version != VERSION && version != VERSION_1) throw new IOException("Unsupported scene version " + version);
+        in.readShort(); // flags, reserved
+        float translationStep = in.readFloat();
+        long sequence = version == VERSION_1 ? 0 : in.readLong();
+
+        int modelCount = in.readVarInt();
+        checkCount(in, modelCount, 1, "model");
+        List<String> models = new ArrayList<>(Math.min(modelCount, MAX_PREALLOCATED));
+        for (int i = 0; i < modelCount; i++) models.add(in.readString());
+
+        int count = in.readVarInt();
+        checkCount(in, count, MIN_OBJECT_BYTES - (version == VERSION_1 ? 1 : 0), "object");
+        SceneData scene = new SceneData(Math.min(count, MAX_PREALLOCATED));
+        for (String model : models) scene.addModel(model);
+        scene.setSequence(sequence);
+
+        float[] m = new float[SceneData.TRANSFORM_SIZE];
+        int[] previousBasis = new int[BASIS.length];
+        long[] previousTranslation = new long[TRANSLATION.length];
+        int id = -1;
+        for (int i = 0; i < count; i++) {
+            id = version == VERSION_1 ? id + 1 : (int) (id + in.readSignedVarLong());
+            int modelIndex = in.readVarInt();
+            if (scene.indexOf(id) >= 0) throw new IOException("Duplicate object id " + id);
+            if ((in.readByte() & FLAG_AFFINE) != 0) {
+                for (int k = 0; k < BASIS.length; k++) {
+                    previousBasis[k] ^= in.readVarInt();
+                    m[BASIS[k]] = Float.intBitsToFloat(previousBasis[k]);
+                }
+                for (int k = 0; k < TRANSLATION.length; k++) {
+                    previousTranslation[k] += in.readSignedVarLong();
+                    m[TRANSLATION[k]] = (float) (previousTranslation[k] * (double) translationStep);
+                }
+                m[3] = 0f;
+                m[7] = 0f;
+                m[11] = 0f;
+                m[15] = 1f;
+            } else {
+                for (int k = 0; k < m.length; k++) m[k] = in.readFloat();
+            }
+            scene.addObject(id, modelIndex, m, 0);
+        }
+        int expectedCrc = in.crc();
+        if (in.readInt() != expectedCrc) throw new IOException("Scene checksum mismatch");
+        return scene;
+    }
+
+    /** Rejects a count that is negative or could not fit in the rest of the input. */
+    private static void checkCount(BinaryReader in, int count, int minBytesEach, String what) throws IOException {
+        if (count < 0) throw new IOException("Negative " + what + " count");
+        long remaining = in.remaining();
+        if (remaining >= 0 && (long) count * minBytesEach > remaining) {
+            throw new IOException(count + " " + what + "s cannot fit in " + remaining + " bytes");
+        }
+    }
+
+    private static boolean isAffine(float[] m) {
+        return m[3] == 0f && m[7] == 0f && m[11] == 0f && m[15] == 1f;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.mrapp.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Engine-independent scene description: a model name table plus one transform per placed object. */
+public final class SceneData {
+    public static final int TRANSFORM_SIZE = 16;
+
+    private final List<String> models = new ArrayList<>();
+    private final Map<Integer, Integer> indexById = new HashMap<>();
+    private int objectCount;
+    private int[] objectIds;
+    private int[] modelIndices;
+    private float[] transforms;
+    private long sequence;
+
+    public SceneData() {
+        this(16);
+    }
+
+    public SceneData(int expectedObjects) {
+        int capacity = Math.max(1, expectedObjects);
+        objectIds = new int[capacity];
+        modelIndices = new int[capacity];
+        transforms = new float[capacity * TRANSFORM_SIZE];
+    }
+
+    /** Deep copy, used to hand a consistent snapshot to a background writer. */
+    public SceneData copy() {
+        SceneData copy = new SceneData(objectCount);
+        copy.models.addAll(models);
+        copy.indexById.putAll(indexById);
+        copy.objectCount = objectCount;
+        System.arraycopy(objectIds, 0, copy.objectIds, 0, objectCount);
+        System.arraycopy(modelIndices, 0, copy.modelIndices, 0, objectCount);
+        System.arraycopy(transforms, 0, copy.transforms, 0, objectCount * TRANSFORM_SIZE);
+        copy.sequence = sequence;
+        return copy;
+    }
+
+    public List<String> getModels() {
+        return models;
+    }
+
+    public int addModel(String name) {
+        models.add(name);
+        return models.size() - 1;
+    }
+
+    /** Journal sequence number of the first record not reflected in this data. */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public int getObjectCount() {
+        return objectCount;
+    }
+
+    /** Appends an object whose column-major 4x4 transform starts at {@code transform[offset]}. */
+    public void addObject(int id, int modelIndex, float[] transform, int offset) {
+        if (indexById.containsKey(id)) throw new IllegalArgumentException("Duplicate object id " + id);
+        if (objectCount == modelIndices.length) grow();
+        objectIds[objectCount] = id;
+        modelIndices[objectCount] = modelIndex;
+        System.arraycopy(transform, offset, transforms, objectCount * TRANSFORM_SIZE, TRANSFORM_SIZE);
+        indexById.put(id, objectCount);
+        objectCount++;
+    }
+
+    /** Removes an object by id, moving the last object into its slot. Returns false if absent. */
+    public boolean removeObject(int id) {
+        Integer index = indexById.remove(id);
+        if (index == null) return false;
+        int last = --objectCount;
+        if (index != last) {
+            objectIds[index] = objectIds[last];
+            modelIndices[index] = modelIndices[last];
+            System.arraycopy(transforms, last * TRANSFORM_SIZE, transforms, index * TRANSFORM_SIZE, TRANSFORM_SIZE);
+            indexById.put(objectIds[index], index);
+        }
+        return true;
+    }
+
+    public boolean setTransform(int id, float[] transform, int offset) {
+        Integer index = indexById.get(id);
+        if (index == null) return false;
+        System.arraycopy(transform, offset, transforms, index * TRANSFORM_SIZE, TRANSFORM_SIZE);
+        return true;
+    }
+
+    /** Largest object id in use, or -1 when empty. */
+    public int getMaxObjectId() {
+        int max = -1;
+        for (int i = 0; i < objectCount; i++) max = Math.max(max, objectIds[i]);
+        return max;
+    }
+
+    /** Index of the object with {@code id}, or -1 if there is none. */
+    public int indexOf(int id) {
+        Integer index = indexById.get(id);
+        return index != null ? index : -1;
+    }
+
+    public int getObjectId(int object) {
+        return objectIds[object];
+    }
+
+    public int getModelIndex(int object) {
+        return modelIndices[object];
+    }
+
+    public void getTransform(int object, float[] out, int offset) {
+        System.arraycopy(transforms, object * TRANSFORM_SIZE, out, offset, TRANSFORM_SIZE);
+    }
+
+    public void clearObjects() {
+        objectCount = 0;
+        indexById.clear();
+    }
+
+    private void grow() {
+        int capacity = modelIndices.length * 2;
+        objectIds = Arrays.copyOf(objectIds, capacity);
+        modelIndices = Arrays.copyOf(modelIndices, capacity);
+        transforms = Arrays.copyOf(transforms, capacity * TRANSFORM_SIZE);
+    }
+}
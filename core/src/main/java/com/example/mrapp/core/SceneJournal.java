@@ -0,0 +1,421 @@
+package com.example.mrapp.core;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of scene mutations.
+ *
+ * <p>Each record is {@code length, type, sequence, payload, crc32(type..payload)}. The log is split
+ * into segment files named after the sequence number of their first record, so compaction can drop
+ * whole segments once a snapshot covers them. Replay stops at the first torn or corrupt record and
+ * truncates the log there; a record that does not parse or that a {@link Visitor} rejects with a
+ * {@link CorruptRecordException} counts as corrupt. Removals and transform updates may carry the
+ * key of the cell the object was in, and models may get their bounds, for stores that keep each
+ * cell separately; see {@link TiledSceneStore}.
+ */
+public final class SceneJournal implements Closeable {
+    /** Cell of a record written without one. */
+    public static final long NO_CELL = Long.MIN_VALUE;
+    /** Floats in a model's bounds: min xyz, max xyz. */
+    public static final int BOUNDS_SIZE = 6;
+
+    /**
+     * A record that does not parse, or that contradicts the state it is replayed onto, such as a
+     * second placement under one id.
+     */
+    public static final class CorruptRecordException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public CorruptRecordException(String message) {
+            super(message);
+        }
+    }
+
+    /** Receives the records of a {@link #replay(long, Visitor)} in order. */
+    public interface Visitor {
+        void model(long sequence, String name) throws IOException;
+
+        void place(long sequence, int id, int modelIndex, float[] transform) throws IOException;
+
+        void remove(long sequence, int id, long cell) throws IOException;
+
+        void transform(long sequence, int id, long cell, float[] transform) throws IOException;
+
+        void clear(long sequence) throws IOException;
+
+        /** {@code bounds} is min xyz, max xyz of one instance of the model, relative to its root. */
+        void bounds(long sequence, int modelIndex, float[] bounds) throws IOException;
+    }
+
+    static final int RECORD_MODEL = 1;
+    static final int RECORD_PLACE = 2;
+    static final int RECORD_REMOVE = 3;
+    static final int RECORD_TRANSFORM = 4;
+    static final int RECORD_CLEAR = 5;
+    static final int RECORD_BOUNDS = 6;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+    private static final int HEADER_SIZE = 1 + 8;
+
+    private final File directory;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer record = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel channel;
+    private long nextSequence;
+    private long bytesSinceRotate;
+
+    public SceneJournal(File directory) {
+        this.directory = directory;
+    }
+
+    public boolean exists() {
+        return !listSegments().isEmpty();
+    }
+
+    /**
+     * Applies every intact record with a sequence at or after {@code scene.getSequence()} to
+     * {@code scene}, advances its sequence, and opens a fresh segment for new records.
+     */
+    public void replay(SceneData scene) throws IOException {
+        scene.setSequence(replay(scene.getSequence(), new Visitor() {
+            @Override public void model(long sequence, String name) {
+                scene.addModel(name);
+            }
+
+            @Override public void place(long sequence, int id, int modelIndex, float[] transform)
+                    throws CorruptRecordException {
+                if (scene.indexOf(id) >= 0) throw new CorruptRecordException("Duplicate object id " + id);
+                scene.addObject(id, modelIndex, transform, 0);
+            }
+
+            @Override public void remove(long sequence, int id, long cell) {
+                scene.removeObject(id);
+            }
+
+            @Override public void transform(long sequence, int id, long cell, float[] transform) {
+                scene.setTransform(id, transform, 0);
+            }
+
+            @Override public void clear(long sequence) {
+                scene.clearObjects();
+            }
+
+            @Override public void bounds(long sequence, int modelIndex, float[] bounds) {}
+        }));
+    }
+
+    /**
+     * Hands every intact record with a sequence at or after {@code fromSequence} to
+     * {@code visitor}, opens a fresh segment for new records, and returns the next sequence.
+     */
+    public synchronized long replay(long fromSequence, Visitor visitor) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) throw new IOException("Cannot create " + directory);
+        long expected = fromSequence;
+        List<Long> segments = listSegments();
+        boolean intact = true;
+        float[] transform = new float[SceneData.TRANSFORM_SIZE];
+        for (long start : segments) {
+            File file = segmentFile(start);
+            if (!intact) {
+                // Anything after a corrupt record would leave a gap in the sequence.
+                if (!file.delete()) throw new IOException("Cannot delete " + file);
+                continue;
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                FileChannel segment = raf.getChannel();
+                BinaryReader in = new BinaryReader(segment);
+                long goodEnd = 0;
+                while (intact && !in.isAtEnd()) {
+                    try {
+                        int length = in.readInt();
+                        if (length < HEADER_SIZE || length > MAX_RECORD_SIZE) {
+                            intact = false;
+                            break;
+                        }
+                        byte[] body = new byte[length];
+                        in.readBytes(body, 0, length);
+                        crc.reset();
+                        crc.update(body, 0, length);
+                        if (in.readInt() != (int) crc.getValue()) {
+                            intact = false;
+                            break;
+                        }
+                        ByteBuffer buffer = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+                        int type = buffer.get();
+                        long sequence = buffer.getLong();
+                        if (sequence >= expected) {
+                            apply(visitor, type, sequence, buffer, transform);
+                            expected = sequence + 1;
+                        }
+                        goodEnd = in.position();
+                    } catch (EOFException | BufferUnderflowException | CorruptRecordException e) {
+                        // Torn write at the tail, or a record that does not parse or apply.
+                        intact = false;
+                    }
+                }
+                if (goodEnd < segment.size()) {
+                    intact = false;
+                    segment.truncate(goodEnd);
+                }
+            }
+        }
+        nextSequence = expected;
+        openSegment();
+        return expected;
+    }
+
+    private static void apply(Visitor visitor, int type, long sequence, ByteBuffer buffer, float[] transform)
+            throws IOException {
+        switch (type) {
+            case RECORD_MODEL: {
+                int length = getVarInt(buffer);
+                if (length > buffer.remaining()) throw new CorruptRecordException("Model name overruns its record");
+                byte[] name = new byte[length];
+                buffer.get(name);
+                visitor.model(sequence, new String(name, StandardCharsets.UTF_8));
+                break;
+            }
+            case RECORD_PLACE: {
+                int id = getVarInt(buffer);
+                int modelIndex = getVarInt(buffer);
+                getTransform(buffer, transform);
+                visitor.place(sequence, id, modelIndex, transform);
+                break;
+            }
+            case RECORD_REMOVE: {
+                int id = getVarInt(buffer);
+                visitor.remove(sequence, id, getCell(buffer));
+                break;
+            }
+            case RECORD_TRANSFORM: {
+                int id = getVarInt(buffer);
+                getTransform(buffer, transform);
+                visitor.transform(sequence, id, getCell(buffer), transform);
+                break;
+            }
+            case RECORD_CLEAR:
+                visitor.clear(sequence);
+                break;
+            case RECORD_BOUNDS: {
+                int modelIndex = getVarInt(buffer);
+                float[] bounds = new float[BOUNDS_SIZE];
+                for (int i = 0; i < BOUNDS_SIZE; i++) bounds[i] = buffer.getFloat();
+                visitor.bounds(sequence, modelIndex, bounds);
+                break;
+            }
+            default:
+                throw new CorruptRecordException("Unknown journal record " + type);
+        }
+    }
+
+    public synchronized void appendModel(String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        begin(RECORD_MODEL, 5 + bytes.length);
+        putVarInt(bytes.length);
+        record.put(bytes);
+        commit();
+    }
+
+    public synchronized void appendPlace(int id, int modelIndex, float[] transform, int offset) throws IOException {
+        begin(RECORD_PLACE, 10 + SceneData.TRANSFORM_SIZE * 4);
+        putVarInt(id);
+        putVarInt(modelIndex);
+        for (int i = 0; i < SceneData.TRANSFORM_SIZE; i++) record.putFloat(transform[offset + i]);
+        commit();
+    }
+
+    public void appendRemove(int id) throws IOException {
+        appendRemove(id, NO_CELL);
+    }
+
+    /** Records a removal from {@code cell}, or from no particular cell if it is {@link #NO_CELL}. */
+    public synchronized void appendRemove(int id, long cell) throws IOException {
+        begin(RECORD_REMOVE, 5 + 10);
+        putVarInt(id);
+        putCell(cell);
+        commit();
+    }
+
+    public void appendTransform(int id, float[] transform, int offset) throws IOException {
+        appendTransform(id, NO_CELL, transform, offset);
+    }
+
+    /** Records a new transform of an object that was in {@code cell}, or {@link #NO_CELL}. */
+    public synchronized void appendTransform(int id, long cell, float[] transform, int offset) throws IOException {
+        begin(RECORD_TRANSFORM, 5 + SceneData.TRANSFORM_SIZE * 4 + 10);
+        putVarInt(id);
+        for (int i = 0; i < SceneData.TRANSFORM_SIZE; i++) record.putFloat(transform[offset + i]);
+        putCell(cell);
+        commit();
+    }
+
+    public synchronized void appendClear() throws IOException {
+        begin(RECORD_CLEAR, 0);
+        commit();
+    }
+
+    public synchronized void appendBounds(int modelIndex, float[] bounds) throws IOException {
+        begin(RECORD_BOUNDS, 5 + BOUNDS_SIZE * 4);
+        putVarInt(modelIndex);
+        for (int i = 0; i < BOUNDS_SIZE; i++) record.putFloat(bounds[i]);
+        commit();
+    }
+
+    /** Starts a new segment and returns its first sequence number; older records are then immutable. */
+    public synchronized long rotate() throws IOException {
+        openSegment();
+        return nextSequence;
+    }
+
+    /** Deletes segments whose records all precede {@code sequence}. */
+    public synchronized void deleteSegmentsBefore(long sequence) {
+        List<Long> segments = listSegments();
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (segments.get(i + 1) > sequence) break;
+            segmentFile(segments.get(i)).delete();
+        }
+    }
+
+    /** Closes the journal and deletes every segment with the directory. */
+    public synchronized void delete() throws IOException {
+        close();
+        for (long segment : listSegments()) {
+            File file = segmentFile(segment);
+            if (!file.delete()) throw new IOException("Cannot delete " + file);
+        }
+        if (directory.exists() && !directory.delete()) throw new IOException("Cannot delete " + directory);
+    }
+
+    /** Bytes appended since the last rotation. */
+    public synchronized long size() {
+        return bytesSinceRotate;
+    }
+
+    public synchronized void sync() throws IOException {
+        if (channel != null) channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void openSegment() throws IOException {
+        close();
+        File file = segmentFile(nextSequence);
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.position(channel.size());
+        bytesSinceRotate = 0;
+    }
+
+    private void begin(int type, int maxPayload) {
+        if (channel == null) throw new IllegalStateException("Journal is not open");
+        int capacity = 4 + HEADER_SIZE + maxPayload + 4;
+        if (record.capacity() < capacity) {
+            record = ByteBuffer.allocate(Math.max(capacity, record.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        record.clear();
+        record.putInt(0); // length, patched in commit()
+        record.put((byte) type);
+        record.putLong(nextSequence);
+    }
+
+    private void commit() throws IOException {
+        int bodyLength = record.position() - 4;
+        record.putInt(0, bodyLength);
+        crc.reset();
+        crc.update(record.array(), record.arrayOffset() + 4, bodyLength);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        int length = record.remaining();
+        while (record.hasRemaining()) channel.write(record);
+        bytesSinceRotate += length;
+        nextSequence++;
+    }
+
+    private void putVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            record.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        record.put((byte) value);
+    }
+
+    /** The cell goes last, zigzag-encoded, and only if there is one, so older records still parse. */
+    private void putCell(long cell) {
+        if (cell == NO_CELL) return;
+        long value = (cell << 1) ^ (cell >> 63);
+        while ((value & ~0x7FL) != 0) {
+            record.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        record.put((byte) value);
+    }
+
+    private static long getCell(ByteBuffer buffer) throws CorruptRecordException {
+        if (!buffer.hasRemaining()) return NO_CELL;
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            long b = buffer.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return (value >>> 1) ^ -(value & 1);
+        }
+        throw new CorruptRecordException("Malformed varint");
+    }
+
+    /** Ids, indices and lengths are never negative, so a varint that decodes to one is corrupt. */
+    private static int getVarInt(ByteBuffer buffer) throws CorruptRecordException {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = buffer.get() & 0xFF;
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (result < 0) break;
+                return result;
+            }
+        }
+        throw new CorruptRecordException("Malformed varint");
+    }
+
+    private static void getTransform(ByteBuffer buffer, float[] transform) {
+        for (int i = 0; i < transform.length; i++) transform[i] = buffer.getFloat();
+    }
+
+    private File segmentFile(long start) {
+        return new File(directory, start + SEGMENT_SUFFIX);
+    }
+
+    private List<Long> listSegments() {
+        List<Long> segments = new ArrayList<>();
+        String[] names = directory.list();
+        if (names == null) return segments;
+        for (String name : names) {
+            if (!name.endsWith(SEGMENT_SUFFIX)) continue;
+            try {
+                segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            } catch (NumberFormatException ignored) {
+                // Not one of ours.
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.mrapp.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Incremental scene persistence: every mutation is appended to a {@link SceneJournal} as it
+ * happens, and {@link #compact()} folds the journal into a {@link SceneCodec} snapshot. Recovery
+ * loads the snapshot and replays the journal tail on top of it.
+ */
+public final class SceneStore implements Closeable {
+    public static final String SNAPSHOT_FILE_NAME = "scene.bin";
+    private static final String JOURNAL_DIRECTORY_NAME = "journal";
+    private static final long DEFAULT_COMPACTION_THRESHOLD = 256 * 1024;
+
+    private final File snapshotFile;
+    private final SceneJournal journal;
+    private final Object compactionLock = new Object();
+    private final Map<String, Integer> modelIndexByName = new HashMap<>();
+    private SceneData state;
+    private final AtomicInteger nextObjectId = new AtomicInteger();
+    private long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    public SceneStore(File directory) {
+        this.snapshotFile = new File(directory, SNAPSHOT_FILE_NAME);
+        this.journal = new SceneJournal(new File(directory, JOURNAL_DIRECTORY_NAME));
+    }
+
+    /** True if a snapshot or journal from an earlier run exists. */
+    public boolean hasData() {
+        return snapshotFile.exists() || journal.exists();
+    }
+
+    /** Recovers the persisted scene and opens the journal for appends. Returns a private copy. */
+    public synchronized SceneData open() throws IOException {
+        SceneData recovered;
+        if (snapshotFile.exists()) {
+            try (FileChannel channel = new FileInputStream(snapshotFile).getChannel()) {
+                recovered = SceneCodec.read(channel);
+            }
+        } else {
+            recovered = new SceneData();
+        }
+        journal.replay(recovered);
+
+        state = recovered;
+        modelIndexByName.clear();
+        List<String> models = state.getModels();
+        for (int i = 0; i < models.size(); i++) modelIndexByName.put(models.get(i), i);
+        nextObjectId.accumulateAndGet(state.getMaxObjectId() + 1, Math::max);
+        return state.copy();
+    }
+
+    /**
+     * Reserves an object id for a later {@link #place}. Lock-free, so the render thread can name a
+     * new object at once and leave the journal write to the persistence thread.
+     */
+    public int newObjectId() {
+        return nextObjectId.getAndIncrement();
+    }
+
+    /**
+     * Records a new placement under an id from {@link #newObjectId}. An id already in use is
+     * rejected before anything is journaled, so replay never meets a placement it cannot apply.
+     */
+    public synchronized void place(int id, String modelName, float[] transform, int offset) throws IOException {
+        if (state.indexOf(id) >= 0) throw new IllegalArgumentException("Duplicate object id " + id);
+        int modelIndex = modelIndex(modelName);
+        journal.appendPlace(id, modelIndex, transform, offset);
+        state.addObject(id, modelIndex, transform, offset);
+    }
+
+    /** Moves an object; an unknown id is ignored without journaling, as {@link SceneData} ignores it. */
+    public synchronized void updateTransform(int id, float[] transform, int offset) throws IOException {
+        if (state.indexOf(id) < 0) return;
+        journal.appendTransform(id, transform, offset);
+        state.setTransform(id, transform, offset);
+    }
+
+    public synchronized void remove(int id) throws IOException {
+        if (state.indexOf(id) < 0) return;
+        journal.appendRemove(id);
+        state.removeObject(id);
+    }
+
+    public synchronized void clear() throws IOException {
+        journal.appendClear();
+        state.clearObjects();
+    }
+
+    /** Flushes appended records to storage. */
+    public void sync() throws IOException {
+        journal.sync();
+    }
+
+    public void setCompactionThreshold(long bytes) {
+        compactionThreshold = bytes;
+    }
+
+    public boolean needsCompaction() {
+        return journal.size() >= compactionThreshold;
+    }
+
+    /**
+     * Writes a snapshot of the current state and drops the journal segments it covers. Mutations
+     * may continue on other threads; they land in the new journal segment.
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            SceneData snapshot;
+            synchronized (this) {
+                long sequence = journal.rotate();
+                snapshot = state.copy();
+                snapshot.setSequence(sequence);
+            }
+            writeSnapshot(snapshotFile, snapshot);
+            journal.deleteSegmentsBefore(snapshot.getSequence());
+        }
+    }
+
+    /** Atomically replaces {@code file} with {@code scene}, via a temp file and rename. */
+    public static void writeSnapshot(File file, SceneData scene) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = new FileOutputStream(tempFile).getChannel()) {
+            SceneCodec.write(scene, channel);
+            channel.force(false);
+        }
+        if (!tempFile.renameTo(file)) throw new IOException("Failed to replace " + file);
+    }
+
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    /** Closes the store and deletes its snapshot and journal, once the scene lives elsewhere. */
+    public void delete() throws IOException {
+        journal.delete();
+        if (snapshotFile.exists() && !snapshotFile.delete()) throw new IOException("Cannot delete " + snapshotFile);
+    }
+
+    private int modelIndex(String modelName) throws IOException {
+        Integer index = modelIndexByName.get(modelName);
+        if (index != null) return index;
+        journal.appendModel(modelName);
+        int added = state.addModel(modelName);
+        modelIndexByName.put(modelName, added);
+        return added;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.mrapp.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Writes a session trace: per frame, the camera from the {@link FrameSource}, the tracking state,
+ * and the taps and picks handled in it with their hit poses. {@link SessionTrace} reads it back.
+ *
+ * <p>Layout: magic, version, then one record per frame: flags, frame time delta (varlong nanos),
+ * the projection only when it changed, the view's affine 3x4 part, events (type, x, y and the
+ * 3x4 hit pose of a tap that hit), then a CRC32 of the record, so a trace cut short by a crash
+ * ends cleanly at the last whole frame. A steady frame takes about 60 bytes.
+ *
+ * <p>Not thread-safe; written from the render thread. Frames go through a buffer that reaches
+ * the channel every thousand frames or so.
+ */
+public final class SessionRecorder implements Closeable {
+    public static final int MAGIC = 0x5254534D; // "MSTR"
+    public static final int VERSION = 1;
+
+    static final int FLAG_TRACKING = 1;
+    static final int FLAG_PROJECTION = 2;
+    static final int EVENT_TAP = 1;
+    static final int EVENT_TAP_HIT = 2;
+    static final int EVENT_PICK = 3;
+    /** Elements of a column-major 4x4 affine matrix that are not constant. */
+    static final int[] AFFINE = {0, 1, 2, 4, 5, 6, 8, 9, 10, 12, 13, 14};
+
+    private static final int EVENT_FLOATS = 2 + 12;
+
+    private final WritableByteChannel channel;
+    private final BinaryWriter out;
+    private final float[] view = new float[16];
+    private final float[] projection = new float[16];
+    private final float[] lastProjection = new float[16];
+    private boolean hasProjection;
+    private boolean inFrame;
+    private boolean tracking;
+    private long frameTimeNanos;
+    private long lastFrameTimeNanos;
+    private int eventCount;
+    private int[] eventTypes = new int[4];
+    private float[] eventData = new float[4 * EVENT_FLOATS];
+    private long frames;
+
+    public SessionRecorder(WritableByteChannel channel) throws IOException {
+        this.channel = channel;
+        this.out = new BinaryWriter(channel);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+    }
+
+    /** Starts a frame; the matrices are copied. */
+    public void beginFrame(long frameTimeNanos, boolean tracking, float[] view, float[] projection) {
+        this.frameTimeNanos = frameTimeNanos;
+        this.tracking = tracking;
+        System.arraycopy(view, 0, this.view, 0, 16);
+        System.arraycopy(projection, 0, this.projection, 0, 16);
+        eventCount = 0;
+        inFrame = true;
+    }
+
+    /** Records a tap of the current frame; {@code hitPose} is null if it hit nothing or was not tested. */
+    public void tap(float x, float y, float[] hitPose) {
+        int base = addEvent(hitPose != null ? EVENT_TAP_HIT : EVENT_TAP, x, y);
+        if (hitPose != null) {
+            for (int i = 0; i < AFFINE.length; i++) eventData[base + 2 + i] = hitPose[AFFINE[i]];
+        }
+    }
+
+    public void pick(float x, float y) {
+        addEvent(EVENT_PICK, x, y);
+    }
+
+    /** Writes the current frame. */
+    public void endFrame() throws IOException {
+        if (!inFrame) return;
+        inFrame = false;
+        boolean projectionChanged = !hasProjection || !Arrays.equals(projection, lastProjection);
+        out.resetCrc();
+        out.writeByte((tracking ? FLAG_TRACKING : 0) | (projectionChanged ? FLAG_PROJECTION : 0));
+        out.writeVarLong(frames == 0 ? 0 : frameTimeNanos - lastFrameTimeNanos);
+        if (projectionChanged) {
+            for (int i = 0; i < 16; i++) out.writeFloat(projection[i]);
+            System.arraycopy(projection, 0, lastProjection, 0, 16);
+            hasProjection = true;
+        }
+        for (int index : AFFINE) out.writeFloat(view[index]);
+        out.writeVarInt(eventCount);
+        for (int e = 0; e < eventCount; e++) {
+            int base = e * EVENT_FLOATS;
+            out.writeByte(eventTypes[e]);
+            out.writeFloat(eventData[base]);
+            out.writeFloat(eventData[base + 1]);
+            if (eventTypes[e] == EVENT_TAP_HIT) {
+                for (int i = 0; i < AFFINE.length; i++) out.writeFloat(eventData[base + 2 + i]);
+            }
+        }
+        out.writeInt(out.crc());
+        lastFrameTimeNanos = frameTimeNanos;
+        frames++;
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /** Bytes written so far, including those still buffered. */
+    public long getSize() {
+        return out.position();
+    }
+
+    /** Flushes and closes the channel; a frame still open is dropped. */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private int addEvent(int type, float x, float y) {
+        if (eventCount == eventTypes.length) {
+            eventTypes = Arrays.copyOf(eventTypes, eventCount * 2);
+            eventData = Arrays.copyOf(eventData, eventCount * 2 * EVENT_FLOATS);
+        }
+        int base = eventCount * EVENT_FLOATS;
+        eventTypes[eventCount++] = type;
+        eventData[base] = x;
+        eventData[base + 1] = y;
+        return base;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.mrapp.core;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Reads a trace written by {@link SessionRecorder} one frame at a time, reusing its arrays, so
+ * replaying a long session does not allocate per frame.
+ */
+public final class SessionTrace implements Closeable {
+    private final ReadableByteChannel channel;
+    private final BinaryReader in;
+    private final float[] view = new float[16];
+    private final float[] projection = new float[16];
+    private boolean hasProjection;
+    private boolean tracking;
+    private long frameTimeNanos;
+    private long frames;
+    private int eventCount;
+    private int[] eventTypes = new int[4];
+    private float[] eventX = new float[4];
+    private float[] eventY = new float[4];
+    private float[] eventPoses = new float[4 * 16];
+
+    public SessionTrace(ReadableByteChannel channel) throws IOException {
+        this.channel = channel;
+        this.in = new BinaryReader(channel);
+        if (in.readInt() != SessionRecorder.MAGIC) throw new IOException("Not a session trace");
+        int version = in.readShort();
+        if (version != SessionRecorder.VERSION) throw new IOException("Unsupported session trace version " + version);
+        view[15] = 1f;
+    }
+
+    /**
+     * Reads the next frame. Returns false at the end of the trace, including a final frame cut
+     * short by a crash; a corrupt frame elsewhere is an error.
+     */
+    public boolean next() throws IOException {
+        if (in.isAtEnd()) return false;
+        try {
+            in.resetCrc();
+            int flags = in.readByte();
+            long delta = in.readVarLong();
+            frameTimeNanos = frames == 0 ? 0 : frameTimeNanos + delta;
+            tracking = (flags & SessionRecorder.FLAG_TRACKING) != 0;
+            if ((flags & SessionRecorder.FLAG_PROJECTION) != 0) {
+                for (int i = 0; i < 16; i++) projection[i] = in.readFloat();
+                hasProjection = true;
+            } else if (!hasProjection) {
+                throw new IOException("Session trace frame " + frames + " has no projection");
+            }
+            readAffine(view, 0);
+            eventCount = in.readVarInt();
+            if (eventCount > eventTypes.length) growEvents(eventCount);
+            for (int e = 0; e < eventCount; e++) {
+                int type = in.readByte();
+                if (type < SessionRecorder.EVENT_TAP || type > SessionRecorder.EVENT_PICK) {
+                    throw new IOException("Unknown event type " + type + " in frame " + frames);
+                }
+                eventTypes[e] = type;
+                eventX[e] = in.readFloat();
+                eventY[e] = in.readFloat();
+                if (type == SessionRecorder.EVENT_TAP_HIT) readAffine(eventPoses, e * 16);
+            }
+            int expectedCrc = in.crc();
+            if (in.readInt() != expectedCrc) {
+                if (in.isAtEnd()) return false;
+                throw new IOException("Session trace checksum mismatch in frame " + frames);
+            }
+        } catch (EOFException e) {
+            return false;
+        }
+        frames++;
+        return true;
+    }
+
+    /** Frames read so far. */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /** Nanoseconds since the first frame of the trace. */
+    public long getFrameTimeNanos() {
+        return frameTimeNanos;
+    }
+
+    public boolean isTracking() {
+        return tracking;
+    }
+
+    public void getViewMatrix(float[] out) {
+        System.arraycopy(view, 0, out, 0, 16);
+    }
+
+    public void getProjectionMatrix(float[] out) {
+        System.arraycopy(projection, 0, out, 0, 16);
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public boolean isPick(int event) {
+        return eventTypes[event] == SessionRecorder.EVENT_PICK;
+    }
+
+    public float getEventX(int event) {
+        return eventX[event];
+    }
+
+    public float getEventY(int event) {
+        return eventY[event];
+    }
+
+    /** Copies the hit pose of a tap into {@code out} and returns true, or returns false if it hit nothing. */
+    public boolean getHitPose(int event, float[] out) {
+        if (eventTypes[event] != SessionRecorder.EVENT_TAP_HIT) return false;
+        System.arraycopy(eventPoses, event * 16, out, 0, 16);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readAffine(float[] out, int offset) throws IOException {
+        for (int index : SessionRecorder.AFFINE) out[offset + index] = in.readFloat();
+        out[offset + 3] = 0f;
+        out[offset + 7] = 0f;
+        out[offset + 11] = 0f;
+        out[offset + 15] = 1f;
+    }
+
+    private void growEvents(int count) {
+        int capacity = Math.max(count, eventTypes.length * 2);
+        eventTypes = Arrays.copyOf(eventTypes, capacity);
+        eventX = Arrays.copyOf(eventX, capacity);
+        eventY = Arrays.copyOf(eventY, capacity);
+        eventPoses = Arrays.copyOf(eventPoses, capacity * 16);
+    }
+}
@@ -0,0 +1,490 @@
+package com.example.mrapp.core;
+
+import java.util.Arrays;
+
+/**
+ * Dynamic bounding volume hierarchy over axis-aligned boxes, the incremental AABB tree used by
+ * Box2D and Bullet. Leaves store their box enlarged by {@link #MARGIN} so small moves leave the
+ * tree alone; inserts choose the sibling with the least surface-area growth and rotations keep the
+ * tree balanced, so ray picks, frustum queries and nearest-neighbor queries visit O(log n) nodes
+ * for typical scenes.
+ *
+ * <p>Boxes are six floats: min x, y, z then max x, y, z. Not thread-safe; queries reuse scratch
+ * arrays and do not allocate once those have grown.
+ */
+public final class SpatialIndex<T> {
+    public interface Visitor<T> {
+        void visit(int proxy, T item);
+    }
+
+    public static final float MARGIN = 0.05f;
+    public static final int NONE = -1;
+
+    private float[] fat = new float[0];
+    private float[] tight = new float[0];
+    private int[] parent = new int[0];
+    private int[] child1 = new int[0];
+    private int[] child2 = new int[0];
+    /** 0 for leaves, -1 for free nodes. */
+    private int[] height = new int[0];
+    private Object[] items = new Object[0];
+    private int capacity;
+    private int root = NONE;
+    private int freeList = NONE;
+    private int size;
+
+    private int[] stack = new int[64];
+    private int[] heapNodes = new int[64];
+    private float[] heapKeys = new float[64];
+    private float[] bestDistances = new float[8];
+
+    public SpatialIndex() {
+        grow(16);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Adds {@code item} with the box at {@code box[off..off+6)} and returns its proxy id. */
+    public int add(T item, float[] box, int off) {
+        int leaf = allocateNode();
+        System.arraycopy(box, off, tight, leaf * 6, 6);
+        setFat(leaf);
+        items[leaf] = item;
+        height[leaf] = 0;
+        insertLeaf(leaf);
+        size++;
+        return leaf;
+    }
+
+    public void remove(int proxy) {
+        removeLeaf(proxy);
+        freeNode(proxy);
+        size--;
+    }
+
+    /** Moves {@code proxy} to a new box; the tree only changes if it leaves the enlarged box. */
+    public void update(int proxy, float[] box, int off) {
+        System.arraycopy(box, off, tight, proxy * 6, 6);
+        int f = proxy * 6;
+        if (fat[f] <= box[off] && fat[f + 1] <= box[off + 1] && fat[f + 2] <= box[off + 2]
+                && fat[f + 3] >= box[off + 3] && fat[f + 4] >= box[off + 4] && fat[f + 5] >= box[off + 5]) {
+            return;
+        }
+        removeLeaf(proxy);
+        setFat(proxy);
+        insertLeaf(proxy);
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int proxy) {
+        return (T) items[proxy];
+    }
+
+    public void getBounds(int proxy, float[] out, int off) {
+        System.arraycopy(tight, proxy * 6, out, off, 6);
+    }
+
+    public void clear() {
+        Arrays.fill(items, null);
+        capacity = 0;
+        root = NONE;
+        freeList = NONE;
+        size = 0;
+        grow(16);
+    }
+
+    /** Height of the tree; a leaf alone has height 0. */
+    public int getHeight() {
+        return root == NONE ? 0 : height[root];
+    }
+
+    /**
+     * Returns the proxy whose box the ray {@code origin + t * direction}, {@code 0 <= t <= maxT},
+     * enters first, or {@link #NONE}. {@code direction} need not be normalized; {@code maxT} is in
+     * its units.
+     */
+    public int raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxT) {
+        float ix = 1f / dx;
+        float iy = 1f / dy;
+        float iz = 1f / dz;
+        float best = maxT;
+        int hit = NONE;
+        int top = 0;
+        if (root != NONE) stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            boolean leaf = height[node] == 0;
+            float t = slab(leaf ? tight : fat, node * 6, ox, oy, oz, ix, iy, iz, best);
+            if (t < 0) continue;
+            if (leaf) {
+                best = t;
+                hit = node;
+            } else {
+                ensureStack(top + 2);
+                stack[top++] = child1[node];
+                stack[top++] = child2[node];
+            }
+        }
+        return hit;
+    }
+
+    /**
+     * Visits every item whose box is not entirely outside one of the planes. {@code planes} holds
+     * six (a, b, c, d) planes with the inside where {@code a*x + b*y + c*z + d >= 0}. Subtrees
+     * entirely inside every plane are reported without further tests. Returns the number visited.
+     */
+    public int queryFrustum(float[] planes, Visitor<? super T> visitor) {
+        int visited = 0;
+        int top = 0;
+        // Stack entries are node * 2 + 1 when the node is already known to be inside.
+        if (root != NONE) stack[top++] = root * 2;
+        while (top > 0) {
+            int entry = stack[--top];
+            int node = entry >> 1;
+            boolean inside = (entry & 1) != 0;
+            if (!inside) {
+                int result = classify(planes, height[node] == 0 ? tight : fat, node * 6);
+                if (result < 0) continue;
+                inside = result > 0;
+            }
+            if (height[node] == 0) {
+                visitor.visit(node, get(node));
+                visited++;
+            } else {
+                ensureStack(top + 2);
+                stack[top++] = child1[node] * 2 + (inside ? 1 : 0);
+                stack[top++] = child2[node] * 2 + (inside ? 1 : 0);
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Writes to {@code out} the proxies of the up to {@code k} items whose boxes are closest to the
+     * point, nearest first, and returns how many were written.
+     */
+    public int nearest(float x, float y, float z, int k, int[] out) {
+        if (root == NONE || k <= 0) return 0;
+        if (bestDistances.length < k) bestDistances = new float[k];
+        int found = 0;
+        int heapSize = 0;
+        heapSize = heapPush(heapSize, root, distanceSquared(fat, root * 6, x, y, z));
+        while (heapSize > 0) {
+            int node = heapNodes[0];
+            float key = heapKeys[0];
+            heapSize = heapPop(heapSize);
+            if (found == k && key >= bestDistances[k - 1]) break;
+            if (height[node] == 0) {
+                float d = distanceSquared(tight, node * 6, x, y, z);
+                if (found == k && d >= bestDistances[k - 1]) continue;
+                int i = found < k ? found++ : k - 1;
+                while (i > 0 && bestDistances[i - 1] > d) {
+                    bestDistances[i] = bestDistances[i - 1];
+                    out[i] = out[i - 1];
+                    i--;
+                }
+                bestDistances[i] = d;
+                out[i] = node;
+            } else {
+                int c1 = child1[node];
+                int c2 = child2[node];
+                heapSize = heapPush(heapSize, c1, distanceSquared(height[c1] == 0 ? tight : fat, c1 * 6, x, y, z));
+                heapSize = heapPush(heapSize, c2, distanceSquared(height[c2] == 0 ? tight : fat, c2 * 6, x, y, z));
+            }
+        }
+        return found;
+    }
+
+    /** Entry distance of the ray into the box, or -1 if it misses within {@code maxT}. */
+    private static float slab(float[] b, int o, float ox, float oy, float oz, float ix, float iy, float iz, float maxT) {
+        float t1 = (b[o] - ox) * ix;
+        float t2 = (b[o + 3] - ox) * ix;
+        float near = Math.min(t1, t2);
+        float far = Math.max(t1, t2);
+        t1 = (b[o + 1] - oy) * iy;
+        t2 = (b[o + 4] - oy) * iy;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        t1 = (b[o + 2] - oz) * iz;
+        t2 = (b[o + 5] - oz) * iz;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        // NaN from 0 * inf (ray in a slab's plane) fails every comparison and counts as a miss.
+        if (!(far >= near) || far < 0 || near > maxT) return -1;
+        return Math.max(near, 0f);
+    }
+
+    /** -1 if outside some plane, 1 if inside all, 0 if intersecting. */
+    private static int classify(float[] planes, float[] b, int o) {
+        int result = 1;
+        for (int p = 0; p < 24; p += 4) {
+            float a = planes[p];
+            float bb = planes[p + 1];
+            float c = planes[p + 2];
+            float d = planes[p + 3];
+            // The box corner furthest along the plane normal, then the one furthest against it.
+            float far = a * (a >= 0 ? b[o + 3] : b[o]) + bb * (bb >= 0 ? b[o + 4] : b[o + 1])
+                    + c * (c >= 0 ? b[o + 5] : b[o + 2]) + d;
+            if (far < 0) return -1;
+            float near = a * (a >= 0 ? b[o] : b[o + 3]) + bb * (bb >= 0 ? b[o + 1] : b[o + 4])
+                    + c * (c >= 0 ? b[o + 2] : b[o + 5]) + d;
+            if (near < 0) result = 0;
+        }
+        return result;
+    }
+
+    private static float distanceSquared(float[] b, int o, float x, float y, float z) {
+        float dx = Math.max(Math.max(b[o] - x, x - b[o + 3]), 0f);
+        float dy = Math.max(Math.max(b[o + 1] - y, y - b[o + 4]), 0f);
+        float dz = Math.max(Math.max(b[o + 2] - z, z - b[o + 5]), 0f);
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private int heapPush(int heapSize, int node, float key) {
+        if (heapSize == heapNodes.length) {
+            heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int up = (i - 1) / 2;
+            if (heapKeys[up] <= key) break;
+            heapNodes[i] = heapNodes[up];
+            heapKeys[i] = heapKeys[up];
+            i = up;
+        }
+        heapNodes[i] = node;
+        heapKeys[i] = key;
+        return heapSize;
+    }
+
+    private int heapPop(int heapSize) {
+        heapSize--;
+        int node = heapNodes[heapSize];
+        float key = heapKeys[heapSize];
+        int i = 0;
+        while (true) {
+            int child = i * 2 + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) child++;
+            if (heapKeys[child] >= key) break;
+            heapNodes[i] = heapNodes[child];
+            heapKeys[i] = heapKeys[child];
+            i = child;
+        }
+        heapNodes[i] = node;
+        heapKeys[i] = key;
+        return heapSize;
+    }
+
+    private void ensureStack(int needed) {
+        if (needed > stack.length) stack = Arrays.copyOf(stack, Math.max(needed, stack.length * 2));
+    }
+
+    private void setFat(int leaf) {
+        int o = leaf * 6;
+        for (int i = 0; i < 3; i++) {
+            fat[o + i] = tight[o + i] - MARGIN;
+            fat[o + 3 + i] = tight[o + 3 + i] + MARGIN;
+        }
+    }
+
+    private void grow(int newCapacity) {
+        fat = Arrays.copyOf(fat, newCapacity * 6);
+        tight = Arrays.copyOf(tight, newCapacity * 6);
+        parent = Arrays.copyOf(parent, newCapacity);
+        child1 = Arrays.copyOf(child1, newCapacity);
+        child2 = Arrays.copyOf(child2, newCapacity);
+        height = Arrays.copyOf(height, newCapacity);
+        items = Arrays.copyOf(items, newCapacity);
+        for (int i = newCapacity - 1; i >= capacity; i--) {
+            parent[i] = freeList;
+            height[i] = -1;
+            freeList = i;
+        }
+        capacity = newCapacity;
+    }
+
+    private int allocateNode() {
+        if (freeList == NONE) grow(capacity * 2);
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NONE;
+        child1[node] = NONE;
+        child2[node] = NONE;
+        height[node] = 0;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        items[node] = null;
+        height[node] = -1;
+        parent[node] = freeList;
+        freeList = node;
+    }
+
+    /** Half the surface area of the union of two fat boxes (or of one, if {@code b == a}). */
+    private float unionArea(int a, int b) {
+        int oa = a * 6;
+        int ob = b * 6;
+        float x = Math.max(fat[oa + 3], fat[ob + 3]) - Math.min(fat[oa], fat[ob]);
+        float y = Math.max(fat[oa + 4], fat[ob + 4]) - Math.min(fat[oa + 1], fat[ob + 1]);
+        float z = Math.max(fat[oa + 5], fat[ob + 5]) - Math.min(fat[oa + 2], fat[ob + 2]);
+        return x * y + y * z + z * x;
+    }
+
+    private void setUnion(int node, int a, int b) {
+        int o = node * 6;
+        int oa = a * 6;
+        int ob = b * 6;
+        for (int i = 0; i < 3; i++) {
+            fat[o + i] = Math.min(fat[oa + i], fat[ob + i]);
+            fat[o + 3 + i] = Math.max(fat[oa + 3 + i], fat[ob + 3 + i]);
+        }
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NONE) {
+            root = leaf;
+            parent[leaf] = NONE;
+            return;
+        }
+        // Descend towards the sibling that minimizes the total surface area added to the tree.
+        int index = root;
+        while (height[index] > 0) {
+            int c1 = child1[index];
+            int c2 = child2[index];
+            float area = unionArea(index, index);
+            float combined = unionArea(index, leaf);
+            float cost = 2 * combined;
+            float inheritance = 2 * (combined - area);
+            float cost1 = unionArea(c1, leaf) - (height[c1] == 0 ? 0 : unionArea(c1, c1)) + inheritance;
+            float cost2 = unionArea(c2, leaf) - (height[c2] == 0 ? 0 : unionArea(c2, c2)) + inheritance;
+            if (cost < cost1 && cost < cost2) break;
+            index = cost1 < cost2 ? c1 : c2;
+        }
+
+        int sibling = index;
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        items[newParent] = null;
+        setUnion(newParent, leaf, sibling);
+        height[newParent] = height[sibling] + 1;
+        if (oldParent != NONE) {
+            if (child1[oldParent] == sibling) child1[oldParent] = newParent; else child2[oldParent] = newParent;
+        } else {
+            root = newParent;
+        }
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+        refit(parent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NONE;
+            return;
+        }
+        int p = parent[leaf];
+        int grandParent = parent[p];
+        int sibling = child1[p] == leaf ? child2[p] : child1[p];
+        if (grandParent != NONE) {
+            if (child1[grandParent] == p) child1[grandParent] = sibling; else child2[grandParent] = sibling;
+            parent[sibling] = grandParent;
+            freeNode(p);
+            refit(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NONE;
+            freeNode(p);
+        }
+    }
+
+    /** Walks from {@code index} to the root, rebalancing and recomputing heights and boxes. */
+    private void refit(int index) {
+        while (index != NONE) {
+            index = balance(index);
+            int c1 = child1[index];
+            int c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            setUnion(index, c1, c2);
+            index = parent[index];
+        }
+    }
+
+    /** Rotates a child of {@code a} up if its subtrees differ in height by more than one; returns the subtree root. */
+    private int balance(int a) {
+        if (height[a] < 2) return a;
+        int b = child1[a];
+        int c = child2[a];
+        int imbalance = height[c] - height[b];
+        if (imbalance > 1) {
+            int f = child1[c];
+            int g = child2[c];
+            child1[c] = a;
+            parent[c] = parent[a];
+            parent[a] = c;
+            replaceChild(parent[c], a, c);
+            if (height[f] > height[g]) {
+                child2[c] = f;
+                child2[a] = g;
+                parent[g] = a;
+                setUnion(a, b, g);
+                setUnion(c, a, f);
+                height[a] = 1 + Math.max(height[b], height[g]);
+                height[c] = 1 + Math.max(height[a], height[f]);
+            } else {
+                child2[c] = g;
+                child2[a] = f;
+                parent[f] = a;
+                setUnion(a, b, f);
+                setUnion(c, a, g);
+                height[a] = 1 + Math.max(height[b], height[f]);
+                height[c] = 1 + Math.max(height[a], height[g]);
+            }
+            return c;
+        }
+        if (imbalance < -1) {
+            int d = child1[b];
+            int e = child2[b];
+            child1[b] = a;
+            parent[b] = parent[a];
+            parent[a] = b;
+            replaceChild(parent[b], a, b);
+            if (height[d] > height[e]) {
+                child2[b] = d;
+                child1[a] = e;
+                parent[e] = a;
+                setUnion(a, c, e);
+                setUnion(b, a, d);
+                height[a] = 1 + Math.max(height[c], height[e]);
+                height[b] = 1 + Math.max(height[a], height[d]);
+            } else {
+                child2[b] = e;
+                child1[a] = d;
+                parent[d] = a;
+                setUnion(a, c, d);
+                setUnion(b, a, e);
+                height[a] = 1 + Math.max(height[c], height[d]);
+                height[b] = 1 + Math.max(height[a], height[e]);
+            }
+            return b;
+        }
+        return a;
+    }
+
+    private void replaceChild(int node, int oldChild, int newChild) {
+        if (node == NONE) {
+            root = newChild;
+        } else if (child1[node] == oldChild) {
+            child1[node] = newChild;
+        } else {
+            child2[node] = newChild;
+        }
+    }
+}
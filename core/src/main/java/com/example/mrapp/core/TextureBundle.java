@@ -0,0 +1,179 @@
+package com.example.mrapp.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The block-compressed textures of one model, written by the app's texture transcoder next to the
+ * optimized model and bound by its Filament texture binding in place of the model's own images.
+ *
+ * <p>Layout: magic, version, images (format, width, height, then the byte length of each mip
+ * level), bindings (glTF material, sampler parameter, image, wrap modes), a CRC32 of that header,
+ * then every level's blocks 4-byte aligned in header order. Reading maps the file, so level data
+ * goes from the page cache to the GPU without a Java heap copy.
+ */
+public final class TextureBundle {
+    public static final int MAGIC = 0x5845544D; // "MTEX"
+    public static final int VERSION = 1;
+
+    public static final int FORMAT_RGB8 = 0;
+    public static final int FORMAT_SRGB8 = 1;
+    public static final int FORMAT_RGBA8 = 2;
+    public static final int FORMAT_SRGBA8 = 3;
+
+    public static final class Image {
+        public final int format;
+        public final int width;
+        public final int height;
+        private final ByteBuffer[] levels;
+
+        public Image(int format, int width, int height, ByteBuffer[] levels) {
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.levels = levels;
+        }
+
+        public int getLevelCount() {
+            return levels.length;
+        }
+
+        public ByteBuffer getLevel(int level) {
+            return levels[level].duplicate();
+        }
+    }
+
+    /** One sampler parameter of one glTF material that reads an image of the bundle. */
+    public static final class Binding {
+        public final int material;
+        public final String parameter;
+        public final int image;
+        /** glTF sampler wrap modes. */
+        public final int wrapS;
+        public final int wrapT;
+
+        public Binding(int material, String parameter, int image, int wrapS, int wrapT) {
+            this.material = material;
+            this.parameter = parameter;
+            this.image = image;
+            this.wrapS = wrapS;
+            this.wrapT = wrapT;
+        }
+    }
+
+    private final List<Image> images = new ArrayList<>();
+    private final List<Binding> bindings = new ArrayList<>();
+
+    /** Returns the index of the added image. */
+    public int addImage(Image image) {
+        images.add(image);
+        return images.size() - 1;
+    }
+
+    public void addBinding(Binding binding) {
+        bindings.add(binding);
+    }
+
+    public List<Image> getImages() {
+        return images;
+    }
+
+    public List<Binding> getBindings() {
+        return bindings;
+    }
+
+    /** Bytes of level data, which is also what the textures occupy on the GPU. */
+    public long getDataSize() {
+        long size = 0;
+        for (Image image : images) for (ByteBuffer level : image.levels) size += level.remaining();
+        return size;
+    }
+
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        BinaryWriter out = new BinaryWriter(channel);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeVarInt(images.size());
+        for (Image image : images) {
+            out.writeByte(image.format);
+            out.writeVarInt(image.width);
+            out.writeVarInt(image.height);
+            out.writeVarInt(image.levels.length);
+            for (ByteBuffer level : image.levels) out.writeVarInt(level.remaining());
+        }
+        out.writeVarInt(bindings.size());
+        for (Binding binding : bindings) {
+            out.writeVarInt(binding.material);
+            out.writeString(binding.parameter);
+            out.writeVarInt(binding.image);
+            out.writeVarInt(binding.wrapS);
+            out.writeVarInt(binding.wrapT);
+        }
+        out.writeInt(out.crc());
+        for (Image image : images) {
+            for (ByteBuffer level : image.levels) {
+                while (out.position() % 4 != 0) out.writeByte(0);
+                ByteBuffer data = level.duplicate();
+                byte[] chunk = new byte[Math.min(data.remaining(), 64 * 1024)];
+                while (data.hasRemaining()) {
+                    int n = Math.min(chunk.length, data.remaining());
+                    data.get(chunk, 0, n);
+                    out.writeBytes(chunk, 0, n);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    public static TextureBundle read(File file) throws IOException {
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            BinaryReader in = new BinaryReader(channel, 4096);
+            if (in.readInt() != MAGIC) throw new IOException("Not a texture bundle: " + file);
+            int version = in.readShort();
+            if (version != VERSION) throw new IOException("Unsupported texture bundle version " + version);
+            int imageCount = in.readVarInt();
+            int[][] header = new int[imageCount][];
+            int[][] levelSizes = new int[imageCount][];
+            for (int i = 0; i < imageCount; i++) {
+                header[i] = new int[] {in.readByte(), in.readVarInt(), in.readVarInt()};
+                if (header[i][0] > FORMAT_SRGBA8) throw new IOException("Unknown texture format " + header[i][0]);
+                levelSizes[i] = new int[in.readVarInt()];
+                for (int l = 0; l < levelSizes[i].length; l++) levelSizes[i][l] = in.readVarInt();
+            }
+            TextureBundle bundle = new TextureBundle();
+            int bindingCount = in.readVarInt();
+            for (int i = 0; i < bindingCount; i++) {
+                int material = in.readVarInt();
+                String parameter = in.readString();
+                int image = in.readVarInt();
+                if (image < 0 || image >= imageCount) throw new IOException("Bad image index " + image);
+                bundle.addBinding(new Binding(material, parameter, image, in.readVarInt(), in.readVarInt()));
+            }
+            int expectedCrc = in.crc();
+            if (in.readInt() != expectedCrc) throw new IOException("Texture bundle checksum mismatch");
+
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            long offset = in.position();
+            for (int i = 0; i < imageCount; i++) {
+                ByteBuffer[] levels = new ByteBuffer[levelSizes[i].length];
+                for (int l = 0; l < levels.length; l++) {
+                    offset = (offset + 3) & ~3L;
+                    if (offset + levelSizes[i][l] > data.capacity()) throw new IOException("Truncated texture bundle");
+                    ByteBuffer level = data.duplicate();
+                    level.position((int) offset).limit((int) offset + levelSizes[i][l]);
+                    levels[l] = level.slice();
+                    offset += levelSizes[i][l];
+                }
+                bundle.addImage(new Image(header[i][0], header[i][1], header[i][2], levels));
+            }
+            return bundle;
+        }
+    }
+}
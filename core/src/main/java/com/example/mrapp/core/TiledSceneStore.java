@@ -0,0 +1,503 @@
+package com.example.mrapp.core;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scene persistence for large areas. Placements are bucketed into square cells of the floor plane
+ * and each cell is a {@link SceneCodec} file of its own; a small manifest holds the model table,
+ * the cells with their object counts and the next object id. A scene opens without reading a
+ * single placement, and {@link #loadCell} reads one cell when {@link CellStreamer} asks for it.
+ *
+ * <p>Edits are appended to one {@link SceneJournal} as in {@link SceneStore}. Since not every
+ * object is in memory, a removal or transform update names the cell the object is in. A cell an
+ * edit touches is read into memory and stays there until {@link #compact()} writes it back. Each
+ * cell file records the journal sequence it covers, so recovery from a crash part way through a
+ * compaction applies every record exactly once.
+ *
+ * <p>The model table also keeps each model's bounds once the app has loaded it, so objects can be
+ * shown as boxes of the right size before their models are loaded again.
+ */
+public final class TiledSceneStore implements Closeable {
+    public static final float DEFAULT_CELL_SIZE = 8f;
+    public static final String MANIFEST_FILE_NAME = "manifest.bin";
+    private static final int MANIFEST_MAGIC = 0x4D54524D; // "MRTM"
+    /** Version 2 added model bounds. */
+    private static final int MANIFEST_VERSION = 2;
+    private static final String CELL_DIRECTORY_NAME = "cells";
+    private static final String JOURNAL_DIRECTORY_NAME = "journal";
+    private static final long DEFAULT_COMPACTION_THRESHOLD = 256 * 1024;
+
+    private final File manifestFile;
+    private final File cellDirectory;
+    private final SceneJournal journal;
+    private final Object compactionLock = new Object();
+    private volatile float cellSize;
+    private final List<String> models = new ArrayList<>();
+    private final Map<String, Integer> modelIndexByName = new HashMap<>();
+    /** Bounds per entry of {@link #models}, or null where not known; never modified in place. */
+    private final List<float[]> modelBounds = new ArrayList<>();
+    /** Object count of every cell that has objects. */
+    private final Map<Long, Integer> cellCounts = new HashMap<>();
+    /** Cells edited since the last compaction, with model indices into {@link #models}. */
+    private final Map<Long, SceneData> dirtyCells = new HashMap<>();
+    /** Cells a compaction is writing; read from here until their files are in place. */
+    private Map<Long, SceneData> flushingCells = Collections.emptyMap();
+    private final AtomicInteger nextObjectId = new AtomicInteger();
+    /** Journal sequence and model count of the manifest on disk. */
+    private long manifestSequence;
+    private int manifestModels;
+    private long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    public TiledSceneStore(File directory) {
+        this(directory, DEFAULT_CELL_SIZE);
+    }
+
+    /** {@code cellSize} applies to a new store; an existing one keeps the size it was created with. */
+    public TiledSceneStore(File directory, float cellSize) {
+        this.manifestFile = new File(directory, MANIFEST_FILE_NAME);
+        this.cellDirectory = new File(directory, CELL_DIRECTORY_NAME);
+        this.journal = new SceneJournal(new File(directory, JOURNAL_DIRECTORY_NAME));
+        this.cellSize = cellSize;
+    }
+
+    /** True if a manifest or journal from an earlier run exists. */
+    public boolean hasData() {
+        return manifestFile.exists() || journal.exists();
+    }
+
+    /** Reads the manifest, brings the cells the journal tail touches up to date, and opens the journal. */
+    public synchronized void open() throws IOException {
+        if (!cellDirectory.exists() && !cellDirectory.mkdirs()) throw new IOException("Cannot create " + cellDirectory);
+        long fromSequence = manifestFile.exists() ? readManifest() : 0;
+        float[] moved = new float[SceneData.TRANSFORM_SIZE];
+        journal.replay(fromSequence, new SceneJournal.Visitor() {
+            @Override public void model(long sequence, String name) {
+                // Already in the manifest if a compaction got as far as writing the model table.
+                if (modelIndexByName.containsKey(name)) return;
+                modelIndexByName.put(name, models.size());
+                models.add(name);
+                modelBounds.add(null);
+            }
+
+            // A record a newer cell file already holds is skipped, but the cell is still counted:
+            // the manifest that would list it may not have been written.
+            @Override public void place(long sequence, int id, int modelIndex, float[] transform) throws IOException {
+                long cell = cellOf(transform, 0);
+                SceneData data = editableCell(cell);
+                if (sequence >= data.getSequence() && data.indexOf(id) == -1) data.addObject(id, modelIndex, transform, 0);
+                updateCount(cell, data);
+                nextObjectId.accumulateAndGet(id + 1, Math::max);
+            }
+
+            @Override public void remove(long sequence, int id, long cell) throws IOException {
+                if (cell == SceneJournal.NO_CELL) return;
+                SceneData data = editableCell(cell);
+                if (sequence >= data.getSequence()) data.removeObject(id);
+                updateCount(cell, data);
+            }
+
+            @Override public void transform(long sequence, int id, long cell, float[] transform) throws IOException {
+                if (cell == SceneJournal.NO_CELL) return;
+                SceneData data = editableCell(cell);
+                if (sequence < data.getSequence()) {
+                    updateCount(cell, data);
+                    long target = cellOf(transform, 0);
+                    if (target != cell) updateCount(target, editableCell(target));
+                    return;
+                }
+                System.arraycopy(transform, 0, moved, 0, moved.length);
+                applyTransform(id, cell, data, moved);
+            }
+
+            @Override public void clear(long sequence) {
+                clearCells(sequence);
+            }
+
+            @Override public void bounds(long sequence, int modelIndex, float[] bounds) {
+                if (modelIndex < modelBounds.size()) modelBounds.set(modelIndex, bounds);
+            }
+        });
+    }
+
+    public synchronized float getCellSize() {
+        return cellSize;
+    }
+
+    /** Keys of the cells that have objects. */
+    public synchronized long[] getCells() {
+        long[] cells = new long[cellCounts.size()];
+        int i = 0;
+        for (long cell : cellCounts.keySet()) cells[i++] = cell;
+        Arrays.sort(cells);
+        return cells;
+    }
+
+    public synchronized int getObjectCount(long cell) {
+        Integer count = cellCounts.get(cell);
+        return count != null ? count : 0;
+    }
+
+    /** Names of every model placed in the scene, in the order they were first used. */
+    public synchronized List<String> getModels() {
+        return new ArrayList<>(models);
+    }
+
+    /** Bounds of {@code model} as last set with {@link #setModelBounds}, or null. */
+    public synchronized float[] getModelBounds(String model) {
+        Integer index = modelIndexByName.get(model);
+        float[] bounds = index != null ? modelBounds.get(index) : null;
+        return bounds != null ? bounds.clone() : null;
+    }
+
+    /**
+     * Records the bounds of one instance of a model in the scene, min xyz then max xyz relative to
+     * its root; unchanged bounds and models not in the scene are ignored.
+     */
+    public synchronized void setModelBounds(String model, float[] bounds) throws IOException {
+        Integer index = modelIndexByName.get(model);
+        if (index == null || Arrays.equals(modelBounds.get(index), bounds)) return;
+        journal.appendBounds(index, bounds);
+        modelBounds.set(index, bounds.clone());
+    }
+
+    /** The objects of one cell, with the store's full model table. */
+    public synchronized SceneData loadCell(long cell) throws IOException {
+        SceneData data = dirtyCells.get(cell);
+        if (data == null) data = flushingCells.get(cell);
+        data = data != null ? data.copy() : cellCounts.containsKey(cell) ? readCell(cell) : new SceneData(0);
+        data.getModels().clear();
+        data.getModels().addAll(models);
+        return data;
+    }
+
+    public static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    public static int cellX(long cell) {
+        return (int) (cell >> 32);
+    }
+
+    public static int cellZ(long cell) {
+        return (int) cell;
+    }
+
+    /** Cell holding the floor position ({@code x}, {@code z}). */
+    public long cellAt(float x, float z) {
+        return cellKey((int) Math.floor(x / cellSize), (int) Math.floor(z / cellSize));
+    }
+
+    /** Cell of an object, by the translation of its column-major transform. */
+    public long cellOf(float[] transform, int offset) {
+        return cellAt(transform[offset + 12], transform[offset + 14]);
+    }
+
+    /** See {@link SceneStore#newObjectId}. */
+    public int newObjectId() {
+        return nextObjectId.getAndIncrement();
+    }
+
+    /**
+     * Records a new placement under an id from {@link #newObjectId} and returns its cell. An id
+     * already in that cell is rejected before anything is journaled.
+     */
+    public synchronized long place(int id, String modelName, float[] transform, int offset) throws IOException {
+        long cell = cellOf(transform, offset);
+        SceneData data = editableCell(cell);
+        if (data.indexOf(id) >= 0) throw new IllegalArgumentException("Duplicate object id " + id);
+        int modelIndex = modelIndex(modelName);
+        journal.appendPlace(id, modelIndex, transform, offset);
+        data.addObject(id, modelIndex, transform, offset);
+        updateCount(cell, data);
+        return cell;
+    }
+
+    /**
+     * Moves an object that is in {@code cell} and returns the cell it is in now. An id that is not
+     * in {@code cell} is ignored without journaling, as in {@link SceneStore}, and {@code cell} is
+     * returned.
+     */
+    public synchronized long updateTransform(int id, long cell, float[] transform, int offset) throws IOException {
+        SceneData data = editableCell(cell);
+        if (data.indexOf(id) < 0) return cell;
+        journal.appendTransform(id, cell, transform, offset);
+        float[] moved = Arrays.copyOfRange(transform, offset, offset + SceneData.TRANSFORM_SIZE);
+        return applyTransform(id, cell, data, moved);
+    }
+
+    /** Removes an object that is in {@code cell}; an id that is not there is ignored without journaling. */
+    public synchronized void remove(int id, long cell) throws IOException {
+        SceneData data = editableCell(cell);
+        if (data.indexOf(id) < 0) return;
+        journal.appendRemove(id, cell);
+        data.removeObject(id);
+        updateCount(cell, data);
+    }
+
+    public synchronized void clear() throws IOException {
+        journal.appendClear();
+        clearCells(0);
+    }
+
+    /** Adds every object of {@code scene} under its own id, as a migration from a single-file scene. */
+    public void importScene(SceneData scene) throws IOException {
+        float[] transform = new float[SceneData.TRANSFORM_SIZE];
+        for (int i = 0; i < scene.getObjectCount(); i++) {
+            int id = scene.getObjectId(i);
+            scene.getTransform(i, transform, 0);
+            nextObjectId.accumulateAndGet(id + 1, Math::max);
+            place(id, scene.getModels().get(scene.getModelIndex(i)), transform, 0);
+        }
+    }
+
+    /** Flushes appended records to storage. */
+    public void sync() throws IOException {
+        journal.sync();
+    }
+
+    public void setCompactionThreshold(long bytes) {
+        compactionThreshold = bytes;
+    }
+
+    public boolean needsCompaction() {
+        return journal.size() >= compactionThreshold;
+    }
+
+    /**
+     * Writes the edited cells and the manifest, then drops the journal segments they cover. Edits
+     * may continue on other threads meanwhile; they land in the new journal segment.
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            Map<Long, SceneData> flushing;
+            List<String> modelTable;
+            List<float[]> boundsTable;
+            Map<Long, Integer> counts;
+            long sequence;
+            int nextId;
+            synchronized (this) {
+                sequence = journal.rotate();
+                flushing = new HashMap<>(dirtyCells);
+                dirtyCells.clear();
+                flushingCells = flushing;
+                for (SceneData data : flushing.values()) data.setSequence(sequence);
+                modelTable = new ArrayList<>(models);
+                boundsTable = new ArrayList<>(modelBounds);
+                counts = new HashMap<>(cellCounts);
+                nextId = nextObjectId.get();
+            }
+            // Cell files may name models added since the manifest was written. The table only
+            // grows, so it can go to disk first, still with the old sequence; replay then finds
+            // every model a newer cell uses even if the compaction stops half way.
+            if (modelTable.size() > manifestModels) writeManifest(manifestSequence, modelTable, boundsTable, counts, nextId);
+            List<Long> emptied = new ArrayList<>();
+            for (Map.Entry<Long, SceneData> entry : flushing.entrySet()) {
+                if (entry.getValue().getObjectCount() == 0) {
+                    emptied.add(entry.getKey());
+                } else {
+                    SceneStore.writeSnapshot(cellFile(entry.getKey()), toLocal(entry.getValue(), modelTable));
+                }
+            }
+            writeManifest(sequence, modelTable, boundsTable, counts, nextId);
+            manifestSequence = sequence;
+            synchronized (this) {
+                // A cell filled again since the rotation is written by the next compaction.
+                for (long cell : emptied) if (!cellCounts.containsKey(cell)) cellFile(cell).delete();
+                flushingCells = Collections.emptyMap();
+            }
+            journal.deleteSegmentsBefore(sequence);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    private long applyTransform(int id, long cell, SceneData data, float[] transform) throws IOException {
+        long target = cellOf(transform, 0);
+        if (target == cell) {
+            data.setTransform(id, transform, 0);
+            return cell;
+        }
+        int index = data.indexOf(id);
+        if (index == -1) return cell;
+        int modelIndex = data.getModelIndex(index);
+        data.removeObject(id);
+        updateCount(cell, data);
+        SceneData targetData = editableCell(target);
+        if (targetData.indexOf(id) == -1) targetData.addObject(id, modelIndex, transform, 0);
+        updateCount(target, targetData);
+        return target;
+    }
+
+    /** Empties every cell, as of journal record {@code sequence}; a live clear passes 0. */
+    private void clearCells(long sequence) {
+        List<Long> cells = new ArrayList<>(cellCounts.keySet());
+        cells.addAll(dirtyCells.keySet());
+        for (long cell : cells) {
+            SceneData empty = new SceneData(0);
+            empty.setSequence(sequence);
+            dirtyCells.put(cell, empty);
+        }
+        cellCounts.clear();
+    }
+
+    /** The in-memory copy of {@code cell} to edit, read in if needed. */
+    private SceneData editableCell(long cell) throws IOException {
+        SceneData data = dirtyCells.get(cell);
+        if (data != null) return data;
+        data = flushingCells.get(cell);
+        data = data != null ? data.copy() : readCell(cell);
+        dirtyCells.put(cell, data);
+        return data;
+    }
+
+    private void updateCount(long cell, SceneData data) {
+        if (data.getObjectCount() > 0) cellCounts.put(cell, data.getObjectCount()); else cellCounts.remove(cell);
+    }
+
+    /** Reads a cell file with its model indices mapped to {@link #models}; a missing file is an empty cell. */
+    private SceneData readCell(long cell) throws IOException {
+        File file = cellFile(cell);
+        if (!file.exists()) return new SceneData(0);
+        SceneData local;
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            local = SceneCodec.read(channel);
+        } catch (EOFException e) {
+            // Not a torn journal record: the caller must not take it for one.
+            throw new IOException("Truncated scene cell " + file.getName(), e);
+        }
+        List<String> localModels = local.getModels();
+        int[] globalIndex = new int[localModels.size()];
+        for (int i = 0; i < globalIndex.length; i++) {
+            Integer index = modelIndexByName.get(localModels.get(i));
+            if (index == null) throw new IOException("Scene cell " + file.getName() + " uses unknown model " + localModels.get(i));
+            globalIndex[i] = index;
+        }
+        SceneData data = new SceneData(local.getObjectCount());
+        float[] transform = new float[SceneData.TRANSFORM_SIZE];
+        for (int i = 0; i < local.getObjectCount(); i++) {
+            local.getTransform(i, transform, 0);
+            data.addObject(local.getObjectId(i), globalIndex[local.getModelIndex(i)], transform, 0);
+        }
+        data.setSequence(local.getSequence());
+        return data;
+    }
+
+    /** A cell with a model table of only the models it uses, so each file stands on its own. */
+    private static SceneData toLocal(SceneData cell, List<String> modelTable) {
+        SceneData local = new SceneData(cell.getObjectCount());
+        int[] localIndex = new int[modelTable.size()];
+        Arrays.fill(localIndex, -1);
+        float[] transform = new float[SceneData.TRANSFORM_SIZE];
+        for (int i = 0; i < cell.getObjectCount(); i++) {
+            int model = cell.getModelIndex(i);
+            if (localIndex[model] == -1) localIndex[model] = local.addModel(modelTable.get(model));
+            cell.getTransform(i, transform, 0);
+            local.addObject(cell.getObjectId(i), localIndex[model], transform, 0);
+        }
+        local.setSequence(cell.getSequence());
+        return local;
+    }
+
+    private int modelIndex(String modelName) throws IOException {
+        Integer index = modelIndexByName.get(modelName);
+        if (index != null) return index;
+        journal.appendModel(modelName);
+        modelIndexByName.put(modelName, models.size());
+        models.add(modelName);
+        modelBounds.add(null);
+        return models.size() - 1;
+    }
+
+    private File cellFile(long cell) {
+        return new File(cellDirectory, "c" + cellX(cell) + "_" + cellZ(cell) + ".bin");
+    }
+
+    /**
+     * Layout: magic, version, cell size, sequence, next object id, models as (name, has bounds,
+     * bounds if any), (cell, count) pairs, CRC32.
+     */
+    private void writeManifest(long sequence, List<String> modelTable, List<float[]> boundsTable,
+            Map<Long, Integer> counts, int nextId) throws IOException {
+        File tempFile = new File(manifestFile.getPath() + ".tmp");
+        try (FileChannel channel = new FileOutputStream(tempFile).getChannel()) {
+            BinaryWriter out = new BinaryWriter(channel);
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeShort(MANIFEST_VERSION);
+            out.writeFloat(cellSize);
+            out.writeLong(sequence);
+            out.writeVarInt(nextId);
+            out.writeVarInt(modelTable.size());
+            for (int i = 0; i < modelTable.size(); i++) {
+                out.writeString(modelTable.get(i));
+                float[] bounds = boundsTable.get(i);
+                out.writeByte(bounds != null ? 1 : 0);
+                if (bounds != null) for (float value : bounds) out.writeFloat(value);
+            }
+            out.writeVarInt(counts.size());
+            for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeVarInt(entry.getValue());
+            }
+            out.writeInt(out.crc());
+            out.flush();
+            channel.force(false);
+        }
+        if (!tempFile.renameTo(manifestFile)) throw new IOException("Failed to replace " + manifestFile);
+        manifestModels = modelTable.size();
+    }
+
+    /** Loads the manifest into this store and returns its journal sequence. */
+    private long readManifest() throws IOException {
+        try (FileChannel channel = new FileInputStream(manifestFile).getChannel()) {
+            BinaryReader in = new BinaryReader(channel);
+            if (in.readInt() != MANIFEST_MAGIC) throw new IOException("Not a scene manifest");
+            int version = in.readShort();
+            if (version < 1 || version > MANIFEST_VERSION) throw new IOException("Unsupported scene manifest version " + version);
+            cellSize = in.readFloat();
+            long sequence = in.readLong();
+            nextObjectId.accumulateAndGet(in.readVarInt(), Math::max);
+            int modelCount = in.readVarInt();
+            models.clear();
+            modelIndexByName.clear();
+            modelBounds.clear();
+            for (int i = 0; i < modelCount; i++) {
+                String model = in.readString();
+                modelIndexByName.put(model, i);
+                models.add(model);
+                float[] bounds = null;
+                if (version >= 2 && in.readByte() != 0) {
+                    bounds = new float[SceneJournal.BOUNDS_SIZE];
+                    for (int b = 0; b < bounds.length; b++) bounds[b] = in.readFloat();
+                }
+                modelBounds.add(bounds);
+            }
+            int cellCount = in.readVarInt();
+            cellCounts.clear();
+            for (int i = 0; i < cellCount; i++) {
+                long cell = in.readLong();
+                cellCounts.put(cell, in.readVarInt());
+            }
+            int expectedCrc = in.crc();
+            if (in.readInt() != expectedCrc) throw new IOException("Scene manifest checksum mismatch");
+            manifestSequence = sequence;
+            manifestModels = modelCount;
+            return sequence;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.mrapp.core;
+
+import java.io.IOException;
+
+/**
+ * Plays a {@link SessionTrace} back as a {@link FrameSource}: one recorded frame per displayed
+ * frame, whatever the display rate, so a replay runs the same frames in the same order every time.
+ * Recorded taps and picks are handed to the frame loop with their frame, and a tap's hit test
+ * returns the pose ARCore returned when it was recorded.
+ */
+public final class TraceFrameSource implements FrameSource {
+    private final SessionTrace trace;
+    /** Bit per event of the current frame whose recorded hit has been used. */
+    private long usedHits;
+
+    public TraceFrameSource(SessionTrace trace) {
+        this.trace = trace;
+    }
+
+    public SessionTrace getTrace() {
+        return trace;
+    }
+
+    @Override
+    public boolean update(long frameTimeNanos, Input input) throws IOException {
+        if (!trace.next()) return false;
+        usedHits = 0;
+        for (int e = 0; e < trace.getEventCount(); e++) {
+            if (trace.isPick(e)) {
+                input.pick(trace.getEventX(e), trace.getEventY(e));
+            } else {
+                input.tap(trace.getEventX(e), trace.getEventY(e));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isTracking() {
+        return trace.isTracking();
+    }
+
+    @Override
+    public void getViewMatrix(float[] out) {
+        trace.getViewMatrix(out);
+    }
+
+    @Override
+    public void getProjectionMatrix(float[] out) {
+        trace.getProjectionMatrix(out);
+    }
+
+    /** Returns the recorded result of the first not yet tested tap of this frame at ({@code x}, {@code y}). */
+    @Override
+    public boolean hitTest(float x, float y, float[] pose) {
+        for (int e = 0; e < trace.getEventCount() && e < 64; e++) {
+            if (trace.isPick(e) || (usedHits & (1L << e)) != 0) continue;
+            if (trace.getEventX(e) == x && trace.getEventY(e) == y) {
+                usedHits |= 1L << e;
+                return trace.getHitPose(e, pose);
+            }
+        }
+        return false;
+    }
+}
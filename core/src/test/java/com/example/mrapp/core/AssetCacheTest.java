@@ -0,0 +1,104 @@
+package com.example.mrapp.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AssetCacheTest {
+    private final List<String> evicted = new ArrayList<>();
+    private final AssetCache<String, String> cache = new AssetCache<>(100, (key, value) -> evicted.add(value));
+
+    @Test
+    public void evictsLeastRecentlyUsedFirst() {
+        cache.put("a", "A", 40);
+        cache.put("b", "B", 40);
+        assertEquals("A", cache.get("a"));
+        cache.put("c", "C", 40);
+
+        assertEquals(Collections.singletonList("B"), evicted);
+        assertNull(cache.get("b"));
+        assertEquals(80, cache.getSizeBytes());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void containsLeavesRecencyAlone() {
+        cache.put("a", "A", 40);
+        cache.put("b", "B", 40);
+        assertTrue(cache.contains("a"));
+        cache.put("c", "C", 40);
+
+        assertEquals(Collections.singletonList("A"), evicted);
+        assertEquals("B", cache.peek("b"));
+        assertNull(cache.peek("a"));
+        assertEquals(0, cache.getHits() + cache.getMisses());
+    }
+
+    @Test
+    public void pinnedEntriesOutstayTheBudgetUntilUnpinned() {
+        cache.put("a", "A", 60);
+        cache.pin("a");
+        cache.pin("a");
+        cache.put("b", "B", 60);
+        assertEquals(Collections.singletonList("B"), evicted);
+
+        cache.pin("c");
+        cache.put("c", "C", 60);
+        assertEquals(120, cache.getSizeBytes());
+        cache.unpin("a");
+        assertEquals(120, cache.getSizeBytes());
+        cache.unpin("a");
+        assertEquals(Arrays.asList("B", "A"), evicted);
+        assertEquals(60, cache.getSizeBytes());
+    }
+
+    @Test
+    public void pinsTakenBeforeTheValueArrivesAreKept() {
+        cache.pin("a");
+        cache.put("a", "A", 90);
+        cache.put("b", "B", 90);
+        assertEquals(Collections.singletonList("B"), evicted);
+
+        // A pin released before its value arrives is forgotten.
+        cache.pin("x");
+        cache.unpin("x");
+        cache.put("x", "X", 5);
+        cache.unpin("a");
+        cache.setBudget(10);
+        assertEquals(Arrays.asList("B", "X", "A"), evicted);
+    }
+
+    @Test
+    public void replacingAValueReleasesTheOldOneAndKeepsItsPins() {
+        cache.put("a", "A1", 30);
+        cache.pin("a");
+        cache.put("a", "A2", 50);
+        assertEquals(Collections.singletonList("A1"), evicted);
+        assertEquals(50, cache.getSizeBytes());
+
+        cache.setBudget(0);
+        assertEquals(1, cache.size());
+        cache.unpin("a");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void clearReleasesPinnedEntriesToo() {
+        cache.put("a", "A", 10);
+        cache.pin("a");
+        cache.put("b", "B", 10);
+        cache.clear();
+        assertEquals(Arrays.asList("A", "B"), evicted);
+        assertEquals(0, cache.getSizeBytes());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.mrapp.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BoxGlbTest {
+    private static final int GLB_MAGIC = 0x46546C67;
+    private static final int CHUNK_JSON = 0x4E4F534A;
+    private static final int CHUNK_BIN = 0x004E4942;
+    /** 8 positions of 3 floats and 36 short indices. */
+    private static final int BIN_LENGTH = 8 * 12 + 36 * 2;
+
+    @Test
+    public void headerAndChunksFollowTheGlbLayout() {
+        ByteBuffer glb = BoxGlb.build(new float[] {1f, 1f, 1f, 1f}, false).order(ByteOrder.LITTLE_ENDIAN);
+        assertTrue(glb.isDirect());
+        assertEquals(0, glb.position());
+        assertEquals(GLB_MAGIC, glb.getInt(0));
+        assertEquals(2, glb.getInt(4));
+        assertEquals(glb.limit(), glb.getInt(8));
+        assertEquals(glb.capacity(), glb.limit());
+
+        int jsonLength = glb.getInt(12);
+        assertEquals(CHUNK_JSON, glb.getInt(16));
+        assertEquals(0, jsonLength % 4);
+        int bin = 20 + jsonLength;
+        assertEquals(0, bin % 4);
+        assertEquals(BIN_LENGTH, glb.getInt(bin));
+        assertEquals(CHUNK_BIN, glb.getInt(bin + 4));
+        assertEquals(glb.limit(), bin + 8 + BIN_LENGTH);
+
+        // JSON is padded with spaces, as the spec requires.
+        String json = json(glb);
+        assertTrue(json.endsWith("}"));
+        for (int i = json.length(); i < jsonLength; i++) assertEquals(' ', glb.get(20 + i));
+    }
+
+    @Test
+    public void jsonDescribesTheBinaryChunk() {
+        ByteBuffer glb = BoxGlb.build(new float[] {1f, 1f, 1f, 1f}, false).order(ByteOrder.LITTLE_ENDIAN);
+        String json = json(glb);
+        assertBalanced(json);
+        assertTrue(json.contains("\"buffers\":[{\"byteLength\":" + BIN_LENGTH + "}]"));
+        Matcher views = Pattern.compile("\"byteOffset\":(\\d+),\"byteLength\":(\\d+)").matcher(json);
+        int viewCount = 0;
+        while (views.find()) {
+            int offset = Integer.parseInt(views.group(1));
+            int length = Integer.parseInt(views.group(2));
+            assertTrue(offset + length <= BIN_LENGTH);
+            // Float and short accessors need their views aligned to the component size.
+            assertEquals(0, offset % 4);
+            viewCount++;
+        }
+        assertEquals(2, viewCount);
+        assertTrue(json.contains("\"componentType\":5126,\"count\":8,\"type\":\"VEC3\""));
+        assertTrue(json.contains("\"componentType\":5123,\"count\":36,\"type\":\"SCALAR\""));
+    }
+
+    @Test
+    public void unitCubeWithOutwardFacingTriangles() {
+        ByteBuffer glb = BoxGlb.build(new float[] {1f, 1f, 1f, 1f}, false).order(ByteOrder.LITTLE_ENDIAN);
+        int bin = 20 + glb.getInt(12) + 8;
+        float[][] positions = new float[8][3];
+        for (int v = 0; v < 8; v++) {
+            for (int k = 0; k < 3; k++) {
+                float value = glb.getFloat(bin + (v * 3 + k) * 4);
+                assertTrue(value == 0f || value == 1f);
+                positions[v][k] = value;
+            }
+        }
+        int indices = bin + 8 * 12;
+        for (int t = 0; t < 12; t++) {
+            float[] a = positions[glb.getShort(indices + t * 6)];
+            float[] b = positions[glb.getShort(indices + t * 6 + 2)];
+            float[] c = positions[glb.getShort(indices + t * 6 + 4)];
+            float[] ab = {b[0] - a[0], b[1] - a[1], b[2] - a[2]};
+            float[] ac = {c[0] - a[0], c[1] - a[1], c[2] - a[2]};
+            float[] normal = {ab[1] * ac[2] - ab[2] * ac[1], ab[2] * ac[0] - ab[0] * ac[2], ab[0] * ac[1] - ab[1] * ac[0]};
+            float outward = 0f;
+            for (int k = 0; k < 3; k++) outward += normal[k] * ((a[k] + b[k] + c[k]) / 3f - 0.5f);
+            assertTrue("triangle " + t + " faces inward", outward > 0f);
+        }
+    }
+
+    @Test
+    public void materialFollowsColorAndUnlit() {
+        String blended = json(BoxGlb.build(new float[] {0.2f, 0.4f, 0.6f, 0.5f}, true));
+        assertTrue(blended.contains("\"alphaMode\":\"BLEND\""));
+        assertTrue(blended.contains("\"extensionsUsed\":[\"KHR_materials_unlit\"]"));
+        assertTrue(blended.contains("\"extensions\":{\"KHR_materials_unlit\":{}}"));
+        assertTrue(blended.contains("\"baseColorFactor\":[0.200000,0.400000,0.600000,0.500000]"));
+
+        String opaque = json(BoxGlb.build(new float[] {1f, 1f, 1f, 1f}, false));
+        assertTrue(opaque.contains("\"alphaMode\":\"OPAQUE\""));
+        assertFalse(opaque.contains("KHR_materials_unlit"));
+    }
+
+    /** A device set to a locale with decimal commas must still get valid JSON. */
+    @Test
+    public void numbersIgnoreTheDefaultLocale() {
+        Locale saved = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.GERMANY);
+            String json = json(BoxGlb.build(new float[] {0.5f, 0.5f, 0.5f, 1f}, false));
+            assertTrue(json.contains("[0.500000,0.500000,0.500000,1.000000]"));
+            assertBalanced(json);
+        } finally {
+            Locale.setDefault(saved);
+        }
+    }
+
+    /** The JSON chunk without its padding. */
+    private static String json(ByteBuffer glb) {
+        ByteBuffer buffer = glb.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        byte[] bytes = new byte[buffer.getInt(12)];
+        buffer.position(20);
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8).trim();
+    }
+
+    /** Brackets and braces outside strings pair up, a cheap check that the JSON parses. */
+    private static void assertBalanced(String json) {
+        StringBuilder open = new StringBuilder();
+        boolean inString = false;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '"') inString = !inString;
+            if (inString) continue;
+            if (c == '{' || c == '[') open.append(c);
+            if (c == '}' || c == ']') {
+                assertTrue("unmatched " + c + " at " + i, open.length() > 0);
+                char expected = c == '}' ? '{' : '[';
+                assertEquals("at " + i, expected, open.charAt(open.length() - 1));
+                open.setLength(open.length() - 1);
+            }
+        }
+        assertFalse(inString);
+        assertEquals(0, open.length());
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.mrapp.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+public class CameraRigTest {
+    private static final float EYE_ASPECT = 0.5f * 2340 / 1080;
+    private static final int WARM_UP_FRAMES = 20_000;
+    private static final int MEASURED_FRAMES = 10_000;
+
+    private final CameraRig rig = new CameraRig();
+    private final float[] bounds = {-0.3f, 0f, -0.3f, 0.3f, 1.2f, 0.3f};
+    private final float[] model = new float[16];
+    private final float[] worldBounds = new float[6];
+
+    @Before
+    public void setUp() {
+        double[] frustum = new double[16];
+        double near = CameraRig.NEAR;
+        Mat4.setFrustum(frustum, -0.45 * near, 0.45 * near, -0.8 * near, 0.8 * near, near, CameraRig.FAR);
+        for (int i = 0; i < 16; i++) rig.projection[i] = (float) frustum[i];
+        Mat4.setTranslation(rig.view, 0f, -1.5f, 0f);
+        Mat4.setTranslation(model, 0f, 0f, -2f);
+    }
+
+    @Test
+    public void headModelInvertsView() {
+        rig.update();
+        assertEquals(1.5f, rig.headModel[13], 0f);
+    }
+
+    @Test
+    public void eyesSitHalfTheIpdEitherSideOfTheHead() {
+        rig.updateStereo(EYE_ASPECT);
+        float half = rig.getIpd() / 2;
+        assertEquals(-half, rig.eyeModel[CameraRig.LEFT][12], 1e-6f);
+        assertEquals(half, rig.eyeModel[CameraRig.RIGHT][12], 1e-6f);
+        assertEquals(1.5f, rig.eyeModel[CameraRig.LEFT][13], 1e-6f);
+    }
+
+    /** A point straight ahead at the screen distance lands in the same place in both eyes. */
+    @Test
+    public void screenPlaneHasZeroParallax() {
+        rig.updateStereo(EYE_ASPECT);
+        double depth = rig.getScreenDistance();
+        for (int eye = CameraRig.LEFT; eye <= CameraRig.RIGHT; eye++) {
+            double[] p = rig.eyeProjection[eye];
+            double x = (eye == CameraRig.LEFT ? 1 : -1) * rig.getIpd() / 2;
+            assertEquals("eye " + eye, 0.0, (p[0] * x - p[8] * depth) / depth, 1e-6);
+        }
+    }
+
+    /** The math the render thread runs every frame must not allocate once warmed up. */
+    @Test
+    public void frameMathDoesNotAllocate() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocation.isThreadAllocatedMemorySupported());
+        allocation.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        float sink = 0f;
+        for (int i = 0; i < WARM_UP_FRAMES; i++) sink += frame(i);
+        // The first reading may allocate itself; take it outside the measured span.
+        allocation.getThreadAllocatedBytes(thread);
+        long before = allocation.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED_FRAMES; i++) sink += frame(i);
+        long after = allocation.getThreadAllocatedBytes(thread);
+
+        assertEquals("bytes allocated over " + MEASURED_FRAMES + " frames", 0L, after - before);
+        assertFalse(Float.isNaN(sink));
+    }
+
+    /** One stereo frame: head and eye matrices, culling planes, a tap ray and one object's bounds. */
+    private float frame(int i) {
+        rig.view[12] = (i % 1000) * 1e-3f;
+        rig.updateStereo(EYE_ASPECT);
+        rig.update();
+        rig.updateCullPlanes(CameraRig.CULL_DISTANCE, CameraRig.CULL_MARGIN);
+        rig.screenRay(540f, 1170f, 1080, 2340);
+        Mat4.transformBounds(worldBounds, 0, model, bounds);
+        return rig.cullPlanes[3] + rig.rayDirection[0] + worldBounds[0];
+    }
+}
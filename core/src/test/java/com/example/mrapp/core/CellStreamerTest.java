@@ -0,0 +1,177 @@
+package com.example.mrapp.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CellStreamerTest {
+    private static final float CELL = 8f;
+    private static final long FRAME_NANOS = 16_666_667L;
+
+    /** Cells the listener was asked to page in and not yet out. */
+    private final Set<Long> loaded = new HashSet<>();
+    private final List<String> calls = new ArrayList<>();
+    private final CellStreamer.Listener listener = new CellStreamer.Listener() {
+        @Override public void loadCell(long cell) {
+            assertTrue("loaded twice: " + name(cell), loaded.add(cell));
+            calls.add("load " + name(cell));
+        }
+
+        @Override public void unloadCell(long cell) {
+            assertTrue("unloaded while out: " + name(cell), loaded.remove(cell));
+            calls.add("unload " + name(cell));
+        }
+    };
+
+    @Test
+    public void pagesInTheCellsInRangeAndOutTheOnesLeftBehind() {
+        CellStreamer streamer = new CellStreamer(CELL, 20f, 64, 0f, listener);
+        streamer.setCells(row(-20, 20));
+        streamer.update(4f, 4f, 0);
+        assertEquals(inRange(4f, 20f), loaded);
+
+        streamer.update(100f, 4f, 10 * FRAME_NANOS);
+        assertEquals(inRange(100f, 20f), loaded);
+        assertEquals(loaded.size(), streamer.getResidentCount());
+        assertEquals(streamer.getLoads() - streamer.getUnloads(), loaded.size());
+    }
+
+    @Test
+    public void movingWithinACellChangesNothing() {
+        CellStreamer streamer = new CellStreamer(CELL, 20f, 64, 0f, listener);
+        streamer.setCells(row(-20, 20));
+        streamer.update(0.5f, 4f, 0);
+        calls.clear();
+        for (int i = 1; i <= 100; i++) streamer.update(0.5f + i * 0.07f, 4f, i * FRAME_NANOS);
+        assertEquals(0, calls.size());
+
+        // Stepping over the boundary pages one cell in ahead and one out behind.
+        streamer.update(8.1f, 4f, 101 * FRAME_NANOS);
+        assertEquals(2, calls.size());
+        assertEquals(inRange(8.1f, 20f), loaded);
+    }
+
+    @Test
+    public void budgetKeepsTheNearestCells() {
+        CellStreamer streamer = new CellStreamer(CELL, 100f, 3, 0f, listener);
+        streamer.setCells(row(-20, 20));
+        streamer.update(4f, 4f, 0);
+        assertEquals(cells(-1, 0, 1), loaded);
+
+        streamer.update(12f, 4f, 10 * FRAME_NANOS);
+        assertEquals(cells(0, 1, 2), loaded);
+        assertTrue(calls.contains("unload -1"));
+    }
+
+    @Test
+    public void lookAheadPagesInCellsTheCameraIsHeadingFor() {
+        CellStreamer walking = new CellStreamer(CELL, 5f, 64, 4f, listener);
+        walking.setCells(row(-20, 20));
+        // Walk at 1.5 m/s in +x; the look-ahead point runs about 6 m in front.
+        float x = 0f;
+        int frame = 0;
+        while (x < 18.5f) {
+            walking.update(x, 4f, frame++ * FRAME_NANOS);
+            x += 1.5f * FRAME_NANOS / 1e9f;
+        }
+        // Cell 3 starts 5.5 m ahead, outside the radius, but the look-ahead point is already in it.
+        assertTrue(walking.isResident(TiledSceneStore.cellKey(3, 0)));
+
+        CellStreamer standing = new CellStreamer(CELL, 5f, 64, 4f, new CellStreamer.Listener() {
+            @Override public void loadCell(long cell) {}
+
+            @Override public void unloadCell(long cell) {}
+        });
+        standing.setCells(row(-20, 20));
+        standing.update(x, 4f, 0);
+        standing.update(x, 4f, FRAME_NANOS);
+        assertFalse(standing.isResident(TiledSceneStore.cellKey(3, 0)));
+    }
+
+    @Test
+    public void trackingJumpsAreNotExtrapolated() {
+        CellStreamer streamer = new CellStreamer(CELL, 4f, 64, 4f, listener);
+        streamer.setCells(row(-20, 20));
+        streamer.update(4f, 4f, 0);
+        // 40 m in one frame is a relocalization, not a walk.
+        streamer.update(44f, 4f, FRAME_NANOS);
+        assertEquals(inRange(44f, 4f), loaded);
+    }
+
+    @Test
+    public void addCellMakesACellResidentForAPlacement() {
+        CellStreamer streamer = new CellStreamer(CELL, 20f, 64, 0f, listener);
+        streamer.setCells(row(-20, 20));
+        streamer.update(4f, 4f, 0);
+        calls.clear();
+
+        // A new cell has nothing to read, so the listener is not asked to load it.
+        long fresh = TiledSceneStore.cellKey(0, 5);
+        streamer.addCell(fresh);
+        assertTrue(streamer.isResident(fresh));
+        assertEquals(0, calls.size());
+        assertEquals(row(-20, 20).length + 1, streamer.getCellCount());
+
+        // A known cell out of range is read before the placement lands in it.
+        long far = TiledSceneStore.cellKey(15, 0);
+        streamer.addCell(far);
+        assertTrue(loaded.contains(far));
+
+        // Both are paged out like any other once the camera moves on. The placement is what
+        // made the new cell resident, so the listener sees it paged out all the same.
+        loaded.add(fresh);
+        streamer.update(-100f, 4f, 10 * FRAME_NANOS);
+        assertFalse(streamer.isResident(fresh));
+        assertFalse(streamer.isResident(far));
+        assertEquals(inRange(-100f, 20f), loaded);
+    }
+
+    @Test
+    public void resetForgetsEveryCellSilently() {
+        CellStreamer streamer = new CellStreamer(CELL, 20f, 64, 0f, listener);
+        streamer.setCells(row(-20, 20));
+        streamer.update(4f, 4f, 0);
+        calls.clear();
+        streamer.reset();
+        assertEquals(0, streamer.getResidentCount());
+        assertEquals(0, streamer.getCellCount());
+        streamer.update(4f, 4f, FRAME_NANOS);
+        assertEquals(0, calls.size());
+    }
+
+    /** Cells {@code from..to} along x, all in the row of z = 0..8. */
+    private static long[] row(int from, int to) {
+        long[] cells = new long[to - from + 1];
+        for (int x = from; x <= to; x++) cells[x - from] = TiledSceneStore.cellKey(x, 0);
+        return cells;
+    }
+
+    private static Set<Long> cells(int... xs) {
+        Set<Long> cells = new HashSet<>();
+        for (int x : xs) cells.add(TiledSceneStore.cellKey(x, 0));
+        return cells;
+    }
+
+    /** Cells of {@link #row} whose square comes within {@code radius} of a camera at ({@code x}, 4). */
+    private static Set<Long> inRange(float x, float radius) {
+        Set<Long> cells = new HashSet<>();
+        for (long cell : row(-20, 20)) {
+            float left = TiledSceneStore.cellX(cell) * CELL;
+            float gap = Math.max(0f, Math.max(left - x, x - (left + CELL)));
+            if (gap <= radius) cells.add(cell);
+        }
+        return cells;
+    }
+
+    private static String name(long cell) {
+        int z = TiledSceneStore.cellZ(cell);
+        return z == 0 ? Integer.toString(TiledSceneStore.cellX(cell)) : TiledSceneStore.cellX(cell) + "," + z;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.mrapp.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CommandQueueTest {
+    private static final int PRODUCERS = 4;
+    private static final int COMMANDS_PER_PRODUCER = 200_000;
+
+    @Test
+    public void manyProducersLoseNothingAndKeepTheirOrder() throws InterruptedException {
+        CommandQueue queue = new CommandQueue();
+        // Consumer only: the next sequence number expected from each producer.
+        int[] expected = new int[PRODUCERS];
+        AtomicInteger outOfOrder = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < COMMANDS_PER_PRODUCER; i++) {
+                    int sequence = i;
+                    queue.execute(() -> {
+                        if (expected[producer] != sequence) outOfOrder.incrementAndGet();
+                        expected[producer] = sequence + 1;
+                    });
+                }
+            }, "producer-" + p);
+            thread.start();
+            producers.add(thread);
+        }
+
+        start.countDown();
+        int total = PRODUCERS * COMMANDS_PER_PRODUCER;
+        int ran = 0;
+        long deadline = System.nanoTime() + 60_000_000_000L;
+        while (ran < total) {
+            // A small cap, like a frame's, so drains interleave with producers mid-burst.
+            ran += queue.drain(64);
+            if (System.nanoTime() > deadline) fail("Ran " + ran + " of " + total + " commands");
+        }
+        for (Thread thread : producers) thread.join();
+
+        assertEquals(0, queue.drain(Integer.MAX_VALUE));
+        assertTrue(queue.isEmpty());
+        assertEquals(0, outOfOrder.get());
+        int[] all = new int[PRODUCERS];
+        Arrays.fill(all, COMMANDS_PER_PRODUCER);
+        assertEquals(Arrays.toString(all), Arrays.toString(expected));
+    }
+
+    @Test
+    public void drainRunsAtMostTheLimitInOrder() {
+        CommandQueue queue = new CommandQueue();
+        List<Integer> ran = new ArrayList<>();
+        assertTrue(queue.isEmpty());
+        for (int i = 0; i < 5; i++) {
+            int n = i;
+            queue.execute(() -> ran.add(n));
+        }
+        assertEquals(2, queue.drain(2));
+        assertEquals(Arrays.asList(0, 1), ran);
+        assertEquals(3, queue.drain(10));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), ran);
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.drain(10));
+    }
+
+    @Test
+    public void commandQueuedWhileDrainingRunsInTheSameDrain() {
+        CommandQueue queue = new CommandQueue();
+        List<String> ran = new ArrayList<>();
+        queue.execute(() -> {
+            ran.add("first");
+            queue.execute(() -> ran.add("queued by first"));
+        });
+        assertEquals(2, queue.drain(10));
+        assertEquals(Arrays.asList("first", "queued by first"), ran);
+    }
+
+    @Test
+    public void throwingCommandIsDroppedAndTheRestStayQueued() {
+        CommandQueue queue = new CommandQueue();
+        List<String> ran = new ArrayList<>();
+        queue.execute(() -> ran.add("before"));
+        queue.execute(() -> {
+            throw new IllegalStateException("boom");
+        });
+        queue.execute(() -> ran.add("after"));
+        try {
+            queue.drain(10);
+            fail("The command's exception was swallowed");
+        } catch (IllegalStateException expected) {
+            assertEquals("boom", expected.getMessage());
+        }
+        assertEquals(Arrays.asList("before"), ran);
+        assertEquals(1, queue.drain(10));
+        assertEquals(Arrays.asList("before", "after"), ran);
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.mrapp.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks the encoder against a decoder written from the ETC2 and EAC block layouts. */
+public class EtcCompressorTest {
+    private static final int[][] INTENSITY_MODIFIERS = {
+            {2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183},
+    };
+    private static final int[][] EAC_MODIFIERS = {
+            {-3, -6, -9, -15, 2, 5, 8, 14}, {-3, -7, -10, -13, 2, 6, 9, 12},
+            {-2, -5, -8, -13, 1, 4, 7, 12}, {-2, -4, -6, -13, 1, 3, 5, 12},
+            {-3, -6, -8, -12, 2, 5, 7, 11}, {-3, -7, -9, -11, 2, 6, 8, 10},
+            {-4, -7, -8, -11, 3, 6, 7, 10}, {-3, -5, -8, -11, 2, 4, 7, 10},
+            {-2, -6, -8, -10, 1, 5, 7, 9}, {-2, -5, -8, -10, 1, 4, 7, 9},
+            {-2, -4, -8, -10, 1, 3, 7, 9}, {-2, -5, -7, -10, 1, 4, 6, 9},
+            {-3, -4, -7, -10, 2, 3, 6, 9}, {-1, -2, -3, -10, 0, 1, 2, 9},
+            {-4, -6, -8, -9, 3, 5, 7, 8}, {-3, -5, -7, -9, 2, 4, 6, 8},
+    };
+
+    private final EtcCompressor compressor = new EtcCompressor();
+
+    @Test
+    public void flatColoursSurviveWithinTheirQuantization() {
+        for (int rgb : new int[] {0x000000, 0xFFFFFF, 0xC86432, 0x1E90FF, 0x808080}) {
+            int[] image = new int[8 * 8];
+            Arrays.fill(image, 0xFF000000 | rgb);
+            int[] decoded = roundTrip(image, 8, 8, false);
+            for (int pixel : decoded) {
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int expected = (rgb >> shift) & 0xFF;
+                    int actual = (pixel >> shift) & 0xFF;
+                    assertTrue(String.format("%06x decoded as %06x", rgb, pixel & 0xFFFFFF), Math.abs(expected - actual) <= 4);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void smoothImageKeepsTexturePsnr() {
+        int size = 64;
+        int[] image = smoothImage(size, 0xFF, 1);
+        double psnr = psnr(image, roundTrip(image, size, size, false), 0x00FFFFFF);
+        assertTrue(psnr + " dB", psnr > 34);
+    }
+
+    @Test
+    public void alphaIsEncodedInItsOwnBlockAheadOfTheColour() {
+        int size = 16;
+        int[] image = smoothImage(size, -1, 2);
+        assertTrue(EtcCompressor.hasAlpha(image, image.length));
+        byte[] rgba = new byte[EtcCompressor.compressedSize(size, size, true)];
+        compressor.compress(image, size, size, true, rgba);
+        assertEquals(2 * EtcCompressor.compressedSize(size, size, false), rgba.length);
+
+        int[] decoded = decode(rgba, size, size, true);
+        for (int i = 0; i < image.length; i++) {
+            assertTrue("pixel " + i, Math.abs((image[i] >>> 24) - (decoded[i] >>> 24)) <= 8);
+        }
+        double psnr = psnr(image, decoded, 0x00FFFFFF);
+        assertTrue(psnr + " dB", psnr > 34);
+    }
+
+    @Test
+    public void constantAlphaIsExact() {
+        for (int a : new int[] {0, 1, 128, 254, 255}) {
+            int[] image = smoothImage(8, a, 3);
+            int[] decoded = roundTrip(image, 8, 8, true);
+            for (int pixel : decoded) assertEquals(a, pixel >>> 24);
+        }
+    }
+
+    @Test
+    public void partialEdgeBlocksRepeatTheLastRowAndColumn() {
+        int width = 6;
+        int height = 5;
+        assertEquals(4 * EtcCompressor.BLOCK_BYTES_RGB, EtcCompressor.compressedSize(width, height, false));
+        int[] image = smoothImage(8, 0xFF, 4);
+        int[] cropped = new int[width * height];
+        for (int y = 0; y < height; y++) System.arraycopy(image, y * 8, cropped, y * width, width);
+        double psnr = psnr(cropped, roundTrip(cropped, width, height, false), 0x00FFFFFF);
+        assertTrue(psnr + " dB", psnr > 34);
+    }
+
+    @Test
+    public void opaqueImagesHaveNoAlpha() {
+        int[] image = smoothImage(8, 0xFF, 5);
+        assertFalse(EtcCompressor.hasAlpha(image, image.length));
+        image[image.length - 1] &= 0xFEFFFFFF;
+        assertFalse(EtcCompressor.hasAlpha(image, image.length - 1));
+        assertTrue(EtcCompressor.hasAlpha(image, image.length));
+    }
+
+    private int[] roundTrip(int[] image, int width, int height, boolean withAlpha) {
+        byte[] blocks = new byte[EtcCompressor.compressedSize(width, height, withAlpha)];
+        compressor.compress(image, width, height, withAlpha, blocks);
+        return decode(blocks, width, height, withAlpha);
+    }
+
+    /** Gradients with a little noise, like a photographed base colour map; {@code alpha < 0} varies it. */
+    private static int[] smoothImage(int size, int alpha, long seed) {
+        Random random = new Random(seed);
+        int[] image = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                double u = x / 64.0;
+                double v = y / 64.0;
+                int r = channel(255 * u, random);
+                int g = channel(128 + 100 * Math.sin(6 * v), random);
+                int b = channel(255 * (1 - u) * v, random);
+                int a = alpha >= 0 ? alpha : channel(255 * v, random);
+                image[y * size + x] = a << 24 | r << 16 | g << 8 | b;
+            }
+        }
+        return image;
+    }
+
+    private static int channel(double value, Random random) {
+        return Math.max(0, Math.min(255, (int) Math.round(value + random.nextGaussian() * 2)));
+    }
+
+    private static double psnr(int[] expected, int[] actual, int mask) {
+        double sum = 0;
+        int samples = 0;
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                if (((mask >>> shift) & 0xFF) == 0) continue;
+                int d = ((expected[i] >>> shift) & 0xFF) - ((actual[i] >>> shift) & 0xFF);
+                sum += d * d;
+                samples++;
+            }
+        }
+        return sum == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 * samples / sum);
+    }
+
+    private static int[] decode(byte[] blocks, int width, int height, boolean withAlpha) {
+        int[] image = new int[width * height];
+        int offset = 0;
+        for (int by = 0; by < height; by += 4) {
+            for (int bx = 0; bx < width; bx += 4) {
+                long alphaBlock = 0;
+                if (withAlpha) {
+                    alphaBlock = readLong(blocks, offset);
+                    offset += 8;
+                }
+                long colorBlock = readLong(blocks, offset);
+                offset += 8;
+                for (int x = 0; x < 4 && bx + x < width; x++) {
+                    for (int y = 0; y < 4 && by + y < height; y++) {
+                        int a = withAlpha ? decodeAlpha(alphaBlock, x, y) : 0xFF;
+                        image[(by + y) * width + bx + x] = a << 24 | decodeColor(colorBlock, x, y);
+                    }
+                }
+            }
+        }
+        return image;
+    }
+
+    private static int decodeColor(long block, int x, int y) {
+        boolean differential = bits(block, 33, 1) == 1;
+        boolean flipped = bits(block, 32, 1) == 1;
+        int subBlock = flipped ? y / 2 : x / 2;
+        int rgb = 0;
+        for (int c = 0; c < 3; c++) {
+            int shift = 59 - 8 * c;
+            int base;
+            if (differential) {
+                int first = bits(block, shift, 5);
+                int delta = bits(block, shift - 3, 3);
+                if (delta >= 4) delta -= 8;
+                int value = subBlock == 0 ? first : first + delta;
+                assertTrue("differential colour out of range", value >= 0 && value <= 31);
+                base = value << 3 | value >> 2;
+            } else {
+                int value = bits(block, subBlock == 0 ? shift + 1 : shift - 3, 4);
+                base = value * 17;
+            }
+            rgb = rgb << 8 | base;
+        }
+        int[] modifiers = INTENSITY_MODIFIERS[bits(block, subBlock == 0 ? 37 : 34, 3)];
+        int pixel = x * 4 + y;
+        int index = bits(block, 16 + pixel, 1) << 1 | bits(block, pixel, 1);
+        int modifier = (index & 1) == 0 ? modifiers[0] : modifiers[1];
+        if (index >= 2) modifier = -modifier;
+        int result = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            result = result << 8 | clamp(((rgb >> shift) & 0xFF) + modifier);
+        }
+        return result;
+    }
+
+    private static int decodeAlpha(long block, int x, int y) {
+        int base = bits(block, 56, 8);
+        int multiplier = bits(block, 52, 4);
+        int[] modifiers = EAC_MODIFIERS[bits(block, 48, 4)];
+        int index = bits(block, 45 - 3 * (x * 4 + y), 3);
+        return clamp(base + modifiers[index] * multiplier);
+    }
+
+    private static int bits(long block, int lowest, int count) {
+        return (int) (block >>> lowest) & ((1 << count) - 1);
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) value = value << 8 | (bytes[offset + i] & 0xFF);
+        return value;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.mrapp.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameGovernorTest {
+    private static final long TARGET = 16_666_667L;
+    private static final long FAST = 10_000_000L;
+    private static final long SLOW = 25_000_000L;
+
+    @Test
+    public void sustainedOverrunStepsDownOneLevel() {
+        FrameGovernor governor = new FrameGovernor(TARGET, FrameGovernor.DEFAULT_LEVELS, 0);
+        // A single bad window, as when a model finishes loading, is not enough.
+        assertEquals(0, feed(governor, SLOW, 1));
+        assertEquals(0, feed(governor, FAST, 1));
+        assertEquals(0, feed(governor, SLOW, 1));
+        assertEquals(0, governor.getLevelIndex());
+
+        assertEquals(1, feed(governor, SLOW, FrameGovernor.DEGRADE_WINDOWS - 1));
+        assertEquals(1, governor.getLevelIndex());
+        assertEquals(1, feed(governor, SLOW, FrameGovernor.DEGRADE_WINDOWS));
+        assertEquals(2, governor.getLevelIndex());
+    }
+
+    @Test
+    public void overrunNeverStepsPastTheCheapestLevel() {
+        FrameGovernor governor = new FrameGovernor(TARGET, FrameGovernor.DEFAULT_LEVELS, 0);
+        feed(governor, SLOW, 100);
+        assertEquals(governor.getLevelCount() - 1, governor.getLevelIndex());
+    }
+
+    @Test
+    public void stepsUpOnlyAfterTheBackoffWindow() {
+        FrameGovernor governor = new FrameGovernor(TARGET, FrameGovernor.DEFAULT_LEVELS, 2);
+        assertEquals(0, feed(governor, FAST, FrameGovernor.MIN_UPGRADE_WINDOWS - 1));
+        assertEquals(1, feed(governor, FAST, 1));
+        assertEquals(1, governor.getLevelIndex());
+
+        // The step up does not hold, so the next one waits twice as long.
+        assertEquals(1, feed(governor, SLOW, FrameGovernor.DEGRADE_WINDOWS));
+        assertEquals(2, governor.getLevelIndex());
+        int backoff = governor.getUpgradeWindows();
+        assertEquals(2 * FrameGovernor.MIN_UPGRADE_WINDOWS, backoff);
+        assertEquals(0, feed(governor, FAST, backoff - 1));
+        assertEquals(1, feed(governor, FAST, 1));
+        assertEquals(1, governor.getLevelIndex());
+
+        // Once a step up survives probation the wait halves again.
+        feed(governor, FAST, FrameGovernor.PROBATION_WINDOWS + 1);
+        assertEquals(FrameGovernor.MIN_UPGRADE_WINDOWS, governor.getUpgradeWindows());
+    }
+
+    @Test
+    public void thermalFloorHoldsOffUpgrades() {
+        FrameGovernor governor = new FrameGovernor(TARGET, FrameGovernor.DEFAULT_LEVELS, 0);
+        assertTrue(governor.setThermalFloor(3));
+        assertEquals(3, governor.getLevelIndex());
+        assertEquals(0, feed(governor, FAST, 10 * FrameGovernor.MAX_UPGRADE_WINDOWS));
+        assertEquals(3, governor.getLevelIndex());
+
+        // Overruns may still step below the floor.
+        assertEquals(1, feed(governor, SLOW, FrameGovernor.DEGRADE_WINDOWS));
+        assertEquals(4, governor.getLevelIndex());
+        assertEquals(1, feed(governor, FAST, FrameGovernor.MIN_UPGRADE_WINDOWS));
+        assertEquals(3, governor.getLevelIndex());
+
+        assertFalse(governor.setThermalFloor(0));
+        assertEquals(1, feed(governor, FAST, FrameGovernor.MIN_UPGRADE_WINDOWS));
+        assertEquals(2, governor.getLevelIndex());
+    }
+
+    /**
+     * The best level runs just over budget and the next one just under it, so every step up is
+     * undone. The governor backs off until the slow level is visited rarely.
+     */
+    @Test
+    public void doesNotOscillateNearTheThreshold() {
+        FrameGovernor governor = new FrameGovernor(TARGET, FrameGovernor.DEFAULT_LEVELS, 1);
+        Random random = new Random(7);
+        int windows = 1200; // ten minutes at 60 Hz
+        int framesAtBestLevel = 0;
+        for (int i = 0; i < windows * FrameGovernor.WINDOW_FRAMES; i++) {
+            boolean best = governor.getLevelIndex() == 0;
+            if (best) framesAtBestLevel++;
+            long jitter = (long) ((random.nextDouble() - 0.5) * 6_000_000);
+            governor.onFrame((best ? 19_000_000L : 14_000_000L) + jitter);
+            assertTrue(governor.getLevelIndex() <= 1);
+        }
+        assertEquals(FrameGovernor.MAX_UPGRADE_WINDOWS, governor.getUpgradeWindows());
+        // Without the backoff a step up every MIN_UPGRADE_WINDOWS would mean ~400 changes.
+        assertTrue(governor.getChanges() + " changes", governor.getChanges() <= 50);
+        float share = (float) framesAtBestLevel / (windows * FrameGovernor.WINDOW_FRAMES);
+        assertTrue(share + " of frames over budget", share < 0.05f);
+    }
+
+    /** Feeds whole windows of frames of one length; returns how many of them changed the level. */
+    private static int feed(FrameGovernor governor, long frameNanos, int windows) {
+        int changes = 0;
+        for (int i = 0; i < windows * FrameGovernor.WINDOW_FRAMES; i++) {
+            if (governor.onFrame(frameNanos)) changes++;
+        }
+        return changes;
+    }
+}
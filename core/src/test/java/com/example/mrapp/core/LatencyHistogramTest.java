@@ -0,0 +1,54 @@
+package com.example.mrapp.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    private final LatencyHistogram histogram = new LatencyHistogram("frame");
+
+    @Test
+    public void bucketsAreContiguousAndWithinAQuarterOfTheirValues() {
+        long lower = 0;
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT - 1; bucket++) {
+            long upper = LatencyHistogram.upperBoundMicros(bucket);
+            assertTrue("bucket " + bucket, upper > lower);
+            assertEquals(bucket, LatencyHistogram.bucketFor(lower));
+            assertEquals(bucket, LatencyHistogram.bucketFor(upper - 1));
+            if (lower >= LatencyHistogram.SUB_BUCKETS) assertTrue("bucket " + bucket, upper - lower <= lower / 4);
+            lower = upper;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketFor(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesComeFromTheRecordedDistribution() {
+        for (int i = 1; i <= 100; i++) histogram.record(i * 1_000_000L);
+        assertEquals(100, histogram.getCount());
+        assertEquals(100_000_000L, histogram.getMaxNanos());
+        assertEquals(50_500_000.0, histogram.getMeanNanos(), 1e-6);
+
+        long p50 = histogram.getPercentileNanos(50);
+        assertTrue(p50 + " ns", p50 >= 50_000_000L && p50 <= 50_000_000L * 5 / 4);
+        long p99 = histogram.getPercentileNanos(99);
+        assertTrue(p99 + " ns", p99 >= 99_000_000L && p99 <= 100_000_000L);
+        assertEquals(100_000_000L, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void negativeDurationsCountAsZeroAndResetClearsEverything() {
+        histogram.record(-5);
+        assertEquals(1, histogram.getBucketCount(0));
+        assertEquals(0, histogram.getMaxNanos());
+
+        histogram.record(3_000_000L);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(99));
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT; bucket++) {
+            assertEquals(0, histogram.getBucketCount(bucket));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.mrapp.core;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MeshOptimizerTest {
+    /** The FIFO size the importer logs ACMR against. */
+    private static final int CACHE_SIZE = 16;
+    /** The importer's LOD ratios. */
+    private static final float[] LOD_RATIOS = {0.5f, 0.25f, 0.1f};
+
+    @Test
+    public void reorderingKeepsEveryTriangleAndItsWinding() {
+        Sphere sphere = new Sphere(48, 96);
+        int[] shuffled = shuffled(sphere.indices, new Random(3));
+        int[] reordered = MeshOptimizer.optimizeVertexCache(shuffled, sphere.vertexCount);
+        assertEquals(triangleCounts(shuffled), triangleCounts(reordered));
+    }
+
+    @Test
+    public void reorderingLowersTheCacheMissRatio() {
+        Sphere sphere = new Sphere(48, 96);
+        for (int[] indices : new int[][] {sphere.indices, shuffled(sphere.indices, new Random(5))}) {
+            float before = MeshOptimizer.averageCacheMissRatio(indices, sphere.vertexCount, CACHE_SIZE);
+            int[] reordered = MeshOptimizer.optimizeVertexCache(indices, sphere.vertexCount);
+            float after = MeshOptimizer.averageCacheMissRatio(reordered, sphere.vertexCount, CACHE_SIZE);
+            assertTrue(before + " -> " + after, after <= before);
+            // A closed mesh has about half as many vertices as triangles, so 0.5 is the floor.
+            assertTrue("ACMR " + after, after < 0.8f);
+        }
+    }
+
+    @Test
+    public void reorderingHandlesDegenerateInput() {
+        assertEquals(0, MeshOptimizer.optimizeVertexCache(new int[0], 0).length);
+        int[] single = {2, 0, 1};
+        assertEquals(triangleCounts(single), triangleCounts(MeshOptimizer.optimizeVertexCache(single, 3)));
+        // Unconnected triangles still all come out.
+        int[] islands = {0, 1, 2, 3, 4, 5, 6, 7, 8, 0, 2, 1};
+        assertEquals(triangleCounts(islands), triangleCounts(MeshOptimizer.optimizeVertexCache(islands, 9)));
+    }
+
+    @Test
+    public void levelsOfDetailApproachTheirTargetsAndAreNeverEmpty() {
+        for (Sphere sphere : new Sphere[] {new Sphere(48, 96), new Sphere(96, 192)}) {
+            int triangles = sphere.indices.length / 3;
+            int previous = triangles;
+            for (float ratio : LOD_RATIOS) {
+                int target = (int) (triangles * ratio);
+                int[] level = MeshOptimizer.simplifyClusters(sphere.indices, sphere.positions, sphere.vertexCount, target);
+                int count = level.length / 3;
+                String label = triangles + " triangles at " + ratio + ": " + count;
+                assertTrue(label, count > 0);
+                // The grid search settles on the resolution closest to the target, from either side.
+                assertTrue(label, count >= target * 0.75f && count <= target * 1.25f);
+                assertTrue(label, count < previous);
+                assertValidTriangles(level, sphere.vertexCount);
+                previous = count;
+            }
+        }
+    }
+
+    @Test
+    public void levelsKeepOutwardWinding() {
+        Sphere sphere = new Sphere(48, 96);
+        int[] level = MeshOptimizer.simplifyClusters(sphere.indices, sphere.positions, sphere.vertexCount, sphere.indices.length / 30);
+        float[] p = sphere.positions;
+        for (int i = 0; i < level.length; i += 3) {
+            int a = level[i] * 3;
+            int b = level[i + 1] * 3;
+            int c = level[i + 2] * 3;
+            float[] ab = {p[b] - p[a], p[b + 1] - p[a + 1], p[b + 2] - p[a + 2]};
+            float[] ac = {p[c] - p[a], p[c + 1] - p[a + 1], p[c + 2] - p[a + 2]};
+            float nx = ab[1] * ac[2] - ab[2] * ac[1];
+            float ny = ab[2] * ac[0] - ab[0] * ac[2];
+            float nz = ab[0] * ac[1] - ab[1] * ac[0];
+            // The sphere is centred on the origin, so an outward face points away from it.
+            float outward = nx * (p[a] + p[b] + p[c]) + ny * (p[a + 1] + p[b + 1] + p[c + 1]) + nz * (p[a + 2] + p[b + 2] + p[c + 2]);
+            assertTrue("triangle " + i / 3 + " faces inward", outward > 0f);
+        }
+    }
+
+    @Test
+    public void flatMeshIsReturnedUnsimplified() {
+        int[] indices = {0, 1, 2, 0, 2, 3};
+        float[] positions = new float[12];
+        int[] level = MeshOptimizer.simplifyClusters(indices, positions, 4, 1);
+        assertEquals(triangleCounts(indices), triangleCounts(level));
+    }
+
+    /** Each triangle rotated to start at its smallest index, counted; the rotation keeps winding. */
+    private static Map<String, Integer> triangleCounts(int[] indices) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < indices.length; i += 3) {
+            int a = indices[i];
+            int b = indices[i + 1];
+            int c = indices[i + 2];
+            String key = a <= b && a <= c ? a + "," + b + "," + c : b <= c ? b + "," + c + "," + a : c + "," + a + "," + b;
+            Integer count = counts.get(key);
+            counts.put(key, count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+    private static void assertValidTriangles(int[] indices, int vertexCount) {
+        assertEquals(0, indices.length % 3);
+        for (int i = 0; i < indices.length; i += 3) {
+            for (int k = 0; k < 3; k++) assertTrue(indices[i + k] >= 0 && indices[i + k] < vertexCount);
+            assertTrue(indices[i] != indices[i + 1] && indices[i + 1] != indices[i + 2] && indices[i] != indices[i + 2]);
+        }
+    }
+
+    private static int[] shuffled(int[] indices, Random random) {
+        int[] result = indices.clone();
+        for (int t = result.length / 3 - 1; t > 0; t--) {
+            int other = random.nextInt(t + 1);
+            for (int k = 0; k < 3; k++) {
+                int swap = result[t * 3 + k];
+                result[t * 3 + k] = result[other * 3 + k];
+                result[other * 3 + k] = swap;
+            }
+        }
+        return result;
+    }
+
+    /** A unit sphere of shared vertices with outward, counter-clockwise triangles, poles included. */
+    private static final class Sphere {
+        final float[] positions;
+        final int[] indices;
+        final int vertexCount;
+
+        Sphere(int rings, int segments) {
+            vertexCount = 2 + (rings - 1) * segments;
+            positions = new float[vertexCount * 3];
+            positions[1] = 1f;
+            positions[(vertexCount - 1) * 3 + 1] = -1f;
+            for (int r = 1; r < rings; r++) {
+                double polar = Math.PI * r / rings;
+                for (int s = 0; s < segments; s++) {
+                    double azimuth = 2 * Math.PI * s / segments;
+                    int v = ring(r, s, segments);
+                    positions[v * 3] = (float) (Math.sin(polar) * Math.cos(azimuth));
+                    positions[v * 3 + 1] = (float) Math.cos(polar);
+                    positions[v * 3 + 2] = (float) (Math.sin(polar) * Math.sin(azimuth));
+                }
+            }
+            indices = new int[segments * 2 * 3 + (rings - 2) * segments * 6];
+            int i = 0;
+            int south = vertexCount - 1;
+            for (int s = 0; s < segments; s++) {
+                int next = (s + 1) % segments;
+                i = triangle(indices, i, 0, ring(1, next, segments), ring(1, s, segments));
+                i = triangle(indices, i, south, ring(rings - 1, s, segments), ring(rings - 1, next, segments));
+                for (int r = 1; r < rings - 1; r++) {
+                    int a = ring(r, s, segments);
+                    int b = ring(r, next, segments);
+                    int c = ring(r + 1, s, segments);
+                    int d = ring(r + 1, next, segments);
+                    i = triangle(indices, i, a, b, d);
+                    i = triangle(indices, i, a, d, c);
+                }
+            }
+        }
+
+        private static int ring(int r, int s, int segments) {
+            return 1 + (r - 1) * segments + s;
+        }
+
+        private static int triangle(int[] indices, int i, int a, int b, int c) {
+            indices[i] = a;
+            indices[i + 1] = b;
+            indices[i + 2] = c;
+            return i + 3;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.mrapp.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ModelStoreTest {
+    private static final byte[] CHAIR = model("chair", 40_000);
+    private static final byte[] TABLE = model("table", 40_000);
+
+    private File directory;
+    private int opens;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("model-store").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.deleteRecursively(directory);
+    }
+
+    @Test
+    public void identicalBytesAreStoredOnce() throws IOException {
+        ModelStore store = open();
+        ModelStore.ImportResult first = store.importModel(source(CHAIR), "chair.glb", CHAIR.length);
+        assertFalse(first.duplicate);
+        assertEquals("chair.glb", first.displayName);
+        assertEquals(1, opens);
+
+        // Same size as a stored model: hashed first, then nothing is written.
+        ModelStore.ImportResult again = store.importModel(source(CHAIR), "chair.glb", CHAIR.length);
+        assertTrue(again.duplicate);
+        assertEquals(first.key, again.key);
+        assertEquals("chair.glb", again.displayName);
+        assertEquals(2, opens);
+
+        // Under another name and with no size hint it is copied, found to be stored, and dropped.
+        // The model keeps the name it was first imported under.
+        ModelStore.ImportResult renamed = store.importModel(source(CHAIR), "seat.glb", -1);
+        assertTrue(renamed.duplicate);
+        assertEquals(first.key, renamed.key);
+        assertEquals("chair.glb", renamed.displayName);
+
+        assertEquals(Arrays.asList(first.key, "index"), files());
+        assertArrayEquals(CHAIR, Files.readAllBytes(store.file(first.key).toPath()));
+        assertEquals(first.key, store.resolve("chair.glb"));
+        assertNull(store.resolve("seat.glb"));
+    }
+
+    @Test
+    public void sameNameWithOtherBytesGetsANumberedName() throws IOException {
+        ModelStore store = open();
+        ModelStore.ImportResult chair = store.importModel(source(CHAIR), "model.glb", CHAIR.length);
+        ModelStore.ImportResult table = store.importModel(source(TABLE), "model.glb", TABLE.length);
+        ModelStore.ImportResult third = store.importModel(source(model("lamp", 10)), "model.glb", 10);
+        assertNotEquals(chair.key, table.key);
+        assertFalse(table.duplicate);
+        assertEquals("model.glb", chair.displayName);
+        assertEquals("model (2).glb", table.displayName);
+        assertEquals("model (3).glb", third.displayName);
+        assertArrayEquals(CHAIR, Files.readAllBytes(store.file(store.resolve("model.glb")).toPath()));
+        assertArrayEquals(TABLE, Files.readAllBytes(store.file(store.resolve("model (2).glb")).toPath()));
+
+        // The names survive a restart, and keys resolve to themselves.
+        ModelStore reopened = open();
+        assertEquals(table.key, reopened.resolve("model (2).glb"));
+        assertEquals("model (2).glb", reopened.displayName(table.key));
+        assertEquals(chair.key, reopened.resolve(chair.key));
+        assertNull(reopened.resolve("missing.glb"));
+    }
+
+    @Test
+    public void keysAreSha256WithTheFormatExtension() throws IOException {
+        ModelStore store = open();
+        String glb = store.importModel(source(CHAIR), "Chair.GLB", -1).key;
+        String gltf = store.importModel(source(TABLE), "table.GLTF", -1).key;
+        assertTrue(glb, glb.matches("[0-9a-f]{64}\\.glb"));
+        assertTrue(gltf, gltf.matches("[0-9a-f]{64}\\.gltf"));
+        // The empty input's SHA-256, as a fixed point for the digest and its hex encoding.
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855.glb",
+                store.importModel(source(new byte[0]), "empty.glb", -1).key);
+    }
+
+    @Test
+    public void legacyNameAddressedFilesAreMovedIntoTheStore() throws IOException {
+        write("chair.glb", CHAIR);
+        write("table.glb", TABLE);
+        write("chair copy.glb", CHAIR);
+        write("1234.tmp", TABLE);
+
+        ModelStore store = open();
+        String chair = store.resolve("chair.glb");
+        String table = store.resolve("table.glb");
+        assertTrue(chair != null && table != null && !chair.equals(table));
+        assertEquals(chair, store.resolve("chair copy.glb"));
+        assertArrayEquals(CHAIR, Files.readAllBytes(store.file(chair).toPath()));
+        assertArrayEquals(TABLE, Files.readAllBytes(store.file(table).toPath()));
+        // Originals moved or dropped as duplicates; the interrupted import's temp file is gone.
+        List<String> expected = new ArrayList<>(Arrays.asList(chair, table, "index"));
+        expected.sort(null);
+        assertEquals(expected, files());
+
+        // Migrated content is found by size, so importing it again writes nothing.
+        opens = 0;
+        ModelStore.ImportResult again = store.importModel(source(TABLE), "table.glb", TABLE.length);
+        assertTrue(again.duplicate);
+        assertEquals(table, again.key);
+        assertEquals(1, opens);
+
+        ModelStore reopened = open();
+        assertEquals(chair, reopened.resolve("chair.glb"));
+        assertEquals(table, reopened.resolve("table.glb"));
+        assertEquals(expected, files());
+    }
+
+    @Test
+    public void indexEntriesWithoutAFileAreForgotten() throws IOException {
+        ModelStore store = open();
+        String key = store.importModel(source(CHAIR), "chair.glb", -1).key;
+        assertTrue(store.file(key).delete());
+        assertNull(open().resolve("chair.glb"));
+    }
+
+    private ModelStore open() throws IOException {
+        ModelStore store = new ModelStore(directory);
+        store.open();
+        return store;
+    }
+
+    private ModelStore.Source source(byte[] bytes) {
+        return () -> {
+            opens++;
+            return Channels.newChannel(new ByteArrayInputStream(bytes));
+        };
+    }
+
+    private void write(String name, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(new File(directory, name))) {
+            out.write(bytes);
+        }
+    }
+
+    private List<String> files() {
+        List<String> names = new ArrayList<>(Arrays.asList(directory.list()));
+        names.sort(null);
+        return names;
+    }
+
+    /** Bytes spanning several copy buffers, different for each seed. */
+    private static byte[] model(String seed, int length) {
+        byte[] bytes = new byte[length];
+        byte[] pattern = seed.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < length; i++) bytes[i] = (byte) (pattern[i % pattern.length] + i / 251);
+        return bytes;
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.mrapp.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SceneCodecTest {
+    private static final int OBJECTS = 2000;
+
+    @Test
+    public void roundTripKeepsModelsIdsAndTransforms() throws IOException {
+        SceneData scene = randomScene(OBJECTS, 1);
+        scene.setSequence(1234L);
+        SceneData read = decode(encode(scene));
+
+        assertEquals(scene.getModels(), read.getModels());
+        assertEquals(1234L, read.getSequence());
+        assertEquals(OBJECTS, read.getObjectCount());
+        float[] expected = new float[SceneData.TRANSFORM_SIZE];
+        float[] actual = new float[SceneData.TRANSFORM_SIZE];
+        for (int i = 0; i < OBJECTS; i++) {
+            assertEquals(scene.getObjectId(i), read.getObjectId(i));
+            assertEquals(scene.getModelIndex(i), read.getModelIndex(i));
+            scene.getTransform(i, expected, 0);
+            read.getTransform(i, actual, 0);
+            for (int k = 0; k < 12; k++) assertEquals("basis " + k, expected[k], actual[k], 0f);
+            for (int k = 12; k < 15; k++) {
+                assertEquals("translation " + k, expected[k], actual[k], SceneCodec.DEFAULT_TRANSLATION_STEP);
+            }
+            assertEquals(1f, actual[15], 0f);
+        }
+    }
+
+    @Test
+    public void nonAffineTransformsRoundTripExactly() throws IOException {
+        SceneData scene = new SceneData();
+        scene.addModel("a.glb");
+        float[] m = new float[SceneData.TRANSFORM_SIZE];
+        for (int k = 0; k < m.length; k++) m[k] = k * 0.37f - 1f;
+        scene.addObject(7, 0, m, 0);
+        float[] read = new float[SceneData.TRANSFORM_SIZE];
+        decode(encode(scene)).getTransform(0, read, 0);
+        assertArrayEquals(m, read, 0f);
+    }
+
+    @Test
+    public void sparseIdsRoundTrip() throws IOException {
+        SceneData scene = new SceneData();
+        scene.addModel("a.glb");
+        float[] m = new float[SceneData.TRANSFORM_SIZE];
+        m[0] = m[5] = m[10] = m[15] = 1f;
+        int[] ids = {5, 2, Integer.MAX_VALUE, 0, 1_000_000};
+        for (int id : ids) scene.addObject(id, 0, m, 0);
+        SceneData read = decode(encode(scene));
+        for (int i = 0; i < ids.length; i++) assertEquals(ids[i], read.getObjectId(i));
+    }
+
+    @Test
+    public void readsVersion1Files() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryWriter out = new BinaryWriter(Channels.newChannel(bytes));
+        out.writeInt(SceneCodec.MAGIC);
+        out.writeShort(1);
+        out.writeShort(0);
+        out.writeFloat(0.5f);
+        out.writeVarInt(2);
+        out.writeString("a.glb");
+        out.writeString("b.glb");
+        out.writeVarInt(3);
+        for (int i = 0; i < 3; i++) {
+            out.writeVarInt(i % 2);
+            out.writeByte(1);
+            // Identity basis, each as a delta against the previous object's bits.
+            for (int k = 0; k < 9; k++) out.writeVarInt(i == 0 && (k == 0 || k == 4 || k == 8) ? Float.floatToIntBits(1f) : 0);
+            out.writeSignedVarLong(2); // x advances by one metre per object
+            out.writeSignedVarLong(0);
+            out.writeSignedVarLong(i == 0 ? -4 : 0);
+        }
+        out.writeInt(out.crc());
+        out.flush();
+
+        SceneData read = decode(bytes.toByteArray());
+        assertEquals(Arrays.asList("a.glb", "b.glb"), read.getModels());
+        assertEquals(0L, read.getSequence());
+        assertEquals(3, read.getObjectCount());
+        float[] m = new float[SceneData.TRANSFORM_SIZE];
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, read.getObjectId(i));
+            assertEquals(i % 2, read.getModelIndex(i));
+            read.getTransform(i, m, 0);
+            assertEquals(1f, m[0], 0f);
+            assertEquals(1f, m[5], 0f);
+            assertEquals(1f, m[10], 0f);
+            assertEquals(i + 1f, m[12], 0f);
+            assertEquals(-2f, m[14], 0f);
+        }
+    }
+
+    @Test
+    public void rejectsChecksumMismatch() throws IOException {
+        byte[] encoded = encode(randomScene(100, 2));
+        encoded[encoded.length / 2] ^= 0x10;
+        assertRejected(encoded);
+    }
+
+    @Test
+    public void rejectsTruncatedInput() throws IOException {
+        byte[] encoded = encode(randomScene(50, 3));
+        for (int length = 0; length < encoded.length; length++) {
+            assertRejected(Arrays.copyOf(encoded, length));
+        }
+    }
+
+    @Test
+    public void rejectsImplausibleCountsBeforeAllocating() throws IOException {
+        File file = File.createTempFile("scene", ".bin");
+        try {
+            for (int count : new int[] {-1, Integer.MAX_VALUE}) {
+                try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+                    BinaryWriter out = new BinaryWriter(channel);
+                    out.writeInt(SceneCodec.MAGIC);
+                    out.writeShort(SceneCodec.VERSION);
+                    out.writeShort(0);
+                    out.writeFloat(SceneCodec.DEFAULT_TRANSLATION_STEP);
+                    out.writeLong(0);
+                    out.writeVarInt(0);
+                    out.writeVarInt(count);
+                    out.flush();
+                }
+                try (FileChannel channel = new FileInputStream(file).getChannel()) {
+                    SceneCodec.read(channel);
+                    fail("Accepted object count " + count);
+                } catch (IOException expected) {
+                    // Reported as corruption, not as an allocation failure.
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void rejectsDuplicateIds() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryWriter out = new BinaryWriter(Channels.newChannel(bytes));
+        out.writeInt(SceneCodec.MAGIC);
+        out.writeShort(SceneCodec.VERSION);
+        out.writeShort(0);
+        out.writeFloat(SceneCodec.DEFAULT_TRANSLATION_STEP);
+        out.writeLong(0);
+        out.writeVarInt(1);
+        out.writeString("a.glb");
+        out.writeVarInt(2);
+        for (int i = 0; i < 2; i++) {
+            out.writeSignedVarLong(i == 0 ? 4 : 0); // both objects get id 3
+            out.writeVarInt(0);
+            out.writeByte(0);
+            for (int k = 0; k < SceneData.TRANSFORM_SIZE; k++) out.writeFloat(0f);
+        }
+        out.writeInt(out.crc());
+        out.flush();
+        assertRejected(bytes.toByteArray());
+    }
+
+    /** The pretty-printed JSON it replaced spent well over a hundred bytes on every object. */
+    @Test
+    public void encodesFarSmallerThanJson() throws IOException {
+        SceneData scene = randomScene(OBJECTS, 4);
+        int binary = encode(scene).length;
+        int json = compactJsonLength(scene);
+        assertTrue(String.format(Locale.US, "%d bytes binary vs %d bytes JSON", binary, json), binary * 5 < json);
+        // Every object has its own yaw here, so no basis collapses to the one-byte delta.
+        assertTrue(binary + " bytes for " + OBJECTS + " objects", binary < OBJECTS * 40);
+    }
+
+    private static void assertRejected(byte[] encoded) {
+        try {
+            decode(encoded);
+            fail("Accepted " + encoded.length + " corrupt bytes");
+        } catch (IOException expected) {
+            // EOFException for truncation, a checksum or format error otherwise.
+        }
+    }
+
+    private static byte[] encode(SceneData scene) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SceneCodec.write(scene, Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    private static SceneData decode(byte[] encoded) throws IOException {
+        return SceneCodec.read(Channels.newChannel(new ByteArrayInputStream(encoded)));
+    }
+
+    /** Size of the old scene.json without its indentation, a lower bound of what it wrote. */
+    private static int compactJsonLength(SceneData scene) {
+        StringBuilder json = new StringBuilder("{\"models\":[");
+        for (String model : scene.getModels()) json.append('"').append(model).append("\",");
+        json.append("],\"placedObjects\":[");
+        float[] m = new float[SceneData.TRANSFORM_SIZE];
+        for (int i = 0; i < scene.getObjectCount(); i++) {
+            scene.getTransform(i, m, 0);
+            json.append("{\"modelIndex\":").append(scene.getModelIndex(i)).append(",\"transform\":[");
+            for (float value : m) json.append((double) value).append(',');
+            json.append("]},");
+        }
+        return json.append("]}").length();
+    }
+
+    /** Objects on the floor with random yaw, as tap-to-place produces. */
+    static SceneData randomScene(int objects, long seed) {
+        Random random = new Random(seed);
+        SceneData scene = new SceneData(objects);
+        for (int i = 0; i < 4; i++) scene.addModel("model-" + i + ".glb");
+        float[] m = new float[SceneData.TRANSFORM_SIZE];
+        for (int i = 0; i < objects; i++) {
+            double yaw = random.nextDouble() * 2 * Math.PI;
+            m[0] = (float) Math.cos(yaw);
+            m[2] = (float) -Math.sin(yaw);
+            m[5] = 1f;
+            m[8] = (float) Math.sin(yaw);
+            m[10] = (float) Math.cos(yaw);
+            m[12] = (random.nextFloat() - 0.5f) * 100f;
+            m[13] = random.nextFloat() * 0.05f;
+            m[14] = (random.nextFloat() - 0.5f) * 100f;
+            m[15] = 1f;
+            scene.addObject(i, random.nextInt(4), m, 0);
+        }
+        return scene;
+    }
+}
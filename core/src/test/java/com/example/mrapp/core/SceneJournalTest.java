@@ -0,0 +1,193 @@
+package com.example.mrapp.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SceneJournalTest {
+    private File directory;
+    private final float[] transform = new float[SceneData.TRANSFORM_SIZE];
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("scene-journal").toFile();
+        Mat4.setTranslation(transform, 1f, 2f, 3f);
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.deleteRecursively(directory);
+    }
+
+    @Test
+    public void replaysEveryRecordTypeInOrder() throws IOException {
+        SceneJournal journal = open();
+        journal.appendModel("chair.glb");
+        journal.appendPlace(4, 0, transform, 0);
+        journal.appendTransform(4, -3L << 32 | 7, transform, 0);
+        journal.appendTransform(4, transform, 0);
+        journal.appendRemove(4, 12);
+        journal.appendRemove(5);
+        journal.appendBounds(0, new float[] {-1f, 0f, -1f, 1f, 2f, 1f});
+        journal.appendClear();
+        journal.close();
+
+        assertEquals(Arrays.asList(
+                "0 model chair.glb",
+                "1 place 4 0 x=1.0",
+                "2 transform 4 cell=" + (-3L << 32 | 7) + " x=1.0",
+                "3 transform 4 cell=none x=1.0",
+                "4 remove 4 cell=12",
+                "5 remove 5 cell=none",
+                "6 bounds 0 max y=2.0",
+                "7 clear"), replay(new SceneJournal(directory), 0));
+    }
+
+    @Test
+    public void replayStartsAtTheRequestedSequence() throws IOException {
+        SceneJournal journal = open();
+        for (int id = 0; id < 5; id++) journal.appendRemove(id);
+        journal.close();
+
+        SceneJournal reopened = new SceneJournal(directory);
+        List<String> records = replay(reopened, 3);
+        assertEquals(Arrays.asList("3 remove 3 cell=none", "4 remove 4 cell=none"), records);
+        reopened.close();
+    }
+
+    @Test
+    public void tornTailIsTruncatedAndAppendsContinueAfterIt() throws IOException {
+        SceneJournal journal = open();
+        journal.appendModel("a.glb");
+        journal.appendPlace(1, 0, transform, 0);
+        long intact = segment(0).length();
+        journal.appendPlace(2, 0, transform, 0);
+        journal.close();
+        try (RandomAccessFile raf = new RandomAccessFile(segment(0), "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        SceneJournal reopened = new SceneJournal(directory);
+        assertEquals(2, replay(reopened, 0).size());
+        assertEquals(intact, segment(0).length());
+        reopened.appendPlace(3, 0, transform, 0);
+        reopened.close();
+
+        List<String> records = replay(new SceneJournal(directory), 0);
+        assertEquals(3, records.size());
+        assertEquals("2 place 3 0 x=1.0", records.get(2));
+    }
+
+    @Test
+    public void corruptRecordDropsEverythingAfterIt() throws IOException {
+        SceneJournal journal = open();
+        journal.appendModel("a.glb");
+        long firstEnd = segment(0).length();
+        journal.appendPlace(1, 0, transform, 0);
+        long second = journal.rotate();
+        journal.appendPlace(2, 0, transform, 0);
+        journal.close();
+        try (RandomAccessFile raf = new RandomAccessFile(segment(0), "rw")) {
+            raf.seek(firstEnd + 10);
+            raf.write(raf.read() ^ 0x40);
+        }
+
+        SceneJournal reopened = new SceneJournal(directory);
+        assertEquals(Arrays.asList("0 model a.glb"), replay(reopened, 0));
+        assertEquals(firstEnd, segment(0).length());
+        // The later segment would follow a gap in the sequence.
+        assertFalse(segment(second).exists());
+        reopened.close();
+    }
+
+    @Test
+    public void compactionDeletesOnlyCoveredSegments() throws IOException {
+        SceneJournal journal = open();
+        journal.appendModel("a.glb");
+        journal.appendPlace(1, 0, transform, 0);
+        long second = journal.rotate();
+        assertEquals(2, second);
+        assertEquals(0, journal.size());
+        journal.appendPlace(2, 0, transform, 0);
+        assertTrue(journal.size() > 0);
+
+        journal.deleteSegmentsBefore(second);
+        assertFalse(segment(0).exists());
+        assertTrue(segment(second).exists());
+        journal.close();
+        assertEquals(Arrays.asList("2 place 2 0 x=1.0"), replay(new SceneJournal(directory), second));
+    }
+
+    @Test
+    public void deleteRemovesTheDirectory() throws IOException {
+        SceneJournal journal = open();
+        journal.appendClear();
+        journal.rotate();
+        journal.appendClear();
+        assertTrue(journal.exists());
+        journal.delete();
+        assertFalse(directory.exists());
+    }
+
+    private SceneJournal open() throws IOException {
+        SceneJournal journal = new SceneJournal(directory);
+        journal.replay(0, new Recorder());
+        return journal;
+    }
+
+    private File segment(long start) {
+        return new File(directory, start + ".log");
+    }
+
+    /** Replays {@code journal}, which is left open, and returns its records as text. */
+    private static List<String> replay(SceneJournal journal, long fromSequence) throws IOException {
+        Recorder recorder = new Recorder();
+        journal.replay(fromSequence, recorder);
+        return recorder.records;
+    }
+
+    private static final class Recorder implements SceneJournal.Visitor {
+        final List<String> records = new ArrayList<>();
+
+        @Override public void model(long sequence, String name) {
+            records.add(sequence + " model " + name);
+        }
+
+        @Override public void place(long sequence, int id, int modelIndex, float[] transform) {
+            records.add(sequence + " place " + id + " " + modelIndex + " x=" + transform[12]);
+        }
+
+        @Override public void remove(long sequence, int id, long cell) {
+            records.add(sequence + " remove " + id + " cell=" + cell(cell));
+        }
+
+        @Override public void transform(long sequence, int id, long cell, float[] transform) {
+            records.add(sequence + " transform " + id + " cell=" + cell(cell) + " x=" + transform[12]);
+        }
+
+        @Override public void clear(long sequence) {
+            records.add(sequence + " clear");
+        }
+
+        @Override public void bounds(long sequence, int modelIndex, float[] bounds) {
+            records.add(String.format(Locale.US, "%d bounds %d max y=%.1f", sequence, modelIndex, bounds[4]));
+        }
+
+        private static String cell(long cell) {
+            return cell == SceneJournal.NO_CELL ? "none" : Long.toString(cell);
+        }
+    }
+}
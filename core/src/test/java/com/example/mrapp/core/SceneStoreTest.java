@@ -0,0 +1,126 @@
+package com.example.mrapp.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SceneStoreTest {
+    private File directory;
+    private final float[] transform = new float[SceneData.TRANSFORM_SIZE];
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("scene-store").toFile();
+        Mat4.setTranslation(transform, 1f, 0f, 2f);
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.deleteRecursively(directory);
+    }
+
+    @Test
+    public void recoversJournaledEditsWithoutCompaction() throws IOException {
+        SceneStore store = new SceneStore(directory);
+        store.open();
+        store.place(store.newObjectId(), "a.glb", transform, 0);
+        int moved = store.newObjectId();
+        store.place(moved, "b.glb", transform, 0);
+        int removed = store.newObjectId();
+        store.place(removed, "a.glb", transform, 0);
+        Mat4.setTranslation(transform, 5f, 0f, 5f);
+        store.updateTransform(moved, transform, 0);
+        store.remove(removed);
+        store.close();
+
+        SceneData scene = new SceneStore(directory).open();
+        assertEquals(2, scene.getObjectCount());
+        float[] read = new float[SceneData.TRANSFORM_SIZE];
+        scene.getTransform(scene.indexOf(moved), read, 0);
+        assertEquals(5f, read[12], 0f);
+        assertEquals(-1, scene.indexOf(removed));
+    }
+
+    @Test
+    public void compactionKeepsEditsMadeAfterIt() throws IOException {
+        SceneStore store = new SceneStore(directory);
+        store.open();
+        for (int i = 0; i < 10; i++) store.place(store.newObjectId(), "a.glb", transform, 0);
+        store.compact();
+        int late = store.newObjectId();
+        store.place(late, "b.glb", transform, 0);
+        store.close();
+        assertTrue(store.getSnapshotFile().exists());
+
+        SceneStore reopened = new SceneStore(directory);
+        SceneData scene = reopened.open();
+        assertEquals(11, scene.getObjectCount());
+        assertEquals(1, scene.getModelIndex(scene.indexOf(late)));
+        // Ids go on after the largest recovered one.
+        assertEquals(late + 1, reopened.newObjectId());
+    }
+
+    @Test
+    public void duplicatePlacementIsRejectedBeforeItIsJournaled() throws IOException {
+        SceneStore store = new SceneStore(directory);
+        store.open();
+        store.place(7, "a.glb", transform, 0);
+        try {
+            store.place(7, "b.glb", transform, 0);
+            fail("Placed id 7 twice");
+        } catch (IllegalArgumentException expected) {
+            // Nothing reached the journal.
+        }
+        store.place(8, "a.glb", transform, 0);
+        store.close();
+
+        SceneData scene = new SceneStore(directory).open();
+        assertEquals(2, scene.getObjectCount());
+        assertEquals(0, scene.getModelIndex(scene.indexOf(7)));
+    }
+
+    @Test
+    public void editsOfUnknownIdsAreNotJournaled() throws IOException {
+        SceneStore store = new SceneStore(directory);
+        store.open();
+        store.place(1, "a.glb", transform, 0);
+        store.compact();
+        store.setCompactionThreshold(1);
+        store.remove(99);
+        store.updateTransform(98, transform, 0);
+        // Not one byte was appended since the compaction.
+        assertFalse(store.needsCompaction());
+        store.close();
+        assertEquals(1, new SceneStore(directory).open().getObjectCount());
+    }
+
+    /** A journal may hold a placement that contradicts the scene before it, as a corrupt one can. */
+    @Test
+    public void replayTruncatesAtARecordThatCannotApply() throws IOException {
+        SceneJournal journal = new SceneJournal(new File(directory, "journal"));
+        journal.replay(new SceneData());
+        journal.appendModel("a.glb");
+        journal.appendPlace(1, 0, transform, 0);
+        journal.appendPlace(1, 0, transform, 0);
+        journal.appendPlace(2, 0, transform, 0);
+        journal.close();
+
+        SceneStore store = new SceneStore(directory);
+        SceneData scene = store.open();
+        assertEquals(1, scene.getObjectCount());
+        assertTrue(scene.indexOf(1) >= 0);
+        // The store goes on from the good prefix.
+        store.place(3, "a.glb", transform, 0);
+        store.close();
+        assertEquals(2, new SceneStore(directory).open().getObjectCount());
+    }
+}
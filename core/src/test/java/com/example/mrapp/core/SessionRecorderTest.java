@@ -0,0 +1,192 @@
+package com.example.mrapp.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SessionRecorderTest {
+    private static final int FRAMES = 300;
+    private static final long FRAME_NANOS = 16_666_667L;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 2340;
+
+    /** Frame times of {@link #record}, with a few irregular gaps. */
+    private final long[] times = new long[FRAMES];
+    /** Byte length of the trace after each frame. */
+    private final long[] frameEnds = new long[FRAMES];
+
+    @Test
+    public void replayReturnsWhatWasRecorded() throws IOException {
+        TraceFrameSource source = new TraceFrameSource(open(record()));
+        List<String> events = new ArrayList<>();
+        FrameSource.Input input = new FrameSource.Input() {
+            @Override public void tap(float x, float y) {
+                events.add("tap " + x + " " + y);
+            }
+
+            @Override public void pick(float x, float y) {
+                events.add("pick " + x + " " + y);
+            }
+        };
+        float[] view = new float[16];
+        float[] projection = new float[16];
+        float[] pose = new float[16];
+        for (int frame = 0; frame < FRAMES; frame++) {
+            events.clear();
+            assertTrue(source.update(frame * FRAME_NANOS, input));
+            assertEquals(times[frame] - times[0], source.getTrace().getFrameTimeNanos());
+            assertEquals(tracking(frame), source.isTracking());
+            source.getViewMatrix(view);
+            assertArrayEquals("frame " + frame, view(frame), view, 0f);
+            source.getProjectionMatrix(projection);
+            assertArrayEquals("frame " + frame, projection(frame), projection, 0f);
+
+            if (frame % 20 == 5) {
+                assertEquals(Arrays.asList("tap 540.0 1500.0", "tap 540.0 1500.0", "tap 10.0 20.0"), events);
+                // Same pixel twice: each hit test takes the next recorded result.
+                assertTrue(source.hitTest(540f, 1500f, pose));
+                assertArrayEquals(hitPose(frame, 0), pose, 0f);
+                assertTrue(source.hitTest(540f, 1500f, pose));
+                assertArrayEquals(hitPose(frame, 1), pose, 0f);
+                assertFalse(source.hitTest(540f, 1500f, pose));
+                assertFalse(source.hitTest(10f, 20f, pose));
+            } else if (frame % 50 == 30) {
+                assertEquals(Arrays.asList("pick 540.0 1830.0"), events);
+                assertFalse(source.hitTest(540f, 1830f, pose));
+            } else {
+                assertEquals(0, events.size());
+            }
+        }
+        assertFalse(source.update(FRAMES * FRAME_NANOS, input));
+        assertEquals(FRAMES, source.getTrace().getFrameCount());
+    }
+
+    @Test
+    public void steadyFramesStaySmall() throws IOException {
+        record();
+        // A frame with no events and an unchanged projection holds a view, a time delta and a CRC.
+        long steady = frameEnds[11] - frameEnds[10];
+        assertTrue(steady + " bytes", steady <= 60);
+    }
+
+    @Test
+    public void traceCutShortEndsAtTheLastWholeFrame() throws IOException {
+        byte[] trace = record();
+        int whole = 0;
+        for (int length = 6; length <= trace.length; length++) {
+            while (whole < FRAMES && frameEnds[whole] <= length) whole++;
+            SessionTrace cut = open(Arrays.copyOf(trace, length));
+            int read = 0;
+            while (cut.next()) read++;
+            assertEquals("cut at " + length, whole, read);
+        }
+    }
+
+    @Test
+    public void corruptFrameInsideTheTraceIsAnError() throws IOException {
+        byte[] trace = record();
+        // The last byte of the view in a frame without events, ahead of the event count and CRC.
+        int frame = 100;
+        trace[(int) frameEnds[frame] - 6] ^= 0x01;
+        SessionTrace corrupt = open(trace);
+        try {
+            while (corrupt.next()) {
+                assertTrue(corrupt.getFrameCount() <= frame);
+            }
+            fail("Read past a corrupt frame");
+        } catch (IOException expected) {
+            assertEquals(frame, corrupt.getFrameCount());
+        }
+    }
+
+    @Test
+    public void headlessReplayPlacesAndRemovesAsRecorded() throws IOException {
+        byte[] trace = record();
+        HeadlessReplay replay = new HeadlessReplay(null, HeadlessReplay.DEFAULT_MODEL_BOUNDS);
+        FrameStats stats = replay.run(new TraceFrameSource(open(trace)), WIDTH, HEIGHT, false);
+
+        int placements = 0;
+        for (int frame = 0; frame < FRAMES; frame++) if (frame % 20 == 5 && tracking(frame)) placements += 2;
+        // Each pick looks down at the nearest object placed in the last half metre of the walk.
+        int picks = 0;
+        for (int frame = 0; frame < FRAMES; frame++) if (frame % 50 == 30 && tracking(frame)) picks++;
+        assertEquals(placements - picks, replay.getObjectCount());
+        assertEquals(FRAMES, stats.getFrames());
+        assertEquals(11, stats.getTrackingLostFrames());
+
+        HeadlessReplay again = new HeadlessReplay(null, HeadlessReplay.DEFAULT_MODEL_BOUNDS);
+        again.run(new TraceFrameSource(open(trace)), WIDTH, HEIGHT, false);
+        assertEquals(replay.getObjectCount(), again.getObjectCount());
+    }
+
+    /**
+     * A walk along x with tracking lost for a few frames. Every twentieth frame has two taps at the
+     * same pixel that hit the floor ahead and one that misses; every fiftieth a long-press.
+     */
+    private byte[] record() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SessionRecorder recorder = new SessionRecorder(Channels.newChannel(bytes));
+        long time = 5_000_000_000L;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            time += frame % 97 == 0 ? 3 * FRAME_NANOS : FRAME_NANOS;
+            times[frame] = time;
+            recorder.beginFrame(time, tracking(frame), view(frame), projection(frame));
+            if (frame % 20 == 5) {
+                recorder.tap(540f, 1500f, hitPose(frame, 0));
+                recorder.tap(540f, 1500f, hitPose(frame, 1));
+                recorder.tap(10f, 20f, null);
+            } else if (frame % 50 == 30) {
+                recorder.pick(540f, 1830f);
+            }
+            recorder.endFrame();
+            frameEnds[frame] = recorder.getSize();
+        }
+        recorder.close();
+        assertEquals(FRAMES, recorder.getFrameCount());
+        return bytes.toByteArray();
+    }
+
+    private static SessionTrace open(byte[] trace) throws IOException {
+        return new SessionTrace(Channels.newChannel(new ByteArrayInputStream(trace)));
+    }
+
+    private static boolean tracking(int frame) {
+        return frame < 140 || frame > 150;
+    }
+
+    private static float[] view(int frame) {
+        float[] view = new float[16];
+        Mat4.setTranslation(view, -0.01f * frame, -1.5f, 0f);
+        return view;
+    }
+
+    /** The view narrows once, as when the camera config changes mid-session. */
+    private static float[] projection(int frame) {
+        double near = CameraRig.NEAR;
+        double halfWidth = frame < 200 ? 0.45 : 0.4;
+        double[] frustum = new double[16];
+        Mat4.setFrustum(frustum, -halfWidth * near, halfWidth * near, -0.8 * near, 0.8 * near, near, CameraRig.FAR);
+        float[] projection = new float[16];
+        for (int i = 0; i < 16; i++) projection[i] = (float) frustum[i];
+        return projection;
+    }
+
+    /** On the floor 2 m ahead of the camera; the second tap lands a little further. */
+    private static float[] hitPose(int frame, int tap) {
+        float[] pose = new float[16];
+        Mat4.setTranslation(pose, 0.01f * frame, 0f, -2f - 0.1f * tap);
+        return pose;
+    }
+}
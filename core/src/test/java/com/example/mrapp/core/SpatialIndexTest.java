@@ -0,0 +1,172 @@
+package com.example.mrapp.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks every query against a brute-force scan of the same boxes. */
+public class SpatialIndexTest {
+    private static final int ITEMS = 500;
+    private static final float EXTENT = 20f;
+
+    private final Random random = new Random(11);
+    private final SpatialIndex<Integer> index = new SpatialIndex<>();
+    /** Tight box of each live proxy, indexed by the item it holds. */
+    private final List<float[]> boxes = new ArrayList<>();
+    private final List<Integer> proxies = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < ITEMS; i++) {
+            float[] box = randomBox();
+            boxes.add(box);
+            proxies.add(index.add(i, box, 0));
+        }
+        // Move some a little, some far, and drop a few, as editing a scene does.
+        for (int i = 0; i < ITEMS; i += 3) {
+            float[] box = i % 2 == 0 ? shifted(boxes.get(i), 0.01f) : randomBox();
+            boxes.set(i, box);
+            index.update(proxies.get(i), box, 0);
+        }
+        for (int i = 0; i < ITEMS; i += 7) {
+            index.remove(proxies.get(i));
+            boxes.set(i, null);
+        }
+    }
+
+    @Test
+    public void staysBalanced() {
+        int live = 0;
+        for (float[] box : boxes) if (box != null) live++;
+        assertEquals(live, index.size());
+        int log2 = 32 - Integer.numberOfLeadingZeros(live);
+        assertTrue("height " + index.getHeight(), index.getHeight() <= 2 * log2);
+    }
+
+    @Test
+    public void boundsAreTheLatestTightBox() {
+        float[] out = new float[6];
+        for (int i = 0; i < ITEMS; i++) {
+            if (boxes.get(i) == null) continue;
+            index.getBounds(proxies.get(i), out, 0);
+            for (int k = 0; k < 6; k++) assertEquals(boxes.get(i)[k], out[k], 0f);
+            assertEquals(Integer.valueOf(i), index.get(proxies.get(i)));
+        }
+    }
+
+    @Test
+    public void raycastFindsTheFirstBoxHit() {
+        for (int ray = 0; ray < 200; ray++) {
+            float ox = (random.nextFloat() - 0.5f) * EXTENT;
+            float oy = (random.nextFloat() - 0.5f) * EXTENT;
+            float oz = (random.nextFloat() - 0.5f) * EXTENT;
+            float dx = random.nextFloat() - 0.5f;
+            float dy = random.nextFloat() - 0.5f;
+            float dz = random.nextFloat() - 0.5f;
+            float best = Float.MAX_VALUE;
+            for (float[] box : boxes) {
+                if (box == null) continue;
+                float t = entry(box, ox, oy, oz, dx, dy, dz);
+                if (t >= 0 && t < best) best = t;
+            }
+            int hit = index.raycast(ox, oy, oz, dx, dy, dz, 100f);
+            if (best > 100f) {
+                assertEquals(SpatialIndex.NONE, hit);
+            } else {
+                float[] box = boxes.get(index.get(hit));
+                assertEquals("ray " + ray, best, entry(box, ox, oy, oz, dx, dy, dz), 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void frustumQueryVisitsExactlyTheBoxesInside() {
+        // The cube |x|, |y|, |z| <= 4 as six inward planes.
+        float[] planes = {1, 0, 0, 4, -1, 0, 0, 4, 0, 1, 0, 4, 0, -1, 0, 4, 0, 0, 1, 4, 0, 0, -1, 4};
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < ITEMS; i++) {
+            float[] b = boxes.get(i);
+            if (b != null && b[0] <= 4 && b[3] >= -4 && b[1] <= 4 && b[4] >= -4 && b[2] <= 4 && b[5] >= -4) {
+                expected.add(i);
+            }
+        }
+        Set<Integer> visited = new HashSet<>();
+        int count = index.queryFrustum(planes, (proxy, item) -> assertTrue(visited.add(item)));
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, visited);
+        assertEquals(expected.size(), count);
+    }
+
+    @Test
+    public void nearestReturnsTheClosestBoxesInOrder() {
+        int k = 8;
+        int[] out = new int[k];
+        for (int query = 0; query < 50; query++) {
+            float x = (random.nextFloat() - 0.5f) * EXTENT;
+            float y = (random.nextFloat() - 0.5f) * EXTENT;
+            float z = (random.nextFloat() - 0.5f) * EXTENT;
+            List<Float> distances = new ArrayList<>();
+            for (float[] box : boxes) if (box != null) distances.add(distanceSquared(box, x, y, z));
+            distances.sort(null);
+
+            assertEquals(k, index.nearest(x, y, z, k, out));
+            for (int i = 0; i < k; i++) {
+                float d = distanceSquared(boxes.get(index.get(out[i])), x, y, z);
+                assertEquals("query " + query + " rank " + i, distances.get(i), d, 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void clearEmptiesTheIndex() {
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(SpatialIndex.NONE, index.raycast(0, 0, -50, 0, 0, 1, 100f));
+        int proxy = index.add(-1, new float[] {0, 0, 0, 1, 1, 1}, 0);
+        assertEquals(proxy, index.raycast(0.5f, 0.5f, -5, 0, 0, 1, 100f));
+    }
+
+    private float[] randomBox() {
+        float x = (random.nextFloat() - 0.5f) * EXTENT;
+        float y = (random.nextFloat() - 0.5f) * EXTENT;
+        float z = (random.nextFloat() - 0.5f) * EXTENT;
+        float size = 0.1f + random.nextFloat();
+        return new float[] {x, y, z, x + size, y + size * 2, z + size};
+    }
+
+    private static float[] shifted(float[] box, float by) {
+        float[] moved = box.clone();
+        for (int k = 0; k < 6; k++) moved[k] += by;
+        return moved;
+    }
+
+    /** Entry distance of the ray into the box, 0 if it starts inside, -1 if it misses. */
+    private static float entry(float[] b, float ox, float oy, float oz, float dx, float dy, float dz) {
+        float near = 0f;
+        float far = Float.MAX_VALUE;
+        float[] o = {ox, oy, oz};
+        float[] d = {dx, dy, dz};
+        for (int axis = 0; axis < 3; axis++) {
+            float t1 = (b[axis] - o[axis]) / d[axis];
+            float t2 = (b[axis + 3] - o[axis]) / d[axis];
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        return far >= near ? near : -1;
+    }
+
+    private static float distanceSquared(float[] b, float x, float y, float z) {
+        float dx = Math.max(Math.max(b[0] - x, x - b[3]), 0f);
+        float dy = Math.max(Math.max(b[1] - y, y - b[4]), 0f);
+        float dz = Math.max(Math.max(b[2] - z, z - b[5]), 0f);
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.mrapp.core;
+
+import java.io.File;
+
+/** Temporary directory cleanup for the store tests. */
+final class TestFiles {
+    private TestFiles() {}
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) for (File child : children) deleteRecursively(child);
+        file.delete();
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.mrapp.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TiledSceneStoreTest {
+    private static final float[] BOUNDS = {-0.3f, 0f, -0.3f, 0.3f, 1.2f, 0.3f};
+
+    private File directory;
+    private File journalDirectory;
+    private final float[] transform = new float[SceneData.TRANSFORM_SIZE];
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("tiled-store").toFile();
+        journalDirectory = new File(directory, "journal");
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.deleteRecursively(directory);
+    }
+
+    @Test
+    public void recoversEditsFromTheJournalAlone() throws IOException {
+        TiledSceneStore store = open();
+        int a = place(store, "a.glb", 1f, 1f);
+        int b = place(store, "b.glb", 2f, 3f);
+        int c = place(store, "a.glb", -20f, 9f);
+        long moved = move(store, b, store.cellAt(2f, 3f), 12f, 3f);
+        store.remove(c, store.cellAt(-20f, 9f));
+        store.close();
+
+        TiledSceneStore reopened = open();
+        assertArrayEquals(sorted(store.cellAt(1f, 1f), moved), reopened.getCells());
+        assertEquals(Arrays.asList("a.glb", "b.glb"), reopened.getModels());
+        assertEquals(1, reopened.getObjectCount(moved));
+        assertObjectAt(reopened, b, 12f, 3f);
+        assertObjectAt(reopened, a, 1f, 1f);
+        assertEquals(c + 1, reopened.newObjectId());
+        reopened.close();
+    }
+
+    @Test
+    public void compactionKeepsEveryCellAndLaterEdits() throws IOException {
+        TiledSceneStore store = open();
+        for (int i = 0; i < 20; i++) place(store, "m" + (i % 3) + ".glb", i * 3f, -i * 2f);
+        store.setModelBounds("m1.glb", BOUNDS);
+        store.compact();
+        int late = place(store, "late.glb", 0.5f, 0.5f);
+        store.close();
+        String[] segments = journalDirectory.list();
+        assertEquals(1, segments.length);
+
+        TiledSceneStore reopened = open();
+        int total = 0;
+        for (long cell : reopened.getCells()) {
+            total += reopened.getObjectCount(cell);
+            assertEquals(reopened.getObjectCount(cell), reopened.loadCell(cell).getObjectCount());
+        }
+        assertEquals(21, total);
+        assertObjectAt(reopened, late, 0.5f, 0.5f);
+        assertArrayEquals(BOUNDS, reopened.getModelBounds("m1.glb"), 0f);
+        assertNull(reopened.getModelBounds("m0.glb"));
+        reopened.close();
+    }
+
+    @Test
+    public void tornJournalTailLosesOnlyTheLastEdit() throws IOException {
+        TiledSceneStore store = open();
+        int a = place(store, "a.glb", 1f, 1f);
+        store.compact();
+        int b = place(store, "a.glb", 1.5f, 1f);
+        int c = place(store, "a.glb", 2f, 1f);
+        store.close();
+        File segment = onlySegment();
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        TiledSceneStore reopened = open();
+        long cell = reopened.cellAt(1f, 1f);
+        SceneData data = reopened.loadCell(cell);
+        assertEquals(2, data.getObjectCount());
+        assertTrue(data.indexOf(a) >= 0 && data.indexOf(b) >= 0);
+        assertEquals(-1, data.indexOf(c));
+        // Later edits append after the last intact record and survive the next open.
+        place(reopened, "a.glb", 3f, 1f);
+        reopened.close();
+        assertEquals(3, open().getObjectCount(cell));
+    }
+
+    /**
+     * A crash after the cell files were written but before the manifest was: the old manifest and
+     * every journal segment are still there, and cells newer than the manifest must not apply the
+     * records they already hold a second time. No model is added, so the compaction did not
+     * rewrite the model table ahead of the cells.
+     */
+    @Test
+    public void crashDuringCompactionAppliesEachRecordOnce() throws IOException {
+        TiledSceneStore store = open();
+        int a = place(store, "a.glb", 1f, 1f);
+        int b = place(store, "a.glb", 9f, 1f);
+        store.compact();
+        File savedManifest = new File(directory, "manifest.saved");
+        Files.copy(new File(directory, TiledSceneStore.MANIFEST_FILE_NAME).toPath(), savedManifest.toPath());
+        File savedSegment = new File(directory, "segment.saved");
+        String segmentName = onlySegment().getName();
+
+        // a moves into b's cell and back; b leaves for a cell the old manifest does not know,
+        // and another object takes its place.
+        long cellA = store.cellAt(1f, 1f);
+        long cellB = store.cellAt(9f, 1f);
+        move(store, a, move(store, a, cellA, 9.5f, 1f), 1f, 2f);
+        long cellC = move(store, b, cellB, 17f, 1f);
+        int c = place(store, "a.glb", 9f, 2f);
+        int d = place(store, "a.glb", 1f, -30f);
+        store.sync();
+        Files.copy(onlySegment().toPath(), savedSegment.toPath());
+        store.compact();
+        store.close();
+
+        Files.copy(savedManifest.toPath(), new File(directory, TiledSceneStore.MANIFEST_FILE_NAME).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(savedSegment.toPath(), new File(journalDirectory, segmentName).toPath());
+        savedManifest.delete();
+        savedSegment.delete();
+
+        TiledSceneStore recovered = open();
+        long cellD = recovered.cellAt(1f, -30f);
+        assertArrayEquals(sorted(cellA, cellB, cellC, cellD), recovered.getCells());
+        for (long cell : recovered.getCells()) assertEquals(1, recovered.getObjectCount(cell));
+        assertObjectAt(recovered, a, 1f, 2f);
+        assertObjectAt(recovered, b, 17f, 1f);
+        assertObjectAt(recovered, c, 9f, 2f);
+        assertObjectAt(recovered, d, 1f, -30f);
+        assertEquals(d + 1, recovered.newObjectId());
+
+        // The next compaction lists the recovered cells, so they are found after the next open.
+        recovered.compact();
+        recovered.close();
+        assertArrayEquals(sorted(cellA, cellB, cellC, cellD), open().getCells());
+    }
+
+    @Test
+    public void readsVersion1Manifests() throws IOException {
+        long cell = TiledSceneStore.cellKey(0, 0);
+        assertTrue(new File(directory, "cells").mkdirs());
+        SceneData local = new SceneData();
+        local.addModel("a.glb");
+        Mat4.setTranslation(transform, 1f, 0f, 1f);
+        local.addObject(4, 0, transform, 0);
+        SceneStore.writeSnapshot(new File(directory, "cells/c0_0.bin"), local);
+        try (FileChannel channel = new FileOutputStream(new File(directory, TiledSceneStore.MANIFEST_FILE_NAME)).getChannel()) {
+            BinaryWriter out = new BinaryWriter(channel);
+            out.writeInt(0x4D54524D);
+            out.writeShort(1);
+            out.writeFloat(TiledSceneStore.DEFAULT_CELL_SIZE);
+            out.writeLong(0);
+            out.writeVarInt(5);
+            out.writeVarInt(1);
+            out.writeString("a.glb");
+            out.writeVarInt(1);
+            out.writeLong(cell);
+            out.writeVarInt(1);
+            out.writeInt(out.crc());
+            out.flush();
+        }
+
+        TiledSceneStore store = open();
+        assertEquals(Collections.singletonList("a.glb"), store.getModels());
+        assertNull(store.getModelBounds("a.glb"));
+        assertObjectAt(store, 4, 1f, 1f);
+        assertEquals(5, store.newObjectId());
+        store.close();
+    }
+
+    @Test
+    public void corruptManifestIsReported() throws IOException {
+        TiledSceneStore store = open();
+        place(store, "a.glb", 1f, 1f);
+        store.compact();
+        store.close();
+        try (RandomAccessFile raf = new RandomAccessFile(new File(directory, TiledSceneStore.MANIFEST_FILE_NAME), "rw")) {
+            raf.seek(raf.length() - 6);
+            raf.write(raf.read() ^ 0x20);
+        }
+        try {
+            open();
+            fail("Opened a corrupt manifest");
+        } catch (IOException expected) {
+            // The caller falls back to an empty scene, keeping the files.
+        }
+    }
+
+    @Test
+    public void truncatedCellFileIsAnErrorNotATornRecord() throws IOException {
+        TiledSceneStore store = open();
+        place(store, "a.glb", 1f, 1f);
+        store.compact();
+        store.close();
+        File cellFile = new File(directory, "cells/c0_0.bin");
+        long length = cellFile.length();
+        for (long cut : new long[] {length / 2, length - 2}) {
+            try (RandomAccessFile raf = new RandomAccessFile(cellFile, "rw")) {
+                raf.setLength(cut);
+            }
+            TiledSceneStore reopened = open();
+            try {
+                reopened.loadCell(reopened.cellAt(1f, 1f));
+                fail("Read a cell cut to " + cut + " bytes");
+            } catch (EOFException e) {
+                fail("A truncated cell would pass for a torn journal record");
+            } catch (IOException expected) {
+                // Reported to the caller, which keeps the file.
+            }
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void duplicatePlacementIsRejectedBeforeItIsJournaled() throws IOException {
+        TiledSceneStore store = open();
+        int id = place(store, "a.glb", 1f, 1f);
+        try {
+            place(store, id, "a.glb", 1.5f, 1f);
+            fail("Placed id " + id + " twice");
+        } catch (IllegalArgumentException expected) {
+            // Nothing reached the journal.
+        }
+        store.close();
+        assertEquals(1, open().getObjectCount(store.cellAt(1f, 1f)));
+    }
+
+    @Test
+    public void editsOfIdsNotInTheirCellAreNotJournaled() throws IOException {
+        TiledSceneStore store = open();
+        int a = place(store, "a.glb", 1f, 1f);
+        store.compact();
+        store.setCompactionThreshold(1);
+        long cell = store.cellAt(1f, 1f);
+        long elsewhere = store.cellAt(20f, 1f);
+        store.remove(99, cell);
+        assertEquals(cell, move(store, 98, cell, 12f, 1f));
+        store.remove(a, elsewhere);
+        assertEquals(elsewhere, move(store, a, elsewhere, 12f, 1f));
+        // Not one byte was appended since the compaction.
+        assertFalse(store.needsCompaction());
+        store.close();
+
+        TiledSceneStore reopened = open();
+        assertArrayEquals(new long[] {cell}, reopened.getCells());
+        assertObjectAt(reopened, a, 1f, 1f);
+        reopened.close();
+    }
+
+    private TiledSceneStore open() throws IOException {
+        TiledSceneStore store = new TiledSceneStore(directory);
+        store.open();
+        return store;
+    }
+
+    private int place(TiledSceneStore store, String model, float x, float z) throws IOException {
+        return place(store, store.newObjectId(), model, x, z);
+    }
+
+    private int place(TiledSceneStore store, int id, String model, float x, float z) throws IOException {
+        Mat4.setTranslation(transform, x, 0f, z);
+        store.place(id, model, transform, 0);
+        return id;
+    }
+
+    private long move(TiledSceneStore store, int id, long cell, float x, float z) throws IOException {
+        Mat4.setTranslation(transform, x, 0f, z);
+        return store.updateTransform(id, cell, transform, 0);
+    }
+
+    private static void assertObjectAt(TiledSceneStore store, int id, float x, float z) throws IOException {
+        SceneData cell = store.loadCell(store.cellAt(x, z));
+        int index = cell.indexOf(id);
+        assertTrue("object " + id + " not in its cell", index >= 0);
+        float[] m = new float[SceneData.TRANSFORM_SIZE];
+        cell.getTransform(index, m, 0);
+        assertEquals(x, m[12], SceneCodec.DEFAULT_TRANSLATION_STEP);
+        assertEquals(z, m[14], SceneCodec.DEFAULT_TRANSLATION_STEP);
+    }
+
+    private File onlySegment() {
+        File[] segments = journalDirectory.listFiles();
+        assertEquals(1, segments.length);
+        return segments[0];
+    }
+
+    private static long[] sorted(long... cells) {
+        Arrays.sort(cells);
+        return cells;
+    }
+}